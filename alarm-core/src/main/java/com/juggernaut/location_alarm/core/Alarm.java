@@ -0,0 +1,92 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * A standing location alarm: a named destination with its own trigger radius.
+ *
+ * Subclasses trigger on other shapes by overriding the package-private cover(), isReached(),
+ * getEnclosingRadius() and estimateBoundary() used by AlarmRegistry and AlarmPipeline.
+ */
+public class Alarm {
+
+    /**
+     * Unique identifier assigned by the AlarmRegistry.
+     */
+    public final long id;
+
+    /**
+     * Name entered by the user for this checkpoint.
+     */
+    public final String name;
+
+    /**
+     * Destination coordinates in degrees.
+     */
+    public final double latitude;
+    public final double longitude;
+
+    /**
+     * Trigger the alarm when closer than this many meters to the destination.
+     */
+    public final float radius;
+
+    /**
+     * Per-destination constants precomputed for the DistanceKernel.
+     */
+    final double latitudeRadians;
+    final double longitudeRadians;
+    final double cosLatitude;
+
+    public Alarm(long id, String name, double latitude, double longitude, float radius) {
+        this.id = id;
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.latitudeRadians = Math.toRadians(latitude);
+        this.longitudeRadians = Math.toRadians(longitude);
+        this.cosLatitude = Math.cos(latitudeRadians);
+    }
+
+    /**
+     * Returns the ids of the geohash cells at the given precision this alarm can trigger in.
+     */
+    long[] cover(int bits) {
+        return GridCover.circle(latitude, longitude, radius, bits);
+    }
+
+    /**
+     * Returns true if the kernel's origin lies inside the trigger area.
+     */
+    final boolean isReached(DistanceKernel kernel) {
+        return isReached(kernel, 0);
+    }
+
+    /**
+     * Returns true if the kernel's origin lies inside the trigger area by more than the given
+     * margin in meters.
+     */
+    boolean isReached(DistanceKernel kernel, double margin) {
+        return kernel.isWithin(this, margin);
+    }
+
+    /**
+     * Returns the radius in meters of a circle around latitude, longitude enclosing the trigger
+     * area.
+     */
+    double getEnclosingRadius() {
+        return radius;
+    }
+
+    /**
+     * Estimates the distance in meters from the kernel's origin to the edge of the trigger area,
+     * negative inside it.
+     */
+    double estimateBoundary(DistanceKernel kernel) {
+        return kernel.estimate(this) - radius;
+    }
+
+    @Override
+    public String toString() {
+        return "Alarm{" + id + ", " + name + ", (" + latitude + ", " + longitude + "), " + radius + " m}";
+    }
+}
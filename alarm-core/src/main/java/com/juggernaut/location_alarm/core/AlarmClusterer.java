@@ -0,0 +1,160 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Groups the alarms that are close together on screen and drops those outside the viewport.
+ *
+ * At zoom level z the map is divided into square cells of CELL_PIXELS, and all alarms in a cell
+ * form one cluster placed at their mean position. A cell holding one alarm yields that alarm on
+ * its own. The cells are fixed to the map rather than to the screen, so panning keeps every
+ * cluster as it is and only adds or drops those crossing the edge of the viewport. Above
+ * MAX_CLUSTER_ZOOM no alarms are grouped.
+ */
+public final class AlarmClusterer {
+
+    /**
+     * Side of a cell in pixels (dp on Android, where a map tile is 256 dp wide).
+     */
+    public static final int CELL_PIXELS = 128;
+
+    /**
+     * Highest zoom level that still groups alarms.
+     */
+    public static final int MAX_CLUSTER_ZOOM = 16;
+
+    /**
+     * One marker on the map: a single alarm or a group of alarms.
+     */
+    public static final class Cluster {
+
+        /**
+         * Stays the same across calls as long as the marker should: the alarm id of a single
+         * alarm, a negative id derived from zoom level and cell for a group.
+         */
+        public final long key;
+
+        /**
+         * Mean position of the alarms, in degrees.
+         */
+        public final double latitude;
+        public final double longitude;
+
+        public final int size;
+
+        /**
+         * The alarm of a single alarm cluster, null for a group.
+         */
+        public final Alarm alarm;
+
+        Cluster(long key, double latitude, double longitude, int size, Alarm alarm) {
+            this.key = key;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.size = size;
+            this.alarm = alarm;
+        }
+
+        @Override
+        public String toString() {
+            return "Cluster{" + key + ", (" + latitude + ", " + longitude + "), " + size + "}";
+        }
+    }
+
+    /**
+     * Sums up the alarms of one cell.
+     */
+    private static final class Cell {
+        final long key;
+        final boolean visible;
+        Alarm first;
+        int size;
+        double sumX;
+        double sumY;
+
+        Cell(long key, boolean visible) {
+            this.key = key;
+            this.visible = visible;
+        }
+    }
+
+    private final CellMap<Cell> mCells = new CellMap<>();
+
+    private final List<Cell> mCellList = new ArrayList<>();
+
+    /**
+     * Returns the markers to show for the given alarms.
+     *
+     * @param zoom     camera zoom level, the fraction is ignored.
+     * @param viewport area to keep markers for, usually a little larger than the screen.
+     */
+    public List<Cluster> cluster(Collection<Alarm> alarms, float zoom, Viewport viewport) {
+        List<Cluster> clusters = new ArrayList<>();
+        int level = (int) zoom;
+        if (level > MAX_CLUSTER_ZOOM) {
+            for (Alarm alarm : alarms) {
+                if (isVisible(alarm, viewport)) {
+                    clusters.add(new Cluster(alarm.id, alarm.latitude, alarm.longitude, 1, alarm));
+                }
+            }
+            return clusters;
+        }
+
+        int cellsPerAxis = (int) (Viewport.worldPixels(level) / CELL_PIXELS);
+        double cellSize = 1.0 / cellsPerAxis;
+        try {
+            for (Alarm alarm : alarms) {
+                double x = Viewport.x(alarm.longitude);
+                double y = Viewport.y(alarm.latitude);
+                int column = Math.min((int) (x * cellsPerAxis), cellsPerAxis - 1);
+                int row = Math.min((int) (y * cellsPerAxis), cellsPerAxis - 1);
+                long key = Long.MIN_VALUE | ((long) level << 48) | ((long) column << 24) | row;
+
+                Cell cell = mCells.get(key);
+                if (cell == null) {
+                    // Whole cells are kept or dropped, so a group never loses members at the edge.
+                    cell = new Cell(key, viewport.intersects(column * cellSize, row * cellSize,
+                            (column + 1) * cellSize, (row + 1) * cellSize));
+                    mCells.put(key, cell);
+                    mCellList.add(cell);
+                }
+                if (!cell.visible) {
+                    continue;
+                }
+                if (cell.size == 0) {
+                    cell.first = alarm;
+                }
+                cell.size++;
+                cell.sumX += x;
+                cell.sumY += y;
+            }
+
+            for (Cell cell : mCellList) {
+                if (cell.size == 1) {
+                    Alarm alarm = cell.first;
+                    clusters.add(new Cluster(alarm.id, alarm.latitude, alarm.longitude, 1, alarm));
+                } else if (cell.size > 1) {
+                    clusters.add(new Cluster(cell.key, Viewport.latitude(cell.sumY / cell.size),
+                            Viewport.longitude(cell.sumX / cell.size), cell.size, null));
+                }
+            }
+        } finally {
+            mCells.clear();
+            mCellList.clear();
+        }
+        return clusters;
+    }
+
+    /**
+     * Returns whether any part of the trigger circle of an alarm lies in the viewport.
+     */
+    static boolean isVisible(Alarm alarm, Viewport viewport) {
+        double x = Viewport.x(alarm.longitude);
+        double y = Viewport.y(alarm.latitude);
+        // Mercator is conformal, the circle has the same extent along both axes.
+        double r = alarm.radius / (Viewport.metersPerPixel(alarm.latitude, 0) * Viewport.TILE_SIZE);
+        return viewport.intersects(x - r, y - r, x + r, y + r);
+    }
+}
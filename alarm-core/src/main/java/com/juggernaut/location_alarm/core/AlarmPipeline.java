@@ -0,0 +1,203 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The alarm logic applied to every fix, free of Android so it runs the same in the service and in
+ * a replay on a plain JVM.
+ *
+ * Each fix is checked against the alarms indexed in its grid cell. Reached alarms are disarmed and
+ * reported. With a FixFilter set, outliers are dropped before the check and the alarms are checked
+ * against the filtered position instead. With a TriggerModel set, an alarm only triggers once the
+ * fix is inside it with the model's confidence, and the scheduler is asked for high accuracy fixes
+ * while that is in doubt. Once a delivery of fixes has been checked, the scheduler picks the
+ * location request for the next ones. Not thread-safe, the service drives it from its
+ * worker looper.
+ */
+public class AlarmPipeline {
+
+    public interface Listener {
+        /**
+         * The destination of an alarm has been reached, the alarm has already been disarmed.
+         */
+        void onAlarmTriggered(Alarm alarm, Fix fix);
+
+        /**
+         * The scheduler switched tiers, the location request must be replaced.
+         *
+         * @param previousMaxWaitTime max wait time of the request being replaced.
+         */
+        void onTierChanged(LocationRequestScheduler.Tier tier, long previousMaxWaitTime);
+    }
+
+    private final AlarmRegistry mRegistry;
+
+    private final LocationRequestScheduler mScheduler;
+
+    private final Listener mListener;
+
+    /**
+     * Alarms near the current fix, reused for every fix.
+     */
+    private final List<Alarm> mCandidates = new ArrayList<>();
+
+    /**
+     * Measures the distance from each fix to the candidate alarms without allocating.
+     */
+    private final DistanceKernel mDistanceKernel = new DistanceKernel();
+
+    /**
+     * Conditions the fixes before they are checked, null to check the raw fixes.
+     */
+    private FixFilter mFilter;
+
+    /**
+     * Accounts for the accuracy of the fixes, null to trigger on any fix inside an alarm.
+     */
+    private TriggerModel mTriggerModel;
+
+    private long mFixes;
+    private long mTriggers;
+
+    public AlarmPipeline(AlarmRegistry registry, LocationRequestScheduler scheduler, Listener listener) {
+        mRegistry = registry;
+        mScheduler = scheduler;
+        mListener = listener;
+    }
+
+    public LocationRequestScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Sets the filter applied to the fixes before they are checked, null for none.
+     */
+    public void setFilter(FixFilter filter) {
+        mFilter = filter;
+    }
+
+    public FixFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Sets the model deciding on triggers from the accuracy of the fixes, null for none.
+     */
+    public void setTriggerModel(TriggerModel triggerModel) {
+        mTriggerModel = triggerModel;
+    }
+
+    public TriggerModel getTriggerModel() {
+        return mTriggerModel;
+    }
+
+    /**
+     * Returns true if the fix lies in a grid cell covered by an alarm, a cheap superset of the
+     * fixes that trigger one.
+     */
+    public boolean isNearAlarm(Fix fix) {
+        mRegistry.query(fix.latitude, fix.longitude, mCandidates);
+        return !mCandidates.isEmpty();
+    }
+
+    /**
+     * Checks every armed alarm near a fix.
+     */
+    public void onFix(Fix fix) {
+        mFixes++;
+        double latitude = fix.latitude;
+        double longitude = fix.longitude;
+        if (mFilter != null) {
+            if (!mFilter.update(fix)) {
+                return;
+            }
+            latitude = mFilter.getLatitude();
+            longitude = mFilter.getLongitude();
+        }
+        // Only the alarms indexed in the grid cell of this fix can be in range.
+        mRegistry.query(latitude, longitude, mCandidates);
+        if (mCandidates.isEmpty()) {
+            return;
+        }
+        mDistanceKernel.setOrigin(latitude, longitude);
+        double margin = mTriggerModel != null ? mTriggerModel.getTriggerMargin(getSigma(fix)) : 0;
+        for (int i = 0; i < mCandidates.size(); i++) {
+            Alarm alarm = mCandidates.get(i);
+            if (alarm.isReached(mDistanceKernel, margin)) {
+                mRegistry.remove(alarm.id);
+                mTriggers++;
+                mListener.onAlarmTriggered(alarm, fix);
+            }
+        }
+    }
+
+    /**
+     * Lets the scheduler adapt the request once every fix of a delivery has been checked.
+     *
+     * @param last the most recent fix of the delivery.
+     */
+    public void onFixesProcessed(Fix last) {
+        // Slow down far from every alarm, speed up again when one comes close.
+        long previousMaxWaitTime = mScheduler.getMaxWaitTime();
+        boolean changed;
+        if (mFilter != null && mFilter.hasEstimate()) {
+            // The filtered track is tighter than a single fix, farther boundaries allow slower tiers.
+            // The scheduler takes an accuracy like the fixes have, not a standard deviation.
+            changed = mScheduler.onNewFix(mFilter.getLatitude(), mFilter.getLongitude(),
+                    mFilter.getAccuracy(), mFilter.getSpeedBound());
+        } else {
+            changed = mScheduler.onNewFix(last.latitude, last.longitude,
+                    last.hasAccuracy() ? last.accuracy : 0,
+                    last.hasSpeed() ? last.speed : Float.NaN);
+        }
+        // High accuracy fixes only while the cheap ones cannot tell whether an alarm is reached.
+        if (mTriggerModel != null) {
+            double sigma = getSigma(last);
+            if (mTriggerModel.update(getBoundary(last, sigma), sigma)) {
+                changed |= mScheduler.setConfirming(mTriggerModel.isAmbiguous());
+            }
+        }
+        if (changed) {
+            mListener.onTierChanged(mScheduler.getTier(), previousMaxWaitTime);
+        }
+    }
+
+    /**
+     * Returns the signed distance in meters from the position the alarms are checked against to
+     * the closest alarm boundary, negative inside. The scheduler's lower bound may be down to half
+     * of it, so every alarm is scanned whenever that bound is within the ambiguous range.
+     */
+    private double getBoundary(Fix last, double sigma) {
+        double boundary = mScheduler.getBoundary();
+        if (boundary > mTriggerModel.getAmbiguousRange(sigma)) {
+            // Farther out still, so is the actual boundary.
+            return boundary;
+        }
+        if (mFilter != null && mFilter.hasEstimate()) {
+            mDistanceKernel.setOrigin(mFilter.getLatitude(), mFilter.getLongitude());
+        } else {
+            mDistanceKernel.setOrigin(last.latitude, last.longitude);
+        }
+        return mRegistry.nearestBoundary(mDistanceKernel);
+    }
+
+    /**
+     * Returns the standard deviation in meters of the position the alarms are checked against,
+     * 0 if unknown.
+     */
+    double getSigma(Fix fix) {
+        if (mFilter != null && mFilter.hasEstimate()) {
+            return mFilter.getSigma();
+        }
+        return fix.hasAccuracy() ? fix.accuracy * TriggerModel.ACCURACY_TO_SIGMA : 0;
+    }
+
+    public long getFixCount() {
+        return mFixes;
+    }
+
+    public long getTriggerCount() {
+        return mTriggers;
+    }
+}
@@ -0,0 +1,242 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds every armed alarm and indexes them on a geohash grid.
+ *
+ * Each alarm is stored in every grid cell its trigger area overlaps, so a location fix only
+ * has to look at the single cell it falls into. The number of candidates per fix depends on how
+ * many alarms are near the fix, not on how many alarms are armed in total.
+ */
+public class AlarmRegistry {
+
+    /**
+     * Notified of every change, while the registry lock is held.
+     */
+    public interface Listener {
+        void onAlarmAdded(Alarm alarm);
+
+        void onAlarmRemoved(Alarm alarm);
+
+        void onAlarmsCleared();
+    }
+
+    /**
+     * Grid precision in bits per axis. At 14 bits a cell is about 1.2 km high and at most 2.4 km
+     * wide, so a typical 200 m alarm lands in one to four cells.
+     */
+    static final int GRID_BITS = 14;
+
+    /**
+     * Alarms by id, in the order they were added.
+     */
+    private final Map<Long, Alarm> mAlarms = new LinkedHashMap<>();
+
+    /**
+     * Alarms overlapping each grid cell, keyed by geohash cell id.
+     */
+    private final CellMap<List<Alarm>> mCells = new CellMap<>();
+
+    /**
+     * Id given to the next alarm created by add(String, double, double, float).
+     */
+    private long mNextId = 1;
+
+    /**
+     * Incremented on every change, lets callers detect that cached results are stale.
+     */
+    private int mModCount;
+
+    /**
+     * Array copy of every armed alarm for full scans, rebuilt lazily after a change.
+     */
+    private Alarm[] mSnapshot;
+
+    private final List<Listener> mListeners = new ArrayList<>(2);
+
+    public synchronized void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Creates and arms a new alarm.
+     *
+     * @return the alarm that was added.
+     */
+    public synchronized Alarm add(String name, double latitude, double longitude, float radius) {
+        Alarm alarm = new Alarm(mNextId, name, latitude, longitude, radius);
+        add(alarm);
+        return alarm;
+    }
+
+    /**
+     * Creates and arms a new corridor alarm along a route.
+     *
+     * @param buffer trigger when closer than this many meters to the route.
+     * @return the alarm that was added.
+     */
+    public synchronized CorridorAlarm addCorridor(String name, double[] latitudes,
+                                                  double[] longitudes, float buffer) {
+        CorridorAlarm alarm = new CorridorAlarm(mNextId, name, latitudes, longitudes, buffer);
+        add(alarm);
+        return alarm;
+    }
+
+    /**
+     * Creates and arms a new polygon alarm.
+     *
+     * @param latitudes  the vertices of the outline followed by those of each hole.
+     * @param longitudes the longitudes of the same vertices.
+     * @return the alarm that was added.
+     */
+    public synchronized PolygonAlarm addPolygon(String name, double[][] latitudes,
+                                                double[][] longitudes) {
+        PolygonAlarm alarm = new PolygonAlarm(mNextId, name, latitudes, longitudes);
+        add(alarm);
+        return alarm;
+    }
+
+    /**
+     * Arms an existing alarm, replacing any alarm with the same id.
+     */
+    public synchronized void add(Alarm alarm) {
+        arm(alarm);
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onAlarmAdded(alarm);
+        }
+    }
+
+    /**
+     * Arms alarms loaded from storage without notifying the listeners.
+     */
+    public synchronized void restore(Collection<Alarm> alarms) {
+        for (Alarm alarm : alarms) {
+            arm(alarm);
+        }
+    }
+
+    private void arm(Alarm alarm) {
+        unarm(alarm.id);
+        mAlarms.put(alarm.id, alarm);
+        mModCount++;
+        mSnapshot = null;
+        mNextId = Math.max(mNextId, alarm.id + 1);
+
+        for (long cell : alarm.cover(GRID_BITS)) {
+            List<Alarm> alarms = mCells.get(cell);
+            if (alarms == null) {
+                alarms = new ArrayList<>(2);
+                mCells.put(cell, alarms);
+            }
+            alarms.add(alarm);
+        }
+    }
+
+    /**
+     * Disarms the alarm with the given id.
+     *
+     * @return the removed alarm, or null if no such alarm was armed.
+     */
+    public synchronized Alarm remove(long id) {
+        Alarm alarm = unarm(id);
+        if (alarm != null) {
+            for (int i = 0; i < mListeners.size(); i++) {
+                mListeners.get(i).onAlarmRemoved(alarm);
+            }
+        }
+        return alarm;
+    }
+
+    private Alarm unarm(long id) {
+        Alarm alarm = mAlarms.remove(id);
+        if (alarm == null) {
+            return null;
+        }
+        mModCount++;
+        mSnapshot = null;
+        for (long cell : alarm.cover(GRID_BITS)) {
+            List<Alarm> alarms = mCells.get(cell);
+            if (alarms != null && alarms.remove(alarm) && alarms.isEmpty()) {
+                mCells.remove(cell);
+            }
+        }
+        return alarm;
+    }
+
+    /**
+     * Disarms every alarm.
+     */
+    public synchronized void clear() {
+        mAlarms.clear();
+        mCells.clear();
+        mModCount++;
+        mSnapshot = null;
+        for (int i = 0; i < mListeners.size(); i++) {
+            mListeners.get(i).onAlarmsCleared();
+        }
+    }
+
+    public synchronized Alarm get(long id) {
+        return mAlarms.get(id);
+    }
+
+    public synchronized int size() {
+        return mAlarms.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return mAlarms.isEmpty();
+    }
+
+    synchronized int getModCount() {
+        return mModCount;
+    }
+
+    /**
+     * Returns a snapshot of every armed alarm.
+     */
+    public synchronized List<Alarm> getAll() {
+        return new ArrayList<>(mAlarms.values());
+    }
+
+    /**
+     * Collects the alarms whose trigger area may contain the given point.
+     *
+     * @param candidates cleared and then filled with the candidate alarms.
+     */
+    public synchronized void query(double latitude, double longitude, Collection<Alarm> candidates) {
+        candidates.clear();
+        List<Alarm> alarms = mCells.get(Geohash.encode(latitude, longitude, GRID_BITS));
+        if (alarms != null) {
+            // Indexed copy, addAll() would allocate an array.
+            for (int i = 0; i < alarms.size(); i++) {
+                candidates.add(alarms.get(i));
+            }
+        }
+    }
+
+    /**
+     * Estimates the distance from the kernel's origin to the closest alarm boundary by scanning
+     * every alarm. Meant for occasional use, the result is negative when the origin is already
+     * inside an alarm and positive infinity when no alarm is armed.
+     */
+    synchronized double nearestBoundary(DistanceKernel kernel) {
+        if (mSnapshot == null) {
+            mSnapshot = mAlarms.values().toArray(new Alarm[mAlarms.size()]);
+        }
+        double nearest = Double.POSITIVE_INFINITY;
+        for (Alarm alarm : mSnapshot) {
+            nearest = Math.min(nearest, alarm.estimateBoundary(kernel));
+        }
+        return nearest;
+    }
+}
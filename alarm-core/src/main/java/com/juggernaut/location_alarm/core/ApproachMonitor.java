@@ -0,0 +1,72 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Tells when the device comes close enough to an alarm that its effects should be made ready,
+ * e.g. the alarm sound prepared, so that ringing does not wait for them.
+ *
+ * The device is approaching once it is within the approach distance or the approach time of the
+ * closest alarm boundary, and stops approaching only once both are exceeded by LEAVE_MARGIN, so a
+ * fix jittering around the threshold does not toggle the state.
+ */
+public class ApproachMonitor {
+
+    /**
+     * Distance to an alarm boundary, in meters, within which the service makes the effects ready.
+     */
+    public static final double DEFAULT_DISTANCE = 1000;
+
+    /**
+     * Time to an alarm boundary, in seconds, within which the service makes the effects ready.
+     */
+    public static final double DEFAULT_SECONDS = 120;
+
+    /**
+     * Factor applied to both thresholds before the approach ends.
+     */
+    static final double LEAVE_MARGIN = 1.5;
+
+    private final double mDistance;
+    private final double mSeconds;
+
+    private boolean mApproaching;
+
+    /**
+     * @param distance approaching within this many meters of a boundary.
+     * @param seconds  approaching within this many seconds of a boundary.
+     */
+    public ApproachMonitor(double distance, double seconds) {
+        mDistance = distance;
+        mSeconds = seconds;
+    }
+
+    /**
+     * Updates the state for a new estimate of the closest boundary.
+     *
+     * @return true if the device started or stopped approaching.
+     */
+    public boolean update(double distanceToBoundary, double secondsToBoundary) {
+        boolean approaching;
+        if (mApproaching) {
+            approaching = distanceToBoundary <= mDistance * LEAVE_MARGIN
+                    || secondsToBoundary <= mSeconds * LEAVE_MARGIN;
+        } else {
+            approaching = distanceToBoundary <= mDistance || secondsToBoundary <= mSeconds;
+        }
+        if (approaching == mApproaching) {
+            return false;
+        }
+        mApproaching = approaching;
+        return true;
+    }
+
+    public boolean isApproaching() {
+        return mApproaching;
+    }
+
+    /**
+     * Forgets the state, used when location updates are (re)started.
+     */
+    public void reset() {
+        mApproaching = false;
+    }
+}
@@ -0,0 +1,118 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from geohash cell ids to values.
+ *
+ * Unlike a HashMap keyed by Long, looking up a cell never boxes the key, so the per-fix lookup
+ * allocates nothing.
+ */
+final class CellMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+
+    CellMap() {
+        mKeys = new long[16];
+        mValues = new Object[16];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int mask = mKeys.length - 1;
+        for (int i = index(key, mask); mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                return (V) mValues[i];
+            }
+        }
+        return null;
+    }
+
+    void put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        if (mSize + 1 > mKeys.length * LOAD_FACTOR) {
+            resize(mKeys.length * 2);
+        }
+        int mask = mKeys.length - 1;
+        int i = index(key, mask);
+        while (mValues[i] != null) {
+            if (mKeys[i] == key) {
+                mValues[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int mask = mKeys.length - 1;
+        int i = index(key, mask);
+        while (mValues[i] != null) {
+            if (mKeys[i] == key) {
+                V value = (V) mValues[i];
+                mValues[i] = null;
+                mSize--;
+                // Re-insert the rest of the probe run so later lookups don't stop at the hole.
+                for (int j = (i + 1) & mask; mValues[j] != null; j = (j + 1) & mask) {
+                    long movedKey = mKeys[j];
+                    Object movedValue = mValues[j];
+                    mValues[j] = null;
+                    mSize--;
+                    insert(movedKey, movedValue);
+                }
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    private void insert(long key, Object value) {
+        int mask = mKeys.length - 1;
+        int i = index(key, mask);
+        while (mValues[i] != null) {
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    private void resize(int capacity) {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                insert(keys[i], values[i]);
+            }
+        }
+    }
+
+    private static int index(long key, int mask) {
+        // Mix the bits, neighbouring geohash cells differ mostly in their low bits.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,19 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Formats coordinates for the notification and toasts, free of Android.
+ */
+public final class CoordinateFormat {
+
+    public static final String UNKNOWN_LOCATION = "Unknown location";
+
+    private CoordinateFormat() {
+    }
+
+    /**
+     * Returns the coordinates as "(latitude, longitude)" in full double precision.
+     */
+    public static String format(double latitude, double longitude) {
+        return "(" + latitude + ", " + longitude + ")";
+    }
+}
@@ -0,0 +1,177 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An alarm that triggers anywhere within a buffer distance of a route, e.g. "within 300 m of the
+ * bus line", instead of around a single destination.
+ *
+ * The segments of the route are indexed on a fine geohash grid, each cell listing the segments
+ * that pass within the buffer of it. A fix only measures the few segments listed in its own cell,
+ * so a route of thousands of vertices costs about as much per fix as a single destination. The
+ * radius holds the buffer, latitude and longitude the middle vertex where the marker is shown.
+ */
+public class CorridorAlarm extends Alarm {
+
+    /**
+     * Precision of the segment index in bits per axis. At 17 bits a cell is about 150 m high and
+     * at most 300 m wide.
+     */
+    static final int SEGMENT_BITS = 17;
+
+    /**
+     * Vertices of the route in degrees.
+     */
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+
+    /**
+     * Vertices of the route in radians, for the DistanceKernel.
+     */
+    final double[] vertexLatitudeRadians;
+    final double[] vertexLongitudeRadians;
+
+    /**
+     * Indices of the segments near each cell, segment i running from vertex i to i + 1.
+     */
+    private final CellMap<int[]> mSegments = new CellMap<>();
+
+    /**
+     * Radius of the circle around the marker enclosing the route and its buffer.
+     */
+    private final double mEnclosingRadius;
+
+    /**
+     * @param buffer trigger when closer than this many meters to the route.
+     * @throws IllegalArgumentException if the route has fewer than two vertices.
+     */
+    public CorridorAlarm(long id, String name, double[] latitudes, double[] longitudes, float buffer) {
+        super(id, name, checkRoute(latitudes, longitudes)[latitudes.length / 2],
+                longitudes[longitudes.length / 2], buffer);
+        mLatitudes = latitudes.clone();
+        mLongitudes = longitudes.clone();
+        vertexLatitudeRadians = new double[latitudes.length];
+        vertexLongitudeRadians = new double[latitudes.length];
+        for (int i = 0; i < latitudes.length; i++) {
+            vertexLatitudeRadians[i] = Math.toRadians(latitudes[i]);
+            vertexLongitudeRadians[i] = Math.toRadians(longitudes[i]);
+        }
+        DistanceKernel kernel = new DistanceKernel();
+        kernel.setOrigin(latitude, longitude);
+        double farthest = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            farthest = Math.max(farthest, kernel.estimate(latitudes[i], longitudes[i]));
+        }
+        mEnclosingRadius = farthest * (1 + DistanceKernel.RELATIVE_ERROR) + buffer;
+
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        Set<Long> segmentCells = new HashSet<>();
+        for (int segment = 0; segment < getSegmentCount(); segment++) {
+            segmentCells.clear();
+            coverSegment(segment, SEGMENT_BITS, segmentCells);
+            for (Long cell : segmentCells) {
+                List<Integer> segments = cells.get(cell);
+                if (segments == null) {
+                    segments = new ArrayList<>(2);
+                    cells.put(cell, segments);
+                }
+                segments.add(segment);
+            }
+        }
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            List<Integer> segments = entry.getValue();
+            int[] indices = new int[segments.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = segments.get(i);
+            }
+            mSegments.put(entry.getKey(), indices);
+        }
+    }
+
+    /**
+     * Returns the latitudes after checking that they pair up with the longitudes into a route.
+     */
+    private static double[] checkRoute(double[] latitudes, double[] longitudes) {
+        if (latitudes.length < 2 || latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("A route needs at least two vertices, got "
+                    + latitudes.length + " latitudes and " + longitudes.length + " longitudes");
+        }
+        return latitudes;
+    }
+
+    public int getVertexCount() {
+        return mLatitudes.length;
+    }
+
+    public int getSegmentCount() {
+        return mLatitudes.length - 1;
+    }
+
+    public double getLatitude(int vertex) {
+        return mLatitudes[vertex];
+    }
+
+    public double getLongitude(int vertex) {
+        return mLongitudes[vertex];
+    }
+
+    /**
+     * Returns the indices of the segments that may lie within the buffer of a point, or null if
+     * none does.
+     */
+    int[] getSegmentsNear(double latitude, double longitude) {
+        return mSegments.get(Geohash.encode(latitude, longitude, SEGMENT_BITS));
+    }
+
+    @Override
+    long[] cover(int bits) {
+        Set<Long> cells = new HashSet<>();
+        for (int segment = 0; segment < getSegmentCount(); segment++) {
+            coverSegment(segment, bits, cells);
+        }
+        long[] cover = new long[cells.size()];
+        int i = 0;
+        for (Long cell : cells) {
+            cover[i++] = cell;
+        }
+        return cover;
+    }
+
+    @Override
+    double getEnclosingRadius() {
+        return mEnclosingRadius;
+    }
+
+    @Override
+    boolean isReached(DistanceKernel kernel, double margin) {
+        return kernel.isWithin(this, margin);
+    }
+
+    /**
+     * Scans every segment, like the nearestBoundary() scan it serves.
+     */
+    @Override
+    double estimateBoundary(DistanceKernel kernel) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int segment = 0; segment < getSegmentCount(); segment++) {
+            nearest = Math.min(nearest, kernel.estimateToSegment(this, segment));
+        }
+        return nearest - radius;
+    }
+
+    private void coverSegment(int segment, int bits, Set<Long> cells) {
+        GridCover.segment(mLatitudes[segment], mLongitudes[segment], mLatitudes[segment + 1],
+                mLongitudes[segment + 1], radius, bits, cells);
+    }
+
+    @Override
+    public String toString() {
+        return "CorridorAlarm{" + id + ", " + name + ", " + mLatitudes.length + " vertices, "
+                + radius + " m}";
+    }
+}
@@ -0,0 +1,64 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a trace from comma separated lines:
+ *
+ * <pre>
+ * time,latitude,longitude[,accuracy[,speed[,bearing]]]
+ * </pre>
+ *
+ * The time is in milliseconds since the epoch. Empty or missing optional columns are unknown.
+ * Empty lines, lines starting with '#' and a header line starting with "time" are skipped.
+ */
+public class CsvTraceReader implements TraceReader {
+
+    private final BufferedReader mReader;
+
+    private int mLineNumber;
+
+    public CsvTraceReader(Reader reader) {
+        mReader = reader instanceof BufferedReader ? (BufferedReader) reader
+                : new BufferedReader(reader);
+    }
+
+    @Override
+    public Fix next() throws IOException {
+        String line;
+        while ((line = mReader.readLine()) != null) {
+            mLineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#' || line.startsWith("time")) {
+                continue;
+            }
+            String[] columns = line.split(",", -1);
+            if (columns.length < 3) {
+                throw new IOException("Line " + mLineNumber + ": expected time,latitude,longitude");
+            }
+            try {
+                return new Fix(Long.parseLong(columns[0].trim()),
+                        Double.parseDouble(columns[1].trim()),
+                        Double.parseDouble(columns[2].trim()),
+                        optional(columns, 3), optional(columns, 4), optional(columns, 5));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + mLineNumber + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    private static float optional(String[] columns, int index) {
+        if (index >= columns.length || columns[index].trim().isEmpty()) {
+            return -1;
+        }
+        return Float.parseFloat(columns[index].trim());
+    }
+}
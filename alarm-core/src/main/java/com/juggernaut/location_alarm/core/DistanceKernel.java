@@ -0,0 +1,347 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Decides whether a location fix lies inside an alarm's trigger circle without allocating.
+ *
+ * The kernel first uses an equirectangular estimate on a sphere, which costs one square root. Up
+ * to MAX_FAST_RADIUS and MAX_FAST_LATITUDE its error against the WGS84 ellipsoid is below
+ * RELATIVE_ERROR of the distance, so only fixes whose estimate falls inside that band around the
+ * radius are measured exactly with Vincenty's inverse formula (the same method
+ * Location.distanceBetween uses).
+ *
+ * One instance is meant to be reused for every fix: call setOrigin() once per fix, then
+ * isWithin() or distanceTo() for each candidate alarm. Corridor alarms are measured the same way
+ * against the segments of their route near the fix, polygon alarms test the fix against their
+ * own grid.
+ */
+public final class DistanceKernel {
+
+    /**
+     * Mean earth radius in meters used by the estimate.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * Bound on the relative error of estimate() within the fast path limits. The sphere differs
+     * from the ellipsoid by at most about 0.6 %, the equirectangular projection adds far less at
+     * these distances.
+     */
+    static final double RELATIVE_ERROR = 0.01;
+
+    /**
+     * Absolute slack in meters added to the uncertainty band, covers rounding near zero.
+     */
+    private static final double ABSOLUTE_ERROR = 0.5;
+
+    /**
+     * Largest radius in meters the estimate is trusted for.
+     */
+    static final float MAX_FAST_RADIUS = 50000;
+
+    /**
+     * Largest absolute latitude in degrees the estimate is trusted for.
+     */
+    static final double MAX_FAST_LATITUDE = 80.0;
+
+    /**
+     * WGS84 ellipsoid used by vincenty().
+     */
+    private static final double WGS84_A = 6378137.0;
+    private static final double WGS84_B = 6356752.3142;
+    private static final double WGS84_F = (WGS84_A - WGS84_B) / WGS84_A;
+
+    /**
+     * Vincenty iteration limits, matching Location.distanceBetween.
+     */
+    private static final int MAX_ITERATIONS = 20;
+    private static final double TOLERANCE = 1.0e-12;
+
+    /**
+     * The current fix in degrees and radians.
+     */
+    private double mLatitude;
+    private double mLongitude;
+    private double mLatitudeRadians;
+    private double mLongitudeRadians;
+    private double mCosLatitude;
+
+    /**
+     * How many decisions were taken on the estimate alone and how many needed Vincenty.
+     */
+    private long mFastDecisions;
+    private long mExactDecisions;
+
+    /**
+     * Sets the fix every following call measures from.
+     */
+    public void setOrigin(double latitude, double longitude) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mLatitudeRadians = Math.toRadians(latitude);
+        mLongitudeRadians = Math.toRadians(longitude);
+        mCosLatitude = Math.cos(mLatitudeRadians);
+    }
+
+    /**
+     * Returns true if the origin lies strictly inside the alarm's trigger radius.
+     */
+    public boolean isWithin(Alarm alarm) {
+        return isWithin(alarm, 0);
+    }
+
+    /**
+     * Returns true if the origin lies strictly inside the alarm's trigger radius by more than the
+     * given margin in meters.
+     */
+    public boolean isWithin(Alarm alarm, double margin) {
+        double radius = alarm.radius - margin;
+        if (radius <= 0) {
+            mFastDecisions++;
+            return false;
+        }
+        if (radius <= MAX_FAST_RADIUS
+                && Math.abs(mLatitude) <= MAX_FAST_LATITUDE
+                && Math.abs(alarm.latitude) <= MAX_FAST_LATITUDE) {
+            double estimate = estimate(alarm);
+            double band = radius * RELATIVE_ERROR + ABSOLUTE_ERROR;
+            if (estimate < radius - band) {
+                mFastDecisions++;
+                return true;
+            }
+            if (estimate > radius + band) {
+                mFastDecisions++;
+                return false;
+            }
+        }
+        mExactDecisions++;
+        return distanceTo(alarm) < radius;
+    }
+
+    /**
+     * Returns true if the origin lies strictly closer to the corridor's route than its buffer.
+     *
+     * Only the segments indexed in the origin's cell are measured, first with an equirectangular
+     * estimate on the plane tangent at the origin. Segments whose estimate falls inside the
+     * uncertainty band are then measured exactly, with Vincenty, to the point the estimate found
+     * closest.
+     */
+    public boolean isWithin(CorridorAlarm corridor) {
+        return isWithin(corridor, 0);
+    }
+
+    /**
+     * Returns true if the origin lies strictly closer to the corridor's route than its buffer
+     * less the given margin in meters.
+     */
+    public boolean isWithin(CorridorAlarm corridor, double margin) {
+        int[] segments = corridor.getSegmentsNear(mLatitude, mLongitude);
+        double buffer = corridor.radius - margin;
+        if (segments == null || buffer <= 0) {
+            mFastDecisions++;
+            return false;
+        }
+        boolean fast = buffer <= MAX_FAST_RADIUS && Math.abs(mLatitude) <= MAX_FAST_LATITUDE;
+        double band = buffer * RELATIVE_ERROR + ABSOLUTE_ERROR;
+        boolean uncertain = false;
+        for (int segment : segments) {
+            double estimate = estimateToSegment(corridor, segment);
+            if (fast && estimate < buffer - band) {
+                mFastDecisions++;
+                return true;
+            }
+            if (!fast || estimate <= buffer + band) {
+                uncertain = true;
+            }
+        }
+        if (!uncertain) {
+            mFastDecisions++;
+            return false;
+        }
+        mExactDecisions++;
+        for (int segment : segments) {
+            if ((!fast || estimateToSegment(corridor, segment) <= buffer + band)
+                    && distanceToSegment(corridor, segment) < buffer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the origin lies inside the polygon. The test is exact in latitude and
+     * longitude, so it always counts as a fast decision.
+     */
+    public boolean isWithin(PolygonAlarm polygon) {
+        mFastDecisions++;
+        return polygon.contains(mLatitude, mLongitude);
+    }
+
+    /**
+     * Returns the equirectangular distance estimate in meters from the origin to a segment of a
+     * corridor's route.
+     */
+    double estimateToSegment(CorridorAlarm corridor, int segment) {
+        return estimateToSegmentRadians(corridor.vertexLatitudeRadians[segment],
+                corridor.vertexLongitudeRadians[segment], corridor.vertexLatitudeRadians[segment + 1],
+                corridor.vertexLongitudeRadians[segment + 1]);
+    }
+
+    /**
+     * Returns the equirectangular distance estimate in meters from the origin to a segment given
+     * by its ends in degrees.
+     */
+    double estimateToSegment(double latitude1, double longitude1, double latitude2,
+                             double longitude2) {
+        return estimateToSegmentRadians(Math.toRadians(latitude1), Math.toRadians(longitude1),
+                Math.toRadians(latitude2), Math.toRadians(longitude2));
+    }
+
+    private double estimateToSegmentRadians(double latitude1, double longitude1, double latitude2,
+                                            double longitude2) {
+        double x1 = wrap(longitude1 - mLongitudeRadians) * mCosLatitude;
+        double y1 = latitude1 - mLatitudeRadians;
+        double x2 = wrap(longitude2 - mLongitudeRadians) * mCosLatitude;
+        double y2 = latitude2 - mLatitudeRadians;
+        double t = closestPosition(x1, y1, x2, y2);
+        double x = x1 + t * (x2 - x1);
+        double y = y1 + t * (y2 - y1);
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Returns the exact ellipsoidal distance in meters from the origin to the point of a segment
+     * the estimate finds closest.
+     */
+    double distanceToSegment(CorridorAlarm corridor, int segment) {
+        double x1 = wrap(corridor.vertexLongitudeRadians[segment] - mLongitudeRadians) * mCosLatitude;
+        double y1 = corridor.vertexLatitudeRadians[segment] - mLatitudeRadians;
+        double x2 = wrap(corridor.vertexLongitudeRadians[segment + 1] - mLongitudeRadians) * mCosLatitude;
+        double y2 = corridor.vertexLatitudeRadians[segment + 1] - mLatitudeRadians;
+        double t = closestPosition(x1, y1, x2, y2);
+        double latitude1 = corridor.getLatitude(segment);
+        double longitude1 = corridor.getLongitude(segment);
+        double dLng = corridor.getLongitude(segment + 1) - longitude1;
+        if (dLng > 180.0) {
+            dLng -= 360.0;
+        } else if (dLng < -180.0) {
+            dLng += 360.0;
+        }
+        return vincenty(mLatitude, mLongitude,
+                latitude1 + t * (corridor.getLatitude(segment + 1) - latitude1), longitude1 + t * dLng);
+    }
+
+    /**
+     * Returns the position between 0 and 1 of the point of a segment closest to the plane's
+     * origin, given its ends in coordinates relative to the origin.
+     */
+    private static double closestPosition(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(1, -(x1 * dx + y1 * dy) / lengthSquared));
+    }
+
+    /**
+     * Wraps a longitude difference in radians into [-PI, PI].
+     */
+    private static double wrap(double dLng) {
+        if (dLng > Math.PI) {
+            return dLng - 2 * Math.PI;
+        }
+        if (dLng < -Math.PI) {
+            return dLng + 2 * Math.PI;
+        }
+        return dLng;
+    }
+
+    /**
+     * Returns the equirectangular distance estimate in meters from the origin to the alarm.
+     */
+    public double estimate(Alarm alarm) {
+        return estimate(alarm.latitudeRadians, alarm.longitudeRadians, alarm.cosLatitude);
+    }
+
+    /**
+     * Returns the equirectangular distance estimate in meters from the origin to a point.
+     */
+    public double estimate(double latitude, double longitude) {
+        double latitudeRadians = Math.toRadians(latitude);
+        return estimate(latitudeRadians, Math.toRadians(longitude), Math.cos(latitudeRadians));
+    }
+
+    private double estimate(double latitudeRadians, double longitudeRadians, double cosLatitude) {
+        double dLat = latitudeRadians - mLatitudeRadians;
+        double dLng = wrap(longitudeRadians - mLongitudeRadians);
+        double x = dLng * (mCosLatitude + cosLatitude) * 0.5;
+        return EARTH_RADIUS * Math.sqrt(dLat * dLat + x * x);
+    }
+
+    /**
+     * Returns the exact ellipsoidal distance in meters from the origin to the alarm.
+     */
+    public double distanceTo(Alarm alarm) {
+        return vincenty(mLatitude, mLongitude, alarm.latitude, alarm.longitude);
+    }
+
+    public long getFastDecisions() {
+        return mFastDecisions;
+    }
+
+    public long getExactDecisions() {
+        return mExactDecisions;
+    }
+
+    /**
+     * Computes the distance in meters between two points on the WGS84 ellipsoid using Vincenty's
+     * inverse formula.
+     */
+    public static double vincenty(double lat1, double lon1, double lat2, double lon2) {
+        double l = Math.toRadians(lon2 - lon1);
+        double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1);
+        double cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double previousLambda;
+        double sinSigma;
+        double cosSigma;
+        double sigma;
+        double cos2Alpha;
+        double cos2SigmaM;
+        int iteration = 0;
+        do {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0) {
+                // Coincident points.
+                return 0;
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cos2Alpha = 1 - sinAlpha * sinAlpha;
+            // Both points on the equator when cos2Alpha is zero.
+            cos2SigmaM = cos2Alpha == 0 ? 0 : cosSigma - 2 * sinU1 * sinU2 / cos2Alpha;
+            double c = WGS84_F / 16 * cos2Alpha * (4 + WGS84_F * (4 - 3 * cos2Alpha));
+            previousLambda = lambda;
+            lambda = l + (1 - c) * WGS84_F * sinAlpha * (sigma + c * sinSigma
+                    * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+        } while (Math.abs(lambda - previousLambda) > TOLERANCE && ++iteration < MAX_ITERATIONS);
+
+        double uSquared = cos2Alpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+        double a = 1 + uSquared / 16384 * (4096 + uSquared * (-768 + uSquared * (320 - 175 * uSquared)));
+        double b = uSquared / 1024 * (256 + uSquared * (-128 + uSquared * (74 - 47 * uSquared)));
+        double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                - b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return WGS84_B * a * (sigma - deltaSigma);
+    }
+}
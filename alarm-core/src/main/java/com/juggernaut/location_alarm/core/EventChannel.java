@@ -0,0 +1,203 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typed in-process publish/subscribe channel.
+ *
+ * Each subscriber receives events on its own executor. A coalescing subscriber only ever sees the
+ * latest event: events published while a delivery is pending replace each other, so a slow
+ * consumer never builds up a backlog. A queued subscriber sees every event in order.
+ *
+ * Publishing hands the event reference to each subscriber without allocating, except for the
+ * queue node of queued subscribers.
+ */
+public class EventChannel<T> {
+
+    public interface Subscriber<T> {
+        void onEvent(T event);
+    }
+
+    /**
+     * Runs deliveries on the publishing thread.
+     */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final String mName;
+
+    /**
+     * Replaced as a whole on every change so publish() can iterate without locking.
+     */
+    private volatile Subscription<T>[] mSubscriptions;
+
+    public EventChannel(String name) {
+        mName = name;
+        mSubscriptions = newArray(0);
+    }
+
+    /**
+     * Registers a subscriber.
+     *
+     * @param executor runs the deliveries, e.g. the main looper or DIRECT.
+     * @param coalesce true to only deliver the latest event, false to deliver every event.
+     * @return the subscription, cancel it to stop deliveries.
+     */
+    public Subscription<T> subscribe(Subscriber<T> subscriber, Executor executor, boolean coalesce) {
+        Subscription<T> subscription = new Subscription<>(this, subscriber, executor, coalesce);
+        synchronized (this) {
+            Subscription<T>[] current = mSubscriptions;
+            Subscription<T>[] updated = newArray(current.length + 1);
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscription;
+            mSubscriptions = updated;
+        }
+        return subscription;
+    }
+
+    /**
+     * Hands the event to every subscriber.
+     */
+    public void publish(T event) {
+        if (event == null) {
+            throw new NullPointerException(mName + ": null event");
+        }
+        Subscription<T>[] subscriptions = mSubscriptions;
+        for (int i = 0; i < subscriptions.length; i++) {
+            subscriptions[i].offer(event);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return mSubscriptions.length;
+    }
+
+    private synchronized void remove(Subscription<T> subscription) {
+        Subscription<T>[] current = mSubscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscription) {
+                Subscription<T>[] updated = newArray(current.length - 1);
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                mSubscriptions = updated;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+
+    /**
+     * Returns an empty array of subscriptions. A generic array cannot be created directly, the
+     * cast is safe as the array never leaves this channel.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Subscription<T>[] newArray(int length) {
+        return (Subscription<T>[]) new Subscription<?>[length];
+    }
+
+    /**
+     * A registered subscriber with its pending events.
+     */
+    public static final class Subscription<T> implements Runnable {
+
+        private final EventChannel<T> mChannel;
+
+        private final Subscriber<T> mSubscriber;
+
+        private final Executor mExecutor;
+
+        /**
+         * Latest undelivered event of a coalescing subscription.
+         */
+        private final AtomicReference<T> mLatest;
+
+        /**
+         * Undelivered events of a queued subscription.
+         */
+        private final ConcurrentLinkedQueue<T> mQueue;
+
+        /**
+         * True while a drain is submitted to the executor and has not started taking events.
+         */
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+        private volatile boolean mCancelled;
+
+        private int mDelivered;
+
+        private Subscription(EventChannel<T> channel, Subscriber<T> subscriber, Executor executor,
+                             boolean coalesce) {
+            mChannel = channel;
+            mSubscriber = subscriber;
+            mExecutor = executor;
+            mLatest = coalesce ? new AtomicReference<T>() : null;
+            mQueue = coalesce ? null : new ConcurrentLinkedQueue<T>();
+        }
+
+        /**
+         * Stops deliveries, including the ones already pending.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mChannel.remove(this);
+            if (mQueue != null) {
+                mQueue.clear();
+            } else {
+                mLatest.set(null);
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Returns the number of events handed to the subscriber.
+         */
+        public int getDeliveredCount() {
+            return mDelivered;
+        }
+
+        private void offer(T event) {
+            if (mCancelled) {
+                return;
+            }
+            if (mQueue != null) {
+                mQueue.offer(event);
+            } else {
+                mLatest.set(event);
+            }
+            if (mScheduled.compareAndSet(false, true)) {
+                mExecutor.execute(this);
+            }
+        }
+
+        /**
+         * Drains the pending events on the executor.
+         */
+        @Override
+        public void run() {
+            mScheduled.set(false);
+            T event;
+            while (!mCancelled && (event = next()) != null) {
+                mDelivered++;
+                mSubscriber.onEvent(event);
+            }
+        }
+
+        private T next() {
+            return mQueue != null ? mQueue.poll() : mLatest.getAndSet(null);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * A location fix, independent of the platform Location class so the alarm pipeline can run on a
+ * plain JVM.
+ */
+public final class Fix {
+
+    /**
+     * Fix time in milliseconds since the epoch.
+     */
+    public final long time;
+
+    public final double latitude;
+    public final double longitude;
+
+    /**
+     * Estimated horizontal accuracy in meters, negative if unknown.
+     */
+    public final float accuracy;
+
+    /**
+     * Speed over ground in meters per second, negative if unknown.
+     */
+    public final float speed;
+
+    /**
+     * Bearing in degrees, negative if unknown.
+     */
+    public final float bearing;
+
+    public Fix(long time, double latitude, double longitude, float accuracy, float speed, float bearing) {
+        this.time = time;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        this.bearing = bearing;
+    }
+
+    public boolean hasAccuracy() {
+        return accuracy >= 0;
+    }
+
+    public boolean hasSpeed() {
+        return speed >= 0;
+    }
+
+    public boolean hasBearing() {
+        return bearing >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Fix{" + time + " (" + latitude + ", " + longitude + ") accuracy=" + accuracy
+                + " speed=" + speed + " bearing=" + bearing + "}";
+    }
+}
@@ -0,0 +1,261 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Conditions the fixes of a trip before the alarms are checked against them, so a single
+ * multipath outlier near tall buildings neither rings an alarm early nor jumps past one.
+ *
+ * A constant velocity Kalman filter tracks the position and the velocity north and east, in
+ * meters around the current estimate. The measurement error per axis is the standard deviation
+ * implied by the fix accuracy, a radius of 68 % confidence, see TriggerModel.ACCURACY_TO_SIGMA.
+ * The noise is the same on both axes, so they share one covariance. A fix is rejected when its accuracy is
+ * worse than MAX_ACCURACY, or when reaching it from the estimate, even at the far edge of both
+ * error circles, takes more than MAX_SPEED. After MAX_REJECTIONS fixes rejected in a row the
+ * estimate is assumed lost, e.g. after a tunnel, and the filter starts over from the next fix.
+ *
+ * The state is a handful of fields whatever the length of the trip and nothing is allocated per
+ * fix. Not thread-safe, the pipeline drives it.
+ */
+public class FixFilter {
+
+    /**
+     * Fixes less accurate than this, in meters, are rejected.
+     */
+    public static final float MAX_ACCURACY = 500;
+
+    /**
+     * Fastest plausible speed in m/s (about 320 km/h, a high speed train). Also the speed
+     * LocationRequestScheduler assumes when none is known.
+     */
+    public static final float MAX_SPEED = 90;
+
+    /**
+     * Consecutive rejections after which the filter starts over.
+     */
+    static final int MAX_REJECTIONS = 3;
+
+    /**
+     * Standard deviation of the acceleration in m/s^2, the process noise of the model.
+     */
+    static final double ACCELERATION_NOISE = 1.5;
+
+    /**
+     * Standard deviations of the velocity added to the estimated speed for an upper bound of it.
+     */
+    static final double SPEED_BOUND_SIGMAS = 2;
+
+    /**
+     * Accuracy assumed for fixes that report none, in meters.
+     */
+    static final float DEFAULT_ACCURACY = 30;
+
+    /**
+     * Variance of the initial velocity per axis, (m/s)^2, without and with a measured speed.
+     */
+    private static final double UNKNOWN_VELOCITY_VARIANCE = 400;
+    private static final double MEASURED_VELOCITY_VARIANCE = 4;
+
+    /**
+     * Shortest interval used to compute an implied speed, two fixes with the same time are not
+     * infinitely fast.
+     */
+    private static final double MIN_INTERVAL = 1;
+
+    private boolean mHasEstimate;
+
+    /**
+     * Estimated position in degrees and velocity in m/s.
+     */
+    private double mLatitude;
+    private double mLongitude;
+    private double mVelocityNorth;
+    private double mVelocityEast;
+
+    /**
+     * Covariance of position (m^2) and velocity ((m/s)^2) along either axis.
+     */
+    private double mPositionVariance;
+    private double mCovariance;
+    private double mVelocityVariance;
+
+    /**
+     * Time of the last accepted fix in milliseconds.
+     */
+    private long mTime;
+
+    private int mRejections;
+
+    private long mAccepted;
+    private long mRejected;
+
+    /**
+     * Passes a fix through the filter.
+     *
+     * @return false if the fix was rejected as an outlier, the estimate is unchanged then.
+     */
+    public boolean update(Fix fix) {
+        float accuracy = fix.hasAccuracy() ? fix.accuracy : DEFAULT_ACCURACY;
+        if (accuracy > MAX_ACCURACY) {
+            mRejected++;
+            return false;
+        }
+        if (!mHasEstimate) {
+            start(fix, accuracy);
+            return true;
+        }
+
+        // Offset of the fix from the estimate in meters.
+        double cosLatitude = Math.cos(Math.toRadians(mLatitude));
+        double north = Math.toRadians(fix.latitude - mLatitude) * DistanceKernel.EARTH_RADIUS;
+        double east = Math.toRadians(wrap(fix.longitude - mLongitude)) * DistanceKernel.EARTH_RADIUS
+                * cosLatitude;
+        double dt = (fix.time - mTime) / 1000.0;
+
+        // Both radii of 68 % confidence.
+        double gap = Math.hypot(north, east) - accuracy - getAccuracy();
+        if (dt < 0 || gap > MAX_SPEED * Math.max(dt, MIN_INTERVAL)) {
+            mRejected++;
+            if (++mRejections <= MAX_REJECTIONS) {
+                return false;
+            }
+            start(fix, accuracy);
+            return true;
+        }
+
+        // Predict, constant velocity with a white noise acceleration.
+        double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        double dt2 = dt * dt;
+        mPositionVariance += dt * (2 * mCovariance + dt * mVelocityVariance) + q * dt2 * dt / 3;
+        mCovariance += dt * mVelocityVariance + q * dt2 / 2;
+        mVelocityVariance += q * dt;
+        double predictedNorth = mVelocityNorth * dt;
+        double predictedEast = mVelocityEast * dt;
+
+        // Correct with the measured position.
+        double s = mPositionVariance + measurementVariance(accuracy);
+        double positionGain = mPositionVariance / s;
+        double velocityGain = mCovariance / s;
+        double innovationNorth = north - predictedNorth;
+        double innovationEast = east - predictedEast;
+        north = predictedNorth + positionGain * innovationNorth;
+        east = predictedEast + positionGain * innovationEast;
+        mVelocityNorth += velocityGain * innovationNorth;
+        mVelocityEast += velocityGain * innovationEast;
+        mVelocityVariance -= velocityGain * mCovariance;
+        mCovariance *= 1 - positionGain;
+        mPositionVariance *= 1 - positionGain;
+
+        // Move the origin of the local frame to the new estimate.
+        mLatitude += Math.toDegrees(north / DistanceKernel.EARTH_RADIUS);
+        mLongitude = wrap(mLongitude
+                + Math.toDegrees(east / (DistanceKernel.EARTH_RADIUS * cosLatitude)));
+        mTime = fix.time;
+        mRejections = 0;
+        mAccepted++;
+        return true;
+    }
+
+    /**
+     * Returns true once a fix has been accepted.
+     */
+    public boolean hasEstimate() {
+        return mHasEstimate;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Returns the standard deviation of the estimated position along either axis, in meters.
+     */
+    public float getSigma() {
+        return (float) Math.sqrt(mPositionVariance);
+    }
+
+    /**
+     * Returns the accuracy of the estimated position in meters, in the same unit as the accuracy
+     * of a fix: the radius of 68 % confidence.
+     */
+    public float getAccuracy() {
+        return (float) (Math.sqrt(mPositionVariance) / TriggerModel.ACCURACY_TO_SIGMA);
+    }
+
+    /**
+     * Returns the estimated speed in m/s.
+     */
+    public float getSpeed() {
+        return (float) Math.hypot(mVelocityNorth, mVelocityEast);
+    }
+
+    /**
+     * Returns an upper bound of the speed in m/s: the estimate plus SPEED_BOUND_SIGMAS of its
+     * error, at most MAX_SPEED. Close to the estimate on a steady track, high while the velocity
+     * is still unknown.
+     */
+    public float getSpeedBound() {
+        return (float) Math.min(getSpeed() + SPEED_BOUND_SIGMAS * Math.sqrt(mVelocityVariance),
+                MAX_SPEED);
+    }
+
+    public long getAcceptedCount() {
+        return mAccepted;
+    }
+
+    public long getRejectedCount() {
+        return mRejected;
+    }
+
+    /**
+     * Forgets the estimate, used when a new trip starts.
+     */
+    public void reset() {
+        mHasEstimate = false;
+        mRejections = 0;
+    }
+
+    private void start(Fix fix, float accuracy) {
+        mHasEstimate = true;
+        mLatitude = fix.latitude;
+        mLongitude = fix.longitude;
+        if (fix.hasSpeed() && fix.hasBearing()) {
+            double bearing = Math.toRadians(fix.bearing);
+            mVelocityNorth = fix.speed * Math.cos(bearing);
+            mVelocityEast = fix.speed * Math.sin(bearing);
+            mVelocityVariance = MEASURED_VELOCITY_VARIANCE;
+        } else {
+            mVelocityNorth = 0;
+            mVelocityEast = 0;
+            mVelocityVariance = UNKNOWN_VELOCITY_VARIANCE;
+        }
+        mPositionVariance = measurementVariance(accuracy);
+        mCovariance = 0;
+        mTime = fix.time;
+        mRejections = 0;
+        mAccepted++;
+    }
+
+    /**
+     * Returns the variance per axis in m^2 of a fix of the given accuracy.
+     */
+    private static double measurementVariance(float accuracy) {
+        double sigma = accuracy * TriggerModel.ACCURACY_TO_SIGMA;
+        return sigma * sigma;
+    }
+
+    /**
+     * Wraps a longitude or a difference of longitudes into [-180, 180).
+     */
+    private static double wrap(double longitude) {
+        if (longitude >= 180) {
+            return longitude - 360;
+        }
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+}
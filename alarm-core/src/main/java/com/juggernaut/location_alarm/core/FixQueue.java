@@ -0,0 +1,123 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Bounded first-in first-out queue of location fixes waiting to be processed.
+ *
+ * When the queue is full the oldest unpinned fix is dropped as stale to make room. Pinned fixes,
+ * the ones that may trigger an alarm, are never dropped: if every queued fix is pinned, a new
+ * pinned fix grows the queue past its capacity and a new unpinned fix is dropped instead.
+ *
+ * Not thread-safe, producers and the consumer share the worker looper.
+ */
+public final class FixQueue<T> {
+
+    private final int mCapacity;
+
+    private Object[] mFixes;
+    private boolean[] mPinned;
+
+    private int mSize;
+
+    private int mDropped;
+
+    /**
+     * @param capacity number of fixes kept before stale ones are dropped.
+     */
+    public FixQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        mCapacity = capacity;
+        mFixes = new Object[capacity];
+        mPinned = new boolean[capacity];
+    }
+
+    /**
+     * Appends a fix, dropping a stale one if the queue is full.
+     *
+     * @param pinned true if the fix must not be dropped.
+     * @return false if the given fix itself was dropped.
+     */
+    public boolean offer(T fix, boolean pinned) {
+        if (mSize >= mCapacity) {
+            int stale = oldestUnpinned();
+            if (stale >= 0) {
+                removeAt(stale);
+                mDropped++;
+            } else if (!pinned) {
+                mDropped++;
+                return false;
+            } else if (mSize == mFixes.length) {
+                grow();
+            }
+        }
+        mFixes[mSize] = fix;
+        mPinned[mSize] = pinned;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the oldest fix, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (mSize == 0) {
+            return null;
+        }
+        T fix = (T) mFixes[0];
+        removeAt(0);
+        return fix;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of fixes dropped since the queue was created.
+     */
+    public int getDroppedCount() {
+        return mDropped;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mFixes[i] = null;
+        }
+        mSize = 0;
+    }
+
+    private int oldestUnpinned() {
+        for (int i = 0; i < mSize; i++) {
+            if (!mPinned[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Shifts the following fixes down, the queue is small enough for a copy to be cheap.
+     */
+    private void removeAt(int index) {
+        int moved = mSize - index - 1;
+        System.arraycopy(mFixes, index + 1, mFixes, index, moved);
+        System.arraycopy(mPinned, index + 1, mPinned, index, moved);
+        mSize--;
+        mFixes[mSize] = null;
+    }
+
+    private void grow() {
+        Object[] fixes = new Object[mFixes.length * 2];
+        boolean[] pinned = new boolean[mFixes.length * 2];
+        System.arraycopy(mFixes, 0, fixes, 0, mSize);
+        System.arraycopy(mPinned, 0, pinned, 0, mSize);
+        mFixes = fixes;
+        mPinned = pinned;
+    }
+}
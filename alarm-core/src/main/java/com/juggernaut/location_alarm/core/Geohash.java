@@ -0,0 +1,104 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Geohash style quantization of coordinates into grid cells.
+ *
+ * At a precision of n bits per axis the world is split into 2^n latitude rows and 2^n longitude
+ * columns. A cell is identified by interleaving the bits of its column and row index (longitude
+ * first), which is exactly the integer form of a geohash, so nearby cells share long prefixes.
+ */
+final class Geohash {
+
+    /**
+     * Alphabet of the textual geohash representation.
+     */
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    /**
+     * Returns the row of the cell containing the given latitude.
+     */
+    static int latitudeIndex(double latitude, int bits) {
+        int cells = 1 << bits;
+        int index = (int) ((latitude + 90.0) / 180.0 * cells);
+        // The north pole belongs to the last row.
+        return index < 0 ? 0 : index >= cells ? cells - 1 : index;
+    }
+
+    /**
+     * Returns the column of the cell containing the given longitude, wrapping around the
+     * antimeridian.
+     */
+    static int longitudeIndex(double longitude, int bits) {
+        int cells = 1 << bits;
+        int index = (int) Math.floor((longitude + 180.0) / 360.0 * cells);
+        return wrapLongitudeIndex(index, bits);
+    }
+
+    /**
+     * Wraps a column index that went past the antimeridian back into range.
+     */
+    static int wrapLongitudeIndex(int index, int bits) {
+        return index & ((1 << bits) - 1);
+    }
+
+    /**
+     * Interleaves a column and row index into a geohash cell id.
+     */
+    static long cell(int latitudeIndex, int longitudeIndex, int bits) {
+        long hash = 0;
+        for (int i = bits - 1; i >= 0; i--) {
+            hash = (hash << 1) | ((longitudeIndex >>> i) & 1);
+            hash = (hash << 1) | ((latitudeIndex >>> i) & 1);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the geohash cell id containing the given coordinates.
+     */
+    static long encode(double latitude, double longitude, int bits) {
+        return cell(latitudeIndex(latitude, bits), longitudeIndex(longitude, bits), bits);
+    }
+
+    /**
+     * Returns the textual geohash of the given coordinates, e.g. "tdr1wxy" for a cell of roughly
+     * 150 m x 150 m at 7 characters.
+     */
+    static String toBase32(double latitude, double longitude, int characters) {
+        double minLat = -90.0;
+        double maxLat = 90.0;
+        double minLng = -180.0;
+        double maxLng = 180.0;
+        boolean longitudeBit = true;
+        char[] hash = new char[characters];
+        for (int c = 0; c < characters; c++) {
+            int value = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                value <<= 1;
+                if (longitudeBit) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (longitude >= mid) {
+                        value |= 1;
+                        minLng = mid;
+                    } else {
+                        maxLng = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (latitude >= mid) {
+                        value |= 1;
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                longitudeBit = !longitudeBit;
+            }
+            hash[c] = BASE32[value];
+        }
+        return new String(hash);
+    }
+}
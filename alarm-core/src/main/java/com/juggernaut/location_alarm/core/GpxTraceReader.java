@@ -0,0 +1,175 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the track points of a GPX file as a trace, streaming without building a document.
+ *
+ * Each trkpt needs a time. Speed and course are read from the GPX 1.0 elements, the accuracy from
+ * the "accuracy 4.0 m" comment written by TripReader. This is a scanner for track logs, not a full
+ * XML parser: comments must not contain '>' and CDATA sections are not supported.
+ */
+public class GpxTraceReader implements TraceReader {
+
+    private final Reader mReader;
+
+    /**
+     * Text read before the last tag.
+     */
+    private final StringBuilder mText = new StringBuilder();
+
+    private final StringBuilder mTag = new StringBuilder();
+
+    public GpxTraceReader(Reader reader) {
+        mReader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public Fix next() throws IOException {
+        String tag;
+        while ((tag = nextTag()) != null) {
+            if (!isStartTag(tag, "trkpt")) {
+                continue;
+            }
+            double latitude = Double.parseDouble(attribute(tag, "lat"));
+            double longitude = Double.parseDouble(attribute(tag, "lon"));
+            long time = Long.MIN_VALUE;
+            float accuracy = -1;
+            float speed = -1;
+            float bearing = -1;
+            if (!tag.endsWith("/")) {
+                while ((tag = nextTag()) != null && !isEndTag(tag, "trkpt")) {
+                    if (isEndTag(tag, "time")) {
+                        time = parseTime(mText.toString().trim());
+                    } else if (isEndTag(tag, "speed")) {
+                        speed = Float.parseFloat(mText.toString().trim());
+                    } else if (isEndTag(tag, "course")) {
+                        bearing = Float.parseFloat(mText.toString().trim());
+                    } else if (isEndTag(tag, "cmt")) {
+                        accuracy = parseAccuracy(mText.toString().trim());
+                    }
+                }
+            }
+            if (time == Long.MIN_VALUE) {
+                throw new IOException("Track point without time at " + latitude + ", " + longitude);
+            }
+            return new Fix(time, latitude, longitude, accuracy, speed, bearing);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * Parses an ISO 8601 time like 2018-10-20T01:46:41.250Z or 2018-10-20T07:16:41+05:30.
+     *
+     * @return milliseconds since the epoch.
+     */
+    public static long parseTime(String time) throws IOException {
+        try {
+            int year = Integer.parseInt(time.substring(0, 4));
+            int month = Integer.parseInt(time.substring(5, 7));
+            int day = Integer.parseInt(time.substring(8, 10));
+            int hour = Integer.parseInt(time.substring(11, 13));
+            int minute = Integer.parseInt(time.substring(14, 16));
+            int second = Integer.parseInt(time.substring(17, 19));
+            int i = 19;
+            int millis = 0;
+            if (i < time.length() && time.charAt(i) == '.') {
+                int scale = 100;
+                for (i++; i < time.length() && Character.isDigit(time.charAt(i)); i++) {
+                    millis += (time.charAt(i) - '0') * scale;
+                    scale /= 10;
+                }
+            }
+            int offsetMinutes = 0;
+            if (i < time.length() && time.charAt(i) != 'Z') {
+                int sign = time.charAt(i) == '-' ? -1 : 1;
+                offsetMinutes = sign * (Integer.parseInt(time.substring(i + 1, i + 3)) * 60
+                        + Integer.parseInt(time.substring(i + 4, i + 6)));
+            }
+            long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60
+                    + second - offsetMinutes * 60;
+            return seconds * 1000 + millis;
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed time " + time);
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static float parseAccuracy(String comment) {
+        if (!comment.startsWith("accuracy ")) {
+            return -1;
+        }
+        int end = comment.indexOf(' ', 9);
+        try {
+            return Float.parseFloat(end < 0 ? comment.substring(9) : comment.substring(9, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads up to the next tag and leaves the text before it in mText.
+     *
+     * @return the tag without its angle brackets, or null at the end of the file.
+     */
+    private String nextTag() throws IOException {
+        mText.setLength(0);
+        int c;
+        while ((c = mReader.read()) != -1 && c != '<') {
+            mText.append((char) c);
+        }
+        if (c == -1) {
+            return null;
+        }
+        mTag.setLength(0);
+        while ((c = mReader.read()) != -1 && c != '>') {
+            mTag.append((char) c);
+        }
+        return c == -1 ? null : mTag.toString();
+    }
+
+    private static boolean isStartTag(String tag, String name) {
+        return tag.startsWith(name) && (tag.length() == name.length()
+                || Character.isWhitespace(tag.charAt(name.length()))
+                || tag.charAt(name.length()) == '/');
+    }
+
+    private static boolean isEndTag(String tag, String name) {
+        return tag.length() == name.length() + 1 && tag.charAt(0) == '/' && tag.endsWith(name);
+    }
+
+    private static String attribute(String tag, String name) throws IOException {
+        int i = 0;
+        while ((i = tag.indexOf(name, i)) >= 0) {
+            int equals = i + name.length();
+            boolean nameStart = i > 0 && Character.isWhitespace(tag.charAt(i - 1));
+            if (nameStart && equals < tag.length() - 1 && tag.charAt(equals) == '=') {
+                char quote = tag.charAt(equals + 1);
+                int end = tag.indexOf(quote, equals + 2);
+                if (end > 0) {
+                    return tag.substring(equals + 2, end);
+                }
+            }
+            i = equals;
+        }
+        throw new IOException("Missing attribute " + name + " in <" + tag + ">");
+    }
+}
@@ -0,0 +1,113 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.Collection;
+
+/**
+ * Finds the geohash grid cells an alarm shape can trigger in.
+ *
+ * Every cover is computed on bounding boxes grown by a small margin, so it may hold a few cells
+ * too many but never misses one the shape reaches into.
+ */
+final class GridCover {
+
+    /**
+     * Shortest length of one degree of latitude (at the equator), in meters. Using the shortest
+     * length makes the covered area slightly larger than the shape, never smaller.
+     */
+    static final double MIN_METERS_PER_DEGREE_LATITUDE = 110574.0;
+
+    /**
+     * Length of one degree of longitude at the equator, in meters.
+     */
+    static final double METERS_PER_DEGREE_LONGITUDE = 111320.0;
+
+    /**
+     * Safety margin applied to the covered area.
+     */
+    private static final double COVER_MARGIN = 1.01;
+
+    private GridCover() {
+    }
+
+    /**
+     * Returns the ids of every grid cell overlapped by the bounding box of a circle.
+     */
+    static long[] circle(double latitude, double longitude, double radius, int bits) {
+        double latSpan = latitudeSpan(radius);
+        double lngSpan = longitudeSpan(latitude, radius);
+        return box(latitude - latSpan, longitude - lngSpan, latitude + latSpan, longitude + lngSpan,
+                bits);
+    }
+
+    /**
+     * Returns the ids of every grid cell overlapped by a bounding box. The east edge may lie past
+     * 180 degrees when the box crosses the antimeridian.
+     */
+    static long[] box(double south, double west, double north, double east, int bits) {
+        int minRow = Geohash.latitudeIndex(south, bits);
+        int maxRow = Geohash.latitudeIndex(north, bits);
+        int minColumn = (int) Math.floor((west + 180.0) / 360.0 * (1 << bits));
+        int maxColumn = (int) Math.floor((east + 180.0) / 360.0 * (1 << bits));
+        // Never walk more than once around the globe.
+        maxColumn = Math.min(maxColumn, minColumn + (1 << bits) - 1);
+
+        long[] cells = new long[(maxRow - minRow + 1) * (maxColumn - minColumn + 1)];
+        int i = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                cells[i++] = Geohash.cell(row, Geohash.wrapLongitudeIndex(column, bits), bits);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Adds the ids of the grid cells within the given distance of a segment. The segment is cut
+     * into pieces shorter than half a cell and each piece is covered like a circle around its
+     * middle, so a long diagonal segment does not cover its whole bounding box.
+     *
+     * @param cells receives the cell ids, possibly some of them more than once.
+     */
+    static void segment(double latitude1, double longitude1, double latitude2, double longitude2,
+                        double distance, int bits, Collection<Long> cells) {
+        double dLng = longitude2 - longitude1;
+        if (dLng > 180.0) {
+            dLng -= 360.0;
+        } else if (dLng < -180.0) {
+            dLng += 360.0;
+        }
+        double dLat = latitude2 - latitude1;
+        double edgeLatitude = Math.min(90.0, Math.max(Math.abs(latitude1), Math.abs(latitude2)));
+        // Sizes of a cell in meters, its width taken where the segment is narrowest.
+        double cellHeight = 180.0 / (1 << bits) * MIN_METERS_PER_DEGREE_LATITUDE;
+        double cellWidth = 360.0 / (1 << bits) * METERS_PER_DEGREE_LONGITUDE
+                * Math.cos(Math.toRadians(edgeLatitude));
+        double pieceLength = Math.max(1.0, Math.min(cellHeight, cellWidth) / 2);
+        double length = Math.hypot(dLat * MIN_METERS_PER_DEGREE_LATITUDE,
+                dLng * METERS_PER_DEGREE_LONGITUDE * Math.cos(Math.toRadians(
+                        (latitude1 + latitude2) / 2)));
+        int pieces = Math.max(1, (int) Math.ceil(length / pieceLength));
+        // Half a piece plus the distance reaches from the middle of a piece to anything it covers.
+        double radius = distance + length / pieces / 2;
+        for (int i = 0; i < pieces; i++) {
+            double t = (i + 0.5) / pieces;
+            for (long cell : circle(latitude1 + t * dLat, longitude1 + t * dLng, radius, bits)) {
+                cells.add(cell);
+            }
+        }
+    }
+
+    private static double latitudeSpan(double radius) {
+        return radius / MIN_METERS_PER_DEGREE_LATITUDE * COVER_MARGIN;
+    }
+
+    private static double longitudeSpan(double latitude, double radius) {
+        double edgeLatitude = Math.min(90.0, Math.abs(latitude) + latitudeSpan(radius));
+        double metersPerDegree = METERS_PER_DEGREE_LONGITUDE * Math.cos(Math.toRadians(edgeLatitude));
+        if (metersPerDegree * 180.0 <= radius) {
+            // The circle reaches over a pole, cover every longitude.
+            return 180.0;
+        }
+        return Math.min(180.0, radius / metersPerDegree * COVER_MARGIN);
+    }
+}
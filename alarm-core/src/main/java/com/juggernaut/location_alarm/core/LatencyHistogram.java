@@ -0,0 +1,131 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of the durations of one stage in fixed power-of-two buckets.
+ *
+ * Bucket 0 counts durations below 1 microsecond, bucket i those from 2^(i-1) up to 2^i
+ * microseconds, the last bucket everything longer. Recording is lock-free and does not allocate,
+ * so it can sit on the hot path of any thread. Percentiles are reported as the upper bound of
+ * their bucket, at most twice the real value.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of buckets, the last one starts at about 4.5 minutes.
+     */
+    public static final int BUCKETS = 30;
+
+    private final String mName;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mTotalNanos = new AtomicLong();
+
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Adds one duration, negative durations count as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mBuckets.incrementAndGet(bucketOf(nanos));
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = mMaxNanos.get())) {
+            if (mMaxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMeanNanos() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalNanos.get() / count;
+    }
+
+    public long getMaxNanos() {
+        return mMaxNanos.get();
+    }
+
+    public long getBucketCount(int bucket) {
+        return mBuckets.get(bucket);
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket in microseconds, Long.MAX_VALUE for the last.
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, in microseconds, or 0
+     * without samples. The open last bucket reports the maximum instead.
+     *
+     * @param percentile between 0 and 100.
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = mCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        // Not a snapshot, samples recorded meanwhile can shift the result by a bucket at most.
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mBuckets.get(i);
+            if (count >= rank) {
+                return i == BUCKETS - 1 ? mMaxNanos.get() / 1000 : getBucketUpperBoundMicros(i);
+            }
+        }
+        return mMaxNanos.get() / 1000;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalNanos.set(0);
+        mMaxNanos.set(0);
+    }
+
+    /**
+     * Returns a one line summary: count, mean, p50, p90, p99 and max in milliseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: n=%d mean=%.3fms p50<%.3fms p90<%.3fms p99<%.3fms max=%.3fms",
+                mName, getCount(), getMeanNanos() / 1e6, getPercentileMicros(50) / 1e3,
+                getPercentileMicros(90) / 1e3, getPercentileMicros(99) / 1e3,
+                getMaxNanos() / 1e6);
+    }
+
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+}
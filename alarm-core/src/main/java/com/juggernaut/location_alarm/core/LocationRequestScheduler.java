@@ -0,0 +1,286 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Chooses how often and how precisely to ask for location fixes as a trip progresses.
+ *
+ * The scheduler estimates the time left until the device could reach the closest alarm boundary,
+ * assuming at least FLOOR_SPEED so a stopped train that pulls away is never missed, or
+ * FixFilter.MAX_SPEED when the speed is unknown, and picks the slowest tier that still leaves
+ * SAFETY_FACTOR fixes before that boundary. Far from every alarm
+ * this means infrequent low power fixes, close to one fast balanced power fixes. High accuracy
+ * fixes are only asked for through setConfirming(), while the trigger model cannot tell from the
+ * cheap fixes whether an alarm is reached.
+ *
+ * The closest boundary is found by scanning every alarm, so the scan is only repeated once the
+ * distance travelled since the last scan could have brought an alarm within half of the
+ * previously found distance, or when the alarms changed.
+ *
+ * In batched mode the slower tiers also set a max wait time so the fused provider can hold
+ * several fixes and deliver them with a single wakeup. The wait counts against the time to the
+ * boundary like the interval does, so batching never delays an alarm.
+ */
+public class LocationRequestScheduler {
+
+    /**
+     * Values of the LocationRequest.PRIORITY_ constants, kept here so the scheduler does not
+     * depend on Play services.
+     */
+    public static final int PRIORITY_HIGH_ACCURACY = 100;
+    public static final int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    public static final int PRIORITY_LOW_POWER = 104;
+
+    /**
+     * Request parameters used at each stage of a trip, from the cheapest to the fastest. CONFIRM
+     * is never picked from the time to the boundary, only while confirming.
+     */
+    public enum Tier {
+        FAR(300000, 120000, 600000, PRIORITY_LOW_POWER),
+        CRUISE(120000, 60000, 360000, PRIORITY_BALANCED_POWER_ACCURACY),
+        APPROACH(30000, 15000, 90000, PRIORITY_BALANCED_POWER_ACCURACY),
+        FINAL(10000, 5000, 0, PRIORITY_BALANCED_POWER_ACCURACY),
+        CONFIRM(5000, 1000, 0, PRIORITY_HIGH_ACCURACY);
+
+        /**
+         * The desired interval for location updates, in milliseconds.
+         */
+        public final long interval;
+
+        /**
+         * The fastest rate for location updates, in milliseconds.
+         */
+        public final long fastestInterval;
+
+        /**
+         * Longest time fixes may be held back for batched delivery, in milliseconds.
+         */
+        public final long maxWaitTime;
+
+        /**
+         * One of the PRIORITY_ constants, passed to LocationRequest.setPriority().
+         */
+        public final int priority;
+
+        Tier(long interval, long fastestInterval, long maxWaitTime, int priority) {
+            this.interval = interval;
+            this.fastestInterval = fastestInterval;
+            this.maxWaitTime = maxWaitTime;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Lowest speed in m/s assumed when estimating the time to the boundary (90 km/h), for a train
+     * at rest or slowing down that pulls away again. Trains faster than this are covered by the
+     * speed they report: the pipeline passes an upper bound of the filtered velocity, and a fix
+     * without a speed is assumed at UNKNOWN_SPEED.
+     */
+    public static final float FLOOR_SPEED = 25f;
+
+    /**
+     * Speed in m/s assumed when none is known, the fastest the filter accepts.
+     */
+    public static final float UNKNOWN_SPEED = FixFilter.MAX_SPEED;
+
+    /**
+     * Number of fixes a tier must leave before the boundary can be reached.
+     */
+    public static final int SAFETY_FACTOR = 3;
+
+    /**
+     * Extra headroom required before moving to a slower tier, avoids flapping between two tiers.
+     */
+    private static final double RELAX_MARGIN = 1.5;
+
+    /**
+     * Relative error allowed for the estimates used by the boundary lower bound.
+     */
+    private static final double ESTIMATE_MARGIN = 0.05;
+
+    private final AlarmRegistry mRegistry;
+
+    private final DistanceKernel mKernel = new DistanceKernel();
+
+    private Tier mTier = Tier.FINAL;
+
+    /**
+     * Whether fixes may be delivered in batches.
+     */
+    private boolean mBatching;
+
+    /**
+     * Position and result of the last full scan of the registry.
+     */
+    private boolean mHasScan;
+    private double mScanLatitude;
+    private double mScanLongitude;
+    private double mScanBoundary;
+    private int mScanModCount;
+
+    /**
+     * Whether high accuracy fixes are needed to decide on a trigger.
+     */
+    private boolean mConfirming;
+
+    /**
+     * Lower bound of the distance from the last fix to the closest alarm boundary, negative inside
+     * an alarm, and the same net of the accuracy and the time to reach it, infinite before the
+     * first fix.
+     */
+    private double mBoundary = Double.POSITIVE_INFINITY;
+    private double mDistanceToBoundary = Double.POSITIVE_INFINITY;
+    private double mSecondsToBoundary = Double.POSITIVE_INFINITY;
+
+    public LocationRequestScheduler(AlarmRegistry registry) {
+        mRegistry = registry;
+    }
+
+    public Tier getTier() {
+        return mTier;
+    }
+
+    public void setBatching(boolean batching) {
+        mBatching = batching;
+    }
+
+    /**
+     * Returns the max wait time for the current tier, 0 when fixes must be delivered right away.
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime(mTier);
+    }
+
+    /**
+     * Goes back to the fastest tier, used when location updates are (re)started.
+     */
+    public void reset() {
+        mTier = Tier.FINAL;
+        mHasScan = false;
+        mConfirming = false;
+        mBoundary = Double.POSITIVE_INFINITY;
+        mDistanceToBoundary = Double.POSITIVE_INFINITY;
+        mSecondsToBoundary = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns a lower bound in meters of the distance from the last fix to the closest alarm
+     * boundary, negative inside an alarm.
+     */
+    public double getBoundary() {
+        return mBoundary;
+    }
+
+    /**
+     * Returns a lower bound in meters of the distance from the last fix to the closest alarm
+     * boundary, net of the fix accuracy.
+     */
+    public double getDistanceToBoundary() {
+        return mDistanceToBoundary;
+    }
+
+    /**
+     * Returns a lower bound in seconds of the time from the last fix to the closest alarm
+     * boundary, at the fix speed but at least FLOOR_SPEED, at UNKNOWN_SPEED without one.
+     */
+    public double getSecondsToBoundary() {
+        return mSecondsToBoundary;
+    }
+
+    /**
+     * Updates the tier for a new fix.
+     *
+     * @param accuracy estimated horizontal accuracy of the fix in meters, 0 if unknown.
+     * @param speed    ground speed in m/s, preferably an upper bound of it, NaN if unknown.
+     * @return true if the tier changed and the location request should be re-issued.
+     */
+    public boolean onNewFix(double latitude, double longitude, float accuracy, float speed) {
+        mBoundary = boundaryLowerBound(latitude, longitude);
+        double boundary = mBoundary - accuracy;
+        mDistanceToBoundary = Math.max(0, boundary);
+        mSecondsToBoundary = mDistanceToBoundary / assumedSpeed(speed);
+        return updateTier();
+    }
+
+    /**
+     * Asks for high accuracy fixes, in the CONFIRM tier, until called again with false.
+     *
+     * @return true if the tier changed and the location request should be re-issued.
+     */
+    public boolean setConfirming(boolean confirming) {
+        mConfirming = confirming;
+        return updateTier();
+    }
+
+    /**
+     * Returns the speed the time to the boundary is computed at.
+     */
+    public static float assumedSpeed(float speed) {
+        return Float.isNaN(speed) ? UNKNOWN_SPEED : Math.max(speed, FLOOR_SPEED);
+    }
+
+    private boolean updateTier() {
+        Tier target = Tier.FINAL;
+        if (mConfirming) {
+            target = Tier.CONFIRM;
+        } else {
+            for (Tier tier : Tier.values()) {
+                if (tier != Tier.CONFIRM && mSecondsToBoundary >= requiredSeconds(tier)) {
+                    target = tier;
+                    break;
+                }
+            }
+        }
+        if (target.ordinal() < mTier.ordinal() && mTier != Tier.CONFIRM
+                && mSecondsToBoundary < requiredSeconds(target) * RELAX_MARGIN) {
+            // Slower tier only barely reached, stay where we are for now.
+            return false;
+        }
+        if (target == mTier) {
+            return false;
+        }
+        mTier = target;
+        return true;
+    }
+
+    /**
+     * Returns how many seconds before the boundary a tier may be used.
+     */
+    private double requiredSeconds(Tier tier) {
+        return (tier.interval * SAFETY_FACTOR + maxWaitTime(tier)) / 1000.0;
+    }
+
+    private long maxWaitTime(Tier tier) {
+        return mBatching ? tier.maxWaitTime : 0;
+    }
+
+    /**
+     * Returns a lower bound for the distance from the given point to the closest alarm boundary.
+     */
+    private double boundaryLowerBound(double latitude, double longitude) {
+        mKernel.setOrigin(latitude, longitude);
+        if (mHasScan && mScanModCount == mRegistry.getModCount()) {
+            if (Double.isInfinite(mScanBoundary)) {
+                // No alarm armed.
+                return mScanBoundary;
+            }
+            double travelled = mKernel.estimate(mScanLatitude, mScanLongitude);
+            double bound = lowerBound(mScanBoundary) - travelled * (1 + ESTIMATE_MARGIN);
+            // Rescan once the bound lost half of the scanned distance.
+            if (bound >= mScanBoundary - Math.abs(mScanBoundary) / 2) {
+                return bound;
+            }
+        }
+        mHasScan = true;
+        mScanLatitude = latitude;
+        mScanLongitude = longitude;
+        mScanModCount = mRegistry.getModCount();
+        mScanBoundary = mRegistry.nearestBoundary(mKernel);
+        return lowerBound(mScanBoundary);
+    }
+
+    /**
+     * Returns a lower bound of an estimated boundary distance, farther inside when negative.
+     */
+    private static double lowerBound(double boundary) {
+        return Double.isInfinite(boundary) ? boundary : boundary - Math.abs(boundary) * ESTIMATE_MARGIN;
+    }
+}
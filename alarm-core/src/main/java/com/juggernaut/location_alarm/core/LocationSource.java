@@ -0,0 +1,36 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.List;
+
+/**
+ * Delivers location fixes to the alarm pipeline, from the fused location provider on a device or
+ * from a recorded trace in a replay.
+ */
+public interface LocationSource {
+
+    public interface Callback {
+        /**
+         * Called with one or more fixes, oldest first. The list is only valid during the call.
+         */
+        void onFixes(List<Fix> fixes);
+    }
+
+    /**
+     * Requests fixes at the rate of the given tier, replacing any previous request.
+     *
+     * @param maxWaitTime longest time fixes may be held back and delivered as a batch, 0 to
+     *                    deliver every fix right away.
+     * @throws SecurityException if the location permission is missing.
+     */
+    void requestUpdates(LocationRequestScheduler.Tier tier, long maxWaitTime, Callback callback);
+
+    /**
+     * Stops delivering fixes.
+     */
+    void removeUpdates();
+
+    /**
+     * Delivers the fixes held back for a batch right away.
+     */
+    void flush();
+}
@@ -0,0 +1,115 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Decides when the foreground notification has to be posted again.
+ *
+ * Content that matches what is already displayed is never posted. Changed content is posted at
+ * most once per minimum interval; changes arriving faster are coalesced into a single trailing
+ * post that carries the latest content.
+ */
+public final class NotificationThrottle {
+
+    /**
+     * Returned by offer() when nothing has to be scheduled.
+     */
+    public static final long NO_POST = -1;
+
+    private final long mMinInterval;
+
+    /**
+     * Content currently displayed, null before the first post.
+     */
+    private String mShownTitle;
+    private String mShownText;
+
+    /**
+     * Latest content offered.
+     */
+    private String mPendingTitle;
+    private String mPendingText;
+
+    private long mLastPostTime;
+    private boolean mHasPosted;
+    private boolean mScheduled;
+
+    /**
+     * @param minInterval minimum time between two posts in milliseconds.
+     */
+    public NotificationThrottle(long minInterval) {
+        mMinInterval = minInterval;
+    }
+
+    /**
+     * Offers new content.
+     *
+     * @param now current time in milliseconds.
+     * @return 0 to post right away, a delay in milliseconds after which take() should be called,
+     * or NO_POST if the content is already displayed or a post is already scheduled.
+     */
+    public synchronized long offer(String title, String text, long now) {
+        mPendingTitle = title;
+        mPendingText = text;
+        if (mScheduled || isShown(title, text)) {
+            return NO_POST;
+        }
+        long wait = mHasPosted ? mLastPostTime + mMinInterval - now : 0;
+        if (wait > 0) {
+            mScheduled = true;
+            return wait;
+        }
+        return 0;
+    }
+
+    /**
+     * Called right before posting, immediately or when a scheduled delay expired.
+     *
+     * @return true if the latest content still differs from what is displayed and must be posted,
+     * it then counts as displayed.
+     */
+    public synchronized boolean take(long now) {
+        mScheduled = false;
+        if (isShown(mPendingTitle, mPendingText)) {
+            return false;
+        }
+        markShown(mPendingTitle, mPendingText, now);
+        return true;
+    }
+
+    /**
+     * Records content that was displayed without going through offer(), e.g. by startForeground.
+     */
+    public synchronized void markShown(String title, String text, long now) {
+        mShownTitle = title;
+        mShownText = text;
+        mPendingTitle = title;
+        mPendingText = text;
+        mLastPostTime = now;
+        mHasPosted = true;
+    }
+
+    /**
+     * Forgets the displayed content, used once the notification has been removed.
+     */
+    public synchronized void reset() {
+        mShownTitle = null;
+        mShownText = null;
+        mScheduled = false;
+        mHasPosted = false;
+    }
+
+    public synchronized String getTitle() {
+        return mShownTitle;
+    }
+
+    public synchronized String getText() {
+        return mShownText;
+    }
+
+    private boolean isShown(String title, String text) {
+        return mHasPosted && equal(title, mShownTitle) && equal(text, mShownText);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,57 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Binary layout of the offline place index files.
+ *
+ * A file starts with a fixed header: the magic number, the format version and the number of
+ * sections. A table describes every section:
+ *
+ * <pre>
+ * kind          1 byte, ordinal of the PlaceIndex.Kind
+ * bits          1 byte, geohash bits per axis of the cells the records are sorted by
+ * max distance  int, meters, farthest a place of the section is still named
+ * count         int, number of records
+ * offset        int, file offset of the first record
+ * </pre>
+ *
+ * Every section holds fixed size records sorted by cell, so the places of a cell are found by
+ * binary search without any index in memory:
+ *
+ * <pre>
+ * cell          long, geohash cell id at the bits of the section
+ * latitude      int, 1e-7 degrees
+ * longitude     int, 1e-7 degrees
+ * name          int, file offset of the name
+ * </pre>
+ *
+ * The names follow the sections, each an unsigned short length and as many bytes of UTF-8. Places
+ * with the same name share it.
+ */
+final class PlaceFormat {
+
+    static final int MAGIC = 0x504c4143; // "PLAC"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 1;
+    static final int SECTION_SIZE = 1 + 1 + 4 + 4 + 4;
+    static final int RECORD_SIZE = 8 + 4 + 4 + 4;
+
+    /**
+     * Offsets of the fields within a record.
+     */
+    static final int RECORD_LATITUDE = 8;
+    static final int RECORD_LONGITUDE = 12;
+    static final int RECORD_NAME = 16;
+
+    /**
+     * Coordinate units per degree.
+     */
+    static final double COORDINATE_SCALE = 1e7;
+
+    /**
+     * Longest name in bytes of UTF-8.
+     */
+    static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    private PlaceFormat() {
+    }
+}
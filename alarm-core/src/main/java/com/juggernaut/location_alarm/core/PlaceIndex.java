@@ -0,0 +1,270 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Offline reverse geocoder over a place index written by PlaceIndexBuilder: names the closest
+ * street and locality of a position without the network. Its localities and points of interest
+ * also feed the destination search.
+ *
+ * The file is memory-mapped and read in place. Each kind of place is sorted by geohash cell, so a
+ * lookup binary searches the few cells within the max distance of its kind around the position
+ * and only the pages it touches are ever loaded. Nothing is held in memory besides the section
+ * table, whatever the size of the dataset, and a lookup takes microseconds.
+ *
+ * Only absolute reads of the buffer are used, so lookups may run on any number of threads.
+ */
+public class PlaceIndex implements ReverseGeocoder.Lookup {
+
+    /**
+     * Kinds of places, with the cell size and the farthest distance they are named at.
+     */
+    public enum Kind {
+        /**
+         * Street centroids, cells of about 300 m x 600 m at the equator.
+         */
+        STREET(16, 300),
+        /**
+         * Locality centroids, cells of about 10 km x 20 km at the equator.
+         */
+        LOCALITY(11, 5000),
+        /**
+         * Points of interest such as stations, only searched by name, not used to name a
+         * position.
+         */
+        POI(16, 100);
+
+        final int bits;
+        final int maxDistance;
+
+        Kind(int bits, int maxDistance) {
+            this.bits = bits;
+            this.maxDistance = maxDistance;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Section table by kind ordinal, count 0 for kinds the file does not have.
+     */
+    private final int[] mBits = new int[KINDS.length];
+    private final int[] mMaxDistance = new int[KINDS.length];
+    private final int[] mCount = new int[KINDS.length];
+    private final int[] mOffset = new int[KINDS.length];
+
+    /**
+     * Maps a place index file read-only.
+     *
+     * @throws IllegalArgumentException if the file is not a place index.
+     */
+    public static PlaceIndex open(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel channel = input.getChannel();
+            return open(channel, 0, channel.size());
+        }
+    }
+
+    /**
+     * Maps a place index stored at the given offset of a file read-only, e.g. an uncompressed
+     * asset inside an APK. The mapping stays valid once the channel is closed.
+     *
+     * @throws IllegalArgumentException if the range is not a place index.
+     */
+    public static PlaceIndex open(FileChannel channel, long offset, long length) throws IOException {
+        return new PlaceIndex(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * @param buffer the whole index, e.g. mapped from a file or an uncompressed asset. Its
+     *               position and limit are left alone.
+     * @throws IllegalArgumentException if the buffer is not a place index.
+     */
+    public PlaceIndex(ByteBuffer buffer) {
+        mBuffer = buffer.slice();
+        int limit = mBuffer.limit();
+        if (limit < PlaceFormat.HEADER_SIZE || mBuffer.getInt(0) != PlaceFormat.MAGIC) {
+            throw new IllegalArgumentException("Not a place index");
+        }
+        byte version = mBuffer.get(4);
+        if (version != PlaceFormat.VERSION) {
+            throw new IllegalArgumentException("Unknown place index version " + version);
+        }
+        int sections = mBuffer.get(5) & 0xFF;
+        if (PlaceFormat.HEADER_SIZE + (long) sections * PlaceFormat.SECTION_SIZE > limit) {
+            throw new IllegalArgumentException("Place index cut off");
+        }
+        for (int i = 0; i < sections; i++) {
+            int position = PlaceFormat.HEADER_SIZE + i * PlaceFormat.SECTION_SIZE;
+            int kind = mBuffer.get(position) & 0xFF;
+            int bits = mBuffer.get(position + 1);
+            int count = mBuffer.getInt(position + 6);
+            int offset = mBuffer.getInt(position + 10);
+            if (kind >= KINDS.length) {
+                // Written by a newer builder, skip what we do not know.
+                continue;
+            }
+            if (bits < 1 || bits > 30 || count < 0 || offset < 0
+                    || offset + (long) count * PlaceFormat.RECORD_SIZE > limit) {
+                throw new IllegalArgumentException("Corrupt place index section " + i);
+            }
+            mBits[kind] = bits;
+            mMaxDistance[kind] = mBuffer.getInt(position + 2);
+            mCount[kind] = count;
+            mOffset[kind] = offset;
+        }
+    }
+
+    /**
+     * Returns the closest street and locality, e.g. "MG Road, Bengaluru", either one alone if
+     * only that is in range, or null if neither is.
+     */
+    @Override
+    public String getLocationName(double latitude, double longitude) {
+        String street = findName(Kind.STREET, latitude, longitude);
+        String locality = findName(Kind.LOCALITY, latitude, longitude);
+        if (street == null || locality == null || street.equals(locality)) {
+            return street != null ? street : locality;
+        }
+        return street + ", " + locality;
+    }
+
+    /**
+     * Returns the name of the closest place of a kind within its max distance, or null.
+     */
+    public String findName(Kind kind, double latitude, double longitude) {
+        int record = findClosest(kind.ordinal(), latitude, longitude);
+        return record < 0 ? null : readName(mBuffer.getInt(record + PlaceFormat.RECORD_NAME));
+    }
+
+    /**
+     * Returns the number of places of a kind.
+     */
+    public int getCount(Kind kind) {
+        return mCount[kind.ordinal()];
+    }
+
+    /**
+     * Adds every place of a kind to a search. Reads the whole section, so it takes a while for
+     * a large index.
+     */
+    public void addTo(PlaceSearch search, Kind kind, PlaceSearch.Source source) {
+        int offset = mOffset[kind.ordinal()];
+        for (int i = 0; i < mCount[kind.ordinal()]; i++) {
+            int record = offset + i * PlaceFormat.RECORD_SIZE;
+            String name = readName(mBuffer.getInt(record + PlaceFormat.RECORD_NAME));
+            if (name != null) {
+                double latitude = mBuffer.getInt(record + PlaceFormat.RECORD_LATITUDE)
+                        / PlaceFormat.COORDINATE_SCALE;
+                double longitude = mBuffer.getInt(record + PlaceFormat.RECORD_LONGITUDE)
+                        / PlaceFormat.COORDINATE_SCALE;
+                search.add(name, latitude, longitude, source);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the closest record within the max distance, or -1.
+     */
+    private int findClosest(int kind, double latitude, double longitude) {
+        int count = mCount[kind];
+        if (count == 0) {
+            return -1;
+        }
+        int bits = mBits[kind];
+        int offset = mOffset[kind];
+        double maxDistance = mMaxDistance[kind];
+
+        double cosLatitude = Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+        double latitudeSpan = Math.toDegrees(maxDistance / DistanceKernel.EARTH_RADIUS);
+        double longitudeSpan = Math.min(latitudeSpan / cosLatitude, 180);
+        int firstRow = Geohash.latitudeIndex(latitude - latitudeSpan, bits);
+        int lastRow = Geohash.latitudeIndex(latitude + latitudeSpan, bits);
+        int firstColumn = Geohash.longitudeIndex(longitude - longitudeSpan, bits);
+        int columns = Geohash.wrapLongitudeIndex(
+                Geohash.longitudeIndex(longitude + longitudeSpan, bits) - firstColumn, bits) + 1;
+
+        double best = maxDistance * maxDistance;
+        int closest = -1;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int c = 0; c < columns; c++) {
+                int column = Geohash.wrapLongitudeIndex(firstColumn + c, bits);
+                long cell = Geohash.cell(row, column, bits);
+                for (int i = lowerBound(offset, count, cell); i < count; i++) {
+                    int record = offset + i * PlaceFormat.RECORD_SIZE;
+                    if (mBuffer.getLong(record) != cell) {
+                        break;
+                    }
+                    double placeLatitude = mBuffer.getInt(record + PlaceFormat.RECORD_LATITUDE)
+                            / PlaceFormat.COORDINATE_SCALE;
+                    double placeLongitude = mBuffer.getInt(record + PlaceFormat.RECORD_LONGITUDE)
+                            / PlaceFormat.COORDINATE_SCALE;
+                    double north = Math.toRadians(placeLatitude - latitude)
+                            * DistanceKernel.EARTH_RADIUS;
+                    double east = Math.toRadians(wrap(placeLongitude - longitude))
+                            * DistanceKernel.EARTH_RADIUS * cosLatitude;
+                    double distance = north * north + east * east;
+                    if (distance <= best) {
+                        best = distance;
+                        closest = record;
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Returns the index of the first record of a section whose cell is not below the given one.
+     */
+    private int lowerBound(int offset, int count, long cell) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mBuffer.getLong(offset + middle * PlaceFormat.RECORD_SIZE) < cell) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private String readName(int position) {
+        if (position < 0 || position + 2 > mBuffer.limit()) {
+            return null;
+        }
+        int length = mBuffer.getShort(position) & 0xFFFF;
+        if (position + 2 + length > mBuffer.limit()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(position + 2 + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Wraps a difference of longitudes into [-180, 180).
+     */
+    private static double wrap(double longitude) {
+        if (longitude >= 180) {
+            return longitude - 360;
+        }
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+}
@@ -0,0 +1,212 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the place index read by PlaceIndex, e.g. from street and locality centroids and points
+ * of interest extracted from OpenStreetMap. Runs at build time or on a server, it holds every
+ * place in memory.
+ */
+public class PlaceIndexBuilder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final PlaceIndex.Kind[] KINDS = PlaceIndex.Kind.values();
+
+    private static final class Place {
+        final long cell;
+        final int latitude;
+        final int longitude;
+        final String name;
+
+        Place(long cell, int latitude, int longitude, String name) {
+            this.cell = cell;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.name = name;
+        }
+    }
+
+    private static final Comparator<Place> BY_CELL = new Comparator<Place>() {
+        @Override
+        public int compare(Place a, Place b) {
+            return a.cell < b.cell ? -1 : a.cell > b.cell ? 1 : a.name.compareTo(b.name);
+        }
+    };
+
+    /**
+     * Places by kind ordinal.
+     */
+    private final List<List<Place>> mPlaces = new ArrayList<>();
+
+    public PlaceIndexBuilder() {
+        for (int i = 0; i < KINDS.length; i++) {
+            mPlaces.add(new ArrayList<Place>());
+        }
+    }
+
+    /**
+     * Adds the centroid of a place.
+     *
+     * @throws IllegalArgumentException if the coordinates are out of range or the name is empty
+     *                                  or too long.
+     */
+    public void add(PlaceIndex.Kind kind, String name, double latitude, double longitude) {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Coordinates out of range: " + latitude + ", "
+                    + longitude);
+        }
+        if (name.isEmpty() || name.getBytes(UTF_8).length > PlaceFormat.MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Bad place name: " + name);
+        }
+        mPlaces.get(kind.ordinal()).add(new Place(Geohash.encode(latitude, longitude, kind.bits),
+                (int) Math.round(latitude * PlaceFormat.COORDINATE_SCALE),
+                (int) Math.round(longitude * PlaceFormat.COORDINATE_SCALE), name));
+    }
+
+    /**
+     * Reads places from comma separated lines:
+     *
+     * <pre>
+     * kind,name,latitude,longitude
+     * </pre>
+     *
+     * The kind is "street", "locality" or "poi", names must not contain commas. Empty lines, lines
+     * starting with '#' and a header line starting with "kind" are skipped.
+     */
+    public void readCsv(Reader csv) throws IOException {
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#' || line.startsWith("kind")) {
+                continue;
+            }
+            String[] columns = line.split(",", -1);
+            if (columns.length != 4) {
+                throw new IOException("Expected kind,name,latitude,longitude: " + line);
+            }
+            try {
+                add(PlaceIndex.Kind.valueOf(columns[0].trim().toUpperCase(Locale.US)),
+                        columns[1].trim(), Double.parseDouble(columns[2].trim()),
+                        Double.parseDouble(columns[3].trim()));
+            } catch (IllegalArgumentException e) {
+                // Also the NumberFormatException of a bad coordinate.
+                throw new IOException(e.getMessage() + ": " + line);
+            }
+        }
+    }
+
+    /**
+     * Returns the index, positioned at 0.
+     */
+    public ByteBuffer build() {
+        Map<String, Integer> names = new HashMap<>();
+        List<byte[]> encodedNames = new ArrayList<>();
+        int sections = 0;
+        int records = 0;
+        for (List<Place> places : mPlaces) {
+            Collections.sort(places, BY_CELL);
+            sections += places.isEmpty() ? 0 : 1;
+            records += places.size();
+        }
+        int namesOffset = PlaceFormat.HEADER_SIZE + sections * PlaceFormat.SECTION_SIZE
+                + records * PlaceFormat.RECORD_SIZE;
+        int namesSize = 0;
+        for (List<Place> places : mPlaces) {
+            for (Place place : places) {
+                if (!names.containsKey(place.name)) {
+                    byte[] bytes = place.name.getBytes(UTF_8);
+                    names.put(place.name, namesOffset + namesSize);
+                    encodedNames.add(bytes);
+                    namesSize += 2 + bytes.length;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(namesOffset + namesSize);
+        buffer.putInt(PlaceFormat.MAGIC);
+        buffer.put(PlaceFormat.VERSION);
+        buffer.put((byte) sections);
+        int offset = PlaceFormat.HEADER_SIZE + sections * PlaceFormat.SECTION_SIZE;
+        for (PlaceIndex.Kind kind : KINDS) {
+            List<Place> places = mPlaces.get(kind.ordinal());
+            if (places.isEmpty()) {
+                continue;
+            }
+            buffer.put((byte) kind.ordinal());
+            buffer.put((byte) kind.bits);
+            buffer.putInt(kind.maxDistance);
+            buffer.putInt(places.size());
+            buffer.putInt(offset);
+            offset += places.size() * PlaceFormat.RECORD_SIZE;
+        }
+        for (List<Place> places : mPlaces) {
+            for (Place place : places) {
+                buffer.putLong(place.cell);
+                buffer.putInt(place.latitude);
+                buffer.putInt(place.longitude);
+                buffer.putInt(names.get(place.name));
+            }
+        }
+        for (byte[] name : encodedNames) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes the index to a file, replacing it.
+     */
+    public void write(File file) throws IOException {
+        ByteBuffer buffer = build();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            FileChannel channel = output.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Converts a CSV of places into a place index to bundle with the app:
+     *
+     * <pre>
+     * PlaceIndexBuilder places.csv places.idx
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PlaceIndexBuilder places.csv places.idx");
+            System.exit(2);
+            return;
+        }
+        PlaceIndexBuilder builder = new PlaceIndexBuilder();
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[0]), UTF_8)) {
+            builder.readCsv(reader);
+        }
+        builder.write(new File(args[1]));
+        for (PlaceIndex.Kind kind : KINDS) {
+            System.out.println(builder.mPlaces.get(kind.ordinal()).size() + " " + kind);
+        }
+        System.out.println(new File(args[1]).length() + " bytes");
+    }
+}
@@ -0,0 +1,448 @@
+package com.juggernaut.location_alarm.core;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Local search over destinations by name, typo tolerant, for the search box to answer without the
+ * network.
+ *
+ * Names are split into words, folded to lower case without accents, and every word goes into a
+ * prefix trie. Each word of a query matches the words that start with it, with up to one edit for
+ * words of MIN_FUZZY_LENGTH letters and two from MIN_FUZZY2_LENGTH: the trie is walked with one
+ * row of the edit distance table per letter and pruned once every cell of the row is over the
+ * limit. A destination matches if every word of the query does. Results come with the fewest
+ * edits first, then the closest, saved alarms and recent destinations counting as closer than
+ * points of interest by the weight of their source.
+ *
+ * Destinations are only added, a new set is searched by building a new instance. Not
+ * thread-safe, build it on one thread and search it on one thread at a time.
+ */
+public class PlaceSearch {
+
+    /**
+     * Where a destination comes from, with the factor its distance is divided by in the ranking.
+     */
+    public enum Source {
+        ALARM(4),
+        RECENT(2),
+        POI(1);
+
+        final double weight;
+
+        Source(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * One destination found.
+     */
+    public static final class Result {
+        public final String name;
+        public final double latitude;
+        public final double longitude;
+        public final Source source;
+
+        /**
+         * Distance in meters from the position searched around, NaN without a position.
+         */
+        public final double distance;
+
+        /**
+         * Edits needed to match the query.
+         */
+        public final int edits;
+
+        Result(Entry entry, double distance, int edits) {
+            this.name = entry.name;
+            this.latitude = entry.latitude;
+            this.longitude = entry.longitude;
+            this.source = entry.source;
+            this.distance = distance;
+            this.edits = edits;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + source + ", " + Math.round(distance) + " m, " + edits + " edits)";
+        }
+    }
+
+    /**
+     * Shortest query word matched with one edit, and with two.
+     */
+    static final int MIN_FUZZY_LENGTH = 4;
+    static final int MIN_FUZZY2_LENGTH = 8;
+
+    /**
+     * Geohash length of the cells destinations with the same name are merged in, about 1.2 km.
+     */
+    static final int DUPLICATE_PRECISION = 6;
+
+    private static final class Entry {
+        final String name;
+        final double latitude;
+        final double longitude;
+        Source source;
+
+        Entry(String name, double latitude, double longitude, Source source) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Trie node, children sorted by letter.
+     */
+    private static final class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+
+        /**
+         * Destinations with a word ending here.
+         */
+        int[] entries = new int[0];
+        int entryCount;
+
+        Node addChild(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(labels, i, newLabels, i + 1, labels.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            Node child = new Node();
+            newLabels[i] = label;
+            newChildren[i] = child;
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+
+        void addEntry(int entry) {
+            if (entryCount > 0 && entries[entryCount - 1] == entry) {
+                // The same word twice in one name.
+                return;
+            }
+            if (entryCount == entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(2, entryCount * 2));
+            }
+            entries[entryCount++] = entry;
+        }
+    }
+
+    private final Node mRoot = new Node();
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * Entry index by folded name and cell, to merge duplicates.
+     */
+    private final Map<String, Integer> mKeys = new HashMap<>();
+
+    /**
+     * Per entry state of the running search, valid where the stamp is current.
+     */
+    private int[] mQueryStamp = new int[0];
+    private int[] mWordStamp = new int[0];
+    private int[] mWordEdits = new int[0];
+    private int[] mMatchedWords = new int[0];
+    private int[] mTotalEdits = new int[0];
+    private int mStamp;
+
+    /**
+     * Entries matched by the current query word.
+     */
+    private int[] mTouched = new int[16];
+    private int mTouchedCount;
+
+    /**
+     * Rows of the edit distance table by trie depth.
+     */
+    private final List<int[]> mRows = new ArrayList<>();
+
+    /**
+     * Best matches of the running search so far, in order, with their distances.
+     */
+    private int[] mBest = new int[0];
+    private double[] mBestDistance = new double[0];
+
+    private final DistanceKernel mKernel = new DistanceKernel();
+
+    /**
+     * Adds a destination. A destination of the same name within about a kilometer of one already
+     * added is merged into it, keeping the stronger source.
+     */
+    public void add(String name, double latitude, double longitude, Source source) {
+        List<String> words = split(name);
+        if (words.isEmpty()) {
+            return;
+        }
+        String key = join(words) + '@' + Geohash.toBase32(latitude, longitude, DUPLICATE_PRECISION);
+        Integer existing = mKeys.get(key);
+        if (existing != null) {
+            Entry entry = mEntries.get(existing);
+            if (source.ordinal() < entry.source.ordinal()) {
+                entry.source = source;
+            }
+            return;
+        }
+        int id = mEntries.size();
+        mEntries.add(new Entry(name.trim(), latitude, longitude, source));
+        mKeys.put(key, id);
+        for (String word : words) {
+            Node node = mRoot;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.addChild(word.charAt(i));
+            }
+            node.addEntry(id);
+        }
+    }
+
+    /**
+     * Returns the number of destinations.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the best destinations for a query, as typed so far.
+     *
+     * @param latitude  position to rank by distance from, NaN if unknown.
+     * @param longitude position to rank by distance from, NaN if unknown.
+     * @param limit     most results to return.
+     */
+    public List<Result> search(String query, double latitude, double longitude, int limit) {
+        List<String> words = split(query);
+        if (words.isEmpty() || mEntries.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        ensureCapacity();
+        int queryStamp = ++mStamp;
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            int wordStamp = ++mStamp;
+            mTouchedCount = 0;
+            matchWord(word, maxEdits(word), queryStamp, w, wordStamp);
+            for (int i = 0; i < mTouchedCount; i++) {
+                int entry = mTouched[i];
+                if (w == 0) {
+                    mQueryStamp[entry] = queryStamp;
+                    mMatchedWords[entry] = 1;
+                    mTotalEdits[entry] = mWordEdits[entry];
+                } else {
+                    mMatchedWords[entry]++;
+                    mTotalEdits[entry] += mWordEdits[entry];
+                }
+            }
+        }
+
+        // Every entry matched by the last word matched all of them. Only the best few are kept,
+        // a short prefix matches a good part of a large set.
+        boolean located = !Double.isNaN(latitude) && !Double.isNaN(longitude);
+        if (located) {
+            mKernel.setOrigin(latitude, longitude);
+        }
+        if (mBest.length < limit) {
+            mBest = new int[limit];
+            mBestDistance = new double[limit];
+        }
+        int count = 0;
+        for (int i = 0; i < mTouchedCount; i++) {
+            int id = mTouched[i];
+            Entry entry = mEntries.get(id);
+            double distance = located ? mKernel.estimate(entry.latitude, entry.longitude) : 0;
+            if (count == limit
+                    && compare(id, distance, mBest[limit - 1], mBestDistance[limit - 1]) >= 0) {
+                continue;
+            }
+            // Insertion into the sorted best, the last one drops out when full.
+            int j = count < limit ? count++ : count - 1;
+            while (j > 0 && compare(id, distance, mBest[j - 1], mBestDistance[j - 1]) < 0) {
+                mBest[j] = mBest[j - 1];
+                mBestDistance[j] = mBestDistance[j - 1];
+                j--;
+            }
+            mBest[j] = id;
+            mBestDistance[j] = distance;
+        }
+        List<Result> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new Result(mEntries.get(mBest[i]),
+                    located ? mBestDistance[i] : Double.NaN, mTotalEdits[mBest[i]]));
+        }
+        return results;
+    }
+
+    /**
+     * Orders two matches of the current search: fewest edits, then closest by the weight of
+     * their source, then the stronger source, then by name.
+     */
+    private int compare(int a, double aDistance, int b, double bDistance) {
+        if (mTotalEdits[a] != mTotalEdits[b]) {
+            return mTotalEdits[a] < mTotalEdits[b] ? -1 : 1;
+        }
+        Entry first = mEntries.get(a);
+        Entry second = mEntries.get(b);
+        int byDistance = Double.compare(aDistance / first.source.weight,
+                bDistance / second.source.weight);
+        if (byDistance != 0) {
+            return byDistance;
+        }
+        if (first.source != second.source) {
+            return first.source.ordinal() - second.source.ordinal();
+        }
+        return first.name.compareTo(second.name);
+    }
+
+    /**
+     * Walks the trie for one word of the query. Entries that matched every earlier word and a
+     * word starting within maxEdits of it end up in mTouched with their fewest edits.
+     */
+    private void matchWord(String word, int maxEdits, int queryStamp, int index, int wordStamp) {
+        int[] row = row(0, word.length());
+        for (int j = 0; j <= word.length(); j++) {
+            row[j] = j;
+        }
+        walk(mRoot, 1, word, maxEdits, Integer.MAX_VALUE, queryStamp, index, wordStamp);
+    }
+
+    /**
+     * @param best fewest edits of the query word to a prefix on the path to the node.
+     */
+    private void walk(Node node, int depth, String word, int maxEdits, int best, int queryStamp,
+                      int index, int wordStamp) {
+        int length = word.length();
+        int[] previous = mRows.get(depth - 1);
+        for (int c = 0; c < node.labels.length; c++) {
+            char label = node.labels[c];
+            Node child = node.children[c];
+            int[] row = row(depth, length);
+            row[0] = previous[0] + 1;
+            int rowMin = row[0];
+            for (int j = 1; j <= length; j++) {
+                int substitute = previous[j - 1] + (word.charAt(j - 1) == label ? 0 : 1);
+                row[j] = Math.min(substitute, Math.min(previous[j], row[j - 1]) + 1);
+                rowMin = Math.min(rowMin, row[j]);
+            }
+            int childBest = Math.min(best, row[length]);
+            if (rowMin > maxEdits) {
+                // No longer prefix can do better, the words below match as well as the path.
+                if (childBest <= maxEdits) {
+                    collect(child, childBest, queryStamp, index, wordStamp);
+                }
+                continue;
+            }
+            if (childBest <= maxEdits) {
+                touch(child, childBest, queryStamp, index, wordStamp);
+            }
+            walk(child, depth + 1, word, maxEdits, childBest, queryStamp, index, wordStamp);
+        }
+    }
+
+    /**
+     * Touches the entries of a node and of every node below it.
+     */
+    private void collect(Node node, int edits, int queryStamp, int index, int wordStamp) {
+        touch(node, edits, queryStamp, index, wordStamp);
+        for (Node child : node.children) {
+            collect(child, edits, queryStamp, index, wordStamp);
+        }
+    }
+
+    private void touch(Node node, int edits, int queryStamp, int index, int wordStamp) {
+        for (int i = 0; i < node.entryCount; i++) {
+            int entry = node.entries[i];
+            if (index > 0 && (mQueryStamp[entry] != queryStamp || mMatchedWords[entry] != index)) {
+                continue;
+            }
+            if (mWordStamp[entry] != wordStamp) {
+                mWordStamp[entry] = wordStamp;
+                mWordEdits[entry] = edits;
+                if (mTouchedCount == mTouched.length) {
+                    mTouched = Arrays.copyOf(mTouched, mTouchedCount * 2);
+                }
+                mTouched[mTouchedCount++] = entry;
+            } else if (edits < mWordEdits[entry]) {
+                mWordEdits[entry] = edits;
+            }
+        }
+    }
+
+    /**
+     * Returns the row for a trie depth, at least length + 1 long.
+     */
+    private int[] row(int depth, int length) {
+        while (mRows.size() <= depth) {
+            mRows.add(new int[0]);
+        }
+        int[] row = mRows.get(depth);
+        if (row.length <= length) {
+            row = new int[length + 1];
+            mRows.set(depth, row);
+        }
+        return row;
+    }
+
+    private void ensureCapacity() {
+        int size = mEntries.size();
+        if (mQueryStamp.length < size) {
+            mQueryStamp = Arrays.copyOf(mQueryStamp, size);
+            mWordStamp = Arrays.copyOf(mWordStamp, size);
+            mWordEdits = Arrays.copyOf(mWordEdits, size);
+            mMatchedWords = Arrays.copyOf(mMatchedWords, size);
+            mTotalEdits = Arrays.copyOf(mTotalEdits, size);
+        }
+    }
+
+    static int maxEdits(String word) {
+        return word.length() >= MIN_FUZZY2_LENGTH ? 2 : word.length() >= MIN_FUZZY_LENGTH ? 1 : 0;
+    }
+
+    /**
+     * Splits a name into words of letters and digits, lower case without accents.
+     */
+    static List<String> split(String name) {
+        String folded = Normalizer.normalize(name, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.US);
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static String join(List<String> words) {
+        StringBuilder joined = new StringBuilder();
+        for (String word : words) {
+            if (joined.length() > 0) {
+                joined.append(' ');
+            }
+            joined.append(word);
+        }
+        return joined.toString();
+    }
+}
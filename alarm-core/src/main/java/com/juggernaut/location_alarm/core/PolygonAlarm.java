@@ -0,0 +1,472 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.Arrays;
+
+/**
+ * An alarm that triggers inside an area drawn as a polygon, e.g. a station or a campus, with
+ * holes cut out of it.
+ *
+ * The first ring is the outline and every further ring a hole; a point is inside when a ray from
+ * it crosses the rings an odd number of times. Edges are straight in latitude and longitude.
+ *
+ * The bounding box of the polygon is split into a grid of about CELLS_PER_EDGE cells per edge.
+ * Each cell knows whether its center is inside and lists the edges that pass through it, which is
+ * none for most cells. A point in a cell without edges takes the answer of the center; in the
+ * other cells only the listed edges are crossed on the way from the center to the point, so a
+ * polygon of thousands of edges costs a handful of edge tests per fix.
+ *
+ * The latitude and longitude hold the middle of the bounding box where the marker is shown, the
+ * radius that of a circle around it enclosing the whole polygon.
+ */
+public class PolygonAlarm extends Alarm {
+
+    /**
+     * Cells of the grid per edge of the polygon, up to MAX_CELLS.
+     */
+    private static final int CELLS_PER_EDGE = 4;
+
+    /**
+     * Largest number of cells in the grid, 16,384 cells take about 200 kB.
+     */
+    private static final int MAX_CELLS = 128 * 128;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(DistanceKernel.EARTH_RADIUS);
+
+    /**
+     * Vertices of each ring in degrees, without repeating the first vertex at the end.
+     */
+    private final double[][] mLatitudes;
+    private final double[][] mLongitudes;
+
+    /**
+     * Ends of every edge, x the longitude unwrapped around mReferenceLongitude and y the latitude.
+     */
+    private final double[] mX1;
+    private final double[] mY1;
+    private final double[] mX2;
+    private final double[] mY2;
+
+    /**
+     * Longitudes are unwrapped to within 180 degrees of this one, so a polygon crossing the
+     * antimeridian stays in one piece.
+     */
+    private final double mReferenceLongitude;
+
+    /**
+     * The bounding box in unwrapped coordinates.
+     */
+    private final double mMinX;
+    private final double mMinY;
+    private final double mMaxX;
+    private final double mMaxY;
+
+    /**
+     * Size of the grid and of its cells in degrees. Cells are numbered row by row from the
+     * south-west corner.
+     */
+    private final int mColumns;
+    private final int mRows;
+    private final double mCellWidth;
+    private final double mCellHeight;
+
+    /**
+     * Whether the center of each cell is inside the polygon.
+     */
+    private final boolean[] mCenterInside;
+
+    /**
+     * Indices of the edges passing through each cell, null if none does.
+     */
+    private final int[][] mCellEdges;
+
+    /**
+     * @param latitudes  the vertices of the outline followed by those of each hole, in degrees.
+     * @param longitudes the longitudes of the same vertices.
+     * @throws IllegalArgumentException if a ring has fewer than three vertices or the latitudes
+     *                                  and longitudes do not pair up.
+     */
+    public PolygonAlarm(long id, String name, double[][] latitudes, double[][] longitudes) {
+        this(id, name, latitudes, longitudes, new Bounds(checkRings(latitudes, longitudes),
+                longitudes));
+    }
+
+    private PolygonAlarm(long id, String name, double[][] latitudes, double[][] longitudes,
+                         Bounds bounds) {
+        super(id, name, (bounds.minY + bounds.maxY) / 2,
+                wrap((bounds.minX + bounds.maxX) / 2), bounds.enclosingRadius());
+        mReferenceLongitude = bounds.referenceLongitude;
+        mMinX = bounds.minX;
+        mMinY = bounds.minY;
+        mMaxX = bounds.maxX;
+        mMaxY = bounds.maxY;
+
+        mLatitudes = new double[latitudes.length][];
+        mLongitudes = new double[latitudes.length][];
+        int edgeCount = 0;
+        for (int ring = 0; ring < latitudes.length; ring++) {
+            mLatitudes[ring] = openRing(latitudes[ring], longitudes[ring], latitudes[ring]);
+            mLongitudes[ring] = openRing(latitudes[ring], longitudes[ring], longitudes[ring]);
+            edgeCount += mLatitudes[ring].length;
+        }
+        mX1 = new double[edgeCount];
+        mY1 = new double[edgeCount];
+        mX2 = new double[edgeCount];
+        mY2 = new double[edgeCount];
+        int edge = 0;
+        for (int ring = 0; ring < mLatitudes.length; ring++) {
+            int count = mLatitudes[ring].length;
+            for (int i = 0; i < count; i++) {
+                int next = (i + 1) % count;
+                mX1[edge] = unwrap(mLongitudes[ring][i]);
+                mY1[edge] = mLatitudes[ring][i];
+                mX2[edge] = unwrap(mLongitudes[ring][next]);
+                mY2[edge] = mLatitudes[ring][next];
+                edge++;
+            }
+        }
+
+        // Cells about as wide as high on the ground.
+        double width = Math.max(mMaxX - mMinX, 1e-9) * Math.cos(Math.toRadians(latitude));
+        double height = Math.max(mMaxY - mMinY, 1e-9);
+        int cells = Math.min(MAX_CELLS, CELLS_PER_EDGE * edgeCount);
+        mColumns = Math.max(1, Math.min(cells, (int) Math.round(Math.sqrt(cells * width / height))));
+        mRows = Math.max(1, cells / mColumns);
+        mCellWidth = Math.max(mMaxX - mMinX, 1e-9) / mColumns;
+        mCellHeight = height / mRows;
+        mCenterInside = new boolean[mColumns * mRows];
+        mCellEdges = new int[mColumns * mRows][];
+        indexEdges();
+        classifyCenters();
+    }
+
+    /**
+     * Checks that the rings pair up and are closed polygons.
+     *
+     * @return the latitudes.
+     */
+    private static double[][] checkRings(double[][] latitudes, double[][] longitudes) {
+        if (latitudes.length == 0 || latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("A polygon needs an outline, got "
+                    + latitudes.length + " latitude and " + longitudes.length + " longitude rings");
+        }
+        for (int ring = 0; ring < latitudes.length; ring++) {
+            if (latitudes[ring].length != longitudes[ring].length
+                    || openRing(latitudes[ring], longitudes[ring], latitudes[ring]).length < 3) {
+                throw new IllegalArgumentException("Ring " + ring + " needs at least three vertices, got "
+                        + latitudes[ring].length + " latitudes and " + longitudes[ring].length
+                        + " longitudes");
+            }
+        }
+        return latitudes;
+    }
+
+    /**
+     * Returns a copy of the values of a ring, without the last vertex if it repeats the first.
+     */
+    private static double[] openRing(double[] latitudes, double[] longitudes, double[] values) {
+        int count = latitudes.length;
+        if (count > 1 && latitudes[0] == latitudes[count - 1]
+                && longitudes[0] == longitudes[count - 1]) {
+            count--;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Adds every edge to the cells it passes through, a row at a time.
+     */
+    private void indexEdges() {
+        int[] sizes = new int[mCellEdges.length];
+        for (int edge = 0; edge < mX1.length; edge++) {
+            double x1 = mX1[edge];
+            double y1 = mY1[edge];
+            double x2 = mX2[edge];
+            double y2 = mY2[edge];
+            int minRow = row(Math.min(y1, y2));
+            int maxRow = row(Math.max(y1, y2));
+            for (int row = minRow; row <= maxRow; row++) {
+                // The part of the edge within the row, widened a little against rounding.
+                double bottom = mMinY + row * mCellHeight - mCellHeight * 1e-6;
+                double top = mMinY + (row + 1) * mCellHeight + mCellHeight * 1e-6;
+                double xa = x1;
+                double xb = x2;
+                if (y1 != y2) {
+                    double ta = Math.max(0, Math.min(1, (bottom - y1) / (y2 - y1)));
+                    double tb = Math.max(0, Math.min(1, (top - y1) / (y2 - y1)));
+                    xa = x1 + ta * (x2 - x1);
+                    xb = x1 + tb * (x2 - x1);
+                }
+                int minColumn = column(Math.min(xa, xb) - mCellWidth * 1e-6);
+                int maxColumn = column(Math.max(xa, xb) + mCellWidth * 1e-6);
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    int cell = row * mColumns + column;
+                    int[] edges = mCellEdges[cell];
+                    if (edges == null) {
+                        edges = new int[2];
+                        mCellEdges[cell] = edges;
+                    } else if (sizes[cell] == edges.length) {
+                        edges = Arrays.copyOf(edges, edges.length * 2);
+                        mCellEdges[cell] = edges;
+                    }
+                    edges[sizes[cell]++] = edge;
+                }
+            }
+        }
+        for (int cell = 0; cell < mCellEdges.length; cell++) {
+            if (mCellEdges[cell] != null) {
+                mCellEdges[cell] = Arrays.copyOf(mCellEdges[cell], sizes[cell]);
+            }
+        }
+    }
+
+    /**
+     * Decides for every cell center whether it is inside, by sorting where the edges cross the
+     * line through the centers of each row.
+     */
+    private void classifyCenters() {
+        double[][] crossings = new double[mRows][];
+        int[] sizes = new int[mRows];
+        for (int edge = 0; edge < mX1.length; edge++) {
+            double y1 = mY1[edge];
+            double y2 = mY2[edge];
+            if (y1 == y2) {
+                continue;
+            }
+            int minRow = Math.max(0, row(Math.min(y1, y2)) - 1);
+            int maxRow = Math.min(mRows - 1, row(Math.max(y1, y2)) + 1);
+            for (int row = minRow; row <= maxRow; row++) {
+                double y = centerY(row);
+                // The same test as in contains(), so both agree on edges through a center line.
+                if ((y1 > y) != (y2 > y)) {
+                    if (crossings[row] == null) {
+                        crossings[row] = new double[4];
+                    } else if (sizes[row] == crossings[row].length) {
+                        crossings[row] = Arrays.copyOf(crossings[row], sizes[row] * 2);
+                    }
+                    crossings[row][sizes[row]++] = crossingX(edge, y);
+                }
+            }
+        }
+        for (int row = 0; row < mRows; row++) {
+            if (crossings[row] == null) {
+                continue;
+            }
+            Arrays.sort(crossings[row], 0, sizes[row]);
+            // Crossings to the left of the center; the center is inside when those to its right
+            // are odd.
+            int left = 0;
+            for (int column = 0; column < mColumns; column++) {
+                double x = centerX(column);
+                while (left < sizes[row] && crossings[row][left] <= x) {
+                    left++;
+                }
+                mCenterInside[row * mColumns + column] = ((sizes[row] - left) & 1) == 1;
+            }
+        }
+    }
+
+    public int getRingCount() {
+        return mLatitudes.length;
+    }
+
+    public int getVertexCount(int ring) {
+        return mLatitudes[ring].length;
+    }
+
+    public double getLatitude(int ring, int vertex) {
+        return mLatitudes[ring][vertex];
+    }
+
+    public double getLongitude(int ring, int vertex) {
+        return mLongitudes[ring][vertex];
+    }
+
+    public int getEdgeCount() {
+        return mX1.length;
+    }
+
+    /**
+     * Returns true if the point lies inside the outline and outside every hole.
+     */
+    public boolean contains(double latitude, double longitude) {
+        double x = unwrap(longitude);
+        double y = latitude;
+        if (x < mMinX || x > mMaxX || y < mMinY || y > mMaxY) {
+            return false;
+        }
+        int column = column(x);
+        int row = row(y);
+        int cell = row * mColumns + column;
+        boolean inside = mCenterInside[cell];
+        int[] edges = mCellEdges[cell];
+        if (edges == null) {
+            return inside;
+        }
+        // Walk from the center across to the point's longitude, then up or down to the point,
+        // flipping at every listed edge crossed. No other edge enters the cell.
+        double centerX = centerX(column);
+        double centerY = centerY(row);
+        for (int edge : edges) {
+            double x1 = mX1[edge];
+            double y1 = mY1[edge];
+            double x2 = mX2[edge];
+            double y2 = mY2[edge];
+            if ((y1 > centerY) != (y2 > centerY)) {
+                double crossing = crossingX(edge, centerY);
+                if ((crossing > centerX) != (crossing > x)) {
+                    inside = !inside;
+                }
+            }
+            if ((x1 > x) != (x2 > x)) {
+                double crossing = y1 + (x - x1) * (y2 - y1) / (x2 - x1);
+                if ((crossing > centerY) != (crossing > y)) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Returns true if the point lies inside, crossing every edge on a ray to the east. Serves to
+     * check the grid.
+     */
+    boolean containsByScan(double latitude, double longitude) {
+        double x = unwrap(longitude);
+        boolean inside = false;
+        for (int edge = 0; edge < mX1.length; edge++) {
+            if ((mY1[edge] > latitude) != (mY2[edge] > latitude)
+                    && crossingX(edge, latitude) > x) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Returns how many cells of the grid have edges passing through them.
+     */
+    int getBoundaryCellCount() {
+        int count = 0;
+        for (int[] edges : mCellEdges) {
+            if (edges != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getCellCount() {
+        return mCellEdges.length;
+    }
+
+    @Override
+    long[] cover(int bits) {
+        return GridCover.box(mMinY, mMinX, mMaxY, mMaxX, bits);
+    }
+
+    /**
+     * A margin costs a scan of every edge, only paid for fixes inside the outline.
+     */
+    @Override
+    boolean isReached(DistanceKernel kernel, double margin) {
+        if (!kernel.isWithin(this)) {
+            return false;
+        }
+        return margin <= 0 || -estimateBoundary(kernel) > margin;
+    }
+
+    /**
+     * Scans every edge, like the nearestBoundary() scan it serves.
+     */
+    @Override
+    double estimateBoundary(DistanceKernel kernel) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int edge = 0; edge < mX1.length; edge++) {
+            nearest = Math.min(nearest, kernel.estimateToSegment(mY1[edge], mX1[edge],
+                    mY2[edge], mX2[edge]));
+        }
+        return kernel.isWithin(this) ? -nearest : nearest;
+    }
+
+    private double crossingX(int edge, double y) {
+        return mX1[edge] + (y - mY1[edge]) * (mX2[edge] - mX1[edge]) / (mY2[edge] - mY1[edge]);
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(mColumns - 1, (int) ((x - mMinX) / mCellWidth)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(mRows - 1, (int) ((y - mMinY) / mCellHeight)));
+    }
+
+    private double centerX(int column) {
+        return mMinX + (column + 0.5) * mCellWidth;
+    }
+
+    private double centerY(int row) {
+        return mMinY + (row + 0.5) * mCellHeight;
+    }
+
+    private double unwrap(double longitude) {
+        return mReferenceLongitude + wrap(longitude - mReferenceLongitude);
+    }
+
+    /**
+     * Wraps a longitude or a difference of longitudes into [-180, 180].
+     */
+    private static double wrap(double longitude) {
+        if (longitude > 180.0) {
+            return longitude - 360.0;
+        }
+        if (longitude < -180.0) {
+            return longitude + 360.0;
+        }
+        return longitude;
+    }
+
+    @Override
+    public String toString() {
+        return "PolygonAlarm{" + id + ", " + name + ", " + mX1.length + " edges, "
+                + (mLatitudes.length - 1) + " holes}";
+    }
+
+    /**
+     * Bounding box of the rings, worked out before the alarm is constructed.
+     */
+    private static final class Bounds {
+        final double referenceLongitude;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        Bounds(double[][] latitudes, double[][] longitudes) {
+            referenceLongitude = longitudes[0][0];
+            for (int ring = 0; ring < latitudes.length; ring++) {
+                for (int i = 0; i < latitudes[ring].length; i++) {
+                    double x = referenceLongitude + wrap(longitudes[ring][i] - referenceLongitude);
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, latitudes[ring][i]);
+                    maxY = Math.max(maxY, latitudes[ring][i]);
+                }
+            }
+        }
+
+        /**
+         * Returns the distance in meters from the middle of the box to its corners, on the
+         * latitude where the box is widest.
+         */
+        float enclosingRadius() {
+            double widest = Math.min(Math.abs(minY), Math.abs(maxY));
+            if (minY <= 0 && maxY >= 0) {
+                widest = 0;
+            }
+            double halfWidth = (maxX - minX) / 2 * METERS_PER_DEGREE * Math.cos(Math.toRadians(widest));
+            double halfHeight = (maxY - minY) / 2 * METERS_PER_DEGREE;
+            return (float) Math.hypot(halfWidth, halfHeight);
+        }
+    }
+}
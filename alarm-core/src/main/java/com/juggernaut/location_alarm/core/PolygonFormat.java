@@ -0,0 +1,125 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes polygons as Well-Known Text, e.g.
+ * "POLYGON ((77.59 12.97, 77.60 12.97, 77.60 12.98, 77.59 12.97))", the format GIS tools and
+ * most map editors export.
+ *
+ * Coordinates are longitude first. The first ring is the outline, the others are holes. A third
+ * or fourth coordinate (Z, M) is ignored.
+ */
+public final class PolygonFormat {
+
+    private PolygonFormat() {
+    }
+
+    /**
+     * Parses a WKT POLYGON into its rings.
+     *
+     * @param latitudes  receives the latitudes of each ring.
+     * @param longitudes receives the longitudes of each ring.
+     * @throws IOException if the text is not a polygon.
+     */
+    public static void parseWkt(String wkt, List<double[]> latitudes, List<double[]> longitudes)
+            throws IOException {
+        String text = wkt.trim();
+        if (!text.regionMatches(true, 0, "POLYGON", 0, 7)) {
+            throw new IOException("Not a WKT polygon: " + abbreviate(text));
+        }
+        int i = skipWhitespace(text, 7);
+        // Dimension tags like "POLYGON Z ((...))".
+        while (i < text.length() && Character.isLetter(text.charAt(i))) {
+            i = skipWhitespace(text, i + 1);
+        }
+        i = expect(text, i, '(');
+        List<Double> ringLatitudes = new ArrayList<>();
+        List<Double> ringLongitudes = new ArrayList<>();
+        while (true) {
+            i = expect(text, i, '(');
+            ringLatitudes.clear();
+            ringLongitudes.clear();
+            while (true) {
+                int start = i;
+                List<Double> values = new ArrayList<>(2);
+                while (i < text.length() && text.charAt(i) != ',' && text.charAt(i) != ')') {
+                    i++;
+                }
+                for (String value : text.substring(start, i).trim().split("\\s+")) {
+                    try {
+                        values.add(Double.parseDouble(value));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Malformed coordinate " + value + " in WKT polygon");
+                    }
+                }
+                if (values.size() < 2) {
+                    throw new IOException("Coordinate without latitude in WKT polygon");
+                }
+                ringLongitudes.add(values.get(0));
+                ringLatitudes.add(values.get(1));
+                if (i >= text.length() || text.charAt(i) == ')') {
+                    break;
+                }
+                i++;
+            }
+            i = expect(text, i, ')');
+            latitudes.add(toArray(ringLatitudes));
+            longitudes.add(toArray(ringLongitudes));
+            if (i < text.length() && text.charAt(i) == ',') {
+                i = skipWhitespace(text, i + 1);
+            } else {
+                break;
+            }
+        }
+        expect(text, i, ')');
+    }
+
+    /**
+     * Formats the rings of a polygon as a WKT POLYGON, closing every ring.
+     */
+    public static String formatWkt(PolygonAlarm polygon) {
+        StringBuilder wkt = new StringBuilder("POLYGON (");
+        for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+            wkt.append(ring == 0 ? "(" : ", (");
+            for (int i = 0; i <= polygon.getVertexCount(ring); i++) {
+                int vertex = i % polygon.getVertexCount(ring);
+                if (i > 0) {
+                    wkt.append(", ");
+                }
+                wkt.append(polygon.getLongitude(ring, vertex)).append(' ')
+                        .append(polygon.getLatitude(ring, vertex));
+            }
+            wkt.append(')');
+        }
+        return wkt.append(')').toString();
+    }
+
+    private static int expect(String text, int i, char c) throws IOException {
+        if (i >= text.length() || text.charAt(i) != c) {
+            throw new IOException("Expected '" + c + "' at " + i + " in WKT polygon");
+        }
+        return skipWhitespace(text, i + 1);
+    }
+
+    private static int skipWhitespace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static double[] toArray(List<Double> values) {
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() <= 20 ? text : text.substring(0, 20) + "...";
+    }
+}
@@ -0,0 +1,501 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a trace through the alarm pipeline on a plain JVM and scores the alarms it triggers
+ * against labelled expectations.
+ *
+ * The replay wires a ReplayLocationSource, the AlarmPipeline with its fix filter and scheduler and
+ * the TripController the same way LocationUpdatesService does, and runs in trace time as fast as
+ * the CPU allows. An alarm counts as triggered at the time its batch was delivered, so batching
+ * delays show up in the score. Far from every alarm, location updates sleep behind the wake rings
+ * like they do in the service, so a ring too small for the trip shows up as a late or missed
+ * alarm.
+ */
+public class ReplayHarness {
+
+    /**
+     * Expected trigger time of an alarm that must not ring.
+     */
+    public static final long NEVER = -1;
+
+    /**
+     * Default tolerance around the expected trigger time, in milliseconds.
+     */
+    public static final long DEFAULT_TOLERANCE = 30000;
+
+    public enum Outcome {
+        ON_TIME, EARLY, LATE, MISSED, FALSE_TRIGGER, SILENT
+    }
+
+    /**
+     * A labelled alarm and what the replay made of it.
+     */
+    public static final class Expectation {
+        public final Alarm alarm;
+
+        /**
+         * Trace time the alarm is armed at, or NEVER if armed from the start.
+         */
+        public final long armTime;
+
+        /**
+         * Time the alarm should ring, or NEVER.
+         */
+        public final long expectedTime;
+
+        /**
+         * Time the alarm rang in the replay, or NEVER.
+         */
+        public long triggerTime = NEVER;
+
+        public Outcome outcome;
+
+        Expectation(Alarm alarm, long armTime, long expectedTime) {
+            this.alarm = alarm;
+            this.armTime = armTime;
+            this.expectedTime = expectedTime;
+        }
+    }
+
+    /**
+     * Throughput and accuracy of one replay.
+     */
+    public static final class Report {
+        public long fixesRead;
+        public long fixesProcessed;
+        public long fixesRejected;
+        public long batches;
+        public int tierChanges;
+        public int prewarms;
+        public int wakeUps;
+        public long sleepMillis;
+        public long elapsedNanos;
+        public List<Expectation> expectations;
+
+        public double getFixesPerSecond() {
+            return elapsedNanos == 0 ? 0 : fixesRead * 1e9 / elapsedNanos;
+        }
+
+        public int count(Outcome outcome) {
+            int count = 0;
+            for (Expectation expectation : expectations) {
+                if (expectation.outcome == outcome) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Returns the mean delay between expected and actual trigger time of the alarms that
+         * were expected and rang, in milliseconds, negative when early.
+         */
+        public double getMeanTriggerDelay() {
+            long total = 0;
+            int count = 0;
+            for (Expectation expectation : expectations) {
+                if (expectation.expectedTime != NEVER && expectation.triggerTime != NEVER) {
+                    total += expectation.triggerTime - expectation.expectedTime;
+                    count++;
+                }
+            }
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d fixes read, %d processed in %d batches, %d rejected, %.0f fixes/s%n"
+                            + "%d tier changes, %d prewarms, %d wake ups, %.0f s asleep%n"
+                            + "%d on time, %d early, %d late, %d missed, %d false, %d silent, "
+                            + "mean delay %.0f ms",
+                    fixesRead, fixesProcessed, batches, fixesRejected, getFixesPerSecond(), tierChanges,
+                    prewarms, wakeUps, sleepMillis / 1000.0, count(Outcome.ON_TIME), count(Outcome.EARLY),
+                    count(Outcome.LATE), count(Outcome.MISSED), count(Outcome.FALSE_TRIGGER),
+                    count(Outcome.SILENT), getMeanTriggerDelay());
+        }
+    }
+
+    private final AlarmRegistry mRegistry = new AlarmRegistry();
+
+    private final List<Expectation> mExpectations = new ArrayList<>();
+
+    /**
+     * Id given to the next alarm.
+     */
+    private long mNextId = 1;
+
+    private final long mTolerance;
+
+    private boolean mEveryFix;
+
+    private boolean mBatching = true;
+
+    private boolean mFiltering = true;
+
+    private double mConfidence = TriggerModel.DEFAULT_CONFIDENCE;
+
+    private boolean mSleeping = true;
+
+    /**
+     * @param tolerance accepted distance from the expected trigger time, in milliseconds.
+     */
+    public ReplayHarness(long tolerance) {
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Passes every fix of the trace to the pipeline instead of only those at the requested
+     * interval, to measure raw throughput. Location updates never sleep then.
+     */
+    public void setEveryFix(boolean everyFix) {
+        mEveryFix = everyFix;
+    }
+
+    /**
+     * Lets the scheduler batch fixes like the service does, on by default.
+     */
+    public void setBatching(boolean batching) {
+        mBatching = batching;
+    }
+
+    /**
+     * Conditions the fixes through a FixFilter like the service does, on by default.
+     */
+    public void setFiltering(boolean filtering) {
+        mFiltering = filtering;
+    }
+
+    /**
+     * Sets the probability of being inside an alarm at which it triggers, like the service does,
+     * 0 to trigger on any fix inside.
+     */
+    public void setConfidence(double confidence) {
+        mConfidence = confidence;
+    }
+
+    /**
+     * Lets location updates sleep behind the wake rings far from every alarm like the service
+     * does, on by default.
+     */
+    public void setSleeping(boolean sleeping) {
+        mSleeping = sleeping;
+    }
+
+    /**
+     * Arms an alarm for the replay.
+     *
+     * @param expectedTime time it should ring in milliseconds since the epoch, or NEVER.
+     */
+    public void expect(String name, double latitude, double longitude, float radius, long expectedTime) {
+        Alarm alarm = new Alarm(mNextId++, name, latitude, longitude, radius);
+        mRegistry.add(alarm);
+        mExpectations.add(new Expectation(alarm, NEVER, expectedTime));
+    }
+
+    /**
+     * Arms an alarm once the replay reaches the given trace time, like a user arming it on the
+     * way. Location updates take over from the wake rings then, like they do in the service.
+     *
+     * @param armTime      trace time to arm the alarm at, in milliseconds since the epoch.
+     * @param expectedTime time it should ring in milliseconds since the epoch, or NEVER.
+     */
+    public void expectArmedAt(long armTime, String name, double latitude, double longitude,
+                              float radius, long expectedTime) {
+        Alarm alarm = new Alarm(mNextId++, name, latitude, longitude, radius);
+        mExpectations.add(new Expectation(alarm, armTime, expectedTime));
+    }
+
+    /**
+     * Reads labelled alarms from comma separated lines:
+     *
+     * <pre>
+     * name,latitude,longitude,radius,expected_time
+     * </pre>
+     *
+     * An empty expected time means the alarm must not ring. Empty lines, lines starting with '#'
+     * and a header line starting with "name" are skipped.
+     */
+    public void readLabels(Reader labels) throws IOException {
+        BufferedReader reader = new BufferedReader(labels);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#' || line.startsWith("name")) {
+                continue;
+            }
+            String[] columns = line.split(",", -1);
+            if (columns.length < 5) {
+                throw new IOException("Expected name,latitude,longitude,radius,expected_time: " + line);
+            }
+            try {
+                String expected = columns[4].trim();
+                expect(columns[0].trim(), Double.parseDouble(columns[1].trim()),
+                        Double.parseDouble(columns[2].trim()), Float.parseFloat(columns[3].trim()),
+                        expected.isEmpty() ? NEVER : Long.parseLong(expected));
+            } catch (NumberFormatException e) {
+                throw new IOException(e.getMessage() + ": " + line);
+            }
+        }
+    }
+
+    /**
+     * Replays the trace until it ends or every alarm has rung.
+     */
+    public Report run(TraceReader trace) throws IOException {
+        Replay replay = new Replay(trace);
+        Report report = replay.mReport;
+
+        long start = System.nanoTime();
+        mRegistry.addListener(replay.mRegistryListener);
+        try {
+            replay.start();
+            replay.mSource.run();
+        } finally {
+            mRegistry.removeListener(replay.mRegistryListener);
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+
+        report.fixesRead = replay.mSource.getFixesRead();
+        report.fixesProcessed = replay.mPipeline.getFixCount();
+        if (replay.mPipeline.getFilter() != null) {
+            report.fixesRejected = replay.mPipeline.getFilter().getRejectedCount();
+        }
+        report.batches = replay.mSource.getBatches();
+        report.wakeUps = replay.mSource.getWakeUps();
+        report.sleepMillis = replay.mSource.getSleepTime();
+        for (Expectation expectation : mExpectations) {
+            expectation.outcome = score(expectation);
+        }
+        report.expectations = Collections.unmodifiableList(new ArrayList<>(mExpectations));
+        return report;
+    }
+
+    /**
+     * Replays a trace file off-device and prints the report:
+     *
+     * <pre>
+     * ReplayHarness [--every-fix] [--no-batching] [--no-filter] [--no-sleep]
+     *               [--confidence p] [--tolerance ms] trace.(csv|gpx) [labels.csv]
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        long tolerance = DEFAULT_TOLERANCE;
+        boolean everyFix = false;
+        boolean batching = true;
+        boolean filtering = true;
+        boolean sleeping = true;
+        double confidence = TriggerModel.DEFAULT_CONFIDENCE;
+        String trace = null;
+        String labels = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--every-fix")) {
+                everyFix = true;
+            } else if (args[i].equals("--no-batching")) {
+                batching = false;
+            } else if (args[i].equals("--no-filter")) {
+                filtering = false;
+            } else if (args[i].equals("--no-sleep")) {
+                sleeping = false;
+            } else if (args[i].equals("--confidence") && i + 1 < args.length) {
+                confidence = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--tolerance") && i + 1 < args.length) {
+                tolerance = Long.parseLong(args[++i]);
+            } else if (trace == null) {
+                trace = args[i];
+            } else {
+                labels = args[i];
+            }
+        }
+        if (trace == null) {
+            System.err.println("Usage: ReplayHarness [--every-fix] [--no-batching] [--no-filter] "
+                    + "[--no-sleep] [--confidence p] [--tolerance ms] trace.(csv|gpx) [labels.csv]");
+            System.exit(2);
+            return;
+        }
+
+        ReplayHarness harness = new ReplayHarness(tolerance);
+        harness.setEveryFix(everyFix);
+        harness.setBatching(batching);
+        harness.setFiltering(filtering);
+        harness.setSleeping(sleeping);
+        harness.setConfidence(confidence);
+        if (labels != null) {
+            try (Reader reader = open(labels)) {
+                harness.readLabels(reader);
+            }
+        }
+        Reader reader = open(trace);
+        try (TraceReader traceReader = trace.endsWith(".gpx")
+                ? new GpxTraceReader(reader) : new CsvTraceReader(reader)) {
+            System.out.println(harness.run(traceReader));
+        }
+    }
+
+    private static Reader open(String path) throws IOException {
+        return new InputStreamReader(new FileInputStream(path), Charset.forName("UTF-8"));
+    }
+
+    private Outcome score(Expectation expectation) {
+        if (expectation.expectedTime == NEVER) {
+            return expectation.triggerTime == NEVER ? Outcome.SILENT : Outcome.FALSE_TRIGGER;
+        }
+        if (expectation.triggerTime == NEVER) {
+            return Outcome.MISSED;
+        }
+        long delay = expectation.triggerTime - expectation.expectedTime;
+        return delay < -mTolerance ? Outcome.EARLY : delay > mTolerance ? Outcome.LATE : Outcome.ON_TIME;
+    }
+
+    /**
+     * State of one replay, wired like the service: the source feeds the pipeline, the pipeline
+     * adjusts the source's request and the trip controller decides when to sleep. The wake rings
+     * are assumed to register right away.
+     */
+    private final class Replay implements LocationSource.Callback, AlarmPipeline.Listener,
+            TripController.Listener {
+
+        final Report mReport = new Report();
+
+        final LocationRequestScheduler mScheduler = new LocationRequestScheduler(mRegistry);
+
+        final ReplayLocationSource mSource;
+
+        final AlarmPipeline mPipeline = new AlarmPipeline(mRegistry, mScheduler, this);
+
+        final TripController mController = new TripController(mRegistry, mPipeline,
+                new ApproachMonitor(ApproachMonitor.DEFAULT_DISTANCE, ApproachMonitor.DEFAULT_SECONDS), this);
+
+        /**
+         * Alarms still to be armed, in the order they were expected.
+         */
+        final List<Expectation> mUnarmed = new ArrayList<>();
+
+        Replay(final TraceReader trace) {
+            for (Expectation expectation : mExpectations) {
+                if (expectation.armTime != NEVER) {
+                    mUnarmed.add(expectation);
+                }
+            }
+            // Arms the alarms due at a fix before the source sees it.
+            mSource = new ReplayLocationSource(new TraceReader() {
+                @Override
+                public Fix next() throws IOException {
+                    Fix fix = trace.next();
+                    if (fix != null) {
+                        armDueAlarms(fix.time);
+                    }
+                    return fix;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    trace.close();
+                }
+            }, mEveryFix);
+            mScheduler.setBatching(mBatching);
+            if (mFiltering) {
+                mPipeline.setFilter(new FixFilter());
+            }
+            if (mConfidence > 0) {
+                mPipeline.setTriggerModel(new TriggerModel(mConfidence, TriggerModel.DEFAULT_AMBIGUITY));
+            }
+            mController.setSleepEnabled(mSleeping && !mEveryFix);
+        }
+
+        void start() {
+            mController.start();
+            mSource.requestUpdates(mScheduler.getTier(), mScheduler.getMaxWaitTime(), this);
+        }
+
+        @Override
+        public void onFixes(List<Fix> fixes) {
+            for (int i = 0; i < fixes.size(); i++) {
+                mPipeline.onFix(fixes.get(i));
+            }
+            mController.onFixesProcessed(fixes.get(fixes.size() - 1));
+
+            // The service stops monitoring once every alarm has rung.
+            if (mRegistry.isEmpty() && mUnarmed.isEmpty()) {
+                mController.stop();
+                mSource.removeUpdates();
+            }
+        }
+
+        @Override
+        public void onAlarmTriggered(Alarm alarm, Fix fix) {
+            for (Expectation expectation : mExpectations) {
+                if (expectation.alarm.id == alarm.id) {
+                    expectation.triggerTime = mSource.getTime();
+                }
+            }
+        }
+
+        @Override
+        public void onTierChanged(LocationRequestScheduler.Tier tier, long previousMaxWaitTime) {
+            mReport.tierChanges++;
+            onRequestUpdates(previousMaxWaitTime);
+        }
+
+        @Override
+        public void onApproachChanged(boolean approaching) {
+            if (approaching) {
+                mReport.prewarms++;
+            }
+        }
+
+        @Override
+        public void onSleep(List<Alarm> alarms, float speed) {
+            mSource.sleep(alarms, speed, mWake);
+        }
+
+        @Override
+        public void onRequestUpdates(long previousMaxWaitTime) {
+            mSource.requestUpdates(mScheduler.getTier(), mScheduler.getMaxWaitTime(), this);
+            if (mScheduler.getMaxWaitTime() < previousMaxWaitTime) {
+                mSource.flush();
+            }
+        }
+
+        private void armDueAlarms(long time) {
+            for (int i = 0; i < mUnarmed.size(); i++) {
+                if (mUnarmed.get(i).armTime <= time) {
+                    mRegistry.add(mUnarmed.remove(i--).alarm);
+                }
+            }
+        }
+
+        final AlarmRegistry.Listener mRegistryListener = new AlarmRegistry.Listener() {
+            @Override
+            public void onAlarmAdded(Alarm alarm) {
+                mController.onAlarmAdded();
+            }
+
+            @Override
+            public void onAlarmRemoved(Alarm alarm) {
+            }
+
+            @Override
+            public void onAlarmsCleared() {
+            }
+        };
+
+        private final Runnable mWake = new Runnable() {
+            @Override
+            public void run() {
+                mController.onRingEntered();
+            }
+        };
+    }
+}
@@ -0,0 +1,217 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LocationSource replaying a recorded trace as fast as the consumer keeps up, in trace time.
+ *
+ * Like the fused provider, it only passes on fixes at the requested interval and holds them back
+ * for up to the max wait time before delivering them as a batch. Requests made from the callback
+ * take effect for the following fixes.
+ *
+ * While sleeping, no fix is passed on until the trace enters one of the wake rings, and only
+ * WakeRings.RESPONSIVENESS later, the longest the platform may take to report it, or until
+ * updates are requested again.
+ */
+public class ReplayLocationSource implements LocationSource {
+
+    private final TraceReader mTrace;
+
+    /**
+     * True to pass on every fix of the trace regardless of the requested interval.
+     */
+    private final boolean mEveryFix;
+
+    private Callback mCallback;
+    private LocationRequestScheduler.Tier mTier;
+    private long mMaxWaitTime;
+
+    /**
+     * Fixes held back for the current batch.
+     */
+    private final List<Fix> mPending = new ArrayList<>();
+
+    /**
+     * Batch handed to the callback, separate from mPending so the callback may flush.
+     */
+    private final List<Fix> mBatch = new ArrayList<>();
+
+    /**
+     * Time of the last fix passed on, the time of the replay.
+     */
+    private long mTime = Long.MIN_VALUE;
+
+    /**
+     * Time of the last fix read from the trace, passed on or not.
+     */
+    private long mReadTime = Long.MIN_VALUE;
+
+    /**
+     * Wake rings while sleeping, null while awake.
+     */
+    private List<Alarm> mRings;
+    private float mRingSpeed;
+    private Runnable mOnWake;
+    private final DistanceKernel mRingKernel = new DistanceKernel();
+
+    /**
+     * Trace time the wake up is reported at, or Long.MAX_VALUE until a ring is entered.
+     */
+    private long mWakeTime;
+    private long mSleepStart;
+    private long mSleepTime;
+    private int mWakeUps;
+
+    private long mFixesRead;
+    private long mFixesDelivered;
+    private long mBatches;
+
+    /**
+     * @param everyFix true to ignore the requested interval, e.g. to push as many fixes as
+     *                 possible through the pipeline.
+     */
+    public ReplayLocationSource(TraceReader trace, boolean everyFix) {
+        mTrace = trace;
+        mEveryFix = everyFix;
+    }
+
+    @Override
+    public void requestUpdates(LocationRequestScheduler.Tier tier, long maxWaitTime,
+                               Callback callback) {
+        if (mRings != null) {
+            // Sleeping, take over right away.
+            mSleepTime += mReadTime - mSleepStart;
+            mRings = null;
+            mTime = Long.MIN_VALUE;
+        }
+        mTier = tier;
+        mMaxWaitTime = maxWaitTime;
+        mCallback = callback;
+    }
+
+    @Override
+    public void removeUpdates() {
+        mCallback = null;
+        mPending.clear();
+    }
+
+    @Override
+    public void flush() {
+        deliver();
+    }
+
+    /**
+     * Stops passing on fixes until the trace enters the wake ring of one of the alarms.
+     *
+     * @param speed  speed in m/s the rings are sized for.
+     * @param onWake runs once the platform would report entering a ring, to request updates
+     *               again.
+     */
+    public void sleep(List<Alarm> alarms, float speed, Runnable onWake) {
+        // Like removing the updates, fixes held back are dropped.
+        mPending.clear();
+        mRings = new ArrayList<>(alarms);
+        mRingSpeed = speed;
+        mOnWake = onWake;
+        mWakeTime = Long.MAX_VALUE;
+        mSleepStart = mTime;
+    }
+
+    /**
+     * Replays the trace until it ends or the updates are removed, then delivers what is left.
+     */
+    public void run() throws IOException {
+        Fix fix;
+        while (mCallback != null && (fix = mTrace.next()) != null) {
+            mFixesRead++;
+            mReadTime = fix.time;
+            if (mRings != null && !wakes(fix)) {
+                continue;
+            }
+            if (!mEveryFix && mTime != Long.MIN_VALUE && fix.time - mTime < mTier.interval) {
+                continue;
+            }
+            mTime = fix.time;
+            mPending.add(fix);
+            if (fix.time - mPending.get(0).time >= mMaxWaitTime) {
+                deliver();
+            }
+        }
+        deliver();
+    }
+
+    /**
+     * Returns the time of the most recent fix passed on, in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    /**
+     * Returns the trace time spent sleeping, in milliseconds.
+     */
+    public long getSleepTime() {
+        return mSleepTime;
+    }
+
+    /**
+     * Returns the number of sleeps ended by entering a wake ring.
+     */
+    public int getWakeUps() {
+        return mWakeUps;
+    }
+
+    public long getFixesRead() {
+        return mFixesRead;
+    }
+
+    public long getFixesDelivered() {
+        return mFixesDelivered;
+    }
+
+    public long getBatches() {
+        return mBatches;
+    }
+
+    /**
+     * Returns true once the wake up of a sleep is reported at a fix, after running onWake.
+     */
+    private boolean wakes(Fix fix) {
+        if (mWakeTime == Long.MAX_VALUE) {
+            mRingKernel.setOrigin(fix.latitude, fix.longitude);
+            for (int i = 0; i < mRings.size(); i++) {
+                Alarm alarm = mRings.get(i);
+                if (mRingKernel.estimate(alarm) < WakeRings.getRadius(alarm, mRingSpeed)) {
+                    mWakeTime = fix.time + WakeRings.RESPONSIVENESS;
+                    break;
+                }
+            }
+        }
+        if (fix.time < mWakeTime) {
+            return false;
+        }
+        mSleepTime += fix.time - mSleepStart;
+        mWakeUps++;
+        mRings = null;
+        // Take over like the service, with a new request.
+        mTime = Long.MIN_VALUE;
+        mOnWake.run();
+        return true;
+    }
+
+    private void deliver() {
+        if (mPending.isEmpty() || mCallback == null) {
+            return;
+        }
+        mBatch.clear();
+        for (int i = 0; i < mPending.size(); i++) {
+            mBatch.add(mPending.get(i));
+        }
+        mPending.clear();
+        mFixesDelivered += mBatch.size();
+        mBatches++;
+        mCallback.onFixes(mBatch);
+    }
+}
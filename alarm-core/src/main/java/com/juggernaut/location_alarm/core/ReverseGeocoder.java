@@ -0,0 +1,272 @@
+package com.juggernaut.location_alarm.core;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Resolves place names for coordinates without ever blocking the caller.
+ *
+ * Names are cached per geohash cell of roughly 150 m x 150 m in an LRU cache that is also written
+ * to a small file, so it survives restarts. A cache miss answers with the last known name right
+ * away and starts a lookup on the given executor; concurrent misses for the same cell share a
+ * single lookup. The listener is told when a lookup completes.
+ *
+ * With an offline lookup, e.g. a PlaceIndex, a cache miss is answered with its name right away
+ * and the blocking lookup only refines it.
+ */
+public class ReverseGeocoder {
+
+    /**
+     * Blocking lookup of a place name, e.g. backed by the platform Geocoder.
+     */
+    public interface Lookup {
+        /**
+         * @return the name of the place, or null if there is none.
+         */
+        String getLocationName(double latitude, double longitude) throws IOException;
+    }
+
+    /**
+     * Notified on the lookup executor once a name has been resolved.
+     */
+    public interface Listener {
+        void onLocationNameResolved(String name);
+    }
+
+    /**
+     * Geohash length of a cache cell.
+     */
+    static final int CELL_PRECISION = 7;
+
+    /**
+     * Number of names kept in memory and on disk.
+     */
+    static final int CACHE_SIZE = 256;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Lookup mLookup;
+
+    /**
+     * Answers cache misses in place, fast enough to run on the caller's thread. May be null.
+     */
+    private Lookup mOfflineLookup;
+
+    private final Executor mExecutor;
+
+    private final File mCacheFile;
+
+    private Listener mListener;
+
+    /**
+     * Names by geohash cell, least recently used first.
+     */
+    private final LinkedHashMap<String, String> mCache =
+            new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    /**
+     * Cells with a lookup queued or running.
+     */
+    private final Set<String> mInFlight = new HashSet<>();
+
+    /**
+     * Most recently resolved or cached name, shown while a new lookup runs.
+     */
+    private String mLastKnownName;
+
+    private int mLookups;
+    private int mFailures;
+
+    /**
+     * @param lookup    performs the blocking lookups, may be null to only use the offline lookup.
+     * @param executor  runs the lookups and the disk I/O, usually a single background thread.
+     * @param cacheFile file the cache is loaded from and saved to, may be null.
+     */
+    public ReverseGeocoder(Lookup lookup, Executor executor, File cacheFile) {
+        mLookup = lookup;
+        mExecutor = executor;
+        mCacheFile = cacheFile;
+        if (cacheFile != null) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load();
+                }
+            });
+        }
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the lookup that answers cache misses right away, null for none.
+     */
+    public synchronized void setOfflineLookup(Lookup offlineLookup) {
+        mOfflineLookup = offlineLookup;
+    }
+
+    /**
+     * Returns the cached name for the given coordinates, or else the offline name or the last
+     * known name while a lookup runs in the background. Never blocks.
+     *
+     * @return the name, or null if nothing has been resolved yet.
+     */
+    public synchronized String getLocationName(final double latitude, final double longitude) {
+        final String cell = Geohash.toBase32(latitude, longitude, CELL_PRECISION);
+        String name = mCache.get(cell);
+        if (name != null) {
+            mLastKnownName = name;
+            return name;
+        }
+        if (mOfflineLookup != null) {
+            try {
+                name = mOfflineLookup.getLocationName(latitude, longitude);
+            } catch (IOException e) {
+                mFailures++;
+            }
+            if (name != null) {
+                mLastKnownName = name;
+            }
+        }
+        if (mLookup != null && mInFlight.add(cell)) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    resolve(cell, latitude, longitude);
+                }
+            });
+        }
+        return mLastKnownName;
+    }
+
+    public synchronized int getLookupCount() {
+        return mLookups;
+    }
+
+    public synchronized int getFailureCount() {
+        return mFailures;
+    }
+
+    /**
+     * Runs on the executor: looks the cell up unless the disk cache already had it.
+     */
+    private void resolve(String cell, double latitude, double longitude) {
+        String name;
+        synchronized (this) {
+            name = mCache.get(cell);
+        }
+        boolean resolved = false;
+        if (name == null) {
+            try {
+                synchronized (this) {
+                    mLookups++;
+                }
+                name = mLookup.getLocationName(latitude, longitude);
+                resolved = name != null;
+            } catch (IOException e) {
+                synchronized (this) {
+                    mFailures++;
+                }
+            }
+        }
+
+        Listener listener;
+        synchronized (this) {
+            mInFlight.remove(cell);
+            if (name == null) {
+                return;
+            }
+            mCache.put(cell, name);
+            mLastKnownName = name;
+            listener = mListener;
+        }
+        if (resolved) {
+            save();
+        }
+        if (listener != null) {
+            listener.onLocationNameResolved(name);
+        }
+    }
+
+    /**
+     * Runs on the executor: reads the cache file, entries stored least recently used first.
+     */
+    private void load() {
+        if (!mCacheFile.exists()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(mCacheFile), UTF_8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        synchronized (this) {
+                            mCache.put(line.substring(0, tab), line.substring(tab + 1));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // A broken cache only costs a few lookups.
+            mCacheFile.delete();
+        }
+    }
+
+    /**
+     * Runs on the executor: rewrites the cache file through a temporary file.
+     */
+    private void save() {
+        if (mCacheFile == null) {
+            return;
+        }
+        StringBuilder contents = new StringBuilder();
+        synchronized (this) {
+            for (Map.Entry<String, String> entry : mCache.entrySet()) {
+                contents.append(entry.getKey()).append('\t')
+                        .append(entry.getValue().replace('\n', ' ').replace('\t', ' '))
+                        .append('\n');
+            }
+        }
+        File temporary = new File(mCacheFile.getPath() + ".tmp");
+        try {
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(temporary), UTF_8));
+            try {
+                writer.write(contents.toString());
+            } finally {
+                writer.close();
+            }
+            if (!temporary.renameTo(mCacheFile)) {
+                temporary.delete();
+            }
+        } catch (IOException e) {
+            temporary.delete();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the fixes of a recorded trace one at a time, oldest first.
+ */
+public interface TraceReader extends Closeable {
+
+    /**
+     * @return the next fix, or null at the end of the trace.
+     * @throws IOException if the trace can not be read or is malformed.
+     */
+    Fix next() throws IOException;
+}
@@ -0,0 +1,222 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recorded path prepared for drawing at any zoom level.
+ *
+ * The points are simplified with Douglas-Peucker to a tolerance of TOLERANCE_PIXELS at the
+ * current zoom level, so a long trip seen from afar collapses to a handful of vertices. The
+ * result is cached per zoom level until the track grows. Only the runs of the simplified track
+ * that cross the viewport are handed out for drawing.
+ */
+public final class Track {
+
+    /**
+     * Largest distance in pixels between the drawn and the recorded path.
+     */
+    public static final double TOLERANCE_PIXELS = 1.0;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+
+    /**
+     * Normalized Mercator coordinates of the points, see Viewport.
+     */
+    private double[] mXs = new double[INITIAL_CAPACITY];
+    private double[] mYs = new double[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    /**
+     * Bounding box of all points.
+     */
+    private double mMinX = Double.MAX_VALUE;
+    private double mMinY = Double.MAX_VALUE;
+    private double mMaxX = -Double.MAX_VALUE;
+    private double mMaxY = -Double.MAX_VALUE;
+
+    /**
+     * Indices of the points kept at mSimplifiedLevel, valid while mSimplifiedSize equals mSize.
+     */
+    private int[] mKept = new int[INITIAL_CAPACITY];
+    private int mKeptCount;
+    private int mSimplifiedLevel = -1;
+    private int mSimplifiedSize = -1;
+
+    /**
+     * Work arrays of simplify().
+     */
+    private boolean[] mKeep = new boolean[INITIAL_CAPACITY];
+    private int[] mStack = new int[2 * INITIAL_CAPACITY];
+
+    public void append(double latitude, double longitude) {
+        if (mSize == mLatitudes.length) {
+            int capacity = mSize * 2;
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mXs = Arrays.copyOf(mXs, capacity);
+            mYs = Arrays.copyOf(mYs, capacity);
+        }
+        double x = Viewport.x(longitude);
+        double y = Viewport.y(latitude);
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mXs[mSize] = x;
+        mYs[mSize] = y;
+        mSize++;
+        mMinX = Math.min(mMinX, x);
+        mMinY = Math.min(mMinY, y);
+        mMaxX = Math.max(mMaxX, x);
+        mMaxY = Math.max(mMaxY, y);
+    }
+
+    public void clear() {
+        mSize = 0;
+        mSimplifiedSize = -1;
+        mMinX = Double.MAX_VALUE;
+        mMinY = Double.MAX_VALUE;
+        mMaxX = -Double.MAX_VALUE;
+        mMaxY = -Double.MAX_VALUE;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public double getLatitude(int index) {
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return mLongitudes[index];
+    }
+
+    /**
+     * Returns whether any point of the track could lie in the viewport.
+     */
+    public boolean intersects(Viewport viewport) {
+        return mSize > 0 && viewport.intersects(mMinX, mMinY, mMaxX, mMaxY);
+    }
+
+    /**
+     * Collects the parts of the simplified track that cross the viewport, each as the indices of
+     * its points in this track. Parts of a single point are left out, they draw nothing.
+     *
+     * @param zoom camera zoom level, the fraction is ignored.
+     */
+    public void getVisibleRuns(float zoom, Viewport viewport, List<int[]> runs) {
+        if (!intersects(viewport)) {
+            return;
+        }
+        int count = simplify((int) zoom);
+        int start = -1;
+        for (int k = 0; k + 1 < count; k++) {
+            int a = mKept[k];
+            int b = mKept[k + 1];
+            boolean visible = viewport.intersects(Math.min(mXs[a], mXs[b]), Math.min(mYs[a], mYs[b]),
+                    Math.max(mXs[a], mXs[b]), Math.max(mYs[a], mYs[b]));
+            if (visible && start < 0) {
+                start = k;
+            } else if (!visible && start >= 0) {
+                runs.add(Arrays.copyOfRange(mKept, start, k + 1));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            runs.add(Arrays.copyOfRange(mKept, start, count));
+        }
+    }
+
+    /**
+     * Simplifies the track for a zoom level into mKept, or reuses the last result.
+     *
+     * @return the number of points kept.
+     */
+    int simplify(int level) {
+        if (level == mSimplifiedLevel && mSize == mSimplifiedSize) {
+            return mKeptCount;
+        }
+        if (mKept.length < mSize) {
+            mKept = new int[mLatitudes.length];
+            mKeep = new boolean[mLatitudes.length];
+            mStack = new int[2 * mLatitudes.length];
+        }
+        mKeptCount = simplify(mXs, mYs, mSize, TOLERANCE_PIXELS / Viewport.worldPixels(level),
+                mKeep, mStack, mKept);
+        mSimplifiedLevel = level;
+        mSimplifiedSize = mSize;
+        return mKeptCount;
+    }
+
+    /**
+     * Douglas-Peucker without recursion, a track of thousands of points would overflow the stack.
+     *
+     * @param keep  work array of at least count elements.
+     * @param stack work array of at least 2 * count elements.
+     * @param kept  receives the indices of the kept points in order.
+     * @return the number of points kept.
+     */
+    static int simplify(double[] xs, double[] ys, int count, double tolerance, boolean[] keep,
+                        int[] stack, int[] kept) {
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) {
+                kept[i] = i;
+            }
+            return count;
+        }
+        Arrays.fill(keep, 0, count, false);
+        keep[0] = true;
+        keep[count - 1] = true;
+        double toleranceSquared = tolerance * tolerance;
+
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double max = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSquared(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int keptCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept[keptCount++] = i;
+            }
+        }
+        return keptCount;
+    }
+
+    /**
+     * Returns the squared distance of a point from the segment between a and b.
+     */
+    static double segmentDistanceSquared(double x, double y, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - ax) * dx + (y - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x - (ax + t * dx);
+        double ey = y - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
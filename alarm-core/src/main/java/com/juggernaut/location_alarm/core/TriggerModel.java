@@ -0,0 +1,170 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Decides from the accuracy of a fix, not only its distance, whether an alarm is reached.
+ *
+ * The true position is taken as normally distributed around the fix with the standard deviation
+ * sigma along every axis. Near a boundary the probability that it lies inside the trigger area is
+ * then Phi(-boundary / sigma), boundary being the signed distance from the fix to the edge. An
+ * alarm triggers once that probability reaches the confidence, i.e. once the fix is inside by
+ * more than getTriggerMargin(sigma). A fix 5 m accurate triggers almost at the edge, one 500 m
+ * accurate only deep inside a large alarm.
+ *
+ * The trigger is ambiguous while the closest alarm has at least the ambiguity probability of
+ * being reached without being confirmed, the caller then asks for high accuracy fixes to settle
+ * it. It stays ambiguous until the probability drops below LEAVE_FACTOR times the ambiguity, so a
+ * fix wandering around the threshold does not toggle the request.
+ */
+public class TriggerModel {
+
+    /**
+     * Probability of being inside an alarm at which it triggers, by default.
+     */
+    public static final double DEFAULT_CONFIDENCE = 0.9;
+
+    /**
+     * Probability of being inside an alarm from which high accuracy fixes are asked for, by
+     * default.
+     */
+    public static final double DEFAULT_AMBIGUITY = 0.01;
+
+    /**
+     * Factor applied to the ambiguity before it ends.
+     */
+    static final double LEAVE_FACTOR = 0.1;
+
+    /**
+     * Ratio of the standard deviation per axis to the accuracy reported by Android, the radius of
+     * 68 % confidence: the 68th percentile of a two dimensional normal distribution lies at 1.51
+     * sigma.
+     */
+    public static final double ACCURACY_TO_SIGMA = 1 / 1.51;
+
+    private final double mConfidence;
+    private final double mAmbiguity;
+
+    /**
+     * The same probabilities as distances in standard deviations, positive inside.
+     */
+    private final double mTriggerScore;
+    private final double mEnterScore;
+    private final double mLeaveScore;
+
+    private boolean mAmbiguous;
+
+    public TriggerModel() {
+        this(DEFAULT_CONFIDENCE, DEFAULT_AMBIGUITY);
+    }
+
+    /**
+     * @param confidence probability of being inside an alarm at which it triggers, at least 0.5.
+     * @param ambiguity  probability of being inside an alarm from which the trigger is ambiguous,
+     *                   below the confidence.
+     */
+    public TriggerModel(double confidence, double ambiguity) {
+        if (confidence < 0.5 || confidence >= 1 || ambiguity <= 0 || ambiguity >= confidence) {
+            throw new IllegalArgumentException("Confidence " + confidence + " and ambiguity "
+                    + ambiguity + " out of range");
+        }
+        mConfidence = confidence;
+        mAmbiguity = ambiguity;
+        mTriggerScore = quantile(confidence);
+        mEnterScore = quantile(ambiguity);
+        mLeaveScore = quantile(ambiguity * LEAVE_FACTOR);
+    }
+
+    public double getConfidence() {
+        return mConfidence;
+    }
+
+    public double getAmbiguity() {
+        return mAmbiguity;
+    }
+
+    /**
+     * Returns how many meters inside the trigger area a fix of the given standard deviation must
+     * be to trigger.
+     */
+    public double getTriggerMargin(double sigma) {
+        return mTriggerScore * sigma;
+    }
+
+    /**
+     * Returns how many meters outside an alarm a fix of the given standard deviation may still be
+     * ambiguous, farther out it never is.
+     */
+    public double getAmbiguousRange(double sigma) {
+        return -mLeaveScore * sigma;
+    }
+
+    /**
+     * Updates the ambiguity for the closest boundary of the last fix.
+     *
+     * @param boundary signed distance in meters to the closest alarm boundary, negative inside.
+     * @param sigma    standard deviation of the fix position along every axis, in meters.
+     * @return true if the trigger became or stopped being ambiguous.
+     */
+    public boolean update(double boundary, double sigma) {
+        // Exactly known positions are never ambiguous, nor are fixes past the trigger margin.
+        double score = sigma > 0 ? -boundary / sigma : Double.NEGATIVE_INFINITY;
+        boolean ambiguous = score < mTriggerScore
+                && score >= (mAmbiguous ? mLeaveScore : mEnterScore);
+        if (ambiguous == mAmbiguous) {
+            return false;
+        }
+        mAmbiguous = ambiguous;
+        return true;
+    }
+
+    public boolean isAmbiguous() {
+        return mAmbiguous;
+    }
+
+    /**
+     * Forgets the ambiguity, used when location updates are (re)started.
+     */
+    public void reset() {
+        mAmbiguous = false;
+    }
+
+    /**
+     * Returns the probability that a position, normally distributed with the given standard
+     * deviation per axis, lies inside a boundary at the given signed distance.
+     */
+    public static double probabilityInside(double boundary, double sigma) {
+        if (sigma <= 0) {
+            return boundary < 0 ? 1 : 0;
+        }
+        return cdf(-boundary / sigma);
+    }
+
+    /**
+     * Standard normal cumulative distribution, with the erfc approximation of Numerical Recipes
+     * (relative error below 1.2e-7).
+     */
+    static double cdf(double x) {
+        double z = Math.abs(x) / Math.sqrt(2);
+        double t = 1 / (1 + 0.5 * z);
+        double erfc = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196
+                + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398
+                + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? 1 - erfc / 2 : erfc / 2;
+    }
+
+    /**
+     * Inverse of cdf(), by bisection. Only used when the model is built.
+     */
+    static double quantile(double p) {
+        double low = -10;
+        double high = 10;
+        for (int i = 0; i < 64; i++) {
+            double middle = (low + high) / 2;
+            if (cdf(middle) < p) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return (low + high) / 2;
+    }
+}
@@ -0,0 +1,204 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.List;
+
+/**
+ * Decides what monitoring does once the fixes of a delivery have been checked: whether the alarm
+ * effects should be made ready, and whether location updates may sleep behind the wake rings.
+ * LocationUpdatesService and ReplayHarness both drive it, so a replay exercises the decisions the
+ * service makes and only the way they are carried out differs.
+ *
+ * Location updates sleep in the FAR tier once the position lies well outside every wake ring, see
+ * WakeRings, and take over again with fast fixes when a ring is entered or an alarm is added.
+ * Not thread-safe, drive it from the thread that processes the fixes.
+ */
+public class TripController {
+
+    public interface Listener {
+        /**
+         * The device started or stopped approaching an alarm, see ApproachMonitor.
+         */
+        void onApproachChanged(boolean approaching);
+
+        /**
+         * Location updates may sleep: register the wake rings of the alarms for the given speed,
+         * then stop the updates unless isSleeping() turned false meanwhile. Call onSleepFailed()
+         * if the rings could not be registered.
+         *
+         * @param speed speed in m/s the rings are sized for, NaN if unknown.
+         */
+        void onSleep(List<Alarm> alarms, float speed);
+
+        /**
+         * Location updates must be requested again for the scheduler's tier, replacing the wake
+         * rings if any are registered.
+         *
+         * @param previousMaxWaitTime max wait time of the request being replaced, fixes held back
+         *                            under it should be flushed if the new one is shorter.
+         */
+        void onRequestUpdates(long previousMaxWaitTime);
+    }
+
+    private final AlarmRegistry mRegistry;
+
+    private final AlarmPipeline mPipeline;
+
+    private final ApproachMonitor mApproach;
+
+    private final Listener mListener;
+
+    /**
+     * Measures the distance to the wake rings.
+     */
+    private final DistanceKernel mRingKernel = new DistanceKernel();
+
+    private boolean mSleepEnabled = true;
+
+    /**
+     * True between start() and stop().
+     */
+    private boolean mRunning;
+
+    /**
+     * True from handing monitoring to the wake rings until waking up. Read from any thread.
+     */
+    private volatile boolean mSleeping;
+
+    /**
+     * @param approach tells when to make the alarm effects ready.
+     */
+    public TripController(AlarmRegistry registry, AlarmPipeline pipeline, ApproachMonitor approach,
+                          Listener listener) {
+        mRegistry = registry;
+        mPipeline = pipeline;
+        mApproach = approach;
+        mListener = listener;
+    }
+
+    /**
+     * Lets location updates sleep far from every alarm, on by default.
+     */
+    public void setSleepEnabled(boolean sleepEnabled) {
+        mSleepEnabled = sleepEnabled;
+    }
+
+    /**
+     * Returns true while location updates sleep behind the wake rings.
+     */
+    public boolean isSleeping() {
+        return mSleeping;
+    }
+
+    /**
+     * Starts a trip with fast fixes, the scheduler relaxes the request once it knows where the
+     * device is. The caller requests location updates for the scheduler's tier.
+     */
+    public void start() {
+        mRunning = true;
+        mSleeping = false;
+        resetTracking();
+        mApproach.reset();
+    }
+
+    /**
+     * Ends the trip, location updates have been removed.
+     */
+    public void stop() {
+        mRunning = false;
+        mSleeping = false;
+    }
+
+    /**
+     * Decides on the next steps once every fix of a delivery has been checked by the pipeline.
+     *
+     * @param last the most recent fix of the delivery.
+     */
+    public void onFixesProcessed(Fix last) {
+        mPipeline.onFixesProcessed(last);
+
+        // Have the alarm sound ready before the alarm triggers.
+        LocationRequestScheduler scheduler = mPipeline.getScheduler();
+        if (mApproach.update(scheduler.getDistanceToBoundary(), scheduler.getSecondsToBoundary())) {
+            mListener.onApproachChanged(mApproach.isApproaching());
+        }
+
+        if (mSleepEnabled && mRunning && !mSleeping
+                && scheduler.getTier() == LocationRequestScheduler.Tier.FAR) {
+            sleepIfFarFromRings(last);
+        }
+    }
+
+    /**
+     * The wake rings could not be registered, location updates keep running.
+     */
+    public void onSleepFailed() {
+        mSleeping = false;
+    }
+
+    /**
+     * A wake ring was entered: takes over from the rings with the fastest fixes.
+     *
+     * @return false if location updates were not sleeping.
+     */
+    public boolean onRingEntered() {
+        if (!mSleeping) {
+            return false;
+        }
+        mSleeping = false;
+        // The last fix is long gone, start over.
+        resetTracking();
+        mListener.onRequestUpdates(0);
+        return true;
+    }
+
+    /**
+     * An alarm was armed during the trip: it has no wake ring and the scheduler picked its tier
+     * without it, so the updates take over right away with fast fixes.
+     *
+     * @return true if location updates were sleeping.
+     */
+    public boolean onAlarmAdded() {
+        if (!mRunning) {
+            return false;
+        }
+        boolean sleeping = mSleeping;
+        long previousMaxWaitTime = sleeping ? 0 : mPipeline.getScheduler().getMaxWaitTime();
+        if (sleeping) {
+            mSleeping = false;
+            resetTracking();
+        } else {
+            mPipeline.getScheduler().reset();
+        }
+        mListener.onRequestUpdates(previousMaxWaitTime);
+        return sleeping;
+    }
+
+    /**
+     * Hands monitoring over to the wake rings if the device is well outside every one of them.
+     */
+    private void sleepIfFarFromRings(Fix fix) {
+        FixFilter filter = mPipeline.getFilter();
+        boolean filtered = filter != null && filter.hasEstimate();
+        double latitude = filtered ? filter.getLatitude() : fix.latitude;
+        double longitude = filtered ? filter.getLongitude() : fix.longitude;
+        float accuracy = filtered ? filter.getAccuracy() : Math.max(fix.accuracy, 0);
+        float speed = filtered ? filter.getSpeedBound() : fix.hasSpeed() ? fix.speed : Float.NaN;
+        List<Alarm> alarms = mRegistry.getAll();
+        if (!WakeRings.canSleep(alarms, mRingKernel, latitude, longitude, accuracy, speed)) {
+            return;
+        }
+        // Set first, so entering a ring right away is not lost.
+        mSleeping = true;
+        mListener.onSleep(alarms, speed);
+    }
+
+    private void resetTracking() {
+        mPipeline.getScheduler().reset();
+        if (mPipeline.getFilter() != null) {
+            mPipeline.getFilter().reset();
+        }
+        if (mPipeline.getTriggerModel() != null) {
+            mPipeline.getTriggerModel().reset();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.juggernaut.location_alarm.core;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary layout of the trip log files.
+ *
+ * A file starts with a fixed header: the magic number, the format version and the trip start
+ * time in milliseconds since the epoch. Every fix follows as one record:
+ *
+ * <pre>
+ * flags        1 byte, which of the optional fields are present
+ * time         zigzag varint, milliseconds since the previous fix
+ * latitude     zigzag varint, 1e-7 degrees since the previous fix
+ * longitude    zigzag varint, 1e-7 degrees since the previous fix
+ * accuracy     varint, decimeters, if FLAG_ACCURACY
+ * speed        varint, centimeters per second, if FLAG_SPEED
+ * bearing      varint, tenths of a degree, if FLAG_BEARING
+ * </pre>
+ *
+ * The first record is relative to the start time and to 0, 0. Consecutive fixes are close in time
+ * and space, so a record usually takes 10 to 16 bytes.
+ */
+final class TripFormat {
+
+    static final int MAGIC = 0x54524950; // "TRIP"
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 4 + 1 + 8;
+
+    /**
+     * Upper bound of an encoded record: flags and six varints of at most 10 bytes.
+     */
+    static final int MAX_RECORD_SIZE = 1 + 6 * 10;
+
+    static final int FLAG_ACCURACY = 1;
+    static final int FLAG_SPEED = 1 << 1;
+    static final int FLAG_BEARING = 1 << 2;
+
+    /**
+     * Coordinate units per degree.
+     */
+    static final double COORDINATE_SCALE = 1e7;
+    static final float ACCURACY_SCALE = 10f;
+    static final float SPEED_SCALE = 100f;
+    static final float BEARING_SCALE = 10f;
+
+    private TripFormat() {
+    }
+
+    static void putHeader(ByteBuffer buffer, long startTime) {
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putLong(startTime);
+    }
+
+    /**
+     * Reads the header.
+     *
+     * @return the trip start time.
+     * @throws IllegalArgumentException if the buffer does not start with a trip log header.
+     */
+    static long getHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a trip log");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown trip log version " + version);
+        }
+        return buffer.getLong();
+    }
+
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @throws BufferUnderflowException if the varint is cut off.
+     */
+    static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static void putSignedVarint(ByteBuffer buffer, long value) {
+        putVarint(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    static long getSignedVarint(ByteBuffer buffer) {
+        long value = getVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long toCoordinateUnits(double degrees) {
+        return Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    /**
+     * Converts a non-negative measurement to its scaled integer, clamping negative values to 0.
+     */
+    static long toUnits(float value, float scale) {
+        return value > 0 ? Math.round(value * scale) : 0;
+    }
+}
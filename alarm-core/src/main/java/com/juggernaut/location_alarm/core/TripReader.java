@@ -0,0 +1,192 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Streams the fixes of a trip log written by TripRecorder, one record at a time.
+ *
+ * Only a small read buffer is held in memory, however long the trip is. A record cut off at the
+ * end of the file, e.g. by the process being killed during a write, ends the trip.
+ */
+public class TripReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final FileChannel mChannel;
+
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final long mStartTime;
+
+    private boolean mEndOfFile;
+
+    private long mTime;
+    private long mLatitude;
+    private long mLongitude;
+    private float mAccuracy;
+    private float mSpeed;
+    private float mBearing;
+
+    /**
+     * @throws IllegalArgumentException if the file is not a trip log.
+     */
+    public TripReader(File trip) throws IOException {
+        mChannel = new FileInputStream(trip).getChannel();
+        mBuffer.flip();
+        try {
+            fill();
+            mStartTime = TripFormat.getHeader(mBuffer);
+        } catch (IllegalArgumentException e) {
+            mChannel.close();
+            throw e;
+        }
+        mTime = mStartTime;
+    }
+
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Moves to the next fix.
+     *
+     * @return false at the end of the trip.
+     */
+    public boolean next() throws IOException {
+        if (mBuffer.remaining() < TripFormat.MAX_RECORD_SIZE) {
+            fill();
+        }
+        if (!mBuffer.hasRemaining()) {
+            return false;
+        }
+        int start = mBuffer.position();
+        try {
+            int flags = mBuffer.get();
+            long time = mTime + TripFormat.getSignedVarint(mBuffer);
+            long latitude = mLatitude + TripFormat.getSignedVarint(mBuffer);
+            long longitude = mLongitude + TripFormat.getSignedVarint(mBuffer);
+            mAccuracy = (flags & TripFormat.FLAG_ACCURACY) != 0
+                    ? TripFormat.getVarint(mBuffer) / TripFormat.ACCURACY_SCALE : -1;
+            mSpeed = (flags & TripFormat.FLAG_SPEED) != 0
+                    ? TripFormat.getVarint(mBuffer) / TripFormat.SPEED_SCALE : -1;
+            mBearing = (flags & TripFormat.FLAG_BEARING) != 0
+                    ? TripFormat.getVarint(mBuffer) / TripFormat.BEARING_SCALE : -1;
+            mTime = time;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            return true;
+        } catch (BufferUnderflowException e) {
+            // Truncated last record.
+            mBuffer.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * Fix time in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return mTime;
+    }
+
+    public double getLatitude() {
+        return mLatitude / TripFormat.COORDINATE_SCALE;
+    }
+
+    public double getLongitude() {
+        return mLongitude / TripFormat.COORDINATE_SCALE;
+    }
+
+    /**
+     * In meters, negative if unknown.
+     */
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    /**
+     * In meters per second, negative if unknown.
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * In degrees, negative if unknown.
+     */
+    public float getBearing() {
+        return mBearing;
+    }
+
+    /**
+     * Writes the remaining fixes of the trip as a GPX 1.0 track. Speed and course map to the
+     * matching GPX elements, the accuracy is kept in the point comment.
+     */
+    public void writeGpx(Writer out) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date();
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<gpx version=\"1.0\" creator=\"Location Alarm\" "
+                + "xmlns=\"http://www.topografix.com/GPX/1/0\">\n");
+        out.write("<trk>\n<name>");
+        date.setTime(mStartTime);
+        out.write(format.format(date));
+        out.write("</name>\n<trkseg>\n");
+        while (next()) {
+            date.setTime(mTime);
+            out.write("<trkpt lat=\"");
+            out.write(String.format(Locale.US, "%.7f", getLatitude()));
+            out.write("\" lon=\"");
+            out.write(String.format(Locale.US, "%.7f", getLongitude()));
+            out.write("\"><time>");
+            out.write(format.format(date));
+            out.write("</time>");
+            if (mBearing >= 0) {
+                out.write("<course>" + mBearing + "</course>");
+            }
+            if (mSpeed >= 0) {
+                out.write("<speed>" + mSpeed + "</speed>");
+            }
+            if (mAccuracy >= 0) {
+                out.write("<cmt>accuracy " + mAccuracy + " m</cmt>");
+            }
+            out.write("</trkpt>\n");
+        }
+        out.write("</trkseg>\n</trk>\n</gpx>\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more behind them.
+     */
+    private void fill() throws IOException {
+        if (mEndOfFile) {
+            return;
+        }
+        mBuffer.compact();
+        while (mBuffer.hasRemaining()) {
+            if (mChannel.read(mBuffer) < 0) {
+                mEndOfFile = true;
+                break;
+            }
+        }
+        mBuffer.flip();
+    }
+}
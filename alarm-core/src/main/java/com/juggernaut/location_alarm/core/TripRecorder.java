@@ -0,0 +1,326 @@
+package com.juggernaut.location_alarm.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Streams every fix of a trip into a compact append-only file, see TripFormat.
+ *
+ * Fixes are encoded into a buffer on the calling thread without allocating. Full buffers, and
+ * buffers holding fixes older than the flush interval, are handed to the executor and appended to
+ * the file through a FileChannel. Every trip gets its own file, only the most recent ones are kept.
+ */
+public class TripRecorder {
+
+    /**
+     * Size of each write buffer.
+     */
+    public static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Longest time, in fix time, a record waits in the buffer before it is written.
+     */
+    public static final long FLUSH_INTERVAL = 30000;
+
+    /**
+     * Number of trip files kept.
+     */
+    public static final int MAX_TRIPS = 10;
+
+    private static final String FILE_PREFIX = "trip_";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final File mDirectory;
+
+    /**
+     * Runs the file I/O in submission order, must be single-threaded.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Buffers written out and ready to be filled again.
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> mFreeBuffers = new ConcurrentLinkedQueue<>();
+
+    private ByteBuffer mBuffer;
+
+    /**
+     * File of the current trip, null when not recording.
+     */
+    private File mTrip;
+
+    /**
+     * Open file of the current trip. Only used on the executor.
+     */
+    private FileChannel mChannel;
+
+    private long mLastTime;
+    private long mLastLatitude;
+    private long mLastLongitude;
+
+    /**
+     * Fix time of the oldest record in the buffer.
+     */
+    private long mBufferStartTime;
+
+    private int mRecords;
+    private long mBytes;
+
+    /**
+     * @param directory created if needed, holds one file per trip.
+     * @param executor  single-threaded executor running the writes.
+     */
+    public TripRecorder(File directory, Executor executor) {
+        mDirectory = directory;
+        mExecutor = executor;
+    }
+
+    /**
+     * Ends the current trip, if any, and starts writing a new file.
+     *
+     * @param startTime trip start in milliseconds since the epoch.
+     */
+    public synchronized void startTrip(long startTime) {
+        endTrip();
+        final File trip = new File(mDirectory, FILE_PREFIX + startTime + FILE_SUFFIX);
+        mTrip = trip;
+        mLastTime = startTime;
+        mLastLatitude = 0;
+        mLastLongitude = 0;
+        mRecords = 0;
+        mBytes = 0;
+        mBuffer = obtainBuffer();
+        TripFormat.putHeader(mBuffer, startTime);
+        mBufferStartTime = startTime;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                open(trip);
+                prune();
+            }
+        });
+    }
+
+    /**
+     * Appends a fix to the current trip, does nothing when not recording.
+     *
+     * @param time     fix time in milliseconds since the epoch.
+     * @param accuracy in meters, or a negative value if unknown.
+     * @param speed    in meters per second, or a negative value if unknown.
+     * @param bearing  in degrees, or a negative value if unknown.
+     */
+    public synchronized void record(long time, double latitude, double longitude, float accuracy,
+                             float speed, float bearing) {
+        if (mTrip == null) {
+            return;
+        }
+        if (mBuffer.remaining() < TripFormat.MAX_RECORD_SIZE) {
+            flush();
+        }
+        ByteBuffer buffer = mBuffer;
+        int start = buffer.position();
+        int flags = (accuracy >= 0 ? TripFormat.FLAG_ACCURACY : 0)
+                | (speed >= 0 ? TripFormat.FLAG_SPEED : 0)
+                | (bearing >= 0 ? TripFormat.FLAG_BEARING : 0);
+        long lat = TripFormat.toCoordinateUnits(latitude);
+        long lng = TripFormat.toCoordinateUnits(longitude);
+        buffer.put((byte) flags);
+        TripFormat.putSignedVarint(buffer, time - mLastTime);
+        TripFormat.putSignedVarint(buffer, lat - mLastLatitude);
+        TripFormat.putSignedVarint(buffer, lng - mLastLongitude);
+        if (accuracy >= 0) {
+            TripFormat.putVarint(buffer, TripFormat.toUnits(accuracy, TripFormat.ACCURACY_SCALE));
+        }
+        if (speed >= 0) {
+            TripFormat.putVarint(buffer, TripFormat.toUnits(speed, TripFormat.SPEED_SCALE));
+        }
+        if (bearing >= 0) {
+            TripFormat.putVarint(buffer, TripFormat.toUnits(bearing, TripFormat.BEARING_SCALE));
+        }
+        mLastTime = time;
+        mLastLatitude = lat;
+        mLastLongitude = lng;
+        mRecords++;
+        mBytes += buffer.position() - start;
+
+        if (time - mBufferStartTime >= FLUSH_INTERVAL) {
+            flush();
+        }
+    }
+
+    /**
+     * Appends a fix to the current trip, does nothing when not recording.
+     */
+    public void record(Fix fix) {
+        record(fix.time, fix.latitude, fix.longitude, fix.accuracy, fix.speed, fix.bearing);
+    }
+
+    /**
+     * Hands the buffered records to the executor.
+     */
+    public synchronized void flush() {
+        if (mBuffer == null || mBuffer.position() == 0) {
+            return;
+        }
+        final ByteBuffer full = mBuffer;
+        full.flip();
+        mBuffer = obtainBuffer();
+        mBufferStartTime = mLastTime;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(full);
+            }
+        });
+    }
+
+    /**
+     * Writes out and closes the current trip.
+     */
+    public synchronized void endTrip() {
+        if (mTrip == null) {
+            return;
+        }
+        flush();
+        mFreeBuffers.offer(mBuffer);
+        mBuffer = null;
+        mTrip = null;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    public synchronized boolean isRecording() {
+        return mTrip != null;
+    }
+
+    /**
+     * Returns the number of fixes recorded in the current trip.
+     */
+    public synchronized int getRecordCount() {
+        return mRecords;
+    }
+
+    /**
+     * Returns the encoded size of the fixes recorded in the current trip, without the header.
+     */
+    public synchronized long getRecordBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Returns the trip files, most recent first. The current trip may not be complete on disk.
+     */
+    public List<File> getTrips() {
+        File[] files = mDirectory.listFiles();
+        List<File> trips = new ArrayList<>();
+        if (files == null) {
+            return trips;
+        }
+        for (File file : files) {
+            if (startTimeOf(file) >= 0) {
+                trips.add(file);
+            }
+        }
+        File[] sorted = trips.toArray(new File[trips.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = startTimeOf(b) - startTimeOf(a);
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        return Arrays.asList(sorted);
+    }
+
+    private ByteBuffer obtainBuffer() {
+        ByteBuffer buffer = mFreeBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the start time encoded in a trip file name, or -1 if it is not a trip file.
+     */
+    private static long startTimeOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(),
+                    name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Runs on the executor.
+     */
+    private void open(File trip) {
+        close();
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Could not create " + mDirectory);
+            }
+            mChannel = new FileOutputStream(trip, true).getChannel();
+        } catch (IOException e) {
+            // Recording is best effort, the trip is simply missing.
+            mChannel = null;
+        }
+    }
+
+    /**
+     * Runs on the executor.
+     */
+    private void write(ByteBuffer buffer) {
+        try {
+            if (mChannel != null) {
+                while (buffer.hasRemaining()) {
+                    mChannel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            close();
+        } finally {
+            buffer.clear();
+            mFreeBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Runs on the executor.
+     */
+    private void close() {
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                // Already written as far as it goes.
+            }
+            mChannel = null;
+        }
+    }
+
+    /**
+     * Runs on the executor: deletes the oldest trips beyond MAX_TRIPS.
+     */
+    private void prune() {
+        List<File> trips = getTrips();
+        for (int i = MAX_TRIPS; i < trips.size(); i++) {
+            trips.get(i).delete();
+        }
+    }
+}
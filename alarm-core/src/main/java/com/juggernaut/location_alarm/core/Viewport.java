@@ -0,0 +1,123 @@
+package com.juggernaut.location_alarm.core;
+
+/**
+ * Visible part of the map in normalized Web Mercator coordinates.
+ *
+ * x runs from 0 at the antimeridian west to 1 at the antimeridian east, y from 0 at the northern
+ * to 1 at the southern edge of the map, so a map at zoom level z is 256 * 2^z pixels in both
+ * directions. A viewport crossing the antimeridian has a maxX above 1, so points are compared
+ * both as they are and shifted by one world width.
+ */
+public final class Viewport {
+
+    /**
+     * Latitude at which the square Mercator map ends.
+     */
+    public static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * Width of the map in pixels at zoom level 0.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Equatorial circumference of the earth in meters.
+     */
+    private static final double EARTH_CIRCUMFERENCE = 40075016.686;
+
+    public final double minX;
+    public final double minY;
+    public final double maxX;
+    public final double maxY;
+
+    public Viewport(double minX, double minY, double maxX, double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Returns the viewport of the given latitude and longitude bounds, which cross the
+     * antimeridian if west is greater than east.
+     */
+    public static Viewport fromBounds(double south, double west, double north, double east) {
+        double minX = x(west);
+        double maxX = x(east);
+        if (maxX < minX) {
+            maxX += 1.0;
+        }
+        return new Viewport(minX, y(north), maxX, y(south));
+    }
+
+    /**
+     * Returns this viewport grown by the given fraction of its size on every side.
+     */
+    public Viewport expand(double fraction) {
+        double dx = (maxX - minX) * fraction;
+        double dy = (maxY - minY) * fraction;
+        return new Viewport(minX - dx, Math.max(0.0, minY - dy), maxX + dx, Math.min(1.0, maxY + dy));
+    }
+
+    public boolean contains(double x, double y) {
+        return intersects(x, y, x, y);
+    }
+
+    /**
+     * Returns whether the given rectangle overlaps this viewport, also when one of them lies
+     * across the antimeridian.
+     */
+    public boolean intersects(double left, double top, double right, double bottom) {
+        if (bottom < minY || top > maxY) {
+            return false;
+        }
+        for (double shift = -1.0; shift <= 1.0; shift++) {
+            if (right + shift >= minX && left + shift <= maxX) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static double x(double longitude) {
+        return (longitude + 180.0) / 360.0;
+    }
+
+    public static double y(double latitude) {
+        double sin = Math.sin(Math.toRadians(clampLatitude(latitude)));
+        return 0.5 - Math.log((1.0 + sin) / (1.0 - sin)) / (4.0 * Math.PI);
+    }
+
+    public static double longitude(double x) {
+        x -= Math.floor(x);
+        return x * 360.0 - 180.0;
+    }
+
+    public static double latitude(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1.0 - 2.0 * y))));
+    }
+
+    /**
+     * Returns the size of the map in pixels at the given zoom level.
+     */
+    public static double worldPixels(double zoom) {
+        return TILE_SIZE * Math.pow(2.0, zoom);
+    }
+
+    /**
+     * Returns the ground distance covered by one pixel at the given latitude and zoom level.
+     */
+    public static double metersPerPixel(double latitude, double zoom) {
+        return EARTH_CIRCUMFERENCE * Math.cos(Math.toRadians(clampLatitude(latitude)))
+                / worldPixels(zoom);
+    }
+
+    private static double clampLatitude(double latitude) {
+        return Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+    }
+
+    @Override
+    public String toString() {
+        return "Viewport{" + minX + ", " + minY + " - " + maxX + ", " + maxY + "}";
+    }
+}
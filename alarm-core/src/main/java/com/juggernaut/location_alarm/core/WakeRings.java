@@ -0,0 +1,85 @@
+package com.juggernaut.location_alarm.core;
+
+import java.util.List;
+
+/**
+ * Sizes the wake-up rings that let location updates sleep far from every alarm.
+ *
+ * While sleeping, the platform watches a geofence ring around each alarm, which it can offload
+ * to the location hub, and wakes the service once the device enters one. The service then takes
+ * over with its own location requests and decides on the trigger itself. A ring must be wide
+ * enough that the device cannot cross it and reach the alarm before the service is up: at the
+ * speed the scheduler assumes, see LocationRequestScheduler.assumedSpeed(), it covers the
+ * RESPONSIVENESS the platform may take to report the enter plus the TAKEOVER_TIME to get the
+ * first fixes.
+ *
+ * Location updates only go to sleep with the fix farther than HEADROOM beyond its accuracy from
+ * every ring, so a device right at a ring does not keep sleeping and waking.
+ */
+public final class WakeRings {
+
+    /**
+     * Longest time the platform may take to report entering a ring, in milliseconds. Passed on
+     * as the geofence notification responsiveness, longer saves more power.
+     */
+    public static final int RESPONSIVENESS = 120000;
+
+    /**
+     * Time from waking to the first fixes of the service's own request, in milliseconds.
+     */
+    static final long TAKEOVER_TIME = 60000;
+
+    /**
+     * Distance in meters to keep from every ring before sleeping.
+     */
+    static final double HEADROOM = 1000;
+
+    /**
+     * Most geofences the platform allows per app, with more alarms the service never sleeps.
+     */
+    public static final int MAX_RINGS = 100;
+
+    private WakeRings() {
+    }
+
+    /**
+     * Returns the width in meters of the ring around an alarm for the given speed in m/s, NaN if
+     * unknown.
+     */
+    public static double getMargin(float speed) {
+        return LocationRequestScheduler.assumedSpeed(speed)
+                * (RESPONSIVENESS + TAKEOVER_TIME) / 1000.0;
+    }
+
+    /**
+     * Returns the radius in meters of the ring around an alarm, centered on its latitude and
+     * longitude.
+     */
+    public static float getRadius(Alarm alarm, float speed) {
+        return (float) (alarm.getEnclosingRadius() + getMargin(speed));
+    }
+
+    /**
+     * Returns true if location updates may sleep at the given position: there are at most
+     * MAX_RINGS alarms and the position lies well outside each of their rings.
+     *
+     * @param accuracy estimated accuracy of the position in meters.
+     * @param speed    speed in m/s the rings are sized for.
+     */
+    public static boolean canSleep(List<Alarm> alarms, DistanceKernel kernel, double latitude,
+                                   double longitude, float accuracy, float speed) {
+        if (alarms.isEmpty() || alarms.size() > MAX_RINGS) {
+            return false;
+        }
+        kernel.setOrigin(latitude, longitude);
+        double clearance = accuracy + HEADROOM;
+        for (int i = 0; i < alarms.size(); i++) {
+            Alarm alarm = alarms.get(i);
+            double distance = kernel.estimate(alarm) * (1 - DistanceKernel.RELATIVE_ERROR);
+            if (distance - getRadius(alarm, speed) < clearance) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
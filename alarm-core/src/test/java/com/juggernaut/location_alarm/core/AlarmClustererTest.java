@@ -0,0 +1,90 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for AlarmClusterer and the Viewport it culls with.
+ */
+public class AlarmClustererTest {
+
+    private static final Viewport WORLD = new Viewport(0, 0, 1, 1);
+
+    @Test
+    public void viewport_projectionRoundTrips() throws Exception {
+        assertEquals(0.5, Viewport.x(0), 1e-12);
+        assertEquals(0.5, Viewport.y(0), 1e-12);
+        assertEquals(0.0, Viewport.y(Viewport.MAX_LATITUDE), 1e-9);
+        assertEquals(12.9716, Viewport.latitude(Viewport.y(12.9716)), 1e-9);
+        assertEquals(77.5946, Viewport.longitude(Viewport.x(77.5946)), 1e-9);
+    }
+
+    @Test
+    public void viewport_acrossAntimeridian() throws Exception {
+        Viewport viewport = Viewport.fromBounds(-20, 170, -10, -170);
+
+        assertTrue(viewport.contains(Viewport.x(179), Viewport.y(-15)));
+        assertTrue(viewport.contains(Viewport.x(-179), Viewport.y(-15)));
+        assertFalse(viewport.contains(Viewport.x(0), Viewport.y(-15)));
+        assertFalse(viewport.contains(Viewport.x(179), Viewport.y(15)));
+    }
+
+    @Test
+    public void cluster_groupsCloseAlarmsWhenZoomedOut() throws Exception {
+        List<Alarm> alarms = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            alarms.add(new Alarm(i + 1, "Stop " + i, 12.97 + i * 1e-4, 77.59 + i * 1e-4, 200));
+        }
+        AlarmClusterer clusterer = new AlarmClusterer();
+
+        List<AlarmClusterer.Cluster> clusters = clusterer.cluster(alarms, 8, WORLD);
+        int total = 0;
+        for (AlarmClusterer.Cluster cluster : clusters) {
+            total += cluster.size;
+            assertTrue(cluster.key < 0 || cluster.alarm != null);
+        }
+        assertEquals(50, total);
+        assertTrue(clusters.size() <= 4);
+
+        clusters = clusterer.cluster(alarms, AlarmClusterer.MAX_CLUSTER_ZOOM + 1, WORLD);
+        assertEquals(50, clusters.size());
+        assertEquals(1, clusters.get(0).key);
+        assertSame(alarms.get(0), clusters.get(0).alarm);
+    }
+
+    @Test
+    public void cluster_keysStayWhilePanning() throws Exception {
+        List<Alarm> alarms = new ArrayList<>();
+        alarms.add(new Alarm(1, "A", 12.97, 77.59, 200));
+        alarms.add(new Alarm(2, "B", 12.971, 77.591, 200));
+        alarms.add(new Alarm(3, "C", 28.61, 77.20, 200));
+        AlarmClusterer clusterer = new AlarmClusterer();
+
+        Viewport south = Viewport.fromBounds(10, 70, 15, 80);
+        Viewport wide = Viewport.fromBounds(10, 70, 30, 80);
+        List<AlarmClusterer.Cluster> before = clusterer.cluster(alarms, 10, south);
+        List<AlarmClusterer.Cluster> after = clusterer.cluster(alarms, 10, wide);
+
+        assertEquals(1, before.size());
+        assertEquals(2, before.get(0).size);
+        assertEquals(2, after.size());
+        assertEquals(before.get(0).key, after.get(0).key);
+        assertEquals(3, after.get(1).key);
+    }
+
+    @Test
+    public void isVisible_countsTheTriggerCircle() throws Exception {
+        Alarm alarm = new Alarm(1, "Station", 0, 0, 5000);
+        // Just east of the alarm, within its 5 km radius but not containing the center.
+        double east = Viewport.x(0.03);
+        Viewport viewport = new Viewport(east, Viewport.y(0.01), east + 0.01, Viewport.y(-0.01));
+
+        assertFalse(viewport.contains(Viewport.x(0), Viewport.y(0)));
+        assertTrue(AlarmClusterer.isVisible(alarm, viewport));
+        assertFalse(AlarmClusterer.isVisible(new Alarm(2, "Stop", 0, 0, 200), viewport));
+    }
+}
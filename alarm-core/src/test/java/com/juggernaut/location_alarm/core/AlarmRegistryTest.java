@@ -0,0 +1,131 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the geohash grid behind AlarmRegistry.
+ */
+public class AlarmRegistryTest {
+
+    @Test
+    public void query_findsAlarmFromAnySideOfItsCircle() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        Alarm alarm = registry.add("Station", 12.9716, 77.5946, 200);
+        List<Alarm> candidates = new ArrayList<>();
+
+        // ~190 m north, south, east and west of the destination.
+        double dLat = 190 / 111320.0;
+        double dLng = 190 / (111320.0 * Math.cos(Math.toRadians(12.9716)));
+        double[][] points = {{dLat, 0}, {-dLat, 0}, {0, dLng}, {0, -dLng}};
+        for (double[] point : points) {
+            registry.query(12.9716 + point[0], 77.5946 + point[1], candidates);
+            assertTrue(candidates.contains(alarm));
+        }
+    }
+
+    @Test
+    public void query_ignoresFarAwayAlarms() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Station", 12.9716, 77.5946, 200);
+        List<Alarm> candidates = new ArrayList<>();
+
+        registry.query(13.0827, 80.2707, candidates);
+        assertTrue(candidates.isEmpty());
+    }
+
+    @Test
+    public void add_coversLargerRadius() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        Alarm alarm = registry.add("Airport", 48.0, 11.0, 5000);
+        List<Alarm> candidates = new ArrayList<>();
+
+        registry.query(48.0 + 4900 / 111320.0, 11.0, candidates);
+        assertTrue(candidates.contains(alarm));
+    }
+
+    @Test
+    public void add_wrapsAroundAntimeridian() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        Alarm alarm = registry.add("Dateline", 0.0, 179.999, 1000);
+        List<Alarm> candidates = new ArrayList<>();
+
+        registry.query(0.0, -179.999, candidates);
+        assertTrue(candidates.contains(alarm));
+    }
+
+    @Test
+    public void remove_dropsAlarmFromEveryCell() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        Alarm alarm = registry.add("Station", 12.9716, 77.5946, 3000);
+        List<Alarm> candidates = new ArrayList<>();
+
+        assertSame(alarm, registry.remove(alarm.id));
+        assertTrue(registry.isEmpty());
+        registry.query(12.9716, 77.5946, candidates);
+        assertTrue(candidates.isEmpty());
+        assertNull(registry.remove(alarm.id));
+    }
+
+    @Test
+    public void query_candidateCountStaysSmallWithManyAlarms() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // Spread over roughly 100 km x 100 km.
+            registry.add("Stop " + i, 12.5 + random.nextDouble(), 77.0 + random.nextDouble(), 200);
+        }
+        List<Alarm> candidates = new ArrayList<>();
+        int total = 0;
+        for (int i = 0; i < 1000; i++) {
+            registry.query(12.5 + random.nextDouble(), 77.0 + random.nextDouble(), candidates);
+            total += candidates.size();
+        }
+        assertEquals(10000, registry.size());
+        // About 1.2 km x 1.2 km of 100 km x 100 km, plus the alarms overlapping from neighbours.
+        assertTrue("average candidates " + total / 1000.0, total / 1000.0 < 10);
+    }
+
+    @Test
+    public void listeners_seeChangesButNotRestoredAlarms() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        final List<String> changes = new ArrayList<>();
+        AlarmRegistry.Listener listener = new AlarmRegistry.Listener() {
+            @Override
+            public void onAlarmAdded(Alarm alarm) {
+                changes.add("+" + alarm.id);
+            }
+
+            @Override
+            public void onAlarmRemoved(Alarm alarm) {
+                changes.add("-" + alarm.id);
+            }
+
+            @Override
+            public void onAlarmsCleared() {
+                changes.add("clear");
+            }
+        };
+        registry.addListener(listener);
+
+        List<Alarm> stored = new ArrayList<>();
+        stored.add(new Alarm(7, "Home", 12.9716, 77.5946, 200));
+        registry.restore(stored);
+        Alarm added = registry.add("Office", 12.98, 77.60, 200);
+        registry.remove(7);
+        registry.clear();
+
+        // Restored alarms keep their id, new ones continue after them.
+        assertEquals(8, added.id);
+        assertEquals("[+8, -7, clear]", changes.toString());
+
+        registry.removeListener(listener);
+        registry.add("Gym", 12.99, 77.61, 200);
+        assertEquals(3, changes.size());
+    }
+}
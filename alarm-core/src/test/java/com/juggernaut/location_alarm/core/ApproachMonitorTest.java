@@ -0,0 +1,52 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ApproachMonitor.
+ */
+public class ApproachMonitorTest {
+
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    @Test
+    public void update_approachesWithinDistance() throws Exception {
+        ApproachMonitor monitor = new ApproachMonitor(1000, 120);
+        assertFalse(monitor.update(5000, INF));
+        assertTrue(monitor.update(900, INF));
+        assertTrue(monitor.isApproaching());
+        assertFalse(monitor.update(800, INF));
+    }
+
+    @Test
+    public void update_approachesWithinTime() throws Exception {
+        ApproachMonitor monitor = new ApproachMonitor(1000, 120);
+        // Far away, but fast.
+        assertTrue(monitor.update(3000, 100));
+        assertTrue(monitor.isApproaching());
+    }
+
+    @Test
+    public void update_leavesOnlyPastTheMargin() throws Exception {
+        ApproachMonitor monitor = new ApproachMonitor(1000, 120);
+        monitor.update(990, INF);
+        // Jittering around the threshold.
+        assertFalse(monitor.update(1010, INF));
+        assertFalse(monitor.update(1400, 170));
+        assertTrue(monitor.isApproaching());
+
+        assertTrue(monitor.update(1600, INF));
+        assertFalse(monitor.isApproaching());
+    }
+
+    @Test
+    public void reset_forgetsTheApproach() throws Exception {
+        ApproachMonitor monitor = new ApproachMonitor(1000, 120);
+        monitor.update(500, INF);
+        monitor.reset();
+        assertFalse(monitor.isApproaching());
+        assertTrue(monitor.update(500, INF));
+    }
+}
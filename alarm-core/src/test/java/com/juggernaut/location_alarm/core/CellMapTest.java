@@ -0,0 +1,39 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for CellMap.
+ */
+public class CellMapTest {
+
+    @Test
+    public void putGetRemove_matchHashMap() throws Exception {
+        CellMap<String> cells = new CellMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            // A small key range forces collisions, removals and overwrites.
+            long key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                cells.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            } else {
+                assertEquals(expected.remove(key), cells.remove(key));
+            }
+        }
+        assertEquals(expected.size(), cells.size());
+        for (long key = 0; key < 2000; key++) {
+            assertEquals(expected.get(key), cells.get(key));
+        }
+        cells.clear();
+        assertEquals(0, cells.size());
+        assertNull(cells.get(1));
+    }
+}
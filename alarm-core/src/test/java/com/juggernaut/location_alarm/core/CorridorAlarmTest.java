@@ -0,0 +1,140 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for CorridorAlarm, its segment index and how the pipeline triggers it.
+ */
+public class CorridorAlarmTest {
+
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    /**
+     * A route heading north from (12, 77) with a vertex every 20 m.
+     */
+    private static CorridorAlarm northbound(int vertices, float buffer) {
+        double[] latitudes = new double[vertices];
+        double[] longitudes = new double[vertices];
+        for (int i = 0; i < vertices; i++) {
+            latitudes[i] = 12.0 + i * 20 / METERS_PER_DEGREE;
+            // A slight zig-zag, so the segments are not all on one line.
+            longitudes[i] = 77.0 + (i % 2) * 5 / METERS_PER_DEGREE;
+        }
+        return new CorridorAlarm(1, "Line 5", latitudes, longitudes, buffer);
+    }
+
+    private static double east(double meters, double latitude) {
+        return meters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+    }
+
+    @Test
+    public void isReached_withinBufferOfAnySegment() throws Exception {
+        CorridorAlarm corridor = northbound(5000, 300);
+        DistanceKernel kernel = new DistanceKernel();
+        // Halfway along the 100 km route.
+        double latitude = 12.0 + 50000 / METERS_PER_DEGREE;
+
+        kernel.setOrigin(latitude, 77.0 + east(250, latitude));
+        assertTrue(corridor.isReached(kernel));
+        kernel.setOrigin(latitude, 77.0 - east(290, latitude));
+        assertTrue(corridor.isReached(kernel));
+        kernel.setOrigin(latitude, 77.0 + east(320, latitude));
+        assertFalse(corridor.isReached(kernel));
+        // Beyond either end of the route.
+        kernel.setOrigin(12.0 - 250 / METERS_PER_DEGREE, 77.0);
+        assertTrue(corridor.isReached(kernel));
+        kernel.setOrigin(12.0 - 400 / METERS_PER_DEGREE, 77.0);
+        assertFalse(corridor.isReached(kernel));
+    }
+
+    @Test
+    public void isReached_agreesWithExactDistanceAtTheBoundary() throws Exception {
+        CorridorAlarm corridor = northbound(100, 300);
+        DistanceKernel kernel = new DistanceKernel();
+        double latitude = 12.0 + 1000 / METERS_PER_DEGREE;
+
+        for (double meters = 290; meters <= 310; meters += 0.5) {
+            double longitude = 77.0 + east(meters, latitude);
+            kernel.setOrigin(latitude, longitude);
+            double exact = Double.POSITIVE_INFINITY;
+            for (int segment = 0; segment < corridor.getSegmentCount(); segment++) {
+                exact = Math.min(exact, kernel.distanceToSegment(corridor, segment));
+            }
+            assertEquals("at " + meters + " m", exact < 300, corridor.isReached(kernel));
+        }
+    }
+
+    @Test
+    public void segmentIndex_listsOnlyNearbySegments() throws Exception {
+        CorridorAlarm corridor = northbound(5000, 300);
+        int most = 0;
+        for (int i = 0; i < corridor.getVertexCount(); i += 50) {
+            int[] segments = corridor.getSegmentsNear(corridor.getLatitude(i),
+                    corridor.getLongitude(i));
+            assertNotNull(segments);
+            most = Math.max(most, segments.length);
+        }
+        // 300 m on either side of a ~150 m cell, at 20 m per segment.
+        assertTrue("up to " + most + " segments per cell", most <= 60);
+        assertNull(corridor.getSegmentsNear(12.5, 77.1));
+    }
+
+    @Test
+    public void gridCover_followsDiagonalSegment() throws Exception {
+        Set<Long> cells = new HashSet<>();
+        // ~100 km to the north-east.
+        GridCover.segment(12.0, 77.0, 12.64, 77.65, 300, CorridorAlarm.SEGMENT_BITS, cells);
+
+        // The bounding box holds about 470 x 240 = 113,000 cells, the corridor a small share.
+        assertTrue(cells.size() + " cells", cells.size() < 6000);
+        assertTrue(cells.contains(Geohash.encode(12.32, 77.325, CorridorAlarm.SEGMENT_BITS)));
+        assertFalse(cells.contains(Geohash.encode(12.6, 77.05, CorridorAlarm.SEGMENT_BITS)));
+    }
+
+    @Test
+    public void pipeline_triggersCorridorOnce() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        CorridorAlarm corridor = registry.addCorridor("Line 5", new double[]{12.0, 12.1, 12.1},
+                new double[]{77.0, 77.0, 77.1}, 300);
+        final List<Alarm> triggered = new ArrayList<>();
+        AlarmPipeline pipeline = new AlarmPipeline(registry, new LocationRequestScheduler(registry),
+                new AlarmPipeline.Listener() {
+                    @Override
+                    public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                        triggered.add(alarm);
+                    }
+
+                    @Override
+                    public void onTierChanged(LocationRequestScheduler.Tier tier,
+                                              long previousMaxWaitTime) {
+                    }
+                });
+
+        pipeline.onFix(new Fix(0, 12.09, 77.05, 10, 0, 0));
+        assertTrue(triggered.isEmpty());
+        assertTrue(registry.nearestBoundary(setOrigin(12.09, 77.05)) > 700);
+
+        pipeline.onFix(new Fix(1000, 12.1 - 200 / METERS_PER_DEGREE, 77.05, 10, 0, 0));
+        assertEquals(1, triggered.size());
+        assertSame(corridor, triggered.get(0));
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsSingleVertex() throws Exception {
+        new CorridorAlarm(1, "Stop", new double[]{12.0}, new double[]{77.0}, 300);
+    }
+
+    private static DistanceKernel setOrigin(double latitude, double longitude) {
+        DistanceKernel kernel = new DistanceKernel();
+        kernel.setOrigin(latitude, longitude);
+        return kernel;
+    }
+}
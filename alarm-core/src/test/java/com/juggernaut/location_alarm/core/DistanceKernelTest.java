@@ -0,0 +1,72 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for DistanceKernel.
+ */
+public class DistanceKernelTest {
+
+    @Test
+    public void vincenty_matchesReferenceGeodesic() throws Exception {
+        // Flinders Peak to Buninyong, the worked example from Vincenty's paper.
+        double distance = DistanceKernel.vincenty(
+                -(37 + 57 / 60.0 + 3.72030 / 3600), 144 + 25 / 60.0 + 29.52440 / 3600,
+                -(37 + 39 / 60.0 + 10.15610 / 3600), 143 + 55 / 60.0 + 35.38390 / 3600);
+        assertEquals(54972.271, distance, 0.001);
+        assertEquals(0, DistanceKernel.vincenty(12.0, 77.0, 12.0, 77.0), 0);
+    }
+
+    @Test
+    public void estimate_staysWithinRelativeErrorBound() throws Exception {
+        Random random = new Random(7);
+        DistanceKernel kernel = new DistanceKernel();
+        for (int i = 0; i < 100000; i++) {
+            double lat = (random.nextDouble() * 2 - 1) * DistanceKernel.MAX_FAST_LATITUDE;
+            double lng = (random.nextDouble() * 2 - 1) * 180;
+            // Up to twice the largest trusted radius away, in any direction.
+            double d = random.nextDouble() * 2 * DistanceKernel.MAX_FAST_RADIUS;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double alarmLat = lat + Math.cos(bearing) * d / 111320.0;
+            double alarmLng = lng + Math.sin(bearing) * d / (111320.0 * Math.cos(Math.toRadians(lat)));
+            if (Math.abs(alarmLat) > DistanceKernel.MAX_FAST_LATITUDE) {
+                continue;
+            }
+            Alarm alarm = new Alarm(1, "a", alarmLat, alarmLng > 180 ? alarmLng - 360 : alarmLng, 200);
+            kernel.setOrigin(lat, lng);
+            double exact = kernel.distanceTo(alarm);
+            assertEquals(exact, kernel.estimate(alarm), exact * DistanceKernel.RELATIVE_ERROR + 0.5);
+        }
+    }
+
+    @Test
+    public void isWithin_agreesWithExactDistanceNearBoundary() throws Exception {
+        Random random = new Random(11);
+        DistanceKernel kernel = new DistanceKernel();
+        for (int i = 0; i < 100000; i++) {
+            Alarm alarm = new Alarm(1, "a", (random.nextDouble() * 2 - 1) * 85,
+                    (random.nextDouble() * 2 - 1) * 180, 50 + random.nextInt(2000));
+            // Within 10 % of the radius on either side of the boundary.
+            double d = alarm.radius * (0.9 + random.nextDouble() * 0.2);
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double lat = alarm.latitude + Math.cos(bearing) * d / 111320.0;
+            double lng = alarm.longitude + Math.sin(bearing) * d / (111320.0 * Math.cos(alarm.latitudeRadians));
+            kernel.setOrigin(lat, lng);
+            assertEquals(kernel.distanceTo(alarm) < alarm.radius, kernel.isWithin(alarm));
+        }
+        // Most decisions, even this close to the boundary, never reach Vincenty.
+        assertTrue(kernel.getFastDecisions() > kernel.getExactDecisions());
+    }
+
+    @Test
+    public void isWithin_handlesAntimeridian() throws Exception {
+        DistanceKernel kernel = new DistanceKernel();
+        Alarm alarm = new Alarm(1, "a", 0.0, 179.9995, 200);
+        kernel.setOrigin(0.0, -179.9995);
+        assertTrue(kernel.isWithin(alarm));
+    }
+}
@@ -0,0 +1,111 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for EventChannel.
+ */
+public class EventChannelTest {
+
+    /**
+     * Holds submitted tasks until run() is called, like a busy looper.
+     */
+    private static class QueueExecutor implements Executor {
+        final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void run() {
+            while (!mTasks.isEmpty()) {
+                mTasks.poll().run();
+            }
+        }
+    }
+
+    private static class Recorder implements EventChannel.Subscriber<String> {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onEvent(String event) {
+            mEvents.add(event);
+        }
+    }
+
+    @Test
+    public void coalescing_deliversOnlyTheLatestEvent() throws Exception {
+        EventChannel<String> channel = new EventChannel<>("test");
+        QueueExecutor executor = new QueueExecutor();
+        Recorder recorder = new Recorder();
+        channel.subscribe(recorder, executor, true);
+
+        channel.publish("a");
+        channel.publish("b");
+        channel.publish("c");
+        assertEquals(1, executor.mTasks.size());
+
+        executor.run();
+        assertEquals(1, recorder.mEvents.size());
+        assertEquals("c", recorder.mEvents.get(0));
+    }
+
+    @Test
+    public void queued_deliversEveryEventInOrder() throws Exception {
+        EventChannel<String> channel = new EventChannel<>("test");
+        QueueExecutor executor = new QueueExecutor();
+        Recorder recorder = new Recorder();
+        channel.subscribe(recorder, executor, false);
+
+        channel.publish("a");
+        channel.publish("b");
+        executor.run();
+        channel.publish("c");
+        executor.run();
+
+        assertEquals("[a, b, c]", recorder.mEvents.toString());
+    }
+
+    @Test
+    public void cancel_dropsPendingEvents() throws Exception {
+        EventChannel<String> channel = new EventChannel<>("test");
+        QueueExecutor executor = new QueueExecutor();
+        Recorder recorder = new Recorder();
+        EventChannel.Subscription<String> subscription = channel.subscribe(recorder, executor, false);
+
+        channel.publish("a");
+        subscription.cancel();
+        channel.publish("b");
+        executor.run();
+
+        assertTrue(recorder.mEvents.isEmpty());
+        assertEquals(0, channel.getSubscriberCount());
+    }
+
+    @Test
+    public void publish_reachesEverySubscriberOnItsExecutor() throws Exception {
+        EventChannel<String> channel = new EventChannel<>("test");
+        QueueExecutor slow = new QueueExecutor();
+        Recorder direct = new Recorder();
+        Recorder ui = new Recorder();
+        channel.subscribe(direct, EventChannel.DIRECT, false);
+        channel.subscribe(ui, slow, true);
+
+        for (int i = 0; i < 100; i++) {
+            channel.publish("fix" + i);
+        }
+        assertEquals(100, direct.mEvents.size());
+
+        slow.run();
+        assertEquals(1, ui.mEvents.size());
+        assertEquals("fix99", ui.mEvents.get(0));
+    }
+}
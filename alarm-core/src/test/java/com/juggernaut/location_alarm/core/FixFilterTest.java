@@ -0,0 +1,152 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for FixFilter.
+ */
+public class FixFilterTest {
+
+    private static final double LATITUDE = 12.97;
+    private static final double LONGITUDE = 77.59;
+
+    /**
+     * Meters per degree of latitude.
+     */
+    private static final double METERS_PER_DEGREE = 111195;
+
+    /**
+     * A fix after the given seconds, the given meters north of the start.
+     */
+    private static Fix fix(int seconds, double north, float accuracy) {
+        return new Fix(seconds * 1000L, LATITUDE + north / METERS_PER_DEGREE, LONGITUDE, accuracy,
+                -1, -1);
+    }
+
+    @Test
+    public void update_smoothsNoisyTrack() throws Exception {
+        FixFilter filter = new FixFilter();
+        Random random = new Random(3);
+        double rawError = 0;
+        double filteredError = 0;
+        // Driving north at 20 m/s with 15 m of noise, scored once the filter has settled.
+        for (int i = 0; i < 300; i++) {
+            double truth = 20.0 * i;
+            double noise = random.nextGaussian() * 15;
+            assertTrue(filter.update(fix(i, truth + noise, 15)));
+            if (i >= 30) {
+                rawError += noise * noise;
+                double error = (filter.getLatitude() - LATITUDE) * METERS_PER_DEGREE - truth;
+                filteredError += error * error;
+            }
+        }
+        assertTrue(filteredError + " vs " + rawError, filteredError < rawError / 2);
+        assertEquals(20, filter.getSpeed(), 2);
+        assertTrue(filter.getAccuracy() < 15);
+    }
+
+    @Test
+    public void update_readsAccuracyAsRadiusOf68Percent() throws Exception {
+        FixFilter filter = new FixFilter();
+        filter.update(fix(0, 0, 15));
+        // A single fix, the estimate is as good as the fix and no better.
+        assertEquals(15 * TriggerModel.ACCURACY_TO_SIGMA, filter.getSigma(), 1e-3);
+        assertEquals(15, filter.getAccuracy(), 1e-3);
+    }
+
+    @Test
+    public void getSpeedBound_coversUncertainVelocity() throws Exception {
+        FixFilter filter = new FixFilter();
+        // No speed reported, nothing is known of the velocity yet.
+        filter.update(fix(0, 0, 10));
+        assertTrue(filter.getSpeedBound() >= LocationRequestScheduler.FLOOR_SPEED);
+
+        // A fast train at 80 m/s, the bound settles just above its speed.
+        for (int i = 1; i < 120; i++) {
+            filter.update(fix(i, 80.0 * i, 10));
+        }
+        assertTrue(filter.getSpeedBound() >= 80);
+        assertTrue(filter.getSpeedBound() < 88);
+    }
+
+    @Test
+    public void update_rejectsJump() throws Exception {
+        FixFilter filter = new FixFilter();
+        for (int i = 0; i < 10; i++) {
+            filter.update(fix(i, 10.0 * i, 10));
+        }
+        // 2 km ahead one second later, a multipath outlier.
+        assertFalse(filter.update(fix(10, 2100, 10)));
+        assertEquals(90, (filter.getLatitude() - LATITUDE) * METERS_PER_DEGREE, 10);
+        assertTrue(filter.update(fix(11, 110, 10)));
+        assertEquals(1, filter.getRejectedCount());
+    }
+
+    @Test
+    public void update_rejectsInaccurateFix() throws Exception {
+        FixFilter filter = new FixFilter();
+        assertFalse(filter.update(fix(0, 0, FixFilter.MAX_ACCURACY + 1)));
+        assertFalse(filter.hasEstimate());
+        assertTrue(filter.update(fix(1, 0, 20)));
+    }
+
+    @Test
+    public void update_startsOverAfterRepeatedRejections() throws Exception {
+        FixFilter filter = new FixFilter();
+        filter.update(fix(0, 0, 10));
+        // Out of a tunnel, every fix is far from the estimate.
+        for (int i = 1; i <= FixFilter.MAX_REJECTIONS; i++) {
+            assertFalse(filter.update(fix(i, 5000 + 10 * i, 10)));
+        }
+        assertTrue(filter.update(fix(FixFilter.MAX_REJECTIONS + 1, 5040, 10)));
+        assertEquals(5040, (filter.getLatitude() - LATITUDE) * METERS_PER_DEGREE, 1);
+    }
+
+    @Test
+    public void update_acrossAntimeridian() throws Exception {
+        FixFilter filter = new FixFilter();
+        filter.update(new Fix(0, -16.8, 179.9999, 10, -1, -1));
+        assertTrue(filter.update(new Fix(1000, -16.8, -179.9999, 10, -1, -1)));
+        assertEquals(180, Math.abs(filter.getLongitude()), 0.001);
+    }
+
+    @Test
+    public void pipeline_outlierDoesNotTrigger() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Station", LATITUDE + 2000 / METERS_PER_DEGREE, LONGITUDE, 200);
+        final List<Alarm> triggered = new ArrayList<>();
+        AlarmPipeline pipeline = new AlarmPipeline(registry, new LocationRequestScheduler(registry),
+                new AlarmPipeline.Listener() {
+                    @Override
+                    public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                        triggered.add(alarm);
+                    }
+
+                    @Override
+                    public void onTierChanged(LocationRequestScheduler.Tier tier,
+                                              long previousMaxWaitTime) {
+                    }
+                });
+        pipeline.setFilter(new FixFilter());
+
+        for (int i = 0; i < 10; i++) {
+            pipeline.onFix(fix(i, 10.0 * i, 10));
+        }
+        // A single fix inside the alarm, far from the track.
+        pipeline.onFix(fix(10, 2000, 10));
+        pipeline.onFix(fix(11, 110, 10));
+        assertTrue(triggered.isEmpty());
+
+        // Actually getting there does.
+        for (int i = 12; i < 200 && triggered.isEmpty(); i++) {
+            pipeline.onFix(fix(i, 10.0 * i, 10));
+        }
+        assertEquals(1, triggered.size());
+    }
+}
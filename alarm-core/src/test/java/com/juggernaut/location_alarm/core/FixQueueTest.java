@@ -0,0 +1,59 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for FixQueue.
+ */
+public class FixQueueTest {
+
+    @Test
+    public void poll_returnsFixesInOrder() throws Exception {
+        FixQueue<String> queue = new FixQueue<>(4);
+        queue.offer("a", false);
+        queue.offer("b", true);
+        queue.offer("c", false);
+
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void offer_dropsOldestUnpinnedWhenFull() throws Exception {
+        FixQueue<String> queue = new FixQueue<>(3);
+        queue.offer("pinned", true);
+        queue.offer("stale", false);
+        queue.offer("b", false);
+
+        assertTrue(queue.offer("c", false));
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals("pinned", queue.poll());
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+    }
+
+    @Test
+    public void offer_neverDropsPinnedFixes() throws Exception {
+        FixQueue<String> queue = new FixQueue<>(2);
+        queue.offer("p1", true);
+        queue.offer("p2", true);
+
+        // Nothing stale to drop: unpinned fixes are refused, pinned ones grow the queue.
+        assertFalse(queue.offer("u", false));
+        assertTrue(queue.offer("p3", true));
+        assertTrue(queue.offer("p4", true));
+        assertEquals(4, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+
+        assertEquals("p1", queue.poll());
+        assertEquals("p2", queue.poll());
+        assertEquals("p3", queue.poll());
+        assertEquals("p4", queue.poll());
+    }
+}
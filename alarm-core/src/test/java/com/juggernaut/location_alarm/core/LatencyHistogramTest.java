@@ -0,0 +1,78 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_usesPowersOfTwoMicroseconds() throws Exception {
+        assertEquals(0, LatencyHistogram.bucketOf(0));
+        assertEquals(0, LatencyHistogram.bucketOf(999));
+        assertEquals(1, LatencyHistogram.bucketOf(1000));
+        assertEquals(2, LatencyHistogram.bucketOf(2000));
+        assertEquals(2, LatencyHistogram.bucketOf(3999));
+        assertEquals(11, LatencyHistogram.bucketOf(1500000));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void record_tracksCountMeanMaxAndPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("stage");
+        assertEquals(0, histogram.getPercentileMicros(50));
+        // 90 samples of 100 us, 10 of 10 ms.
+        for (int i = 0; i < 90; i++) {
+            histogram.record(100000);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(10000000);
+        }
+        histogram.record(-5);
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(10000000, histogram.getMaxNanos());
+        assertEquals((90 * 100000L + 10 * 10000000L) / 101, histogram.getMeanNanos());
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(128, histogram.getPercentileMicros(50));
+        assertEquals(16384, histogram.getPercentileMicros(99));
+        assertTrue(histogram.toString().startsWith("stage: n=101 "));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void record_lastBucketReportsMax() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("slow");
+        histogram.record(600 * 1000000000L);
+        assertEquals(600 * 1000000L, histogram.getPercentileMicros(50));
+    }
+
+    @Test
+    public void record_doesNotAllocate() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+        LatencyHistogram histogram = new LatencyHistogram("hot");
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(i);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,170 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for LocationRequestScheduler.
+ */
+public class LocationRequestSchedulerTest {
+
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    @Test
+    public void onNewFix_relaxesFarFromTarget() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        // 80 km away.
+        assertTrue(scheduler.onNewFix(12.0 - 80000 / METERS_PER_DEGREE, 77.0, 10, 20));
+        assertEquals(LocationRequestScheduler.Tier.FAR, scheduler.getTier());
+    }
+
+    @Test
+    public void onNewFix_tightensWhileApproaching() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        LocationRequestScheduler.Tier previous = null;
+        // Drive towards the destination at 30 m/s, one fix per tier interval.
+        double distance = 80000;
+        while (distance > 200) {
+            scheduler.onNewFix(12.0 - distance / METERS_PER_DEGREE, 77.0, 10, 30);
+            LocationRequestScheduler.Tier tier = scheduler.getTier();
+            if (previous != null) {
+                assertTrue("tier went back to " + tier, tier.ordinal() >= previous.ordinal());
+            }
+            // The next fix must still come before the boundary is reached.
+            assertTrue(distance - 200 > 30 * tier.interval / 1000.0 || tier == LocationRequestScheduler.Tier.FINAL);
+            previous = tier;
+            distance -= 30 * tier.interval / 1000.0;
+        }
+        assertEquals(LocationRequestScheduler.Tier.FINAL, scheduler.getTier());
+    }
+
+    @Test
+    public void onNewFix_assumesFastestSpeedWhenUnknown() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        // 80 km is over 3 FAR intervals at FLOOR_SPEED, not at the 90 m/s of a fast train.
+        scheduler.onNewFix(12.0 - 80000 / METERS_PER_DEGREE, 77.0, 10, Float.NaN);
+        assertEquals(LocationRequestScheduler.Tier.CRUISE, scheduler.getTier());
+        assertEquals(80000 * 0.95 / FixFilter.MAX_SPEED, scheduler.getSecondsToBoundary(), 20);
+    }
+
+    @Test
+    public void onNewFix_countsAccuracyAgainstDistance() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        // 10 km away, but a cell tower fix could be off by 9 km.
+        scheduler.onNewFix(12.0 - 10000 / METERS_PER_DEGREE, 77.0, 9000, 0);
+        assertEquals(LocationRequestScheduler.Tier.FINAL, scheduler.getTier());
+    }
+
+    @Test
+    public void onNewFix_rescansWhenAlarmAdded() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+        double latitude = 12.0 - 80000 / METERS_PER_DEGREE;
+
+        scheduler.onNewFix(latitude, 77.0, 10, 0);
+        assertEquals(LocationRequestScheduler.Tier.FAR, scheduler.getTier());
+
+        registry.add("Next stop", latitude + 1000 / METERS_PER_DEGREE, 77.0, 200);
+        assertTrue(scheduler.onNewFix(latitude, 77.0, 10, 0));
+        assertEquals(LocationRequestScheduler.Tier.FINAL, scheduler.getTier());
+    }
+
+    @Test
+    public void onNewFix_staysFastUntilClearlyFarEnough() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        // Just past the APPROACH threshold: 30 s x 3 fixes x 25 m/s = 2250 m, plus radius.
+        assertFalse(scheduler.onNewFix(12.0 - 2600 / METERS_PER_DEGREE, 77.0, 0, 0));
+        assertEquals(LocationRequestScheduler.Tier.FINAL, scheduler.getTier());
+        assertTrue(scheduler.onNewFix(12.0 - 4000 / METERS_PER_DEGREE, 77.0, 0, 0));
+        assertEquals(LocationRequestScheduler.Tier.APPROACH, scheduler.getTier());
+    }
+
+    @Test
+    public void batching_holdsFixesOnlyWhenTheWaitFitsBeforeTheBoundary() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+        scheduler.setBatching(true);
+
+        LocationRequestScheduler.Tier previous = null;
+        double distance = 80000;
+        while (distance > 200) {
+            scheduler.onNewFix(12.0 - distance / METERS_PER_DEGREE, 77.0, 10, 30);
+            LocationRequestScheduler.Tier tier = scheduler.getTier();
+            if (previous != null && tier == previous && tier != LocationRequestScheduler.Tier.FINAL) {
+                // A whole batch must be delivered before the boundary can be reached.
+                assertTrue(distance - 200 > 30 * (tier.interval + scheduler.getMaxWaitTime()) / 1000.0);
+            }
+            previous = tier;
+            distance -= 30 * tier.interval / 1000.0;
+        }
+        assertEquals(LocationRequestScheduler.Tier.FINAL, scheduler.getTier());
+        assertEquals(0, scheduler.getMaxWaitTime());
+    }
+
+    @Test
+    public void batching_disabledMeansNoWait() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        scheduler.onNewFix(12.0 - 80000 / METERS_PER_DEGREE, 77.0, 10, 20);
+        assertEquals(LocationRequestScheduler.Tier.FAR, scheduler.getTier());
+        assertEquals(0, scheduler.getMaxWaitTime());
+    }
+
+    @Test
+    public void getBoundary_staysALowerBoundInsideAnAlarm() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 500);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        // 100 m from the center, 400 m inside: the bound must be at least as far inside.
+        scheduler.onNewFix(12.0 - 100 / METERS_PER_DEGREE, 77.0, 10, 1);
+        assertTrue(String.valueOf(scheduler.getBoundary()), scheduler.getBoundary() <= -400);
+        assertEquals(-400, scheduler.getBoundary(), 40);
+
+        // Without a rescan, 50 m further in.
+        scheduler.onNewFix(12.0 - 50 / METERS_PER_DEGREE, 77.0, 10, 1);
+        assertTrue(String.valueOf(scheduler.getBoundary()), scheduler.getBoundary() <= -450);
+        assertEquals(-450, scheduler.getBoundary(), 60);
+    }
+
+    @Test
+    public void setConfirming_asksForHighAccuracyUntilCleared() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Destination", 12.0, 77.0, 200);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+
+        scheduler.onNewFix(12.0 - 300 / METERS_PER_DEGREE, 77.0, 50, 10);
+        assertEquals(LocationRequestScheduler.PRIORITY_BALANCED_POWER_ACCURACY,
+                scheduler.getTier().priority);
+        assertEquals(100, scheduler.getBoundary(), 10);
+
+        assertTrue(scheduler.setConfirming(true));
+        assertEquals(LocationRequestScheduler.Tier.CONFIRM, scheduler.getTier());
+        assertEquals(LocationRequestScheduler.PRIORITY_HIGH_ACCURACY, scheduler.getTier().priority);
+        // Further fixes do not leave it.
+        assertFalse(scheduler.onNewFix(12.0 - 80000 / METERS_PER_DEGREE, 77.0, 10, 20));
+
+        assertTrue(scheduler.setConfirming(false));
+        assertEquals(LocationRequestScheduler.Tier.FAR, scheduler.getTier());
+    }
+}
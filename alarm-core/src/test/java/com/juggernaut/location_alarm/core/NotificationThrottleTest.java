@@ -0,0 +1,64 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for NotificationThrottle.
+ */
+public class NotificationThrottleTest {
+
+    @Test
+    public void offer_skipsUnchangedContent() throws Exception {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        throttle.markShown("You are at", "MG Road", 0);
+
+        assertEquals(NotificationThrottle.NO_POST, throttle.offer("You are at", "MG Road", 10000));
+    }
+
+    @Test
+    public void offer_postsChangedContentRightAwayAfterInterval() throws Exception {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        throttle.markShown("You are at", "MG Road", 0);
+
+        assertEquals(0, throttle.offer("You are at", "Indiranagar", 6000));
+        assertTrue(throttle.take(6000));
+        assertEquals("Indiranagar", throttle.getText());
+    }
+
+    @Test
+    public void offer_coalescesFastChangesIntoOneTrailingPost() throws Exception {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        throttle.markShown("You are at", "A", 0);
+
+        assertEquals(4000, throttle.offer("You are at", "B", 1000));
+        // Already scheduled, the later content rides along.
+        assertEquals(NotificationThrottle.NO_POST, throttle.offer("You are at", "C", 2000));
+        assertEquals(NotificationThrottle.NO_POST, throttle.offer("You are at", "D", 3000));
+
+        assertTrue(throttle.take(5000));
+        assertEquals("D", throttle.getText());
+        assertEquals(5000, throttle.offer("You are at", "E", 5000));
+    }
+
+    @Test
+    public void take_skipsContentThatChangedBack() throws Exception {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        throttle.markShown("You are at", "A", 0);
+
+        assertTrue(throttle.offer("You are at", "B", 1000) > 0);
+        throttle.offer("You are at", "A", 2000);
+        assertFalse(throttle.take(5000));
+    }
+
+    @Test
+    public void reset_postsFirstContentImmediately() throws Exception {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        throttle.markShown("You are at", "A", 0);
+        throttle.reset();
+
+        assertEquals(0, throttle.offer("You are at", "A", 1000));
+        assertTrue(throttle.take(1000));
+    }
+}
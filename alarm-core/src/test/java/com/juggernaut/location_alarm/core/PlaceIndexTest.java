@@ -0,0 +1,156 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PlaceIndex and PlaceIndexBuilder.
+ */
+public class PlaceIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Meters per degree of latitude.
+     */
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private static final double LATITUDE = 12.97;
+    private static final double LONGITUDE = 77.59;
+
+    /**
+     * Generated fixture: a grid of streets every 100 m north of the origin, named by row, and a
+     * locality every 0.1 degrees.
+     */
+    private static PlaceIndexBuilder fixture() {
+        PlaceIndexBuilder builder = new PlaceIndexBuilder();
+        for (int row = 0; row < 50; row++) {
+            for (int column = 0; column < 50; column++) {
+                builder.add(PlaceIndex.Kind.STREET, "Street " + row,
+                        LATITUDE + row * 100 / METERS_PER_DEGREE, LONGITUDE + column * 0.001);
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            builder.add(PlaceIndex.Kind.LOCALITY, "Town " + i, LATITUDE + i * 0.1, LONGITUDE);
+        }
+        return builder;
+    }
+
+    @Test
+    public void getLocationName_namesClosestStreetAndLocality() throws Exception {
+        File file = folder.newFile("places.idx");
+        fixture().write(file);
+        PlaceIndex index = PlaceIndex.open(file);
+
+        assertEquals(2500, index.getCount(PlaceIndex.Kind.STREET));
+        assertEquals(10, index.getCount(PlaceIndex.Kind.LOCALITY));
+        // 30 m north of the fourth row.
+        assertEquals("Street 3, Town 0", index.getLocationName(
+                LATITUDE + 330 / METERS_PER_DEGREE, LONGITUDE + 0.0203));
+        assertEquals("Street 4", index.findName(PlaceIndex.Kind.STREET,
+                LATITUDE + 370 / METERS_PER_DEGREE, LONGITUDE + 0.0203));
+    }
+
+    @Test
+    public void open_mapsAnIndexStoredInsideAnotherFile() throws Exception {
+        // Laid out like an uncompressed asset in an APK: other entries before and after it.
+        File index = folder.newFile("places.idx");
+        fixture().write(index);
+        byte[] bytes = Files.readAllBytes(index.toPath());
+        File apk = folder.newFile("app.apk");
+        try (FileOutputStream output = new FileOutputStream(apk)) {
+            output.write(new byte[4099]);
+            output.write(bytes);
+            output.write(new byte[123]);
+        }
+
+        PlaceIndex mapped;
+        try (FileInputStream input = new FileInputStream(apk)) {
+            mapped = PlaceIndex.open(input.getChannel(), 4099, bytes.length);
+        }
+
+        // Still readable once the file is closed.
+        assertEquals(2500, mapped.getCount(PlaceIndex.Kind.STREET));
+        assertEquals("Street 3, Town 0", mapped.getLocationName(
+                LATITUDE + 330 / METERS_PER_DEGREE, LONGITUDE + 0.0203));
+        try (FileInputStream input = new FileInputStream(apk)) {
+            PlaceIndex.open(input.getChannel(), 0, bytes.length);
+            fail("Mapped an index at the wrong offset");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void getLocationName_onlyNamesPlacesInRange() throws Exception {
+        PlaceIndex index = new PlaceIndex(fixture().build());
+
+        // 1 km west of the grid, the locality is still in range.
+        assertEquals("Town 0", index.getLocationName(LATITUDE + 0.01, LONGITUDE - 0.01));
+        assertNull(index.getLocationName(LATITUDE - 1, LONGITUDE));
+        assertNull(index.getLocationName(-LATITUDE, -LONGITUDE));
+    }
+
+    @Test
+    public void findName_searchesAcrossTheAntimeridian() throws Exception {
+        PlaceIndexBuilder builder = new PlaceIndexBuilder();
+        builder.add(PlaceIndex.Kind.STREET, "East", -17.0, 179.9995);
+        builder.add(PlaceIndex.Kind.STREET, "West", -17.0, -179.998);
+        PlaceIndex index = new PlaceIndex(builder.build());
+
+        assertEquals("East", index.findName(PlaceIndex.Kind.STREET, -17.0, -179.9999));
+        assertEquals("West", index.findName(PlaceIndex.Kind.STREET, -17.0, -179.9985));
+        assertNull(index.findName(PlaceIndex.Kind.LOCALITY, -17.0, 180));
+    }
+
+    @Test
+    public void readCsv_sharesRepeatedNames() throws Exception {
+        PlaceIndexBuilder builder = new PlaceIndexBuilder();
+        builder.readCsv(new StringReader("kind,name,latitude,longitude\n"
+                + "# two pieces of one street\n"
+                + "street,MG Road,12.9756,77.6066\n"
+                + "street,MG Road,12.9750,77.6100\n"
+                + "locality,Bengaluru,12.9716,77.5946\n"));
+        ByteBuffer buffer = builder.build();
+        PlaceIndex index = new PlaceIndex(buffer);
+
+        assertEquals("MG Road, Bengaluru", index.getLocationName(12.9753, 77.6083));
+        int records = 3 * PlaceFormat.RECORD_SIZE;
+        int names = 2 + "MG Road".length() + 2 + "Bengaluru".length();
+        assertEquals(PlaceFormat.HEADER_SIZE + 2 * PlaceFormat.SECTION_SIZE + records + names,
+                buffer.limit());
+
+        try {
+            builder.readCsv(new StringReader("village,Nowhere,12,77\n"));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void constructor_rejectsOtherData() throws Exception {
+        try {
+            new PlaceIndex(ByteBuffer.wrap("not an index".getBytes("UTF-8")));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        ByteBuffer buffer = fixture().build();
+        buffer.limit(buffer.limit() / 2);
+        try {
+            new PlaceIndex(buffer);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
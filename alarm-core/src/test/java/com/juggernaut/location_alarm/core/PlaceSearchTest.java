@@ -0,0 +1,109 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PlaceSearch.
+ */
+public class PlaceSearchTest {
+
+    private static final double LATITUDE = 12.97;
+    private static final double LONGITUDE = 77.59;
+
+    private static PlaceSearch fixture() {
+        PlaceSearch search = new PlaceSearch();
+        search.add("Majestic Bus Station", 12.9767, 77.5713, PlaceSearch.Source.POI);
+        search.add("Mysore Road Metro", 12.9561, 77.5399, PlaceSearch.Source.POI);
+        search.add("MG Road", 12.9756, 77.6066, PlaceSearch.Source.RECENT);
+        search.add("Home", 13.0358, 77.5970, PlaceSearch.Source.ALARM);
+        search.add("Mysuru Palace", 12.3052, 76.6552, PlaceSearch.Source.POI);
+        return search;
+    }
+
+    @Test
+    public void search_matchesWordPrefixesInAnyOrder() throws Exception {
+        PlaceSearch search = fixture();
+
+        List<PlaceSearch.Result> results = search.search("road m", LATITUDE, LONGITUDE, 10);
+        assertEquals(2, results.size());
+        assertEquals("MG Road", results.get(0).name);
+        assertEquals("Mysore Road Metro", results.get(1).name);
+        assertEquals(0, results.get(0).edits);
+
+        assertEquals("Home", search.search("ho", LATITUDE, LONGITUDE, 10).get(0).name);
+        assertTrue(search.search("road x", LATITUDE, LONGITUDE, 10).isEmpty());
+        assertTrue(search.search("  ", LATITUDE, LONGITUDE, 10).isEmpty());
+    }
+
+    @Test
+    public void search_toleratesTyposInLongerWords() throws Exception {
+        PlaceSearch search = fixture();
+
+        List<PlaceSearch.Result> results = search.search("majestik", LATITUDE, LONGITUDE, 10);
+        assertEquals(1, results.size());
+        assertEquals("Majestic Bus Station", results.get(0).name);
+        assertEquals(1, results.get(0).edits);
+        // Short words must match exactly.
+        assertTrue(search.search("hme", LATITUDE, LONGITUDE, 10).isEmpty());
+        // Accents and case are folded.
+        assertEquals("Mysuru Palace", search.search("PALACE", LATITUDE, LONGITUDE, 10).get(0).name);
+        assertEquals("Home", search.search("H\u00f4me", LATITUDE, LONGITUDE, 10).get(0).name);
+    }
+
+    @Test
+    public void search_ranksByEditsThenWeightedDistance() throws Exception {
+        PlaceSearch search = fixture();
+
+        // Both "my" places match exactly, the metro is closer.
+        List<PlaceSearch.Result> results = search.search("my", LATITUDE, LONGITUDE, 10);
+        assertEquals("Mysore Road Metro", results.get(0).name);
+        assertEquals("Mysuru Palace", results.get(1).name);
+        assertTrue(results.get(0).distance < results.get(1).distance);
+        // From Mysuru the palace comes first.
+        assertEquals("Mysuru Palace", search.search("my", 12.30, 76.65, 10).get(0).name);
+        // Exact before fuzzy, however close: "metro" is one edit from "metre".
+        search.add("Metre Hall", LATITUDE, LONGITUDE, PlaceSearch.Source.POI);
+        results = search.search("metro", LATITUDE, LONGITUDE, 10);
+        assertEquals("Mysore Road Metro", results.get(0).name);
+        assertEquals("Metre Hall", results.get(1).name);
+        assertEquals(1, results.get(1).edits);
+        // The saved alarm 7 km away beats a point of interest 5 km away.
+        search.add("Mall Home Centre", 12.93, 77.59, PlaceSearch.Source.POI);
+        assertEquals("Home", search.search("home", LATITUDE, LONGITUDE, 10).get(0).name);
+        // Without a position, the stronger source first.
+        assertEquals("Home", search.search("home", Double.NaN, Double.NaN, 1).get(0).name);
+    }
+
+    @Test
+    public void add_mergesTheSamePlaceKeepingTheStrongerSource() throws Exception {
+        PlaceSearch search = fixture();
+        search.add("mg road", 12.9757, 77.6067, PlaceSearch.Source.ALARM);
+        search.add("MG Road", 12.9757, 77.6067, PlaceSearch.Source.POI);
+        search.add("MG Road", 12.2958, 76.6394, PlaceSearch.Source.POI);
+
+        assertEquals(6, search.size());
+        List<PlaceSearch.Result> results = search.search("mg", LATITUDE, LONGITUDE, 10);
+        assertEquals(2, results.size());
+        assertEquals(PlaceSearch.Source.ALARM, results.get(0).source);
+        assertEquals(1, search.search("mg", LATITUDE, LONGITUDE, 1).size());
+    }
+
+    @Test
+    public void placeIndex_feedsItsPointsOfInterest() throws Exception {
+        PlaceIndexBuilder builder = new PlaceIndexBuilder();
+        builder.add(PlaceIndex.Kind.POI, "Cubbon Park", 12.9751, 77.6001);
+        builder.add(PlaceIndex.Kind.STREET, "Park Street", 12.9750, 77.6000);
+        PlaceIndex index = new PlaceIndex(builder.build());
+        PlaceSearch search = new PlaceSearch();
+        index.addTo(search, PlaceIndex.Kind.POI, PlaceSearch.Source.POI);
+
+        assertEquals(1, search.size());
+        assertEquals("Cubbon Park", search.search("park", LATITUDE, LONGITUDE, 10).get(0).name);
+        // Points of interest do not name positions.
+        assertEquals("Park Street", index.getLocationName(12.9751, 77.6001));
+    }
+}
@@ -0,0 +1,174 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for PolygonAlarm, its grid and PolygonFormat.
+ */
+public class PolygonAlarmTest {
+
+    /**
+     * A star of the given number of points around (12.97, 77.59), about 2 km across, with a
+     * square hole in the middle.
+     */
+    private static PolygonAlarm star(int points) {
+        double[][] latitudes = new double[2][];
+        double[][] longitudes = new double[2][];
+        latitudes[0] = new double[points * 2];
+        longitudes[0] = new double[points * 2];
+        for (int i = 0; i < points * 2; i++) {
+            double angle = Math.PI * i / points;
+            double radius = i % 2 == 0 ? 0.01 : 0.004;
+            latitudes[0][i] = 12.97 + radius * Math.sin(angle);
+            longitudes[0][i] = 77.59 + radius * Math.cos(angle);
+        }
+        latitudes[1] = new double[]{12.969, 12.969, 12.971, 12.971};
+        longitudes[1] = new double[]{77.589, 77.591, 77.591, 77.589};
+        return new PolygonAlarm(1, "Campus", latitudes, longitudes);
+    }
+
+    @Test
+    public void contains_agreesWithScanningEveryEdge() throws Exception {
+        PolygonAlarm star = star(500);
+        Random random = new Random(7);
+        int inside = 0;
+        for (int i = 0; i < 20000; i++) {
+            double latitude = 12.97 + (random.nextDouble() - 0.5) * 0.022;
+            double longitude = 77.59 + (random.nextDouble() - 0.5) * 0.022;
+            boolean expected = star.containsByScan(latitude, longitude);
+            assertEquals("at " + latitude + ", " + longitude, expected,
+                    star.contains(latitude, longitude));
+            if (expected) {
+                inside++;
+            }
+        }
+        // Both answers occur often enough to mean something.
+        assertTrue(inside > 2000 && inside < 18000);
+    }
+
+    @Test
+    public void contains_excludesHole() throws Exception {
+        PolygonAlarm star = star(5);
+        assertFalse(star.contains(12.97, 77.59));
+        assertTrue(star.contains(12.972, 77.59));
+        assertFalse(star.contains(12.99, 77.59));
+    }
+
+    @Test
+    public void grid_mostCellsNeedNoEdgeTests() throws Exception {
+        // A smooth outline of 4000 vertices, like a traced lake shore.
+        double[][] latitudes = new double[1][4000];
+        double[][] longitudes = new double[1][4000];
+        for (int i = 0; i < 4000; i++) {
+            double angle = 2 * Math.PI * i / 4000;
+            latitudes[0][i] = 12.97 + 0.01 * Math.sin(angle);
+            longitudes[0][i] = 77.59 + 0.01 * Math.cos(angle);
+        }
+        PolygonAlarm lake = new PolygonAlarm(1, "Lake", latitudes, longitudes);
+
+        assertEquals(4000, lake.getEdgeCount());
+        assertTrue(lake.getBoundaryCellCount() + " of " + lake.getCellCount(),
+                lake.getBoundaryCellCount() < lake.getCellCount() / 10);
+        assertTrue(lake.contains(12.97, 77.59));
+        assertFalse(lake.contains(12.979, 77.599));
+    }
+
+    @Test
+    public void contains_acrossAntimeridian() throws Exception {
+        PolygonAlarm polygon = new PolygonAlarm(1, "Taveuni",
+                new double[][]{{-16.9, -16.9, -16.7, -16.7}},
+                new double[][]{{179.8, -179.8, -179.8, 179.8}});
+        assertTrue(polygon.contains(-16.8, 179.9));
+        assertTrue(polygon.contains(-16.8, -179.9));
+        assertFalse(polygon.contains(-16.8, 179.7));
+        assertEquals(180.0, Math.abs(polygon.longitude), 1e-9);
+
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add(polygon);
+        List<Alarm> candidates = new ArrayList<>();
+        registry.query(-16.8, -179.9, candidates);
+        assertEquals(1, candidates.size());
+    }
+
+    @Test
+    public void pipeline_triggersWhenEnteringTheArea() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        PolygonAlarm star = registry.addPolygon("Campus", new double[][]{{12.96, 12.96, 12.98, 12.98}},
+                new double[][]{{77.58, 77.60, 77.60, 77.58}});
+        final List<Alarm> triggered = new ArrayList<>();
+        AlarmPipeline pipeline = new AlarmPipeline(registry, new LocationRequestScheduler(registry),
+                new AlarmPipeline.Listener() {
+                    @Override
+                    public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                        triggered.add(alarm);
+                    }
+
+                    @Override
+                    public void onTierChanged(LocationRequestScheduler.Tier tier,
+                                              long previousMaxWaitTime) {
+                    }
+                });
+
+        pipeline.onFix(new Fix(0, 12.95, 77.59, 10, 0, 0));
+        assertTrue(triggered.isEmpty());
+        DistanceKernel kernel = new DistanceKernel();
+        kernel.setOrigin(12.95, 77.59);
+        // 0.01 degrees south of the outline.
+        assertEquals(1112, registry.nearestBoundary(kernel), 10);
+
+        pipeline.onFix(new Fix(1000, 12.961, 77.59, 10, 0, 0));
+        assertEquals(1, triggered.size());
+        assertSame(star, triggered.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsClosedTwoVertexRing() throws Exception {
+        new PolygonAlarm(1, "Line", new double[][]{{12.0, 12.1, 12.0}},
+                new double[][]{{77.0, 77.1, 77.0}});
+    }
+
+    @Test
+    public void parseWkt_readsOutlineAndHoles() throws Exception {
+        List<double[]> latitudes = new ArrayList<>();
+        List<double[]> longitudes = new ArrayList<>();
+        PolygonFormat.parseWkt("polygon Z((77.58 12.96 0, 77.60 12.96 0, 77.60 12.98 0, 77.58 12.96 0),"
+                + " (77.59 12.965 0,77.595 12.965 0,77.59 12.97 0,77.59 12.965 0))", latitudes, longitudes);
+
+        assertEquals(2, latitudes.size());
+        assertArrayEquals(new double[]{12.96, 12.96, 12.98, 12.96}, latitudes.get(0), 0);
+        assertArrayEquals(new double[]{77.59, 77.595, 77.59, 77.59}, longitudes.get(1), 0);
+    }
+
+    @Test
+    public void formatWkt_roundTrips() throws Exception {
+        PolygonAlarm star = star(5);
+        List<double[]> latitudes = new ArrayList<>();
+        List<double[]> longitudes = new ArrayList<>();
+        PolygonFormat.parseWkt(PolygonFormat.formatWkt(star), latitudes, longitudes);
+
+        PolygonAlarm parsed = new PolygonAlarm(2, "Campus", latitudes.toArray(new double[0][]),
+                longitudes.toArray(new double[0][]));
+        assertEquals(star.getRingCount(), parsed.getRingCount());
+        assertEquals(star.getVertexCount(0), parsed.getVertexCount(0));
+        assertEquals(star.getLongitude(1, 2), parsed.getLongitude(1, 2), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void parseWkt_rejectsOtherGeometries() throws Exception {
+        PolygonFormat.parseWkt("LINESTRING (77.58 12.96, 77.60 12.96)", new ArrayList<double[]>(),
+                new ArrayList<double[]>());
+    }
+
+    @Test(expected = IOException.class)
+    public void parseWkt_rejectsUnclosedParentheses() throws Exception {
+        PolygonFormat.parseWkt("POLYGON ((77.58 12.96, 77.60 12.96, 77.60 12.98", new ArrayList<double[]>(),
+                new ArrayList<double[]>());
+    }
+}
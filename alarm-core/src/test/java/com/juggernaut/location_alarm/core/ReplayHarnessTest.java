@@ -0,0 +1,210 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ReplayHarness and the trace readers.
+ */
+public class ReplayHarnessTest {
+
+    private static final long START = 1540000000000L;
+
+    private static final double START_LATITUDE = 12.0;
+    private static final double LONGITUDE = 77.5;
+
+    /**
+     * Meters per degree of latitude.
+     */
+    private static final double METERS_PER_DEGREE = 111195;
+
+    /**
+     * Trace of one fix per second driving north at a constant speed.
+     */
+    private static final class DriveNorth implements TraceReader {
+        private final int mFixes;
+        private final float mSpeed;
+        private int mIndex;
+
+        DriveNorth(int fixes, float speed) {
+            mFixes = fixes;
+            mSpeed = speed;
+        }
+
+        @Override
+        public Fix next() {
+            if (mIndex == mFixes) {
+                return null;
+            }
+            double latitude = START_LATITUDE + mIndex * mSpeed / METERS_PER_DEGREE;
+            Fix fix = new Fix(START + mIndex * 1000L, latitude, LONGITUDE, 5, mSpeed, 0);
+            mIndex++;
+            return fix;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void run_triggersOnTimeAndStaysSilentFarAway() throws Exception {
+        ReplayHarness harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        // 20 km north at 15 m/s, the 500 m circle is entered after 1300 s.
+        harness.expect("ahead", START_LATITUDE + 20000 / METERS_PER_DEGREE, LONGITUDE, 500,
+                START + 1300000);
+        harness.expect("aside", START_LATITUDE + 20000 / METERS_PER_DEGREE, LONGITUDE + 0.5, 500,
+                ReplayHarness.NEVER);
+
+        ReplayHarness.Report report = harness.run(new DriveNorth(3600, 15));
+
+        assertEquals(report.toString(), 1, report.count(ReplayHarness.Outcome.ON_TIME));
+        assertEquals(report.toString(), 1, report.count(ReplayHarness.Outcome.SILENT));
+        assertTrue(report.tierChanges > 0);
+        // Far from the alarm the scheduler asks for fixes less often than the trace has them.
+        assertTrue(report.fixesProcessed < report.fixesRead);
+    }
+
+    @Test
+    public void run_stopsOnceEveryAlarmRang() throws Exception {
+        ReplayHarness harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        harness.expect("near", START_LATITUDE + 1000 / METERS_PER_DEGREE, LONGITUDE, 200,
+                START + 80000);
+
+        ReplayHarness.Report report = harness.run(new DriveNorth(3600, 10));
+
+        assertEquals(report.toString(), 1, report.count(ReplayHarness.Outcome.ON_TIME));
+        assertTrue(report.fixesRead < 3600);
+    }
+
+    @Test
+    public void run_sleepsFarAwayAndWakesInTime() throws Exception {
+        ReplayHarness harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        // 100 km north at 25 m/s, the 500 m circle is entered after 3980 s.
+        harness.expect("ahead", START_LATITUDE + 100000 / METERS_PER_DEGREE, LONGITUDE, 500,
+                START + 3980000);
+
+        ReplayHarness.Report report = harness.run(new DriveNorth(5000, 25));
+
+        assertEquals(report.toString(), 1, report.count(ReplayHarness.Outcome.ON_TIME));
+        assertEquals(report.toString(), 1, report.wakeUps);
+        assertTrue(report.toString(), report.sleepMillis > 3000000);
+
+        harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        harness.setSleeping(false);
+        harness.expect("ahead", START_LATITUDE + 100000 / METERS_PER_DEGREE, LONGITUDE, 500,
+                START + 3980000);
+        ReplayHarness.Report awake = harness.run(new DriveNorth(5000, 25));
+
+        assertEquals(awake.toString(), 1, awake.count(ReplayHarness.Outcome.ON_TIME));
+        assertEquals(0, awake.sleepMillis);
+        assertTrue(report.fixesProcessed < awake.fixesProcessed);
+    }
+
+    @Test
+    public void run_wakesUpForAnAlarmArmedWhileAsleep() throws Exception {
+        ReplayHarness harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        // 100 km north at 25 m/s, the 500 m circle is entered after 3980 s.
+        harness.expect("ahead", START_LATITUDE + 100000 / METERS_PER_DEGREE, LONGITUDE, 500,
+                START + 3980000);
+        // Armed after 1000 s, 25 km into the trip and asleep, entered after 1580 s.
+        harness.expectArmedAt(START + 1000000, "stop", START_LATITUDE + 40000 / METERS_PER_DEGREE,
+                LONGITUDE, 500, START + 1580000);
+
+        ReplayHarness.Report report = harness.run(new DriveNorth(5000, 25));
+
+        assertEquals(report.toString(), 2, report.count(ReplayHarness.Outcome.ON_TIME));
+        assertTrue(report.toString(), report.sleepMillis > 0);
+    }
+
+    @Test
+    public void run_everyFixReportsThroughput() throws Exception {
+        ReplayHarness harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        harness.setEveryFix(true);
+        harness.expect("never", START_LATITUDE - 1, LONGITUDE, 500, ReplayHarness.NEVER);
+
+        ReplayHarness.Report report = harness.run(new DriveNorth(200000, 15));
+
+        assertEquals(200000, report.fixesRead);
+        assertEquals(200000, report.fixesProcessed);
+        assertEquals(1, report.count(ReplayHarness.Outcome.SILENT));
+        assertEquals(0, report.fixesRejected);
+        // Every fix is processed, but still delivered in batches.
+        assertTrue(report.batches > 0);
+        assertTrue(report.batches < report.fixesRead);
+        // Never sleeps while every fix is wanted.
+        assertEquals(0, report.wakeUps);
+        assertEquals(0, report.sleepMillis);
+        assertTrue(report.elapsedNanos > 0);
+        assertTrue(report.getFixesPerSecond() > 0);
+    }
+
+    @Test
+    public void readLabels_parsesExpectations() throws Exception {
+        ReplayHarness harness = new ReplayHarness(ReplayHarness.DEFAULT_TOLERANCE);
+        harness.readLabels(new StringReader("name,latitude,longitude,radius,expected_time\n"
+                + "# missed on purpose\n"
+                + "late," + (START_LATITUDE + 1000 / METERS_PER_DEGREE) + "," + LONGITUDE
+                + ",200," + START + "\n"
+                + "never,13.5,77.5,100,\n"));
+
+        ReplayHarness.Report report = harness.run(new DriveNorth(600, 10));
+
+        assertEquals(report.toString(), 1, report.count(ReplayHarness.Outcome.LATE));
+        assertEquals(report.toString(), 1, report.count(ReplayHarness.Outcome.SILENT));
+    }
+
+    @Test
+    public void csvTraceReader_readsOptionalColumns() throws Exception {
+        CsvTraceReader reader = new CsvTraceReader(new StringReader(
+                "time,latitude,longitude,accuracy\n"
+                        + "# comment\n"
+                        + START + ",12.5,77.5\n"
+                        + (START + 1000) + ",12.6,77.6,4.5,12.0,90.0\n"));
+
+        Fix first = reader.next();
+        assertEquals(START, first.time);
+        assertEquals(12.5, first.latitude, 0);
+        assertFalse(first.hasAccuracy());
+        Fix second = reader.next();
+        assertEquals(4.5f, second.accuracy, 0);
+        assertEquals(12.0f, second.speed, 0);
+        assertEquals(90.0f, second.bearing, 0);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void gpxTraceReader_readsTripExport() throws Exception {
+        StringWriter gpx = new StringWriter();
+        gpx.write("<?xml version=\"1.0\"?>\n<gpx version=\"1.0\"><trk><trkseg>\n"
+                + "<trkpt lat=\"12.9716\" lon=\"77.5946\"><time>2018-10-20T01:46:40Z</time>"
+                + "<course>45.3</course><speed>14.2</speed><cmt>accuracy 8.5 m</cmt></trkpt>\n"
+                + "<trkpt lon=\"77.5947\" lat=\"12.9717\"><time>2018-10-20T01:46:41.250Z</time>"
+                + "</trkpt>\n</trkseg></trk></gpx>\n");
+        GpxTraceReader reader = new GpxTraceReader(new StringReader(gpx.toString()));
+
+        Fix first = reader.next();
+        assertEquals(START, first.time);
+        assertEquals(12.9716, first.latitude, 0);
+        assertEquals(77.5946, first.longitude, 0);
+        assertEquals(8.5f, first.accuracy, 0);
+        assertEquals(14.2f, first.speed, 0);
+        assertEquals(45.3f, first.bearing, 0);
+        Fix second = reader.next();
+        assertEquals(START + 1250, second.time);
+        assertEquals(12.9717, second.latitude, 0);
+        assertFalse(second.hasSpeed());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void parseTime_handlesOffsets() throws Exception {
+        assertEquals(0, GpxTraceReader.parseTime("1970-01-01T00:00:00Z"));
+        assertEquals(START, GpxTraceReader.parseTime("2018-10-20T07:16:40+05:30"));
+        assertEquals(START + 500, GpxTraceReader.parseTime("2018-10-19T21:46:40.5-04:00"));
+    }
+}
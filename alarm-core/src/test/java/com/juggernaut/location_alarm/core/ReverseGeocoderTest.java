@@ -0,0 +1,149 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ReverseGeocoder.
+ */
+public class ReverseGeocoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Executor that only runs its tasks when told to.
+     */
+    private static class QueueExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static class CountingLookup implements ReverseGeocoder.Lookup {
+        int calls;
+
+        @Override
+        public String getLocationName(double latitude, double longitude) throws IOException {
+            calls++;
+            return "Place " + calls;
+        }
+    }
+
+    @Test
+    public void getLocationName_neverBlocksAndSharesLookupsPerCell() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        CountingLookup lookup = new CountingLookup();
+        ReverseGeocoder geocoder = new ReverseGeocoder(lookup, executor, null);
+
+        assertNull(geocoder.getLocationName(12.97160, 77.59460));
+        // A few meters away, same cell: no second lookup.
+        assertNull(geocoder.getLocationName(12.97162, 77.59461));
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        assertEquals(1, lookup.calls);
+        assertEquals("Place 1", geocoder.getLocationName(12.97161, 77.59460));
+    }
+
+    @Test
+    public void getLocationName_answersWithLastKnownNameWhileLookingUp() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        ReverseGeocoder geocoder = new ReverseGeocoder(new CountingLookup(), executor, null);
+        final String[] resolved = new String[1];
+        geocoder.setListener(new ReverseGeocoder.Listener() {
+            @Override
+            public void onLocationNameResolved(String name) {
+                resolved[0] = name;
+            }
+        });
+
+        geocoder.getLocationName(12.9716, 77.5946);
+        executor.runAll();
+        assertEquals("Place 1", resolved[0]);
+
+        // One kilometer further: the old name until the new lookup completes.
+        assertEquals("Place 1", geocoder.getLocationName(12.9806, 77.5946));
+        executor.runAll();
+        assertEquals("Place 2", resolved[0]);
+        assertEquals("Place 2", geocoder.getLocationName(12.9806, 77.5946));
+    }
+
+    @Test
+    public void failedLookup_isRetriedLater() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        ReverseGeocoder geocoder = new ReverseGeocoder(new ReverseGeocoder.Lookup() {
+            @Override
+            public String getLocationName(double latitude, double longitude) throws IOException {
+                throw new IOException("offline");
+            }
+        }, executor, null);
+
+        geocoder.getLocationName(12.9716, 77.5946);
+        executor.runAll();
+        assertEquals(1, geocoder.getFailureCount());
+        assertNull(geocoder.getLocationName(12.9716, 77.5946));
+        assertEquals(1, executor.tasks.size());
+    }
+
+    @Test
+    public void offlineLookup_answersRightAwayAndIsRefined() throws Exception {
+        QueueExecutor executor = new QueueExecutor();
+        PlaceIndexBuilder places = new PlaceIndexBuilder();
+        places.add(PlaceIndex.Kind.STREET, "MG Road", 12.9716, 77.5946);
+        PlaceIndex index = new PlaceIndex(places.build());
+
+        ReverseGeocoder geocoder = new ReverseGeocoder(new CountingLookup(), executor, null);
+        geocoder.setOfflineLookup(index);
+        assertEquals("MG Road", geocoder.getLocationName(12.9716, 77.5946));
+        executor.runAll();
+        assertEquals("Place 1", geocoder.getLocationName(12.9716, 77.5946));
+
+        // Without the platform lookup, nothing runs in the background.
+        ReverseGeocoder offline = new ReverseGeocoder(null, executor, null);
+        offline.setOfflineLookup(index);
+        assertEquals("MG Road", offline.getLocationName(12.9717, 77.5946));
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void cache_survivesRestart() throws Exception {
+        File file = new File(folder.getRoot(), "geocoder_cache");
+        QueueExecutor executor = new QueueExecutor();
+        ReverseGeocoder geocoder = new ReverseGeocoder(new CountingLookup(), executor, file);
+        geocoder.getLocationName(12.9716, 77.5946);
+        executor.runAll();
+        assertTrue(file.exists());
+
+        CountingLookup lookup = new CountingLookup();
+        ReverseGeocoder restarted = new ReverseGeocoder(lookup, executor, file);
+        executor.runAll();
+        assertEquals("Place 1", restarted.getLocationName(12.9716, 77.5946));
+        assertEquals(0, lookup.calls);
+    }
+
+    @Test
+    public void geohash_matchesReferenceEncoding() throws Exception {
+        assertEquals("ezs42", Geohash.toBase32(42.6, -5.6, 5));
+        assertEquals("u4pruydqqvj", Geohash.toBase32(57.64911, 10.40744, 11));
+    }
+}
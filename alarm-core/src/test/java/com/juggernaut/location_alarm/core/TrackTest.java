@@ -0,0 +1,96 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the simplification and culling of a Track.
+ */
+public class TrackTest {
+
+    /**
+     * A zig-zag heading east along the equator, points 10 m apart with 5 m of wiggle.
+     */
+    private static Track zigZag(int points) {
+        Track track = new Track();
+        double step = 10 / 111320.0;
+        for (int i = 0; i < points; i++) {
+            track.append(i % 2 == 0 ? 0 : 5 / 111320.0, i * step);
+        }
+        return track;
+    }
+
+    @Test
+    public void simplify_keepsEndsOfStraightLine() throws Exception {
+        Track track = new Track();
+        for (int i = 0; i < 100; i++) {
+            track.append(0, i * 1e-4);
+        }
+
+        assertEquals(2, track.simplify(18));
+    }
+
+    @Test
+    public void simplify_dropsDetailWhenZoomedOut() throws Exception {
+        Track track = zigZag(10000);
+
+        // At zoom 20 a pixel is about 0.15 m, at zoom 10 about 150 m.
+        assertEquals(10000, track.simplify(20));
+        assertEquals(2, track.simplify(10));
+    }
+
+    @Test
+    public void simplify_staysWithinTolerance() throws Exception {
+        double[] xs = {0, 1, 2, 3, 4, 5, 6};
+        double[] ys = {0, 0.2, -0.3, 2, 0.1, 0, 0};
+        int[] kept = new int[xs.length];
+
+        int count = Track.simplify(xs, ys, xs.length, 0.5, new boolean[xs.length],
+                new int[2 * xs.length], kept);
+
+        assertArrayEquals(new int[]{0, 2, 3, 4, 6}, Arrays.copyOf(kept, count));
+    }
+
+    @Test
+    public void getVisibleRuns_clipsToViewport() throws Exception {
+        Track track = zigZag(10000);
+        double step = 10 / 111320.0;
+        Viewport viewport = Viewport.fromBounds(-0.01, 0.2, 0.01, 0.3);
+        List<int[]> runs = new ArrayList<>();
+
+        track.getVisibleRuns(20, viewport, runs);
+
+        assertEquals(1, runs.size());
+        int[] run = runs.get(0);
+        assertTrue(run.length > 1000 && run.length < 1200);
+        assertEquals(0.2, track.getLongitude(run[0]), step);
+        assertEquals(0.3, track.getLongitude(run[run.length - 1]), step);
+
+        runs.clear();
+        track.getVisibleRuns(20, Viewport.fromBounds(10, 10, 11, 11), runs);
+        assertTrue(runs.isEmpty());
+    }
+
+    @Test
+    public void getVisibleRuns_splitsWhereTrackLeavesViewport() throws Exception {
+        Track track = new Track();
+        // East along the equator, north, and back west.
+        track.append(0, 0);
+        track.append(0, 1);
+        track.append(1, 1);
+        track.append(1, 0);
+        Viewport viewport = Viewport.fromBounds(-0.1, 0.4, 1.1, 0.6);
+        List<int[]> runs = new ArrayList<>();
+
+        track.getVisibleRuns(10, viewport, runs);
+
+        assertEquals(2, runs.size());
+        assertArrayEquals(new int[]{0, 1}, runs.get(0));
+        assertArrayEquals(new int[]{2, 3}, runs.get(1));
+    }
+}
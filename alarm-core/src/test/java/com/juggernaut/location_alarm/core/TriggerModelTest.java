@@ -0,0 +1,176 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for TriggerModel.
+ */
+public class TriggerModelTest {
+
+    private static final double LATITUDE = 12.97;
+    private static final double LONGITUDE = 77.59;
+
+    /**
+     * Meters per degree of latitude.
+     */
+    private static final double METERS_PER_DEGREE = 111195;
+
+    @Test
+    public void cdf_matchesNormalTable() throws Exception {
+        assertEquals(0.5, TriggerModel.cdf(0), 1e-7);
+        assertEquals(0.8413447, TriggerModel.cdf(1), 1e-6);
+        assertEquals(0.0227501, TriggerModel.cdf(-2), 1e-6);
+        assertEquals(1.2815516, TriggerModel.quantile(0.9), 1e-5);
+    }
+
+    @Test
+    public void probabilityInside_dependsOnAccuracy() throws Exception {
+        // 20 m inside the edge.
+        assertTrue(TriggerModel.probabilityInside(-20, 5) > 0.99);
+        assertEquals(0.5, TriggerModel.probabilityInside(0, 300), 1e-7);
+        assertTrue(TriggerModel.probabilityInside(-20, 300) < 0.6);
+        assertEquals(1, TriggerModel.probabilityInside(-20, 0), 0);
+    }
+
+    @Test
+    public void getTriggerMargin_scalesWithSigma() throws Exception {
+        TriggerModel model = new TriggerModel(0.9, 0.01);
+        assertEquals(0, model.getTriggerMargin(0), 0);
+        assertEquals(128.2, model.getTriggerMargin(100), 0.1);
+    }
+
+    @Test
+    public void update_ambiguousNearTheEdgeWithHysteresis() throws Exception {
+        TriggerModel model = new TriggerModel(0.9, 0.01);
+        // 400 m outside with a sigma of 100 m is clear.
+        assertFalse(model.update(400, 100));
+        assertFalse(model.isAmbiguous());
+        // 200 m outside is not.
+        assertTrue(model.update(200, 100));
+        assertTrue(model.isAmbiguous());
+        // Back to 280 m, within the leave threshold.
+        assertFalse(model.update(280, 100));
+        assertTrue(model.isAmbiguous());
+        // An accurate fix settles it.
+        assertTrue(model.update(200, 3));
+        assertFalse(model.isAmbiguous());
+    }
+
+    @Test
+    public void update_neverAmbiguousForExactPositions() throws Exception {
+        TriggerModel model = new TriggerModel();
+        assertFalse(model.update(-5, 0));
+        assertFalse(model.update(5, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsAmbiguityAboveConfidence() throws Exception {
+        new TriggerModel(0.9, 0.95);
+    }
+
+    @Test
+    public void pipeline_filteredAndRawMarginsAgreeForStationaryFix() throws Exception {
+        // 30 m inside a 300 m alarm, from a fix 30 m accurate: a margin of 25 m.
+        Fix fix = new Fix(0, LATITUDE - 270 / METERS_PER_DEGREE, LONGITUDE, 30, 0, -1);
+        List<Alarm> rawTriggered = new ArrayList<>();
+        List<Alarm> filteredTriggered = new ArrayList<>();
+        AlarmPipeline raw = newPipeline(rawTriggered);
+        AlarmPipeline filtered = newPipeline(filteredTriggered);
+        filtered.setFilter(new FixFilter());
+
+        raw.onFix(fix);
+        raw.onFixesProcessed(fix);
+        filtered.onFix(fix);
+        filtered.onFixesProcessed(fix);
+
+        assertEquals(raw.getSigma(fix), filtered.getSigma(fix), 1e-3);
+        assertEquals(30 * TriggerModel.ACCURACY_TO_SIGMA, filtered.getSigma(fix), 1e-3);
+        assertEquals(raw.getScheduler().getDistanceToBoundary(),
+                filtered.getScheduler().getDistanceToBoundary(), 1e-3);
+        assertEquals(1, rawTriggered.size());
+        assertEquals(1, filteredTriggered.size());
+    }
+
+    private static AlarmPipeline newPipeline(final List<Alarm> triggered) {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Station", LATITUDE, LONGITUDE, 300);
+        // Still armed once the station rang, the scheduler measures the distance to it.
+        registry.add("Next stop", LATITUDE + 5000 / METERS_PER_DEGREE, LONGITUDE, 300);
+        AlarmPipeline pipeline = new AlarmPipeline(registry,
+                new LocationRequestScheduler(registry), new AlarmPipeline.Listener() {
+                    @Override
+                    public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                        triggered.add(alarm);
+                    }
+
+                    @Override
+                    public void onTierChanged(LocationRequestScheduler.Tier tier,
+                                              long previousMaxWaitTime) {
+                    }
+                });
+        pipeline.setTriggerModel(new TriggerModel());
+        return pipeline;
+    }
+
+    @Test
+    public void pipeline_weighsTheActualBoundaryNotTheSchedulerBound() throws Exception {
+        List<Alarm> triggered = new ArrayList<>();
+        AlarmPipeline pipeline = newPipeline(triggered);
+        // A sigma of 250 m is ambiguous within about 580 m of the station.
+        float accuracy = (float) (250 / TriggerModel.ACCURACY_TO_SIGMA);
+
+        Fix first = new Fix(0, LATITUDE - 1300 / METERS_PER_DEGREE, LONGITUDE, accuracy, -1, -1);
+        pipeline.onFix(first);
+        pipeline.onFixesProcessed(first);
+        // Driving away, the scheduler's bound shrinks by the distance travelled regardless.
+        Fix second = new Fix(60000, LATITUDE - 1700 / METERS_PER_DEGREE, LONGITUDE, accuracy, -1, -1);
+        pipeline.onFix(second);
+        pipeline.onFixesProcessed(second);
+
+        assertTrue(pipeline.getScheduler().getBoundary() < 580);
+        assertFalse(pipeline.getTriggerModel().isAmbiguous());
+        assertTrue(triggered.isEmpty());
+    }
+
+    @Test
+    public void pipeline_confirmsInaccurateFixBeforeTriggering() throws Exception {
+        AlarmRegistry registry = new AlarmRegistry();
+        registry.add("Station", LATITUDE, LONGITUDE, 300);
+        LocationRequestScheduler scheduler = new LocationRequestScheduler(registry);
+        final List<Alarm> triggered = new ArrayList<>();
+        final List<LocationRequestScheduler.Tier> tiers = new ArrayList<>();
+        AlarmPipeline pipeline = new AlarmPipeline(registry, scheduler,
+                new AlarmPipeline.Listener() {
+                    @Override
+                    public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                        triggered.add(alarm);
+                    }
+
+                    @Override
+                    public void onTierChanged(LocationRequestScheduler.Tier tier,
+                                              long previousMaxWaitTime) {
+                        tiers.add(tier);
+                    }
+                });
+        pipeline.setTriggerModel(new TriggerModel());
+
+        // 250 m from the station, inside the alarm, but from a fix 400 m accurate.
+        Fix coarse = new Fix(0, LATITUDE - 250 / METERS_PER_DEGREE, LONGITUDE, 400, -1, -1);
+        pipeline.onFix(coarse);
+        pipeline.onFixesProcessed(coarse);
+        assertTrue(triggered.isEmpty());
+        assertEquals(LocationRequestScheduler.Tier.CONFIRM, scheduler.getTier());
+        assertEquals(LocationRequestScheduler.Tier.CONFIRM, tiers.get(tiers.size() - 1));
+
+        // The high accuracy fix confirms it.
+        Fix accurate = new Fix(5000, LATITUDE - 250 / METERS_PER_DEGREE, LONGITUDE, 5, -1, -1);
+        pipeline.onFix(accurate);
+        pipeline.onFixesProcessed(accurate);
+        assertEquals(1, triggered.size());
+    }
+}
@@ -0,0 +1,171 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for TripController.
+ */
+public class TripControllerTest {
+
+    private static final long START = 1540000000000L;
+
+    /**
+     * Meters per degree of latitude.
+     */
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private final AlarmRegistry mRegistry = new AlarmRegistry();
+
+    private final LocationRequestScheduler mScheduler = new LocationRequestScheduler(mRegistry);
+
+    private final List<String> mEvents = new ArrayList<>();
+
+    private AlarmPipeline mPipeline;
+
+    private TripController mController;
+
+    @Before
+    public void setUp() throws Exception {
+        mPipeline = new AlarmPipeline(mRegistry, mScheduler, new AlarmPipeline.Listener() {
+            @Override
+            public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                mEvents.add("triggered " + alarm.name);
+            }
+
+            @Override
+            public void onTierChanged(LocationRequestScheduler.Tier tier, long previousMaxWaitTime) {
+            }
+        });
+        mController = new TripController(mRegistry, mPipeline, new ApproachMonitor(1000, 120),
+                new TripController.Listener() {
+                    @Override
+                    public void onApproachChanged(boolean approaching) {
+                        mEvents.add(approaching ? "approaching" : "left");
+                    }
+
+                    @Override
+                    public void onSleep(List<Alarm> alarms, float speed) {
+                        mEvents.add("sleep " + alarms.size());
+                    }
+
+                    @Override
+                    public void onRequestUpdates(long previousMaxWaitTime) {
+                        mEvents.add("request " + mScheduler.getTier());
+                    }
+                });
+        mRegistry.add("ahead", 12.0 + 100000 / METERS_PER_DEGREE, 77.5, 500);
+    }
+
+    private void onFix(long seconds, double meters) {
+        Fix fix = new Fix(START + seconds * 1000, 12.0 + meters / METERS_PER_DEGREE, 77.5, 10, 25, 0);
+        mPipeline.onFix(fix);
+        mController.onFixesProcessed(fix);
+    }
+
+    @Test
+    public void onFixesProcessed_sleepsFarFromEveryRing() throws Exception {
+        mController.start();
+        onFix(0, 0);
+
+        assertEquals(LocationRequestScheduler.Tier.FAR, mScheduler.getTier());
+        assertTrue(mController.isSleeping());
+        assertEquals("[sleep 1]", mEvents.toString());
+
+        // Asleep, the rings are not registered twice.
+        onFix(10, 250);
+        assertEquals("[sleep 1]", mEvents.toString());
+    }
+
+    @Test
+    public void onFixesProcessed_staysAwakeUnlessStartedAndEnabled() throws Exception {
+        onFix(0, 0);
+        assertFalse(mController.isSleeping());
+
+        mController.setSleepEnabled(false);
+        mController.start();
+        onFix(10, 250);
+        assertFalse(mController.isSleeping());
+        assertTrue(mEvents.isEmpty());
+    }
+
+    @Test
+    public void onSleepFailed_keepsUpdatesRunning() throws Exception {
+        mController.start();
+        onFix(0, 0);
+        mController.onSleepFailed();
+
+        assertFalse(mController.isSleeping());
+        assertFalse(mController.onRingEntered());
+        assertEquals("[sleep 1]", mEvents.toString());
+    }
+
+    @Test
+    public void onRingEntered_takesOverWithFastFixes() throws Exception {
+        mController.start();
+        onFix(0, 0);
+        mEvents.clear();
+
+        assertTrue(mController.onRingEntered());
+
+        assertFalse(mController.isSleeping());
+        assertEquals("[request " + LocationRequestScheduler.Tier.FINAL + "]", mEvents.toString());
+        assertFalse(mController.onRingEntered());
+    }
+
+    @Test
+    public void onAlarmAdded_takesOverFromTheRings() throws Exception {
+        mController.start();
+        onFix(0, 0);
+        mEvents.clear();
+
+        assertTrue(mController.onAlarmAdded());
+
+        assertFalse(mController.isSleeping());
+        assertEquals("[request " + LocationRequestScheduler.Tier.FINAL + "]", mEvents.toString());
+        // The rings of the sleep are stale.
+        assertFalse(mController.onRingEntered());
+    }
+
+    @Test
+    public void onAlarmAdded_replansTheRequestWhileAwake() throws Exception {
+        assertFalse(mController.onAlarmAdded());
+        assertTrue(mEvents.isEmpty());
+
+        mController.setSleepEnabled(false);
+        mController.start();
+        onFix(0, 0);
+        assertEquals(LocationRequestScheduler.Tier.FAR, mScheduler.getTier());
+
+        assertFalse(mController.onAlarmAdded());
+        assertEquals("[request " + LocationRequestScheduler.Tier.FINAL + "]", mEvents.toString());
+    }
+
+    @Test
+    public void onFixesProcessed_reportsTheApproach() throws Exception {
+        mController.setSleepEnabled(false);
+        mController.start();
+        onFix(0, 99000);
+        assertEquals("[approaching]", mEvents.toString());
+
+        onFix(60, 90000);
+        assertEquals("[approaching, left]", mEvents.toString());
+    }
+
+    @Test
+    public void stop_endsTheSleep() throws Exception {
+        mController.start();
+        onFix(0, 0);
+        mController.stop();
+
+        assertFalse(mController.isSleeping());
+        assertFalse(mController.onRingEntered());
+        onFix(10, 250);
+        assertEquals("[sleep 1]", mEvents.toString());
+    }
+}
@@ -0,0 +1,134 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for TripRecorder, TripReader and TripFormat.
+ */
+public class TripRecorderTest {
+
+    private static final long START = 1540000000000L;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void varint_roundTrips() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        long[] values = {0, 1, -1, 63, -64, 64, 300, -300, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            TripFormat.putSignedVarint(buffer, value);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, TripFormat.getSignedVarint(buffer));
+        }
+    }
+
+    @Test
+    public void record_roundTripsAndStaysCompact() throws Exception {
+        TripRecorder recorder = new TripRecorder(mFolder.getRoot(), DIRECT);
+        recorder.startTrip(START);
+        for (int i = 0; i < 100; i++) {
+            // 1 fix per second, about 14 m/s north east.
+            recorder.record(START + 1000 * (i + 1), 12.9716 + i * 0.0001, 77.5946 + i * 0.0001,
+                    8.5f, 14.2f, 45.3f);
+        }
+        recorder.record(START + 200000, 12.99, 77.61, -1, -1, -1);
+        long bytes = recorder.getRecordBytes();
+        recorder.endTrip();
+
+        // The first record holds absolute coordinates, the following ones small deltas.
+        assertTrue("bytes per fix " + bytes / 101.0, bytes / 101.0 < 16);
+
+        List<File> trips = recorder.getTrips();
+        assertEquals(1, trips.size());
+        assertEquals(TripFormat.HEADER_SIZE + bytes, trips.get(0).length());
+
+        TripReader reader = new TripReader(trips.get(0));
+        assertEquals(START, reader.getStartTime());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(reader.next());
+            assertEquals(START + 1000 * (i + 1), reader.getTime());
+            assertEquals(12.9716 + i * 0.0001, reader.getLatitude(), 1e-7);
+            assertEquals(77.5946 + i * 0.0001, reader.getLongitude(), 1e-7);
+            assertEquals(8.5f, reader.getAccuracy(), 0.05f);
+            assertEquals(14.2f, reader.getSpeed(), 0.005f);
+            assertEquals(45.3f, reader.getBearing(), 0.05f);
+        }
+        assertTrue(reader.next());
+        assertEquals(-1f, reader.getAccuracy(), 0f);
+        assertEquals(-1f, reader.getBearing(), 0f);
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void reader_stopsAtTruncatedRecord() throws Exception {
+        TripRecorder recorder = new TripRecorder(mFolder.getRoot(), DIRECT);
+        recorder.startTrip(START);
+        recorder.record(START + 1000, 12.9716, 77.5946, 5, 1, 90);
+        recorder.record(START + 2000, 12.9717, 77.5947, 5, 1, 90);
+        recorder.endTrip();
+        File trip = recorder.getTrips().get(0);
+        RandomAccessFile file = new RandomAccessFile(trip, "rw");
+        file.setLength(file.length() - 2);
+        file.close();
+
+        TripReader reader = new TripReader(trip);
+        assertTrue(reader.next());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void startTrip_rotatesAndKeepsRecentTrips() throws Exception {
+        TripRecorder recorder = new TripRecorder(mFolder.getRoot(), DIRECT);
+        for (int i = 0; i < TripRecorder.MAX_TRIPS + 3; i++) {
+            recorder.startTrip(START + i);
+            recorder.record(START + i + 1000, 12.9716, 77.5946, 5, -1, -1);
+        }
+        recorder.endTrip();
+
+        List<File> trips = recorder.getTrips();
+        assertEquals(TripRecorder.MAX_TRIPS, trips.size());
+        assertEquals("trip_" + (START + TripRecorder.MAX_TRIPS + 2) + ".bin", trips.get(0).getName());
+    }
+
+    @Test
+    public void writeGpx_streamsTrackPoints() throws Exception {
+        TripRecorder recorder = new TripRecorder(mFolder.getRoot(), DIRECT);
+        recorder.startTrip(START);
+        recorder.record(START + 1000, 12.9716, 77.5946, 4, 2.5f, 180);
+        recorder.endTrip();
+
+        StringWriter out = new StringWriter();
+        TripReader reader = new TripReader(recorder.getTrips().get(0));
+        reader.writeGpx(out);
+        reader.close();
+
+        String gpx = out.toString();
+        assertTrue(gpx, gpx.contains("<trkpt lat=\"12.9716000\" lon=\"77.5946000\">"
+                + "<time>2018-10-20T01:46:41.000Z</time><course>180.0</course><speed>2.5</speed>"
+                + "<cmt>accuracy 4.0 m</cmt></trkpt>"));
+        assertTrue(gpx.endsWith("</gpx>\n"));
+    }
+}
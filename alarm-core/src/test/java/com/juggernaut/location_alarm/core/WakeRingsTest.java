@@ -0,0 +1,78 @@
+package com.juggernaut.location_alarm.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for WakeRings.
+ */
+public class WakeRingsTest {
+
+    /**
+     * Meters per degree of latitude.
+     */
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private final DistanceKernel mKernel = new DistanceKernel();
+
+    @Test
+    public void getMargin_scalesWithSpeedAboveTheFloor() throws Exception {
+        double seconds = (WakeRings.RESPONSIVENESS + WakeRings.TAKEOVER_TIME) / 1000.0;
+        assertEquals(30 * seconds, WakeRings.getMargin(30), 1e-6);
+        assertEquals(WakeRings.getMargin(0), WakeRings.getMargin(0.1f), 0);
+        assertTrue(WakeRings.getMargin(0) > 0);
+
+        Alarm alarm = new Alarm(1, "a", 12.0, 77.5, 500);
+        assertEquals(500 + WakeRings.getMargin(30), WakeRings.getRadius(alarm, 30), 1e-3);
+    }
+
+    @Test
+    public void canSleep_onlyWellOutsideEveryRing() throws Exception {
+        List<Alarm> alarms = Collections.singletonList(new Alarm(1, "a", 12.0, 77.5, 500));
+        double ring = WakeRings.getRadius(alarms.get(0), 25);
+
+        double far = 12.0 + (ring + WakeRings.HEADROOM + 2000) / METERS_PER_DEGREE;
+        assertTrue(WakeRings.canSleep(alarms, mKernel, far, 77.5, 20, 25));
+        // Less accurate, the same fix may already be near the ring.
+        assertFalse(WakeRings.canSleep(alarms, mKernel, far, 77.5, 2500, 25));
+        // Faster, the ring grows past the fix.
+        assertFalse(WakeRings.canSleep(alarms, mKernel, far, 77.5, 20, 60));
+        double near = 12.0 + (ring + WakeRings.HEADROOM / 2) / METERS_PER_DEGREE;
+        assertFalse(WakeRings.canSleep(alarms, mKernel, near, 77.5, 20, 25));
+    }
+
+    @Test
+    public void canSleep_needsAFewAlarms() throws Exception {
+        assertFalse(WakeRings.canSleep(new ArrayList<Alarm>(), mKernel, 12.0, 77.5, 20, 25));
+
+        List<Alarm> alarms = new ArrayList<>();
+        for (int i = 0; i <= WakeRings.MAX_RINGS; i++) {
+            alarms.add(new Alarm(i, "a" + i, 14.0, 77.5 + i * 0.001, 100));
+        }
+        assertFalse(WakeRings.canSleep(alarms, mKernel, 12.0, 77.5, 20, 25));
+        assertTrue(WakeRings.canSleep(alarms.subList(0, WakeRings.MAX_RINGS), mKernel, 12.0, 77.5,
+                20, 25));
+    }
+
+    @Test
+    public void corridorRing_enclosesTheWholeRoute() throws Exception {
+        double[] latitudes = {12.0, 12.1, 12.2};
+        double[] longitudes = {77.5, 77.5, 77.6};
+        CorridorAlarm corridor = new CorridorAlarm(1, "route", latitudes, longitudes, 200);
+
+        mKernel.setOrigin(corridor.latitude, corridor.longitude);
+        for (int i = 0; i < latitudes.length; i++) {
+            double distance = mKernel.estimate(latitudes[i], longitudes[i]) + 200;
+            assertTrue(corridor.getEnclosingRadius() >= distance);
+        }
+        assertTrue(WakeRings.canSleep(Arrays.<Alarm>asList(corridor), mKernel, 11.0, 77.5, 20, 25));
+        assertFalse(WakeRings.canSleep(Arrays.<Alarm>asList(corridor), mKernel, 12.25, 77.6, 20,
+                25));
+    }
+}
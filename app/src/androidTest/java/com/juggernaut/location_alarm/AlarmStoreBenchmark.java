@@ -0,0 +1,65 @@
+package com.juggernaut.location_alarm;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.AlarmRegistry;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long restoring the alarms takes after the process was killed, for a growing
+ * number of alarms.
+ *
+ * Run with ./gradlew connectedAndroidTest and read the results from logcat (tag
+ * AlarmStoreBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+public class AlarmStoreBenchmark {
+
+    private static final String TAG = AlarmStoreBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "alarm_store_benchmark.db";
+
+    private static final int[] ALARMS = {1, 10, 100, 1000};
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void restore_scalesWithAlarmCount() throws Exception {
+        Random random = new Random(1);
+        for (int count : ALARMS) {
+            InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE_NAME);
+            AlarmStore store = new AlarmStore(InstrumentationRegistry.getTargetContext(), DATABASE_NAME);
+            for (int i = 0; i < count; i++) {
+                store.save(new Alarm(i + 1, "Stop " + i, 12.9 + random.nextDouble() * 0.2,
+                        77.5 + random.nextDouble() * 0.2, 200));
+            }
+            store.close();
+
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                // A fresh helper each round opens the file like a cold start does.
+                long start = System.nanoTime();
+                AlarmStore restored = new AlarmStore(InstrumentationRegistry.getTargetContext(),
+                        DATABASE_NAME);
+                List<Alarm> alarms = restored.load();
+                AlarmRegistry registry = new AlarmRegistry();
+                registry.restore(alarms);
+                best = Math.min(best, System.nanoTime() - start);
+                restored.close();
+
+                assertEquals(count, registry.size());
+            }
+            Log.i(TAG, "Restored " + count + " alarm(s) in " + best / 1000 + " us");
+        }
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE_NAME);
+    }
+}
@@ -0,0 +1,86 @@
+package com.juggernaut.location_alarm;
+
+import android.location.Location;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.DistanceKernel;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares DistanceKernel with Location.distanceBetween on a device.
+ *
+ * Run with ./gradlew connectedAndroidTest and read the results from logcat (tag
+ * DistanceKernelBenchmark).
+ */
+@RunWith(AndroidJUnit4.class)
+public class DistanceKernelBenchmark {
+
+    private static final String TAG = DistanceKernelBenchmark.class.getSimpleName();
+
+    private static final int ALARMS = 1000;
+    private static final int FIXES = 200;
+    private static final int WARMUP_ROUNDS = 3;
+
+    @Test
+    public void isWithin_versusDistanceBetween() throws Exception {
+        Random random = new Random(1);
+        Alarm[] alarms = new Alarm[ALARMS];
+        for (int i = 0; i < ALARMS; i++) {
+            alarms[i] = new Alarm(i, "a" + i, 12.9 + random.nextDouble() * 0.2,
+                    77.5 + random.nextDouble() * 0.2, 200);
+        }
+        double[] fixes = new double[FIXES * 2];
+        for (int i = 0; i < fixes.length; i += 2) {
+            fixes[i] = 12.9 + random.nextDouble() * 0.2;
+            fixes[i + 1] = 77.5 + random.nextDouble() * 0.2;
+        }
+
+        DistanceKernel kernel = new DistanceKernel();
+        float[] results = new float[1];
+        int kernelHits = 0;
+        int platformHits = 0;
+        long kernelNanos = 0;
+        long platformNanos = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            kernelHits = 0;
+            long start = System.nanoTime();
+            for (int f = 0; f < fixes.length; f += 2) {
+                kernel.setOrigin(fixes[f], fixes[f + 1]);
+                for (Alarm alarm : alarms) {
+                    if (kernel.isWithin(alarm)) {
+                        kernelHits++;
+                    }
+                }
+            }
+            kernelNanos = System.nanoTime() - start;
+
+            platformHits = 0;
+            start = System.nanoTime();
+            for (int f = 0; f < fixes.length; f += 2) {
+                for (Alarm alarm : alarms) {
+                    Location.distanceBetween(fixes[f], fixes[f + 1], alarm.latitude, alarm.longitude,
+                            results);
+                    if (results[0] < alarm.radius) {
+                        platformHits++;
+                    }
+                }
+            }
+            platformNanos = System.nanoTime() - start;
+        }
+
+        int evaluations = ALARMS * FIXES;
+        Log.i(TAG, "DistanceKernel.isWithin: " + kernelNanos / evaluations + " ns/alarm, "
+                + kernel.getExactDecisions() + " exact of "
+                + (kernel.getFastDecisions() + kernel.getExactDecisions()));
+        Log.i(TAG, "Location.distanceBetween: " + platformNanos / evaluations + " ns/alarm");
+        assertEquals(platformHits, kernelHits);
+    }
+}
@@ -0,0 +1,84 @@
+package com.juggernaut.location_alarm;
+
+import android.app.Activity;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.Handler;
+import android.view.View;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Shows the metrics of LocationUpdatesService, refreshed every second while visible. Only part of
+ * debug builds, release builds rely on dumpsys.
+ */
+public class DiagnosticsActivity extends Activity {
+
+    private static final long REFRESH_INTERVAL = 1000;
+
+    private final Handler mHandler = new Handler();
+
+    private TextView mText;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            mHandler.postDelayed(this, REFRESH_INTERVAL);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        Button reset = new Button(this);
+        reset.setText("Reset");
+        reset.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                LocationUpdatesService.getMetrics().reset();
+                refresh();
+            }
+        });
+
+        mText = new TextView(this);
+        mText.setTypeface(Typeface.MONOSPACE);
+        mText.setTextSize(11);
+        mText.setTextIsSelectable(true);
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(mText);
+
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.addView(reset);
+        layout.addView(scroll);
+        setContentView(layout);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mHandler.post(mRefreshRunnable);
+    }
+
+    @Override
+    protected void onPause() {
+        mHandler.removeCallbacks(mRefreshRunnable);
+        super.onPause();
+    }
+
+    private void refresh() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        LocationUpdatesService.dumpState(writer);
+        LocationUpdatesService.getMetrics().dump(writer, "  ");
+        writer.flush();
+        mText.setText(out.toString());
+    }
+}
@@ -16,10 +16,13 @@ public class AlarmActivity extends AppCompatActivity {
         dismissButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Intent stopIntent = new Intent(AlarmActivity.this, LocationUpdatesService.class);
-                stopService(stopIntent);
                 LocationUpdatesService.stopAlarm();
-                MapsActivity.mMap.clear();
+                // Other alarms may still be armed, keep the service in that case. MapsActivity redraws the
+                // markers of the remaining alarms when it comes back.
+                if (LocationUpdatesService.getAlarmRegistry().isEmpty()) {
+                    Intent stopIntent = new Intent(AlarmActivity.this, LocationUpdatesService.class);
+                    stopService(stopIntent);
+                }
                 Intent locationAlarmIntent = new Intent(AlarmActivity.this, MapsActivity.class);
                 locationAlarmIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP);
                 startActivity(locationAlarmIntent);
@@ -0,0 +1,302 @@
+package com.juggernaut.location_alarm;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.media.RingtoneManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Vibrator;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Rings an alarm: the looping alarm sound with a rising volume, and a repeating vibration.
+ *
+ * Everything runs on one effects thread. The player is created there, so its callbacks arrive
+ * there too, and it is prepared with prepareAsync() instead of blocking a thread that handles
+ * fixes. Once the device approaches an alarm, prewarm() prepares the player ahead of time, so
+ * ringing only has to start it. The volume ramp and the vibration loop are messages of the same
+ * handler tagged with one token, so stop() cancels both at once.
+ *
+ * One instance per process: like the service state, a ringing alarm outlives the service.
+ */
+final class AlarmEffects {
+
+    private static final String TAG = AlarmEffects.class.getSimpleName();
+
+    /**
+     * Vibrate for 1000 milliseconds
+     */
+    private static final int DURATION_OF_VIBRATION = 1000;
+
+    /**
+     * Time period between two vibration events
+     */
+    private static final int VIBRATE_DELAY_TIME = 2000;
+
+    /**
+     * Increase alarm volume gradually every 600ms
+     */
+    private static final int VOLUME_INCREASE_DELAY = 600;
+
+    /**
+     * Volume level increasing step, also the volume the sound starts at.
+     */
+    private static final float VOLUME_INCREASE_STEP = 0.01f;
+
+    /**
+     * Max player volume level
+     */
+    private static final float MAX_VOLUME = 1.0f;
+
+    /**
+     * How often and how long to look for the first audio after starting the player.
+     */
+    private static final long FIRST_AUDIO_POLL_INTERVAL = 5;
+    private static final long FIRST_AUDIO_TIMEOUT = 2000;
+
+    private enum PlayerState {
+        IDLE, PREPARING, PREPARED, STARTED
+    }
+
+    private static AlarmEffects mInstance;
+
+    private final Context mContext;
+
+    private final ServiceMetrics mMetrics;
+
+    private final Vibrator mVibrator;
+
+    /**
+     * Runs every effect, on the effects thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Tags the messages of a ringing alarm, removed together by stop().
+     */
+    private final Object mRingToken = new Object();
+
+    /**
+     * The player and the state below are only used on the effects thread.
+     */
+    private MediaPlayer mPlayer;
+
+    private PlayerState mPlayerState = PlayerState.IDLE;
+
+    private boolean mRinging;
+
+    private float mVolumeLevel;
+
+    /**
+     * System.nanoTime() when the fix that triggered the ringing alarm was delivered.
+     */
+    private long mTriggerNanos;
+
+    private long mPrepareStartNanos;
+
+    private long mPlayerStartMillis;
+
+    /**
+     * Returns the effects of this process.
+     */
+    static synchronized AlarmEffects getInstance(Context context, ServiceMetrics metrics) {
+        if (mInstance == null) {
+            mInstance = new AlarmEffects(context.getApplicationContext(), metrics);
+        }
+        return mInstance;
+    }
+
+    private AlarmEffects(Context context, ServiceMetrics metrics) {
+        mContext = context;
+        mMetrics = metrics;
+        mVibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        // Above the background worker, ringing never waits for fixes being processed.
+        HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Prepares the alarm sound ahead of time, unless it is already.
+     */
+    void prewarm() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mPlayer == null) {
+                    Log.i(TAG, "Preparing the alarm sound ahead of time");
+                    mMetrics.increment(ServiceMetrics.Counter.PLAYER_PREWARMS);
+                    preparePlayer();
+                }
+            }
+        });
+    }
+
+    /**
+     * Releases a sound prepared ahead of time, unless an alarm is ringing.
+     */
+    void cooldown() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mRinging) {
+                    releasePlayer();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts ringing, unless an alarm is ringing already.
+     *
+     * @param triggerNanos System.nanoTime() when the triggering fix was delivered, the time to the
+     *                     first audio is measured from there.
+     */
+    void start(final long triggerNanos) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mRinging) {
+                    return;
+                }
+                Log.i(TAG, "Ringing, player " + mPlayerState);
+                mRinging = true;
+                mTriggerNanos = triggerNanos;
+                mVolumeLevel = VOLUME_INCREASE_STEP;
+                mHandler.postAtTime(mVibrationRunnable, mRingToken, SystemClock.uptimeMillis());
+                if (mPlayer == null) {
+                    mMetrics.increment(ServiceMetrics.Counter.COLD_STARTS);
+                    preparePlayer();
+                } else if (mPlayerState == PlayerState.PREPARED) {
+                    startPlayer();
+                }
+                // Otherwise still preparing, onPrepared() starts it.
+            }
+        });
+    }
+
+    /**
+     * Stops the sound and the vibration and releases the player.
+     */
+    void stop() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mRinging = false;
+                mHandler.removeCallbacksAndMessages(mRingToken);
+                if (mVibrator != null) {
+                    mVibrator.cancel();
+                }
+                releasePlayer();
+            }
+        });
+    }
+
+    private void preparePlayer() {
+        mPlayer = new MediaPlayer();
+        mPlayer.setOnPreparedListener(mPreparedListener);
+        mPlayer.setOnErrorListener(mErrorListener);
+        try {
+            mPlayer.setDataSource(mContext, RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM));
+            mPlayer.setLooping(true);
+            mPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
+            mPlayerState = PlayerState.PREPARING;
+            mPrepareStartNanos = System.nanoTime();
+            mPlayer.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            // Vibrating still wakes the user up.
+            Log.e(TAG, "Could not prepare the alarm sound. " + e);
+            releasePlayer();
+        }
+    }
+
+    private void startPlayer() {
+        mPlayer.setVolume(mVolumeLevel, mVolumeLevel);
+        mPlayer.start();
+        mPlayerState = PlayerState.STARTED;
+        mPlayerStartMillis = SystemClock.uptimeMillis();
+        mHandler.postAtTime(mVolumeRunnable, mRingToken, mPlayerStartMillis + VOLUME_INCREASE_DELAY);
+        mHandler.postAtTime(mFirstAudioRunnable, mRingToken, mPlayerStartMillis);
+    }
+
+    private void releasePlayer() {
+        if (mPlayer != null) {
+            mPlayer.release();
+            mPlayer = null;
+        }
+        mPlayerState = PlayerState.IDLE;
+    }
+
+    private final MediaPlayer.OnPreparedListener mPreparedListener = new MediaPlayer.OnPreparedListener() {
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            mMetrics.recordSince(ServiceMetrics.Stage.PLAYER_PREPARE, mPrepareStartNanos);
+            mPlayerState = PlayerState.PREPARED;
+            if (mRinging) {
+                startPlayer();
+            }
+        }
+    };
+
+    /**
+     * Interface definition of a callback to be invoked when there has been an error during an
+     * asynchronous operation.
+     */
+    private final MediaPlayer.OnErrorListener mErrorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            Log.i(TAG, "MediaPlayer error " + what + ", " + extra);
+            // Keep vibrating until the alarm is dismissed.
+            mHandler.removeCallbacks(mVolumeRunnable, mRingToken);
+            releasePlayer();
+            return true;
+        }
+    };
+
+    private final Runnable mVibrationRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mVibrator != null) {
+                mVibrator.vibrate(DURATION_OF_VIBRATION);
+            }
+            // Provide loop for vibration
+            mHandler.postAtTime(this, mRingToken,
+                    SystemClock.uptimeMillis() + DURATION_OF_VIBRATION + VIBRATE_DELAY_TIME);
+        }
+    };
+
+    private final Runnable mVolumeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            // increase volume level until reach max value
+            if (mPlayer != null && mVolumeLevel < MAX_VOLUME) {
+                mVolumeLevel = Math.min(MAX_VOLUME, mVolumeLevel + VOLUME_INCREASE_STEP);
+                mPlayer.setVolume(mVolumeLevel, mVolumeLevel);
+                mHandler.postAtTime(this, mRingToken, SystemClock.uptimeMillis() + VOLUME_INCREASE_DELAY);
+            }
+        }
+    };
+
+    /**
+     * Records the time from the triggering fix to the first audio, once the playback position has
+     * moved.
+     */
+    private final Runnable mFirstAudioRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mPlayerState != PlayerState.STARTED) {
+                return;
+            }
+            if (mPlayer.getCurrentPosition() > 0) {
+                mMetrics.recordSince(ServiceMetrics.Stage.FIX_TO_AUDIO, mTriggerNanos);
+            } else if (SystemClock.uptimeMillis() - mPlayerStartMillis < FIRST_AUDIO_TIMEOUT) {
+                mHandler.postAtTime(this, mRingToken, SystemClock.uptimeMillis() + FIRST_AUDIO_POLL_INTERVAL);
+            }
+        }
+    };
+}
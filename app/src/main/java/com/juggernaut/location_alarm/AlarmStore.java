@@ -0,0 +1,279 @@
+package com.juggernaut.location_alarm;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.AlarmRegistry;
+import com.juggernaut.location_alarm.core.CorridorAlarm;
+import com.juggernaut.location_alarm.core.PolygonAlarm;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the armed alarms in a small SQLite database so they survive the process being killed.
+ *
+ * Attached to the AlarmRegistry as its listener, every change is written on a single background
+ * thread in the order it was made. The service loads the alarms back when it is created again.
+ */
+class AlarmStore extends SQLiteOpenHelper implements AlarmRegistry.Listener {
+
+    private static final String TAG = AlarmStore.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "alarms.db";
+    private static final int DATABASE_VERSION = 3;
+
+    private static final String TABLE_ALARMS = "alarms";
+
+    private static final String SQL_CREATE = "CREATE TABLE " + TABLE_ALARMS + " ("
+            + "_id INTEGER PRIMARY KEY, "
+            + "name TEXT NOT NULL, "
+            + "latitude REAL NOT NULL, "
+            + "longitude REAL NOT NULL, "
+            + "radius REAL NOT NULL, "
+            + "route BLOB, "
+            + "rings BLOB)";
+
+    /**
+     * Version 2 added the route of corridor alarms, null for the others.
+     */
+    private static final String SQL_ADD_ROUTE = "ALTER TABLE " + TABLE_ALARMS
+            + " ADD COLUMN route BLOB";
+
+    /**
+     * Version 3 added the rings of polygon alarms, null for the others.
+     */
+    private static final String SQL_ADD_RINGS = "ALTER TABLE " + TABLE_ALARMS
+            + " ADD COLUMN rings BLOB";
+
+    private static final String SQL_SELECT = "SELECT _id, name, latitude, longitude, radius, route, rings FROM "
+            + TABLE_ALARMS;
+
+    private static AlarmStore mInstance;
+
+    /**
+     * Runs every write, one at a time.
+     */
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+    /**
+     * Compiled once, only used on the writer thread.
+     */
+    private SQLiteStatement mInsert;
+    private SQLiteStatement mDelete;
+
+    /**
+     * Returns the store of this process.
+     */
+    static synchronized AlarmStore getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new AlarmStore(context.getApplicationContext(), DATABASE_NAME);
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param name database file name, or null for an in-memory database.
+     */
+    AlarmStore(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL(SQL_ADD_ROUTE);
+        }
+        if (oldVersion < 3) {
+            db.execSQL(SQL_ADD_RINGS);
+        }
+    }
+
+    /**
+     * Reads every stored alarm. Blocks on disk I/O, never call it on the main thread.
+     */
+    List<Alarm> load() {
+        Cursor cursor = getReadableDatabase().rawQuery(SQL_SELECT, null);
+        try {
+            List<Alarm> alarms = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                if (!cursor.isNull(6)) {
+                    alarms.add(decodePolygon(cursor.getLong(0), cursor.getString(1),
+                            cursor.getBlob(6)));
+                } else if (!cursor.isNull(5)) {
+                    alarms.add(decodeCorridor(cursor.getLong(0), cursor.getString(1),
+                            cursor.getFloat(4), cursor.getBlob(5)));
+                } else {
+                    alarms.add(new Alarm(cursor.getLong(0), cursor.getString(1), cursor.getDouble(2),
+                            cursor.getDouble(3), cursor.getFloat(4)));
+                }
+            }
+            return alarms;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void onAlarmAdded(final Alarm alarm) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                save(alarm);
+            }
+        });
+    }
+
+    @Override
+    public void onAlarmRemoved(final Alarm alarm) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                delete(alarm.id);
+            }
+        });
+    }
+
+    @Override
+    public void onAlarmsCleared() {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteAll();
+            }
+        });
+    }
+
+    /**
+     * Inserts or replaces an alarm, runs on the writer thread.
+     */
+    void save(Alarm alarm) {
+        try {
+            if (mInsert == null) {
+                mInsert = getWritableDatabase().compileStatement("INSERT OR REPLACE INTO "
+                        + TABLE_ALARMS + " (_id, name, latitude, longitude, radius, route, rings)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+            }
+            mInsert.bindLong(1, alarm.id);
+            mInsert.bindString(2, alarm.name);
+            mInsert.bindDouble(3, alarm.latitude);
+            mInsert.bindDouble(4, alarm.longitude);
+            mInsert.bindDouble(5, alarm.radius);
+            if (alarm instanceof CorridorAlarm) {
+                mInsert.bindBlob(6, encodeRoute((CorridorAlarm) alarm));
+            } else {
+                mInsert.bindNull(6);
+            }
+            if (alarm instanceof PolygonAlarm) {
+                mInsert.bindBlob(7, encodeRings((PolygonAlarm) alarm));
+            } else {
+                mInsert.bindNull(7);
+            }
+            mInsert.executeInsert();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not save " + alarm + ". " + e);
+        }
+    }
+
+    /**
+     * Packs the vertices of a route as latitude and longitude doubles, one pair after another.
+     */
+    static byte[] encodeRoute(CorridorAlarm corridor) {
+        ByteBuffer buffer = ByteBuffer.allocate(corridor.getVertexCount() * 16);
+        for (int i = 0; i < corridor.getVertexCount(); i++) {
+            buffer.putDouble(corridor.getLatitude(i));
+            buffer.putDouble(corridor.getLongitude(i));
+        }
+        return buffer.array();
+    }
+
+    static CorridorAlarm decodeCorridor(long id, String name, float buffer, byte[] route) {
+        ByteBuffer vertices = ByteBuffer.wrap(route);
+        double[] latitudes = new double[route.length / 16];
+        double[] longitudes = new double[latitudes.length];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = vertices.getDouble();
+            longitudes[i] = vertices.getDouble();
+        }
+        return new CorridorAlarm(id, name, latitudes, longitudes, buffer);
+    }
+
+    /**
+     * Packs the rings of a polygon, each as its vertex count followed by latitude and longitude
+     * doubles.
+     */
+    static byte[] encodeRings(PolygonAlarm polygon) {
+        int size = 0;
+        for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+            size += 4 + polygon.getVertexCount(ring) * 16;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+            buffer.putInt(polygon.getVertexCount(ring));
+            for (int i = 0; i < polygon.getVertexCount(ring); i++) {
+                buffer.putDouble(polygon.getLatitude(ring, i));
+                buffer.putDouble(polygon.getLongitude(ring, i));
+            }
+        }
+        return buffer.array();
+    }
+
+    static PolygonAlarm decodePolygon(long id, String name, byte[] rings) {
+        ByteBuffer vertices = ByteBuffer.wrap(rings);
+        List<double[]> latitudes = new ArrayList<>();
+        List<double[]> longitudes = new ArrayList<>();
+        while (vertices.hasRemaining()) {
+            double[] ringLatitudes = new double[vertices.getInt()];
+            double[] ringLongitudes = new double[ringLatitudes.length];
+            for (int i = 0; i < ringLatitudes.length; i++) {
+                ringLatitudes[i] = vertices.getDouble();
+                ringLongitudes[i] = vertices.getDouble();
+            }
+            latitudes.add(ringLatitudes);
+            longitudes.add(ringLongitudes);
+        }
+        return new PolygonAlarm(id, name, latitudes.toArray(new double[latitudes.size()][]),
+                longitudes.toArray(new double[longitudes.size()][]));
+    }
+
+    /**
+     * Deletes an alarm, runs on the writer thread.
+     */
+    void delete(long id) {
+        try {
+            if (mDelete == null) {
+                mDelete = getWritableDatabase().compileStatement("DELETE FROM " + TABLE_ALARMS
+                        + " WHERE _id = ?");
+            }
+            mDelete.bindLong(1, id);
+            mDelete.executeUpdateDelete();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not delete alarm " + id + ". " + e);
+        }
+    }
+
+    /**
+     * Deletes every alarm, runs on the writer thread.
+     */
+    void deleteAll() {
+        try {
+            getWritableDatabase().delete(TABLE_ALARMS, null, null);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not delete alarms. " + e);
+        }
+    }
+}
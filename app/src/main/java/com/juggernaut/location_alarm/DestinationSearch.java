@@ -0,0 +1,273 @@
+package com.juggernaut.location_alarm;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.PlaceIndex;
+import com.juggernaut.location_alarm.core.PlaceSearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Searches destinations on the device as the user types: the saved alarms, the recent
+ * destinations and the localities and points of interest of the bundled place index. See
+ * PlaceSearch.
+ *
+ * The search is rebuilt on its own thread whenever the alarms or the recent destinations change
+ * and swapped in when done. The adapter searches it on the filter thread of the search box.
+ */
+final class DestinationSearch {
+
+    private static final String TAG = DestinationSearch.class.getSimpleName();
+
+    /**
+     * Most results shown in the drop down.
+     */
+    private static final int MAX_RESULTS = 8;
+
+    /**
+     * Most recent destinations kept.
+     */
+    private static final int MAX_RECENTS = 20;
+
+    /**
+     * Recent destinations in the default SharedPreferences, one "name\tlatitude\tlongitude" line
+     * each, newest first.
+     */
+    private static final String KEY_RECENT_DESTINATIONS = "recent_destinations";
+
+    /**
+     * Told on the main thread whether the query typed so far has local results.
+     */
+    interface Listener {
+        void onLocalResults(boolean found);
+    }
+
+    private final Context mContext;
+
+    private final SharedPreferences mPreferences;
+
+    /**
+     * Builds the searches, one at a time.
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Only used on mExecutor.
+     */
+    private PlaceIndex mPlaceIndex;
+    private boolean mPlaceIndexOpened;
+
+    /**
+     * Latest alarms, replaced as a whole.
+     */
+    private volatile List<Alarm> mAlarms = Collections.emptyList();
+
+    /**
+     * The search the adapter uses, guarded by this.
+     */
+    private PlaceSearch mSearch = new PlaceSearch();
+
+    /**
+     * Position to rank by distance from, NaN until known.
+     */
+    private volatile double mLatitude = Double.NaN;
+    private volatile double mLongitude = Double.NaN;
+
+    DestinationSearch(Context context) {
+        mContext = context.getApplicationContext();
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    /**
+     * Sets the position results are ranked by distance from.
+     */
+    void setOrigin(double latitude, double longitude) {
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    /**
+     * Offers the given alarms in the search, from the next rebuild on.
+     */
+    void setAlarms(List<Alarm> alarms) {
+        mAlarms = new ArrayList<>(alarms);
+        rebuild();
+    }
+
+    /**
+     * Remembers a destination the user picked, from the search or otherwise.
+     */
+    void addRecent(String name, double latitude, double longitude) {
+        String line = name.replace('\t', ' ').replace('\n', ' ').trim() + '\t' + latitude + '\t'
+                + longitude;
+        StringBuilder recents = new StringBuilder(line);
+        int count = 1;
+        for (String recent : mPreferences.getString(KEY_RECENT_DESTINATIONS, "").split("\n")) {
+            if (count == MAX_RECENTS) {
+                break;
+            }
+            if (!recent.isEmpty() && !recent.equals(line)) {
+                recents.append('\n').append(recent);
+                count++;
+            }
+        }
+        mPreferences.edit().putString(KEY_RECENT_DESTINATIONS, recents.toString()).apply();
+        rebuild();
+    }
+
+    /**
+     * Returns an adapter for a search box.
+     */
+    Adapter newAdapter(Listener listener) {
+        return new Adapter(listener);
+    }
+
+    /**
+     * Stops rebuilding, a rebuild in progress still completes.
+     */
+    void close() {
+        mExecutor.shutdown();
+    }
+
+    private synchronized List<PlaceSearch.Result> search(String query) {
+        return mSearch.search(query, mLatitude, mLongitude, MAX_RESULTS);
+    }
+
+    private void rebuild() {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        mExecutor.execute(mRebuildRunnable);
+    }
+
+    private final Runnable mRebuildRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            PlaceSearch search = new PlaceSearch();
+            for (Alarm alarm : mAlarms) {
+                search.add(alarm.name, alarm.latitude, alarm.longitude, PlaceSearch.Source.ALARM);
+            }
+            for (String recent : mPreferences.getString(KEY_RECENT_DESTINATIONS, "").split("\n")) {
+                String[] columns = recent.split("\t");
+                if (columns.length != 3) {
+                    continue;
+                }
+                try {
+                    search.add(columns[0], Double.parseDouble(columns[1]),
+                            Double.parseDouble(columns[2]), PlaceSearch.Source.RECENT);
+                } catch (NumberFormatException e) {
+                    Log.e(TAG, "Skipping recent destination " + recent);
+                }
+            }
+            if (!mPlaceIndexOpened) {
+                mPlaceIndexOpened = true;
+                mPlaceIndex = Utils.openPlaceIndex(mContext);
+            }
+            if (mPlaceIndex != null) {
+                mPlaceIndex.addTo(search, PlaceIndex.Kind.LOCALITY, PlaceSearch.Source.POI);
+                mPlaceIndex.addTo(search, PlaceIndex.Kind.POI, PlaceSearch.Source.POI);
+            }
+            synchronized (DestinationSearch.this) {
+                mSearch = search;
+            }
+            Log.i(TAG, "Search over " + search.size() + " destinations built in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+    };
+
+    /**
+     * Drop down of a search box, filled with the local results of what is typed.
+     */
+    final class Adapter extends BaseAdapter implements Filterable {
+
+        private final Listener mListener;
+
+        private List<PlaceSearch.Result> mResults = Collections.emptyList();
+
+        private Adapter(Listener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public int getCount() {
+            return mResults.size();
+        }
+
+        @Override
+        public PlaceSearch.Result getItem(int position) {
+            return mResults.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView view = (TextView) (convertView != null ? convertView
+                    : LayoutInflater.from(parent.getContext()).inflate(
+                            android.R.layout.simple_dropdown_item_1line, parent, false));
+            PlaceSearch.Result result = getItem(position);
+            view.setText(Double.isNaN(result.distance) ? result.name
+                    : String.format(Locale.getDefault(), "%s (%.1f km)", result.name,
+                    result.distance / 1000));
+            return view;
+        }
+
+        @Override
+        public Filter getFilter() {
+            return mFilter;
+        }
+
+        private final Filter mFilter = new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                // On the filter thread.
+                List<PlaceSearch.Result> results = constraint == null
+                        ? Collections.<PlaceSearch.Result>emptyList()
+                        : search(constraint.toString());
+                FilterResults filterResults = new FilterResults();
+                filterResults.values = results;
+                filterResults.count = results.size();
+                return filterResults;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults filterResults) {
+                mResults = filterResults.values == null
+                        ? Collections.<PlaceSearch.Result>emptyList()
+                        : (List<PlaceSearch.Result>) filterResults.values;
+                if (mResults.isEmpty()) {
+                    notifyDataSetInvalidated();
+                } else {
+                    notifyDataSetChanged();
+                }
+                mListener.onLocalResults(!mResults.isEmpty());
+            }
+
+            @Override
+            public CharSequence convertResultToString(Object resultValue) {
+                return ((PlaceSearch.Result) resultValue).name;
+            }
+        };
+    }
+}
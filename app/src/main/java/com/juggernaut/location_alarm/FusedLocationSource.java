@@ -0,0 +1,105 @@
+package com.juggernaut.location_alarm;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import com.juggernaut.location_alarm.core.Fix;
+import com.juggernaut.location_alarm.core.LocationRequestScheduler;
+import com.juggernaut.location_alarm.core.LocationSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LocationSource backed by the fused location provider of Google Play services.
+ */
+class FusedLocationSource implements LocationSource {
+
+    private static final String TAG = FusedLocationSource.class.getSimpleName();
+
+    /**
+     * Provides access to the Fused Location Provider API.
+     */
+    private final FusedLocationProviderClient mFusedLocationClient;
+
+    /**
+     * Looper the fixes are delivered on.
+     */
+    private final Looper mLooper;
+
+    /**
+     * Fixes of the current location result, reused for every result.
+     */
+    private final List<Fix> mFixes = new ArrayList<>();
+
+    private volatile Callback mCallback;
+
+    /**
+     * Callback for changes in location.
+     */
+    private final LocationCallback mLocationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            super.onLocationResult(locationResult);
+            Callback callback = mCallback;
+            if (callback == null) {
+                return;
+            }
+            List<Location> locations = locationResult.getLocations();
+            mFixes.clear();
+            for (int i = 0; i < locations.size(); i++) {
+                mFixes.add(toFix(locations.get(i)));
+            }
+            callback.onFixes(mFixes);
+        }
+    };
+
+    /**
+     * @param looper delivers the fixes, must not be the main looper for heavy callbacks.
+     */
+    FusedLocationSource(Context context, Looper looper) {
+        mFusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        mLooper = looper;
+    }
+
+    @Override
+    public void requestUpdates(LocationRequestScheduler.Tier tier, long maxWaitTime,
+                               Callback callback) {
+        Log.i(TAG, "Requesting location updates : " + tier + ", max wait " + maxWaitTime + " ms");
+
+        LocationRequest request = new LocationRequest();
+        request.setInterval(tier.interval);
+        request.setFastestInterval(tier.fastestInterval);
+        request.setPriority(tier.priority);
+        request.setMaxWaitTime(maxWaitTime);
+        mCallback = callback;
+        // Registering the same callback again replaces its previous request.
+        mFusedLocationClient.requestLocationUpdates(request, mLocationCallback, mLooper);
+    }
+
+    @Override
+    public void removeUpdates() {
+        mCallback = null;
+        mFusedLocationClient.removeLocationUpdates(mLocationCallback);
+    }
+
+    @Override
+    public void flush() {
+        mFusedLocationClient.flushLocations();
+    }
+
+    static Fix toFix(Location location) {
+        return new Fix(location.getTime(), location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : -1,
+                location.hasSpeed() ? location.getSpeed() : -1,
+                location.hasBearing() ? location.getBearing() : -1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.juggernaut.location_alarm;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.EventChannel;
+import com.juggernaut.location_alarm.core.Fix;
+
+import java.util.concurrent.Executor;
+
+/**
+ * In-process channels between LocationUpdatesService and the UI.
+ *
+ * Events are handed over as references, nothing is parceled into an Intent or Bundle per fix.
+ */
+final class LocationBus {
+
+    /**
+     * The last fix of every location result processed by the service.
+     */
+    private static final EventChannel<Fix> mLocations = new EventChannel<>("locations");
+
+    /**
+     * Alarms whose destination has been reached.
+     */
+    private static final EventChannel<Alarm> mAlarms = new EventChannel<>("alarms");
+
+    private static Executor mMainExecutor;
+
+    private LocationBus() {
+    }
+
+    static EventChannel<Fix> locations() {
+        return mLocations;
+    }
+
+    static EventChannel<Alarm> alarms() {
+        return mAlarms;
+    }
+
+    /**
+     * Returns an executor running on the main thread.
+     */
+    static synchronized Executor mainExecutor() {
+        if (mMainExecutor == null) {
+            mMainExecutor = looperExecutor(Looper.getMainLooper());
+        }
+        return mMainExecutor;
+    }
+
+    /**
+     * Returns an executor posting to the given looper.
+     */
+    static Executor looperExecutor(Looper looper) {
+        final Handler handler = new Handler(looper);
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    /**
+     * Subscribes on the main thread while the owner is started. The subscription is dropped when
+     * the owner stops and registered again when it starts, so a stopped activity neither receives
+     * nor queues events.
+     *
+     * @param coalesce true to only deliver the latest event, see EventChannel.
+     */
+    static <T> void observe(LifecycleOwner owner, EventChannel<T> channel,
+                            EventChannel.Subscriber<T> subscriber, boolean coalesce) {
+        owner.getLifecycle().addObserver(
+                new LifecycleSubscription<>(channel, subscriber, mainExecutor(), coalesce));
+    }
+
+    /**
+     * Ties a subscription to the started state of a lifecycle.
+     */
+    private static final class LifecycleSubscription<T> implements LifecycleObserver {
+
+        private final EventChannel<T> mChannel;
+
+        private final EventChannel.Subscriber<T> mSubscriber;
+
+        private final Executor mExecutor;
+
+        private final boolean mCoalesce;
+
+        private EventChannel.Subscription<T> mSubscription;
+
+        LifecycleSubscription(EventChannel<T> channel, EventChannel.Subscriber<T> subscriber,
+                              Executor executor, boolean coalesce) {
+            mChannel = channel;
+            mSubscriber = subscriber;
+            mExecutor = executor;
+            mCoalesce = coalesce;
+        }
+
+        @OnLifecycleEvent(Lifecycle.Event.ON_START)
+        void onStart() {
+            if (mSubscription == null) {
+                mSubscription = mChannel.subscribe(mSubscriber, mExecutor, mCoalesce);
+            }
+        }
+
+        @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+        void onStop() {
+            if (mSubscription != null) {
+                mSubscription.cancel();
+                mSubscription = null;
+            }
+        }
+
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        void onDestroy(LifecycleOwner owner) {
+            onStop();
+            owner.getLifecycle().removeObserver(this);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.juggernaut.location_alarm;
 
-import android.app.ActivityManager;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -8,28 +7,41 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.BitmapFactory;
-import android.location.Location;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.media.RingtoneManager;
-import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
-import android.os.Vibrator;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.content.LocalBroadcastManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.AlarmPipeline;
+import com.juggernaut.location_alarm.core.AlarmRegistry;
+import com.juggernaut.location_alarm.core.ApproachMonitor;
+import com.juggernaut.location_alarm.core.Fix;
+import com.juggernaut.location_alarm.core.FixFilter;
+import com.juggernaut.location_alarm.core.FixQueue;
+import com.juggernaut.location_alarm.core.LocationRequestScheduler;
+import com.juggernaut.location_alarm.core.LocationSource;
+import com.juggernaut.location_alarm.core.PlaceIndex;
+import com.juggernaut.location_alarm.core.ReverseGeocoder;
+import com.juggernaut.location_alarm.core.TriggerModel;
+import com.juggernaut.location_alarm.core.TripController;
+import com.juggernaut.location_alarm.core.TripRecorder;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -51,13 +63,11 @@ public class LocationUpdatesService extends Service {
     public static final String TAG = LocationUpdatesService.class.getSimpleName();
 
     /**
-     * trigger alarm when MAX_DISTANCE_RANGE away from destination.
+     * Default trigger radius: alarms ring when MAX_DISTANCE_RANGE away from their destination.
      */
     public final static int MAX_DISTANCE_RANGE = 200;
 
     private static final String PACKAGE_NAME = "com.juggernaut.location_alarm";
-    static final String ACTION_BROADCAST = PACKAGE_NAME + ".broadcast";
-    static final String EXTRA_LOCATION = PACKAGE_NAME + ".location";
 
     /**
      * The name of the channel for notifications.
@@ -67,62 +77,84 @@ public class LocationUpdatesService extends Service {
             ".started_from_notification";
 
     /**
-     * The desired interval for location updates. Inexact. Updates may be more or less frequent.
+     * Let the fused provider hold fixes back and deliver them in batches while far from every
+     * alarm, so the device wakes up less often.
      */
-    private static final long UPDATE_INTERVAL_IN_MILLISECONDS = 10000;
+    private static final boolean BATCHED_DELIVERY = true;
 
     /**
-     * The fastest rate for active location updates. Updates will never be more frequent
-     * than this value.
+     * Let location updates sleep far from every alarm, geofence rings around the alarms wake
+     * them up again. See WakeRings.
      */
-    private static final long FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS =
-            UPDATE_INTERVAL_IN_MILLISECONDS / 2;
+    private static final boolean GEOFENCE_WAKE = true;
 
     /**
-     * The identifier for the notification displayed for the foreground service.
+     * Let the platform Geocoder refine the names of the offline place index. Without it, place
+     * names never need the network.
      */
-    private static final int NOTIFICATION_ID = 12345678;
+    private static final boolean GEOCODER_REFINEMENT = true;
 
     /**
-     * Vibrate for 1000 milliseconds
+     * Name of the reverse geocoding cache file in the cache directory.
      */
-    private final static int DURATION_OF_VIBRATION = 1000;
+    private static final String GEOCODER_CACHE_FILE = "geocoder_cache";
+
     /**
-     * Time period between two vibration events
+     * Name of the trip log directory in the files directory.
      */
-    private final static int VIBRATE_DELAY_TIME = 2000;
+    private static final String TRIPS_DIRECTORY = "trips";
 
     /**
-     * Increase alarm volume gradually every 600ms
+     * The identifier for the notification displayed for the foreground service.
      */
-    private final static int VOLUME_INCREASE_DELAY = 600;
+    private static final int NOTIFICATION_ID = 12345678;
 
     /**
-     * Volume level increasing step
+     * Minimum time between two updates of the foreground notification.
      */
-    private final static float VOLUME_INCREASE_STEP = 0.01f;
+    private static final long NOTIFICATION_MIN_UPDATE_INTERVAL_IN_MILLISECONDS = 5000;
 
     /**
-     * Max player volume level
+     * Fixes waiting on the worker looper before stale ones are dropped.
      */
-    private final static float MAX_VOLUME = 1.0f;
+    private static final int FIX_QUEUE_CAPACITY = 16;
 
     /**
-     * MediaPlayer class can be used to control playback of audio
+     * Probability of being inside an alarm at which it rings.
      */
-    private static MediaPlayer mPlayer;
+    private static final double TRIGGER_CONFIDENCE = 0.9;
 
     /**
-     * A Handler allows you to send and process Message and Runnable objects associated with a
-     * thread's MessageQueue.
-     * Here used to schedule alarm volume increase gradually and vibrate periodically.
+     * Sound and vibration of a ringing alarm, created with the first service.
+     */
+    private static AlarmEffects mEffects;
+
+    /**
+     * Tracks whether the service is bound, started, in the foreground or ringing an alarm. Kept
+     * outside the service instance like the alarms, a ringing alarm outlives the service.
      */
-    private static Handler mHandler = new Handler();
+    private static final ServiceStateMachine mState = new ServiceStateMachine();
+
+    static {
+        mState.setListener(new ServiceStateMachine.Listener() {
+            @Override
+            public void onStateChanged(ServiceStateMachine.State from, ServiceStateMachine.State to) {
+                Log.i(TAG, "Service state : " + from + " -> " + to);
+            }
+        });
+    }
 
     /**
-     * Tracks whether an alarm is ringing or not.
+     * Every armed alarm. Kept outside the service instance so alarms survive the service being
+     * stopped and bound again by the activity.
      */
-    private static boolean isAlarmRinging = false;
+    private static final AlarmRegistry mAlarmRegistry = new AlarmRegistry();
+
+    /**
+     * Stage timings and counters, printed by dump(). Kept outside the service instance so they
+     * cover every run of the process.
+     */
+    private static final ServiceMetrics mMetrics = new ServiceMetrics();
 
     /**
      * When creating a service that provides binding, you must provide an IBinder that provides the
@@ -139,89 +171,408 @@ public class LocationUpdatesService extends Service {
     private NotificationManager mNotificationManager;
 
     /**
-     * LocationRequest objects are used to request a quality of service for location updates from the
-     * FusedLocationProviderApi.
+     * Builds the foreground notification and posts its updates.
      */
-    private LocationRequest mLocationRequest;
+    private NotificationRenderer mNotificationRenderer;
 
     /**
-     * Provides access to the Fused Location Provider API.
+     * Delivers the fixes, backed by the fused location provider.
      */
-    private FusedLocationProviderClient mFusedLocationClient;
+    private LocationSource mLocationSource;
 
     /**
-     * Callback for changes in location.
+     * Queues every delivered fix for processing on the worker looper.
      */
-    private LocationCallback mLocationCallback;
+    private final LocationSource.Callback mFixCallback = new LocationSource.Callback() {
+        @Override
+        public void onFixes(List<Fix> fixes) {
+            Log.i(TAG, "Location update : " + fixes.size() + " fix(es)");
+            if (mFixQueue.isEmpty()) {
+                mDeliveryNanos = System.nanoTime();
+            }
+            /*
+              With a max wait time set, the fused provider delivers several fixes at once, oldest
+              first. Every one of them is checked so a boundary crossing inside a batch still
+              rings, the rest of the work only needs the last known location.
+             */
+            for (int i = 0; i < fixes.size(); i++) {
+                Fix fix = fixes.get(i);
+                mMetrics.increment(ServiceMetrics.Counter.FIXES);
+                // A fix near an alarm may ring, it is never dropped as stale.
+                if (!mFixQueue.offer(fix, mPipeline.isNearAlarm(fix))) {
+                    mMetrics.increment(ServiceMetrics.Counter.FIXES_DROPPED);
+                    Log.i(TAG, "Worker busy, dropped stale fix : " + fix);
+                }
+            }
+            if (!mProcessScheduled && !mFixQueue.isEmpty()) {
+                mProcessScheduled = true;
+                mServiceHandler.post(mProcessRunnable);
+            }
+        }
+    };
 
     /**
      * A Handler allows you to send and process Message and Runnable objects associated with a
      * thread's MessageQueue. Each Handler instance is associated with a single thread and that
      * thread's message queue.
+     * Here it runs on the worker looper that receives and processes every fix.
      */
     private Handler mServiceHandler;
 
     /**
-     * The current location.
+     * Posts the UI effects of the pipeline to the main thread.
      */
-    private Location mLocation;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     /**
-     * Initial volume level is 0.
+     * Fixes received but not processed yet. Only used on the worker looper.
      */
-    private float mVolumeLevel = 0;
+    private final FixQueue<Fix> mFixQueue = new FixQueue<>(FIX_QUEUE_CAPACITY);
 
     /**
-     * operates the vibrator on the device.
+     * System.nanoTime() when the oldest delivery still in the queue arrived. Only used on the
+     * worker looper.
      */
-    private Vibrator mVibrator;
+    private long mDeliveryNanos;
 
     /**
-     * When an object implementing interface Runnable is used to create a thread, starting the thread
-     * causes the object's run method to be called in that separately executing thread.
+     * mDeliveryNanos of the fix that triggered the last alarm, read on the main thread.
      */
-    private Runnable mVibrationRunnable = new Runnable() {
+    private volatile long mTriggerDeliveryNanos;
+
+    /**
+     * True while mProcessRunnable is posted to the worker looper.
+     */
+    private boolean mProcessScheduled;
+
+    /**
+     * Processes one queued fix per message, so new location results are queued, and stale fixes
+     * dropped, while the worker is busy.
+     */
+    private final Runnable mProcessRunnable = new Runnable() {
         @Override
         public void run() {
-            Log.i(TAG, "Vibrating!");
+            Fix fix = mFixQueue.poll();
+            if (fix != null) {
+                onNewFix(fix);
+            }
+            if (mFixQueue.isEmpty()) {
+                mProcessScheduled = false;
+                if (fix != null) {
+                    onFixesProcessed(fix);
+                }
+            } else {
+                mServiceHandler.post(this);
+            }
+        }
+    };
 
-            mVibrator.vibrate(DURATION_OF_VIBRATION);
-            // Provide loop for vibration
-            mHandler.postDelayed(mVibrationRunnable,
-                    DURATION_OF_VIBRATION + VIBRATE_DELAY_TIME);
+    /**
+     * Rings and shows AlarmActivity on the main thread unless an alarm is ringing already.
+     */
+    private final Runnable mRingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mState.isAlarming()) {
+                startAlarm();
+                Intent intent = new Intent(LocationUpdatesService.this, AlarmActivity.class);
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                startActivity(intent);
+            }
         }
     };
 
-    private Runnable mVolumeRunnable = new Runnable() {
+    /**
+     * Loads the alarms stored before the process was killed, on the worker looper.
+     */
+    private final Runnable mRestoreRunnable = new Runnable() {
         @Override
         public void run() {
-            Log.i(TAG, "Volume increasing!");
-
-            // increase volume level until reach max value
-            if (mPlayer != null && mVolumeLevel < MAX_VOLUME) {
-                mVolumeLevel += VOLUME_INCREASE_STEP;
-                mPlayer.setVolume(mVolumeLevel, mVolumeLevel);
-                // set next increase in 500ms
-                mHandler.postDelayed(mVolumeRunnable, VOLUME_INCREASE_DELAY);
+            if (!mAlarmRegistry.isEmpty()) {
+                // Same process, the registry is up to date.
+                return;
+            }
+            long start = SystemClock.elapsedRealtime();
+            List<Alarm> alarms = mAlarmStore.load();
+            mAlarmRegistry.restore(alarms);
+            Log.i(TAG, "Restored " + alarms.size() + " alarm(s) in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+            if (!alarms.isEmpty()) {
+                mMainHandler.post(mResumeRunnable);
             }
         }
     };
 
     /**
-     * Interface definition of a callback to be invoked when there has been an error during an
-     * asynchronous operation.
+     * Posts mStopIfIdleRunnable once the alarms are restored, on the worker looper.
      */
-    private MediaPlayer.OnErrorListener mErrorListener = new MediaPlayer.OnErrorListener() {
+    private final Runnable mRestoredRunnable = new Runnable() {
         @Override
-        public boolean onError(MediaPlayer mp, int what, int extra) {
-            Log.i(TAG, "MediaPlayer error!");
+        public void run() {
+            if (mAlarmRegistry.isEmpty()) {
+                mMainHandler.post(mStopIfIdleRunnable);
+            }
+        }
+    };
 
-            stopAlarm();
-            LocationUpdatesService.this.stopSelf();
-            return true;
+    /**
+     * Stops the service if it was started with nothing to monitor, e.g. restarted by the system
+     * with no alarm to restore, instead of holding its resources until it is killed again.
+     */
+    private final Runnable mStopIfIdleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mAlarmRegistry.isEmpty() && mState.isIdle(mRequestingUpdates)) {
+                Log.i(TAG, "Nothing to restore, stopping");
+                stop();
+            }
+        }
+    };
+
+    /**
+     * Monitors the restored alarms again, in the foreground unless a client is bound.
+     */
+    private final Runnable mResumeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mAlarmRegistry.isEmpty()) {
+                return;
+            }
+            requestLocationUpdates();
+            if (!mState.isBound() && !mState.isForeground()) {
+                startForeground(NOTIFICATION_ID, mNotificationRenderer.render(getNotificationTitle(),
+                        getNotificationText()));
+                mState.onStartForeground();
+            }
+        }
+    };
+
+    /**
+     * The current location, read by the notification from any thread.
+     */
+    private volatile Fix mLastFix;
+
+    /**
+     * True from requestLocationUpdates() until removeLocationUpdates(). Unlike the stored
+     * preference, it belongs to this instance and survives the activity being recreated.
+     */
+    private volatile boolean mRequestingUpdates;
+
+    /**
+     * Picks the location request parameters from the distance and speed towards the alarms.
+     */
+    private final LocationRequestScheduler mScheduler = new LocationRequestScheduler(mAlarmRegistry);
+
+    /**
+     * Drops outliers and smooths the fixes before they are checked. Only used on the worker looper.
+     */
+    private final FixFilter mFixFilter = new FixFilter();
+
+    /**
+     * Rings an alarm only once the fixes are accurate enough to be sure, asks for high accuracy
+     * fixes while they are not. Only used on the worker looper.
+     */
+    private final TriggerModel mTriggerModel =
+            new TriggerModel(TRIGGER_CONFIDENCE, TriggerModel.DEFAULT_AMBIGUITY);
+
+    /**
+     * Wakes location updates up when the device nears an alarm.
+     */
+    private WakeRingGeofences mWakeRings;
+
+    /**
+     * Stops location updates once the wake rings are registered, unless woken up meanwhile.
+     */
+    private final Runnable mSleepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTripController.isSleeping()) {
+                Log.i(TAG, "Location updates sleeping until a wake ring is entered");
+                mMetrics.increment(ServiceMetrics.Counter.SLEEPS);
+                mLocationSource.removeUpdates();
+            }
+        }
+    };
+
+    /**
+     * Keeps location updates running, the wake rings could not be registered.
+     */
+    private final Runnable mSleepFailedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mTripController.onSleepFailed();
+        }
+    };
+
+    /**
+     * Takes over from the wake rings with the service's own location requests.
+     */
+    private final Runnable mWakeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTripController.onRingEntered()) {
+                Log.i(TAG, "Wake ring entered");
+                mMetrics.increment(ServiceMetrics.Counter.WAKEUPS);
+            }
+        }
+    };
+
+    /**
+     * Takes over from the wake rings, or re-plans the request, for an alarm armed while
+     * monitoring: it has no wake ring and the scheduler picked its tier without it.
+     */
+    private final Runnable mAlarmAddedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mTripController.onAlarmAdded()) {
+                Log.i(TAG, "Alarm added while sleeping, taking over from the wake rings");
+            }
+        }
+    };
+
+    /**
+     * Hands alarms armed while monitoring to the trip controller. Called with the registry lock
+     * held, on the thread making the change.
+     */
+    private final AlarmRegistry.Listener mRegistryListener = new AlarmRegistry.Listener() {
+        @Override
+        public void onAlarmAdded(Alarm alarm) {
+            mServiceHandler.post(mAlarmAddedRunnable);
+        }
+
+        @Override
+        public void onAlarmRemoved(Alarm alarm) {
+            // A ring left behind only wakes the updates up for nothing.
+        }
+
+        @Override
+        public void onAlarmsCleared() {
+        }
+    };
+
+    /**
+     * Ends the trip of the trip controller, location updates have been removed.
+     */
+    private final Runnable mStopTripRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mTripController.stop();
+        }
+    };
+
+    /**
+     * Maps the bundled place index on the geocoder executor, place names are looked up offline
+     * from then on.
+     */
+    private final Runnable mOpenPlaceIndexRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final PlaceIndex placeIndex = Utils.openPlaceIndex(LocationUpdatesService.this);
+            if (placeIndex == null) {
+                return;
+            }
+            Log.i(TAG, "Offline place index with " + placeIndex.getCount(PlaceIndex.Kind.STREET)
+                    + " streets and " + placeIndex.getCount(PlaceIndex.Kind.LOCALITY)
+                    + " localities");
+            mReverseGeocoder.setOfflineLookup(new ReverseGeocoder.Lookup() {
+                @Override
+                public String getLocationName(double latitude, double longitude) {
+                    String name = placeIndex.getLocationName(latitude, longitude);
+                    if (name != null) {
+                        mMetrics.increment(ServiceMetrics.Counter.OFFLINE_NAMES);
+                    }
+                    return name;
+                }
+            });
         }
     };
 
+    /**
+     * Checks the fixes against the alarms. Only used on the worker looper.
+     */
+    private final AlarmPipeline mPipeline = new AlarmPipeline(mAlarmRegistry, mScheduler,
+            new AlarmPipeline.Listener() {
+                @Override
+                public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                    Log.i(TAG, "Alarm triggered : " + alarm);
+                    mMetrics.increment(ServiceMetrics.Counter.ALARMS);
+                    mTriggerDeliveryNanos = mDeliveryNanos;
+
+                    LocationBus.alarms().publish(alarm);
+                    mMainHandler.post(mRingRunnable);
+                }
+
+                @Override
+                public void onTierChanged(LocationRequestScheduler.Tier tier, long previousMaxWaitTime) {
+                    Log.i(TAG, "Location request changed to " + tier);
+                    if (mRequestingUpdates) {
+                        requestSourceUpdates();
+                        if (mScheduler.getMaxWaitTime() < previousMaxWaitTime) {
+                            // Don't let fixes batched under the old request wait any longer.
+                            mLocationSource.flush();
+                        }
+                    }
+                }
+            });
+
+    /**
+     * Runs the blocking Geocoder lookups away from location processing.
+     */
+    private ExecutorService mGeocoderExecutor;
+
+    /**
+     * Provides the place name shown in the notification without waiting for the Geocoder.
+     */
+    private ReverseGeocoder mReverseGeocoder;
+
+    /**
+     * Persists every change of the registry.
+     */
+    private AlarmStore mAlarmStore;
+
+    /**
+     * Writes the trip logs.
+     */
+    private ExecutorService mTripExecutor;
+
+    /**
+     * Logs every fix received while monitoring, one file per trip.
+     */
+    private TripRecorder mTripRecorder;
+
+    /**
+     * Prepares the alarm sound ahead of time and lets location updates sleep far from every
+     * alarm. Only used on the worker looper.
+     */
+    private final TripController mTripController = new TripController(mAlarmRegistry, mPipeline,
+            new ApproachMonitor(ApproachMonitor.DEFAULT_DISTANCE, ApproachMonitor.DEFAULT_SECONDS),
+            new TripController.Listener() {
+                @Override
+                public void onApproachChanged(boolean approaching) {
+                    if (approaching) {
+                        mEffects.prewarm();
+                    } else {
+                        mEffects.cooldown();
+                    }
+                }
+
+                @Override
+                public void onSleep(List<Alarm> alarms, float speed) {
+                    registerWakeRings(alarms, speed);
+                }
+
+                @Override
+                public void onRequestUpdates(long previousMaxWaitTime) {
+                    if (mRequestingUpdates) {
+                        mWakeRings.unregister();
+                        requestSourceUpdates();
+                        if (mScheduler.getMaxWaitTime() < previousMaxWaitTime) {
+                            mLocationSource.flush();
+                        }
+                    }
+                }
+            });
+
     /**
      * Service class constructor..
      */
@@ -235,33 +586,47 @@ public class LocationUpdatesService extends Service {
     public void onCreate() {
         Log.i(TAG, "<onCreate>");
 
-        mFusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
-        /*
-          Used for receiving notifications from the FusedLocationProviderApi when the device location
-          has changed or can no longer be determined.
+        mScheduler.setBatching(BATCHED_DELIVERY);
+        mPipeline.setFilter(mFixFilter);
+        mPipeline.setTriggerModel(mTriggerModel);
+        mTripController.setSleepEnabled(GEOFENCE_WAKE);
 
-          The methods are called if the LocationCallback has been registered with the location client
-          using the requestLocationUpdates(LocationRequest, LocationCallback, Looper) method.
-         */
-        mLocationCallback = new LocationCallback() {
+        // Location results are delivered to and processed on this thread, not the main thread.
+        HandlerThread handlerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        mServiceHandler = new Handler(handlerThread.getLooper());
+        mLocationSource = new FusedLocationSource(this, handlerThread.getLooper());
+        mWakeRings = new WakeRingGeofences(this);
+
+        mGeocoderExecutor = Executors.newSingleThreadExecutor();
+        ReverseGeocoder.Lookup geocoderLookup = new ReverseGeocoder.Lookup() {
             @Override
-            public void onLocationResult(LocationResult locationResult) {
-                Log.i(TAG, "Location update (LocationCallback)");
-                super.onLocationResult(locationResult);
-                /*
-                  Using the Google Play services location APIs, your app can request the last known location
-                  of the user's device. In most cases, you are interested in the user's current location,
-                  which is usually equivalent to the last known location of the device.
-                 */
-                onNewLocation(locationResult.getLastLocation());
+            public String getLocationName(double latitude, double longitude) throws IOException {
+                mMetrics.increment(ServiceMetrics.Counter.GEOCODER_CALLS);
+                long start = System.nanoTime();
+                try {
+                    return Utils.getLocationName(latitude, longitude, LocationUpdatesService.this);
+                } catch (IOException e) {
+                    mMetrics.increment(ServiceMetrics.Counter.GEOCODER_FAILURES);
+                    Log.e(TAG, "Geocoder lookup failed. " + e);
+                    throw e;
+                } finally {
+                    mMetrics.recordSince(ServiceMetrics.Stage.GEOCODER, start);
+                }
             }
         };
-
-        createLocationRequest();
-
-        HandlerThread handlerThread = new HandlerThread(TAG);
-        handlerThread.start();
-        mServiceHandler = new Handler(handlerThread.getLooper());
+        mReverseGeocoder = new ReverseGeocoder(GEOCODER_REFINEMENT ? geocoderLookup : null,
+                mGeocoderExecutor, new File(getCacheDir(), GEOCODER_CACHE_FILE));
+        mGeocoderExecutor.execute(mOpenPlaceIndexRunnable);
+        mReverseGeocoder.setListener(new ReverseGeocoder.Listener() {
+            @Override
+            public void onLocationNameResolved(String name) {
+                // Show the new name as soon as it is known.
+                if (mState.isForeground()) {
+                    mNotificationRenderer.update(getNotificationTitle(), getNotificationText());
+                }
+            }
+        });
 
         mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 
@@ -273,6 +638,20 @@ public class LocationUpdatesService extends Service {
             // Set the Notification Channel for the Notification Manager.
             mNotificationManager.createNotificationChannel(mChannel);
         }
+
+        mNotificationRenderer = new NotificationRenderer(this, mNotificationManager, mServiceHandler,
+                CHANNEL_ID, NOTIFICATION_ID, getActivityPendingIntent(), getServicePendingIntent(),
+                NOTIFICATION_MIN_UPDATE_INTERVAL_IN_MILLISECONDS, mMetrics);
+
+        mTripExecutor = Executors.newSingleThreadExecutor();
+        mTripRecorder = new TripRecorder(new File(getFilesDir(), TRIPS_DIRECTORY), mTripExecutor);
+
+        // Bring back the alarms of a killed process without blocking the main thread.
+        mAlarmStore = AlarmStore.getInstance(this);
+        mEffects = AlarmEffects.getInstance(this, mMetrics);
+        mAlarmRegistry.addListener(mAlarmStore);
+        mAlarmRegistry.addListener(mRegistryListener);
+        mServiceHandler.post(mRestoreRunnable);
     }
 
     /**
@@ -290,31 +669,60 @@ public class LocationUpdatesService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.i(TAG, "Service started (onStartCommand)");
-        boolean startedFromNotification = intent.getBooleanExtra(EXTRA_STARTED_FROM_NOTIFICATION,
-                false);
+        // The intent is null when the system restarts the service after killing it.
+        boolean startedFromNotification = intent != null
+                && intent.getBooleanExtra(EXTRA_STARTED_FROM_NOTIFICATION, false);
 
         // We got here because the user decided to remove location updates from the notification.
         if (startedFromNotification) {
+            mAlarmRegistry.clear();
             removeLocationUpdates();
-            MapsActivity.mMap.clear();
-            stopSelf();
+            stop();
             stopAlarm();
+        } else {
+            mState.onStart();
+            if (intent != null && WakeRingGeofences.ACTION_WAKE.equals(intent.getAction())
+                    && WakeRingGeofences.isEnter(intent)) {
+                mServiceHandler.post(mWakeRunnable);
+            }
+            // Runs after mRestoreRunnable, posted to the same looper by onCreate().
+            mServiceHandler.post(mRestoredRunnable);
         }
-        // Tells the system not to try to re-create the service after it has been killed.
-        return START_NOT_STICKY;
+        // Tells the system to re-create the service after it has been killed while alarms are
+        // armed, they are restored from the AlarmStore. Without any, it stops again.
+        return START_STICKY;
+    }
+
+    /**
+     * Returns the registry holding every armed alarm.
+     */
+    static AlarmRegistry getAlarmRegistry() {
+        return mAlarmRegistry;
+    }
+
+    /**
+     * Returns the stage timings and counters of the service.
+     */
+    static ServiceMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Returns the current lifecycle state of the service.
+     */
+    static ServiceStateMachine.State getServiceState() {
+        return mState.getState();
     }
 
     /**
      * Use to stop the alarm.
      */
     static void stopAlarm() {
-        Log.i(TAG, "Media player stopped (stopAlarm)");
+        Log.i(TAG, "Alarm stopped (stopAlarm)");
 
-        isAlarmRinging = false;
-        if (mPlayer != null) {
-            mPlayer.stop();
-            mPlayer.release();
-            mHandler.removeCallbacksAndMessages(null);
+        mState.onAlarmStopped();
+        if (mEffects != null) {
+            mEffects.stop();
         }
     }
 
@@ -326,7 +734,20 @@ public class LocationUpdatesService extends Service {
     @Override
     public void onDestroy() {
         Log.i(TAG, "<onDestroy>");
+        mAlarmRegistry.removeListener(mRegistryListener);
+        mAlarmRegistry.removeListener(mAlarmStore);
         mServiceHandler.removeCallbacksAndMessages(null);
+        mServiceHandler.getLooper().quit();
+        mMainHandler.removeCallbacks(mRingRunnable);
+        mMainHandler.removeCallbacks(mResumeRunnable);
+        mMainHandler.removeCallbacks(mStopIfIdleRunnable);
+        mGeocoderExecutor.shutdownNow();
+        // Let the pending trip log writes finish.
+        mTripRecorder.endTrip();
+        mTripExecutor.shutdown();
+        // A ringing alarm keeps its sound.
+        mEffects.cooldown();
+        mState.onDestroy();
     }
 
     /**
@@ -345,7 +766,11 @@ public class LocationUpdatesService extends Service {
         // and binds with this service. The service should cease to be a foreground service
         // when that happens.
 
+        // In this order, so no update of the notification outlives the foreground state.
+        mState.onStopForeground();
+        mNotificationRenderer.reset();
         stopForeground(true);
+        mState.onBind();
         return mBinder;
     }
 
@@ -365,7 +790,8 @@ public class LocationUpdatesService extends Service {
         // service. If this method is called due to a configuration change in MainActivity, we
         // do nothing. Otherwise, we make this service a foreground service.
 
-        if (Utils.requestingLocationUpdates(this)) {
+        mState.onUnbind();
+        if (mRequestingUpdates) {
             /*
               Makes service run in the foreground, supplying the ongoing notification to be
               shown to the user while in this state.
@@ -375,7 +801,9 @@ public class LocationUpdatesService extends Service {
 
               notification - Notification: The Notification to be displayed.
              */
-            startForeground(NOTIFICATION_ID, getNotification());
+            startForeground(NOTIFICATION_ID, mNotificationRenderer.render(getNotificationTitle(),
+                    getNotificationText()));
+            mState.onStartForeground();
         }
         return true; // Ensures onRebind() is called when a client re-binds.
     }
@@ -395,7 +823,11 @@ public class LocationUpdatesService extends Service {
         // and binds once again with this service. The service should cease to be a foreground
         // service when that happens.
 
+        // In this order, so no update of the notification outlives the foreground state.
+        mState.onStopForeground();
+        mNotificationRenderer.reset();
         stopForeground(true);
+        mState.onBind();
 
         // Remove this service from foreground state, allowing it to be killed if more memory is needed.
         // removeNotification - boolean: If true, the STOP_FOREGROUND_REMOVE flag will be supplied.
@@ -403,46 +835,55 @@ public class LocationUpdatesService extends Service {
     }
 
     /**
-     * Operations to do on getting a new location
+     * Checks every armed alarm near a new fix. Runs on the worker looper.
      */
-    private void onNewLocation(Location location) {
-        Log.i(TAG, "New location : " + location);
+    private void onNewFix(Fix fix) {
+        Log.i(TAG, "New location : " + fix);
+
+        long start = System.nanoTime();
+        mLastFix = fix;
+        mTripRecorder.record(fix);
+        mPipeline.onFix(fix);
+        mMetrics.recordSince(ServiceMetrics.Stage.FIX, start);
+    }
 
-        mLocation = location;
-        float[] results = new float[3];
-        Location.distanceBetween(location.getLatitude(), location.getLongitude(), MapsActivity.getLatitude(), MapsActivity.getLongitude(), results);
-        Log.i(TAG, "Distance: " + String.valueOf(results[0]));
-        if (results[0] < MAX_DISTANCE_RANGE) {
-            if (!isAlarmRinging) {
-                startAlarm();
-                Intent intent = new Intent(this, AlarmActivity.class);
-                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                startActivity(intent);
-            }
-        }
+    /**
+     * Operations to do once every queued fix has been checked. Runs on the worker looper.
+     */
+    private void onFixesProcessed(Fix fix) {
+        mTripController.onFixesProcessed(fix);
 
-        // Notify anyone listening for broadcasts about the new location.
-        Intent intent = new Intent(ACTION_BROADCAST);
-        intent.putExtra(EXTRA_LOCATION, location);
-        LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(intent);
+        // Hand the new location to the subscribers, no Intent is built.
+        LocationBus.locations().publish(fix);
 
         // Update notification content if running as a foreground service.
-        if (serviceIsRunningInForeground(this)) {
-            Log.i(TAG, "(onNewLocation) : Notification content updated.");
-            mNotificationManager.notify(NOTIFICATION_ID, getNotification());
+        if (mState.isForeground()) {
+            mNotificationRenderer.update(getNotificationTitle(), getNotificationText());
         }
     }
 
     /**
-     * Sets the location request parameters.
+     * Hands monitoring over to the wake rings of the alarms, location updates stop once they are
+     * registered. Runs on the worker looper.
      */
-    private void createLocationRequest() {
-        Log.i(TAG, "(createLocationRequest) - Setting location request parameter.");
-
-        mLocationRequest = new LocationRequest();
-        mLocationRequest.setInterval(UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setFastestInterval(FASTEST_UPDATE_INTERVAL_IN_MILLISECONDS);
-        mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    private void registerWakeRings(List<Alarm> alarms, float speed) {
+        try {
+            mWakeRings.register(alarms, speed, new OnSuccessListener<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    mServiceHandler.post(mSleepRunnable);
+                }
+            }, new OnFailureListener() {
+                @Override
+                public void onFailure(Exception e) {
+                    Log.e(TAG, "Could not register the wake rings. " + e);
+                    mServiceHandler.post(mSleepFailedRunnable);
+                }
+            });
+        } catch (SecurityException unlikely) {
+            mTripController.onSleepFailed();
+            Log.e(TAG, "Lost location permission. Could not register the wake rings. " + unlikely);
+        }
     }
 
     /**
@@ -451,114 +892,119 @@ public class LocationUpdatesService extends Service {
     private void startAlarm() {
         Log.i(TAG, "startAlarm");
 
-        mPlayer = new MediaPlayer();
-        mPlayer.setOnErrorListener(mErrorListener);
-
-        try {
-            isAlarmRinging = true;
-            mVibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-            mHandler.post(mVibrationRunnable);
-            mHandler.post(mVolumeRunnable);
-            String ringtone;
-            ringtone = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM).toString();
-            mPlayer.setDataSource(this, Uri.parse(ringtone));
-            mPlayer.setLooping(true);
-            mPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
-            mPlayer.setVolume(mVolumeLevel, mVolumeLevel);
-            mPlayer.prepare();
-            mPlayer.start();
+        mState.onAlarmStarted();
+        mEffects.start(mTriggerDeliveryNanos);
+        // Keep monitoring while other alarms are still armed.
+        if (mAlarmRegistry.isEmpty()) {
             removeLocationUpdates();
-            LocationUpdatesService.this.stopSelf();
-            mPlayer.setVolume(MAX_VOLUME, MAX_VOLUME);
-
-            Notification notification = new Notification.Builder(getApplicationContext())
-                    .setLargeIcon(BitmapFactory.decodeResource(this.getResources(),
-                            R.mipmap.ic_launcher))
-                    .setContentTitle("Location Reached")
-                    .setContentText("You reached Destination.")
-                    .setSmallIcon(R.mipmap.ic_launcher)
-                    .setAutoCancel(true)
-                    .build();
-
-            NotificationManager manager = (NotificationManager) getApplicationContext().getSystemService(NOTIFICATION_SERVICE);
-            notification.flags |= Notification.FLAG_AUTO_CANCEL;
-            if (manager != null) {
-                manager.notify(0, notification);
-            }
-        } catch (Exception e) {
-            isAlarmRinging = false;
-            if (mPlayer.isPlaying()) {
-                mPlayer.stop();
-            }
-            stopSelf();
+            stop();
+        }
+
+        Notification notification = new Notification.Builder(getApplicationContext())
+                .setLargeIcon(mNotificationRenderer.getLargeIcon())
+                .setContentTitle("Location Reached")
+                .setContentText("You reached Destination.")
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setAutoCancel(true)
+                .build();
+
+        NotificationManager manager = (NotificationManager) getApplicationContext().getSystemService(NOTIFICATION_SERVICE);
+        notification.flags |= Notification.FLAG_AUTO_CANCEL;
+        if (manager != null) {
+            manager.notify(0, notification);
         }
     }
 
+    /**
+     * Prints the state and metrics of the service:
+     * adb shell dumpsys activity service com.juggernaut.location_alarm/.LocationUpdatesService
+     *
+     * Pass "reset" as argument to clear the metrics.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            mMetrics.reset();
+            writer.println("Metrics reset.");
+            return;
+        }
+        dumpState(writer);
+        writer.println("  request tier: " + mScheduler.getTier() + (mTripController.isSleeping() ? ", sleeping" : ""));
+        writer.println("  fixes filtered: " + mFixFilter.getAcceptedCount() + " accepted, "
+                + mFixFilter.getRejectedCount() + " rejected");
+        writer.println("  trip: " + mTripRecorder.getRecordCount() + " fixes, "
+                + mTripRecorder.getRecordBytes() + " bytes");
+        mMetrics.dump(writer, "  ");
+    }
+
+    /**
+     * Prints the state kept outside the service instance, available while it is not running.
+     */
+    static void dumpState(PrintWriter writer) {
+        writer.println("LocationUpdatesService");
+        writer.println("  state: " + mState.getState());
+        writer.println("  alarms armed: " + mAlarmRegistry.size());
+    }
+
     /**
      * Returns true if this is a foreground service.
      */
     public boolean serviceIsRunningInForeground(Context context) {
-        ActivityManager manager = (ActivityManager) context.getSystemService(
-                Context.ACTIVITY_SERVICE);
-        if (manager != null) {
-            for (ActivityManager.RunningServiceInfo service : manager.getRunningServices(
-                    Integer.MAX_VALUE)) {
-                if (getClass().getName().equals(service.service.getClassName())) {
-                    if (service.foreground) {
-                        Log.i(TAG, "Service running in foreground");
-                        return true;
-                    }
-                }
-            }
-        }
-        Log.i(TAG, "Service not running in foreground");
-        return false;
+        return mState.isForeground();
     }
 
     /**
-     * Returns the NotificationCompat used as part of the foreground service.
+     * Stops the started service, it keeps running only while a client is bound.
      */
-    private Notification getNotification() {
-        Log.i(TAG, "Notification build");
-        Intent intent = new Intent(this, LocationUpdatesService.class);
+    private void stop() {
+        mState.onStop();
+        stopSelf();
+    }
 
-        CharSequence text = Utils.getLocationCoordinate(mLocation);
+    /**
+     * Returns the title of the foreground service notification.
+     */
+    private String getNotificationTitle() {
+        return Utils.getLocationTitle(this);
+    }
+
+    /**
+     * Returns the text of the foreground service notification: the place name if known,
+     * otherwise the coordinates.
+     */
+    private String getNotificationText() {
+        // Cached or last known name, a lookup updates the notification once it completes.
+        Fix fix = mLastFix;
+        String name = fix == null ? null
+                : mReverseGeocoder.getLocationName(fix.latitude, fix.longitude);
+        return name != null ? name : Utils.getLocationCoordinate(fix);
+    }
+
+    /**
+     * Returns the PendingIntent that leads to a call to onStartCommand() in this service.
+     */
+    private PendingIntent getServicePendingIntent() {
+        Intent intent = new Intent(this, LocationUpdatesService.class);
 
         // Extra to help us figure out if we arrived in onStartCommand via the notification or not.
         intent.putExtra(EXTRA_STARTED_FROM_NOTIFICATION, true);
+        return PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
 
-        // The PendingIntent that leads to a call to onStartCommand() in this service.
-        PendingIntent servicePendingIntent = PendingIntent.getService(this, 0, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT);
-
-        // The PendingIntent to launch activity.
+    /**
+     * Returns the PendingIntent to launch activity.
+     */
+    private PendingIntent getActivityPendingIntent() {
         Intent resumeIntent = new Intent(this, MapsActivity.class);
         resumeIntent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
-        PendingIntent activityPendingIntent = PendingIntent.getActivity(this, 0,
-                resumeIntent, PendingIntent.FLAG_CANCEL_CURRENT);
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setLargeIcon(BitmapFactory.decodeResource(this.getResources(),
-                        R.mipmap.ic_launcher))
-                .addAction(R.drawable.ic_launch, getString(R.string.launch_activity),
-                        activityPendingIntent)
-                .addAction(R.drawable.ic_cancel, getString(R.string.remove_location_updates),
-                        servicePendingIntent)
-                .setContentTitle(Utils.getLocationTitle(this))
-                .setContentText(Utils.getLocationName(mLocation, this))
-                .setOngoing(true)
-                .setPriority(Notification.PRIORITY_LOW)
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setTicker(text)
-                .setDefaults(Notification.DEFAULT_LIGHTS)
-                .setWhen(System.currentTimeMillis());
-
-        // Set the Channel ID for Android O.
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder.setChannelId(CHANNEL_ID); // Channel ID
-        }
+        return PendingIntent.getActivity(this, 0, resumeIntent, PendingIntent.FLAG_CANCEL_CURRENT);
+    }
 
-        return builder.build();
+    /**
+     * Returns true while this service monitors location updates for the alarms.
+     */
+    public boolean isRequestingLocationUpdates() {
+        return mRequestingUpdates;
     }
 
     /**
@@ -568,9 +1014,14 @@ public class LocationUpdatesService extends Service {
         Log.i(TAG, "(removeLocationUpdates) - Removing location updates");
 
         try {
-            mFusedLocationClient.removeLocationUpdates(mLocationCallback);
+            mLocationSource.removeUpdates();
+            mWakeRings.unregister();
+            mServiceHandler.post(mStopTripRunnable);
+            mTripRecorder.endTrip();
+            mRequestingUpdates = false;
             Utils.setRequestingLocationUpdates(this, false);
-            stopSelf();
+            mEffects.cooldown();
+            stop();
         } catch (SecurityException unlikely) {
             Utils.setRequestingLocationUpdates(this, true);
             Log.e(TAG, "Lost location permission. Could not remove updates. " + unlikely);
@@ -583,14 +1034,36 @@ public class LocationUpdatesService extends Service {
     public void requestLocationUpdates() {
         Log.i(TAG, "(requestLocationUpdates) - Requesting location updates");
 
+        mRequestingUpdates = true;
         Utils.setRequestingLocationUpdates(this, true);
         // Start a service by calling startService(), which allows the service to run indefinitely.
         // When the service has been started, the system does not destroy the service when all clients unbind.
-        startService(new Intent(getApplicationContext(), LocationUpdatesService.class));
+        if (!mState.isStarted()) {
+            startService(new Intent(getApplicationContext(), LocationUpdatesService.class));
+        }
+        // The scheduler and the request belong to the worker looper.
+        mServiceHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mTripController.start();
+                mEffects.cooldown();
+                if (!mTripRecorder.isRecording()) {
+                    mTripRecorder.startTrip(System.currentTimeMillis());
+                }
+                requestSourceUpdates();
+            }
+        });
+    }
+
+    /**
+     * Requests fixes for the scheduler's current tier, delivered on the worker looper.
+     */
+    private void requestSourceUpdates() {
         try {
-            mFusedLocationClient.requestLocationUpdates(mLocationRequest,
-                    mLocationCallback, Looper.myLooper());
+            mLocationSource.requestUpdates(mScheduler.getTier(), mScheduler.getMaxWaitTime(),
+                    mFixCallback);
         } catch (SecurityException unlikely) {
+            mRequestingUpdates = false;
             Utils.setRequestingLocationUpdates(this, false);
             Log.e(TAG, "Lost location permission. Could not request updates. " + unlikely);
         }
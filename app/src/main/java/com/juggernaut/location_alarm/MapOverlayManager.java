@@ -0,0 +1,492 @@
+package com.juggernaut.location_alarm;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.os.TraceCompat;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.AlarmClusterer;
+import com.juggernaut.location_alarm.core.CorridorAlarm;
+import com.juggernaut.location_alarm.core.PolygonAlarm;
+import com.juggernaut.location_alarm.core.Track;
+import com.juggernaut.location_alarm.core.Viewport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the alarm markers, trigger circles, corridor routes, polygon areas and the track line on
+ * the map in step with the armed alarms and the recorded path, adding, moving and removing only
+ * what changed.
+ *
+ * Alarms are grouped by AlarmClusterer, the track and the routes are simplified by Track for the
+ * current zoom level. Both keep only what lies in the viewport grown by VIEWPORT_MARGIN on every
+ * side. The work runs when the camera comes to rest, so while panning the map only moves the
+ * objects it already has.
+ */
+final class MapOverlayManager implements GoogleMap.OnCameraIdleListener,
+        GoogleMap.OnMarkerClickListener {
+
+    /**
+     * Fraction of the screen size added on every side of the viewport.
+     */
+    private static final double VIEWPORT_MARGIN = 0.5;
+
+    /**
+     * Trigger circles with a smaller radius on screen are left out.
+     */
+    private static final double MIN_CIRCLE_PIXELS = 4;
+
+    /**
+     * Zoom levels gained when a group marker is tapped.
+     */
+    private static final float CLUSTER_ZOOM_STEP = 2;
+
+    /**
+     * Size of the group markers in dp.
+     */
+    private static final int CLUSTER_ICON_SIZE = 40;
+    private static final int CLUSTER_TEXT_SIZE = 14;
+
+    private static final float TRACK_WIDTH = 8;
+
+    private static final float AREA_STROKE_WIDTH = 5;
+
+    private final Context mContext;
+
+    private final GoogleMap mMap;
+
+    private final AlarmClusterer mClusterer = new AlarmClusterer();
+
+    private final TrackLines mTrack;
+
+    private final BitmapDescriptor mAlarmIcon;
+
+    private final int mCircleColor;
+
+    private final int mTrackColor;
+
+    private final int mAreaFillColor;
+
+    /**
+     * Group marker icons by label, e.g. "7" or "200+".
+     */
+    private final Map<String, BitmapDescriptor> mClusterIcons = new HashMap<>();
+
+    private List<Alarm> mAlarms = Collections.emptyList();
+
+    /**
+     * Markers on the map by cluster key, each tagged with the Cluster it shows.
+     */
+    private final Map<Long, Marker> mMarkers = new HashMap<>();
+
+    /**
+     * Trigger circles on the map by alarm id.
+     */
+    private final Map<Long, Circle> mCircles = new HashMap<>();
+
+    /**
+     * Routes of the corridor alarms by alarm id.
+     */
+    private final Map<Long, TrackLines> mRoutes = new HashMap<>();
+
+    /**
+     * Areas of the polygon alarms by alarm id. Drawn whole, the map clips them itself.
+     */
+    private final Map<Long, Polygon> mAreas = new HashMap<>();
+
+    /**
+     * Outline of the area being drawn, null while none is.
+     */
+    private Polyline mDraft;
+
+    /**
+     * Camera state of the last update, null before the first one.
+     */
+    private Viewport mViewport;
+    private float mZoom;
+
+    MapOverlayManager(Context context, GoogleMap map, Track track) {
+        mContext = context;
+        mMap = map;
+        mAlarmIcon = BitmapDescriptorFactory.fromResource(R.drawable.flag);
+        mCircleColor = ContextCompat.getColor(context, R.color.cardview_dark_background);
+        mTrackColor = ContextCompat.getColor(context, R.color.track);
+        mAreaFillColor = ContextCompat.getColor(context, R.color.area_fill);
+        mTrack = new TrackLines(track, mTrackColor);
+    }
+
+    /**
+     * Replaces the alarms to show.
+     */
+    void setAlarms(Collection<Alarm> alarms) {
+        mAlarms = new ArrayList<>(alarms);
+        updateRoutes();
+        updateAreas();
+        if (mViewport != null) {
+            updateAlarms();
+        } else {
+            update();
+        }
+    }
+
+    /**
+     * Redraws the part of the track that changed after points were appended to it.
+     */
+    void onTrackChanged() {
+        if (mViewport != null) {
+            mTrack.update();
+        }
+    }
+
+    /**
+     * Shows the outline of an area while its corners are being placed, or removes it when given
+     * no corners.
+     */
+    void setDraft(List<LatLng> corners) {
+        if (corners.isEmpty()) {
+            if (mDraft != null) {
+                mDraft.remove();
+                mDraft = null;
+            }
+            return;
+        }
+        List<LatLng> outline = new ArrayList<>(corners);
+        outline.add(corners.get(0));
+        if (mDraft == null) {
+            mDraft = mMap.addPolyline(new PolylineOptions()
+                    .addAll(outline)
+                    .width(AREA_STROKE_WIDTH)
+                    .color(mTrackColor));
+        } else {
+            mDraft.setPoints(outline);
+        }
+    }
+
+    @Override
+    public void onCameraIdle() {
+        update();
+    }
+
+    /**
+     * Zooms in on a group marker instead of showing its info window.
+     */
+    @Override
+    public boolean onMarkerClick(Marker marker) {
+        Object tag = marker.getTag();
+        if (!(tag instanceof AlarmClusterer.Cluster) || ((AlarmClusterer.Cluster) tag).alarm != null) {
+            return false;
+        }
+        AlarmClusterer.Cluster cluster = (AlarmClusterer.Cluster) tag;
+        mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
+                new LatLng(cluster.latitude, cluster.longitude),
+                mMap.getCameraPosition().zoom + CLUSTER_ZOOM_STEP));
+        return true;
+    }
+
+    /**
+     * Reads the camera and brings every overlay up to date.
+     */
+    void update() {
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        mViewport = Viewport.fromBounds(bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude).expand(VIEWPORT_MARGIN);
+        mZoom = mMap.getCameraPosition().zoom;
+        updateAlarms();
+        updateTracks();
+    }
+
+    private void updateAlarms() {
+        TraceCompat.beginSection("MapOverlayManager.updateAlarms");
+        try {
+            List<AlarmClusterer.Cluster> clusters = mClusterer.cluster(mAlarms, mZoom, mViewport);
+            Set<Long> keys = new HashSet<>();
+            for (AlarmClusterer.Cluster cluster : clusters) {
+                keys.add(cluster.key);
+            }
+
+            Iterator<Map.Entry<Long, Marker>> markers = mMarkers.entrySet().iterator();
+            while (markers.hasNext()) {
+                Map.Entry<Long, Marker> entry = markers.next();
+                if (!keys.contains(entry.getKey())) {
+                    entry.getValue().remove();
+                    markers.remove();
+                }
+            }
+
+            Set<Long> circles = new HashSet<>();
+            for (AlarmClusterer.Cluster cluster : clusters) {
+                showMarker(cluster);
+                Alarm alarm = cluster.alarm;
+                // Corridors and polygons show their area through their own lines instead.
+                if (alarm != null && !(alarm instanceof CorridorAlarm) && !(alarm instanceof PolygonAlarm)
+                        && alarm.radius / Viewport.metersPerPixel(alarm.latitude, mZoom)
+                        >= MIN_CIRCLE_PIXELS) {
+                    circles.add(alarm.id);
+                    if (!mCircles.containsKey(alarm.id)) {
+                        mCircles.put(alarm.id, mMap.addCircle(new CircleOptions()
+                                .center(new LatLng(alarm.latitude, alarm.longitude))
+                                .strokeWidth(5)
+                                .strokeColor(mCircleColor)
+                                .radius(alarm.radius)));
+                    }
+                }
+            }
+
+            Iterator<Map.Entry<Long, Circle>> shown = mCircles.entrySet().iterator();
+            while (shown.hasNext()) {
+                Map.Entry<Long, Circle> entry = shown.next();
+                if (!circles.contains(entry.getKey())) {
+                    entry.getValue().remove();
+                    shown.remove();
+                }
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Adds the marker of a cluster, or updates the one already shown for it.
+     */
+    private void showMarker(AlarmClusterer.Cluster cluster) {
+        LatLng position = new LatLng(cluster.latitude, cluster.longitude);
+        Marker marker = mMarkers.get(cluster.key);
+        if (marker == null) {
+            MarkerOptions markerOptions = new MarkerOptions();
+            markerOptions.position(position);
+            markerOptions.draggable(false);
+            if (cluster.alarm != null) {
+                markerOptions.icon(mAlarmIcon);
+                markerOptions.title(cluster.alarm.name);
+            } else {
+                markerOptions.icon(getClusterIcon(cluster.size));
+                markerOptions.title(mContext.getString(R.string.alarm_cluster, cluster.size));
+            }
+            marker = mMap.addMarker(markerOptions);
+            mMarkers.put(cluster.key, marker);
+        } else {
+            AlarmClusterer.Cluster shown = (AlarmClusterer.Cluster) marker.getTag();
+            if (shown.latitude != cluster.latitude || shown.longitude != cluster.longitude) {
+                marker.setPosition(position);
+            }
+            if (shown.size != cluster.size) {
+                marker.setIcon(getClusterIcon(cluster.size));
+                marker.setTitle(mContext.getString(R.string.alarm_cluster, cluster.size));
+            }
+        }
+        marker.setTag(cluster);
+    }
+
+    /**
+     * Creates the route lines of new corridor alarms and removes those of disarmed ones.
+     */
+    private void updateRoutes() {
+        Set<Long> corridors = new HashSet<>();
+        for (Alarm alarm : mAlarms) {
+            if (!(alarm instanceof CorridorAlarm)) {
+                continue;
+            }
+            corridors.add(alarm.id);
+            if (!mRoutes.containsKey(alarm.id)) {
+                CorridorAlarm corridor = (CorridorAlarm) alarm;
+                Track route = new Track();
+                for (int i = 0; i < corridor.getVertexCount(); i++) {
+                    route.append(corridor.getLatitude(i), corridor.getLongitude(i));
+                }
+                TrackLines lines = new TrackLines(route, mCircleColor);
+                mRoutes.put(alarm.id, lines);
+                if (mViewport != null) {
+                    lines.update();
+                }
+            }
+        }
+        Iterator<Map.Entry<Long, TrackLines>> routes = mRoutes.entrySet().iterator();
+        while (routes.hasNext()) {
+            Map.Entry<Long, TrackLines> entry = routes.next();
+            if (!corridors.contains(entry.getKey())) {
+                entry.getValue().remove();
+                routes.remove();
+            }
+        }
+    }
+
+    /**
+     * Creates the areas of new polygon alarms and removes those of disarmed ones.
+     */
+    private void updateAreas() {
+        Set<Long> polygons = new HashSet<>();
+        for (Alarm alarm : mAlarms) {
+            if (!(alarm instanceof PolygonAlarm)) {
+                continue;
+            }
+            polygons.add(alarm.id);
+            if (!mAreas.containsKey(alarm.id)) {
+                PolygonAlarm polygon = (PolygonAlarm) alarm;
+                PolygonOptions options = new PolygonOptions()
+                        .strokeWidth(AREA_STROKE_WIDTH)
+                        .strokeColor(mCircleColor)
+                        .fillColor(mAreaFillColor);
+                for (int ring = 0; ring < polygon.getRingCount(); ring++) {
+                    List<LatLng> points = new ArrayList<>(polygon.getVertexCount(ring));
+                    for (int i = 0; i < polygon.getVertexCount(ring); i++) {
+                        points.add(new LatLng(polygon.getLatitude(ring, i),
+                                polygon.getLongitude(ring, i)));
+                    }
+                    if (ring == 0) {
+                        options.addAll(points);
+                    } else {
+                        options.addHole(points);
+                    }
+                }
+                mAreas.put(alarm.id, mMap.addPolygon(options));
+            }
+        }
+        Iterator<Map.Entry<Long, Polygon>> areas = mAreas.entrySet().iterator();
+        while (areas.hasNext()) {
+            Map.Entry<Long, Polygon> entry = areas.next();
+            if (!polygons.contains(entry.getKey())) {
+                entry.getValue().remove();
+                areas.remove();
+            }
+        }
+    }
+
+    private void updateTracks() {
+        TraceCompat.beginSection("MapOverlayManager.updateTracks");
+        try {
+            mTrack.update();
+            for (TrackLines route : mRoutes.values()) {
+                route.update();
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Returns the icon of a group marker: a disc with the number of alarms, rounded down to its
+     * leading digit from 10 on, so only a few dozen icons are ever drawn.
+     */
+    private BitmapDescriptor getClusterIcon(int size) {
+        String label;
+        if (size < 10) {
+            label = String.valueOf(size);
+        } else {
+            int magnitude = 1;
+            while (size / magnitude >= 10) {
+                magnitude *= 10;
+            }
+            label = (size / magnitude * magnitude) + "+";
+        }
+        BitmapDescriptor icon = mClusterIcons.get(label);
+        if (icon == null) {
+            float density = mContext.getResources().getDisplayMetrics().density;
+            int diameter = (int) (CLUSTER_ICON_SIZE * density);
+            float radius = diameter / 2f;
+            Bitmap bitmap = Bitmap.createBitmap(diameter, diameter, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(mTrackColor);
+            canvas.drawCircle(radius, radius, radius, paint);
+            paint.setColor(Color.WHITE);
+            paint.setTextSize(CLUSTER_TEXT_SIZE * density);
+            paint.setTextAlign(Paint.Align.CENTER);
+            paint.setTypeface(Typeface.DEFAULT_BOLD);
+            canvas.drawText(label, radius, radius - (paint.descent() + paint.ascent()) / 2, paint);
+            icon = BitmapDescriptorFactory.fromBitmap(bitmap);
+            mClusterIcons.put(label, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * The polylines drawing the visible runs of a Track, see Track.getVisibleRuns().
+     */
+    private final class TrackLines {
+        final Track track;
+        final int color;
+        final List<Polyline> polylines = new ArrayList<>();
+
+        /**
+         * Point indices shown by each polyline.
+         */
+        final List<int[]> runs = new ArrayList<>();
+
+        TrackLines(Track track, int color) {
+            this.track = track;
+            this.color = color;
+        }
+
+        /**
+         * Replaces the points of the polylines whose run changed, adds and removes the rest.
+         */
+        void update() {
+            List<int[]> visible = new ArrayList<>();
+            track.getVisibleRuns(mZoom, mViewport, visible);
+            for (int i = 0; i < visible.size(); i++) {
+                int[] run = visible.get(i);
+                if (i < polylines.size()) {
+                    if (!Arrays.equals(run, runs.get(i))) {
+                        polylines.get(i).setPoints(toLatLngs(run));
+                        runs.set(i, run);
+                    }
+                } else {
+                    polylines.add(mMap.addPolyline(new PolylineOptions()
+                            .addAll(toLatLngs(run))
+                            .width(TRACK_WIDTH)
+                            .color(color)));
+                    runs.add(run);
+                }
+            }
+            while (polylines.size() > visible.size()) {
+                polylines.remove(polylines.size() - 1).remove();
+                runs.remove(runs.size() - 1);
+            }
+        }
+
+        void remove() {
+            for (Polyline polyline : polylines) {
+                polyline.remove();
+            }
+            polylines.clear();
+            runs.clear();
+        }
+
+        private List<LatLng> toLatLngs(int[] run) {
+            List<LatLng> points = new ArrayList<>(run.length);
+            for (int index : run) {
+                points.add(new LatLng(track.getLatitude(index), track.getLongitude(index)));
+            }
+            return points;
+        }
+    }
+}
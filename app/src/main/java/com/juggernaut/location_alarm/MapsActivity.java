@@ -3,11 +3,9 @@ package com.juggernaut.location_alarm;
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.IntentSender;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
@@ -23,14 +21,19 @@ import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.ActivityCompat;
-import android.support.v4.content.LocalBroadcastManager;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
+import android.widget.AdapterView;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.RelativeLayout;
@@ -57,16 +60,26 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
-import com.google.android.gms.maps.model.CircleOptions;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MapStyleOptions;
-import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
 
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.EventChannel;
+import com.juggernaut.location_alarm.core.Fix;
+import com.juggernaut.location_alarm.core.PlaceSearch;
+import com.juggernaut.location_alarm.core.PolygonAlarm;
+import com.juggernaut.location_alarm.core.PolygonFormat;
+import com.juggernaut.location_alarm.core.Track;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Using location settings.
  *
@@ -81,7 +94,7 @@ import com.google.android.gms.tasks.Task;
  * (as specified in AndroidManifest.xml).
  */
 public class MapsActivity extends AppCompatActivity implements OnMapReadyCallback,
-        GoogleMap.OnMyLocationClickListener {
+        GoogleMap.OnMyLocationClickListener, GoogleMap.OnMapClickListener {
 
     private static final String TAG = MapsActivity.class.getSimpleName();
 
@@ -118,17 +131,38 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      */
     private static final int ZOOM_LEVEL = 14;
 
+    /**
+     * Tag of the PlaceAutocompleteFragment, added after the first frame.
+     */
+    private static final String TAG_AUTOCOMPLETE = "place_autocomplete";
+
+    /**
+     * Padding in pixels around an imported area when the camera moves to it.
+     */
+    private static final int AREA_PADDING = 100;
+
+    /**
+     * Receives the name entered in the alarm dialog.
+     */
+    private interface OnNameEnteredListener {
+        void onNameEntered(String name);
+    }
+
     /**
      * This is the object of main class of the Google Maps Android API and is the entry point
      * for all methods related to the map.
      */
-    static GoogleMap mMap;
+    private GoogleMap mMap;
+
+    /**
+     * Draws the alarms and the track on mMap, created once the map is ready.
+     */
+    private MapOverlayManager mOverlays;
 
     /**
-     * Used to store destination coordinates.
+     * Path of the fixes received while this activity is shown.
      */
-    static double destinationLatitude;
-    static double destinationLongitude;
+    private final Track mTrack = new Track();
 
     /**
      * Current location coordinates.
@@ -151,6 +185,12 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      */
     PlaceAutocompleteFragment autocompleteFragment;
 
+    /**
+     * Answers the search box from the device, the autocomplete widget is only shown while it
+     * finds nothing. Created after the first frame.
+     */
+    private DestinationSearch mDestinationSearch;
+
     /**
      * Provides access to the Fused Location Provider API.
      */
@@ -184,9 +224,31 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     private Boolean mRequestingLocationUpdates;
 
     /**
-     * The BroadcastReceiver used to listen from broadcasts from the service.
+     * Receives the fixes published by the service, only the latest one while busy.
      */
-    private MyReceiver myReceiver;
+    private final EventChannel.Subscriber<Fix> mLocationSubscriber =
+            new EventChannel.Subscriber<Fix>() {
+                @Override
+                public void onEvent(Fix fix) {
+                    Log.i(TAG, "Location from service : " + fix.latitude + ", " + fix.longitude);
+                    mTrack.append(fix.latitude, fix.longitude);
+                    if (mOverlays != null) {
+                        mOverlays.onTrackChanged();
+                    }
+                }
+            };
+
+    /**
+     * Receives the alarms whose destination has been reached.
+     */
+    private final EventChannel.Subscriber<Alarm> mAlarmSubscriber =
+            new EventChannel.Subscriber<Alarm>() {
+                @Override
+                public void onEvent(Alarm alarm) {
+                    Log.i(TAG, "Alarm reached : " + alarm);
+                    drawAlarms();
+                }
+            };
 
     /**
      * A reference to the service used to get location updates.
@@ -203,6 +265,11 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      */
     private boolean mBound = false;
 
+    /**
+     * True while an alarm armed before the service was bound waits for location updates.
+     */
+    private boolean mPendingLocationRequest = false;
+
     /**
      * Monitors the state of the connection to the service.
      */
@@ -215,6 +282,10 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             LocationUpdatesService.LocalBinder binder = (LocationUpdatesService.LocalBinder) service;
             mService = binder.getService();
             mBound = true;
+            if (mPendingLocationRequest) {
+                mPendingLocationRequest = false;
+                startMonitoring();
+            }
         }
 
         // Called when a connection to the Service has been lost.
@@ -233,66 +304,247 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     private Boolean exit = false;
 
     /**
-     * Getter method for getting destination's latitude
-     *
-     * @return destination's latitude
+     * Corners of the area being drawn, null while no area is.
      */
-    public static double getLatitude() {
-        return destinationLatitude;
-    }
+    private List<LatLng> mAreaCorners;
 
     /**
-     * Getter method for getting destination's longitude
-     *
-     * @return destination's longitude
+     * Rings of a polygon shared with this activity, waiting for the deferred startup work.
      */
-    public static double getLongitude() {
-        return destinationLongitude;
-    }
+    private List<double[]> mImportedLatitudes;
+    private List<double[]> mImportedLongitudes;
+
+    /**
+     * Runs the startup work deferred until after the first frame.
+     */
+    private final Handler mMainHandler = new Handler();
+
+    /**
+     * True once the deferred startup work has run.
+     */
+    private boolean mDeferredInitDone = false;
+
+    /**
+     * True between onStart and onStop.
+     */
+    private boolean mStarted = false;
+
+    /**
+     * True once the map has been handed over in onMapReady.
+     */
+    private boolean mMapReady = false;
+
+    /**
+     * True once reportFullyDrawn() has been called.
+     */
+    private boolean mFullyDrawnReported = false;
+
+    /**
+     * Startup work that is not needed to draw the map shell: the wake lock and the search widgets.
+     * Location updates and the service binding follow if the activity is still started.
+     */
+    private final Runnable mDeferredInit = new Runnable() {
+        @Override
+        public void run() {
+            if (isFinishing()) {
+                return;
+            }
+            TraceCompat.beginSection("MapsActivity.deferredInit");
+            try {
+                final PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+                if (powerManager != null) {
+                    mWakeLock = powerManager.newWakeLock(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON, getString(R.string.tag));
+                    mWakeLock.acquire(5 * 60 * 1000L);    // 5 Minutes
+                }
+
+                addDestinationSearch();
+                addAutocompleteFragment();
+                findViewById(R.id.location_pin).setOnLongClickListener(new View.OnLongClickListener() {
+                    @Override
+                    public boolean onLongClick(View view) {
+                        startDrawingArea();
+                        return true;
+                    }
+                });
+                if (mImportedLatitudes != null) {
+                    showImportDialog();
+                }
 
+                mDeferredInitDone = true;
+                if (mStarted) {
+                    startSession();
+                }
+            } finally {
+                TraceCompat.endSection();
+            }
+            maybeReportFullyDrawn();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         Log.i(TAG, "<onCreate>");
 
-        setContentView(R.layout.activity_maps);
+        // Only what the first frame shows is set up here: the map shell and the search card. The
+        // rest waits for mDeferredInit or for its first use.
+        TraceCompat.beginSection("MapsActivity.onCreate");
+        try {
+            setContentView(R.layout.activity_maps);
+
+            SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
+                    .findFragmentById(R.id.map);
+            mapView = mapFragment.getView();
+            mapFragment.getMapAsync(this);
+
+            mRequestingLocationUpdates = true;
+            updateValuesFromBundle(savedInstanceState);
+
+            Window window = getWindow();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                window.getDecorView().setSystemUiVisibility(
+                        View.SYSTEM_UI_FLAG_LAYOUT_STABLE
+                                | View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR);
+            }
 
-        SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager()
-                .findFragmentById(R.id.map);
-        mapView = mapFragment.getView();
-        mapFragment.getMapAsync(this);
+            // Delivered on the main thread while this activity is started.
+            LocationBus.observe(this, LocationBus.locations(), mLocationSubscriber, true);
+            LocationBus.observe(this, LocationBus.alarms(), mAlarmSubscriber, false);
 
-        Utils.setRequestingLocationUpdates(this, false);
-        mRequestingLocationUpdates = true;
-        updateValuesFromBundle(savedInstanceState);
+            if (savedInstanceState == null) {
+                readSharedArea(getIntent());
+            }
 
-        Window window = getWindow();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            window.getDecorView().setSystemUiVisibility(
-                    View.SYSTEM_UI_FLAG_LAYOUT_STABLE
-                            | View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR);
+            runAfterFirstFrame(mDeferredInit);
+        } finally {
+            TraceCompat.endSection();
         }
+    }
 
-        final PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        if (powerManager != null) {
-            this.mWakeLock = powerManager.newWakeLock(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON, getString(R.string.tag));
-        }
-        this.mWakeLock.acquire(5 * 60 * 1000L);    // 5 Minutes
+    /**
+     * Posts a task to the main thread from the pre-draw pass of the next frame, so that it runs as
+     * soon as that frame has been drawn.
+     */
+    private void runAfterFirstFrame(final Runnable task) {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                mMainHandler.post(task);
+                return true;
+            }
+        });
+    }
 
-        // Retrieve the PlaceAutocompleteFragment.
+    /**
+     * Adds the PlaceAutocompleteFragment to its card, or picks up the one restored with the
+     * activity state.
+     */
+    private void addAutocompleteFragment() {
         autocompleteFragment = (PlaceAutocompleteFragment)
-                getFragmentManager().findFragmentById(R.id.place_autocomplete_fragment);
+                getFragmentManager().findFragmentByTag(TAG_AUTOCOMPLETE);
+        if (autocompleteFragment == null) {
+            autocompleteFragment = new PlaceAutocompleteFragment();
+            getFragmentManager().beginTransaction()
+                    .add(R.id.place_autocomplete_container, autocompleteFragment, TAG_AUTOCOMPLETE)
+                    .commit();
+        }
         autoCompleteSearch();
+    }
 
-        // Construct a FusedLocationProviderClient.
-        mFusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
-        mSettingsClient = LocationServices.getSettingsClient(this);
+    /**
+     * Sets up the search box over the destinations on the device. It hides the autocomplete widget
+     * while it has results for what is typed, so remote searches only run when it has none.
+     */
+    private void addDestinationSearch() {
+        mDestinationSearch = new DestinationSearch(this);
+        if (mCurrentLocation != null) {
+            mDestinationSearch.setOrigin(mCurrentLocation.getLatitude(),
+                    mCurrentLocation.getLongitude());
+        }
+        mDestinationSearch.setAlarms(LocationUpdatesService.getAlarmRegistry().getAll());
 
-        createLocationCallback();
-        createLocationRequest();
-        buildLocationSettingsRequest();
+        final View remoteSearch = findViewById(R.id.place_autocomplete_container);
+        final AutoCompleteTextView searchBox = findViewById(R.id.destination_search);
+        final DestinationSearch.Adapter adapter = mDestinationSearch.newAdapter(
+                new DestinationSearch.Listener() {
+                    @Override
+                    public void onLocalResults(boolean found) {
+                        remoteSearch.setVisibility(found ? View.GONE : View.VISIBLE);
+                    }
+                });
+        searchBox.setAdapter(adapter);
+        searchBox.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                PlaceSearch.Result result = adapter.getItem(position);
+                Log.i(TAG, "Local place selected : " + result);
+                mDestinationSearch.addRecent(result.name, result.latitude, result.longitude);
+                moveCameraTo(new LatLng(result.latitude, result.longitude));
+            }
+        });
+        searchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
+            @Override
+            public void afterTextChanged(Editable s) {
+                // Below the threshold the filter does not run.
+                if (s.length() == 0) {
+                    remoteSearch.setVisibility(View.VISIBLE);
+                }
+            }
+        });
+        searchBox.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Moves the camera to a place picked in one of the searches.
+     */
+    private void moveCameraTo(LatLng coordinate) {
+        if (mMap != null) {
+            mMap.animateCamera(CameraUpdateFactory.newLatLngZoom(coordinate, ZOOM_LEVEL));
+        }
+    }
+
+    /**
+     * Creates the location clients, the callback and the requests on first use.
+     */
+    private void ensureLocationClients() {
+        if (mFusedLocationProviderClient != null) {
+            return;
+        }
+        TraceCompat.beginSection("MapsActivity.createLocationClients");
+        try {
+            // Construct a FusedLocationProviderClient.
+            mFusedLocationProviderClient = LocationServices.getFusedLocationProviderClient(this);
+            mSettingsClient = LocationServices.getSettingsClient(this);
+
+            createLocationCallback();
+            createLocationRequest();
+            buildLocationSettingsRequest();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Calls reportFullyDrawn() once the map is ready and the deferred startup work has run, which
+     * makes the system log the time to a usable screen next to the time to the first frame.
+     */
+    private void maybeReportFullyDrawn() {
+        if (mFullyDrawnReported || !mMapReady || !mDeferredInitDone) {
+            return;
+        }
+        mFullyDrawnReported = true;
+        Log.i(TAG, "Fully drawn");
+        reportFullyDrawn();
     }
 
     /**
@@ -327,11 +579,12 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             @Override
             public void onPlaceSelected(Place place) {
                 Log.i(TAG, "Place selected !");
-                LatLng coordinate;
-                coordinate = place.getLatLng();
-                CameraUpdate location = CameraUpdateFactory.newLatLngZoom(
-                        coordinate, ZOOM_LEVEL);
-                mMap.animateCamera(location);
+                LatLng coordinate = place.getLatLng();
+                if (mDestinationSearch != null) {
+                    mDestinationSearch.addRecent(place.getName().toString(), coordinate.latitude,
+                            coordinate.longitude);
+                }
+                moveCameraTo(coordinate);
 
             }
 
@@ -416,11 +669,16 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
 
             currentLatitude = mCurrentLocation.getLatitude();
             currentLongitude = mCurrentLocation.getLongitude();
+            if (mDestinationSearch != null) {
+                mDestinationSearch.setOrigin(currentLatitude, currentLongitude);
+            }
             LatLng coordinate = new LatLng(currentLatitude, currentLongitude);
             CameraUpdate location = CameraUpdateFactory.newLatLngZoom(
                     coordinate, ZOOM_LEVEL);
 
-            mMap.animateCamera(location);
+            if (mMap != null) {
+                mMap.animateCamera(location);
+            }
         }
     }
 
@@ -429,33 +687,48 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         super.onStart();
         Log.i(TAG, "<onStart>");
 
-        mRequestingLocationUpdates = true;
-        myReceiver = new MyReceiver();
-        if (checkPermissions()) {
-            startLocationUpdates();
+        drawAlarms();
 
-        } else {
-            requestPermissions();
+        mStarted = true;
+        // On a fresh launch mDeferredInit starts the session after the first frame.
+        if (mDeferredInitDone) {
+            startSession();
+        }
+    }
+
+    /**
+     * Starts location updates, or asks for the permission, and binds to the service.
+     */
+    private void startSession() {
+        TraceCompat.beginSection("MapsActivity.startSession");
+        try {
+            mRequestingLocationUpdates = true;
+            if (checkPermissions()) {
+                startLocationUpdates();
+
+            } else {
+                requestPermissions();
+            }
+            // Bind to the service. If the service is in foreground mode, this signals to the service
+            // that since this activity is in the foreground, the service can exit foreground mode.
+            bindService(new Intent(this, LocationUpdatesService.class), mServiceConnection,
+                    Context.BIND_AUTO_CREATE);
+        } finally {
+            TraceCompat.endSection();
         }
-        // Bind to the service. If the service is in foreground mode, this signals to the service
-        // that since this activity is in the foreground, the service can exit foreground mode.
-        bindService(new Intent(this, LocationUpdatesService.class), mServiceConnection,
-                Context.BIND_AUTO_CREATE);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         Log.i(TAG, "<onResume>");
-
-        LocalBroadcastManager.getInstance(this).registerReceiver(myReceiver,
-                new IntentFilter(LocationUpdatesService.ACTION_BROADCAST));
     }
 
     @Override
     protected void onStop() {
         Log.i(TAG, "<onStop>");
 
+        mStarted = false;
         if (mBound) {
             // Unbind from the service. This signals to the service that this activity is no longer
             // in the foreground, and the service can respond by promoting itself to a foreground
@@ -470,7 +743,13 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     public void onDestroy() {
         Log.i(TAG, "<onDestroy>");
 
-        this.mWakeLock.release();
+        mMainHandler.removeCallbacks(mDeferredInit);
+        if (mDestinationSearch != null) {
+            mDestinationSearch.close();
+        }
+        if (mWakeLock != null && mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
         super.onDestroy();
     }
 
@@ -503,6 +782,8 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * runtime permission has been granted.
      */
     private void startLocationUpdates() {
+        ensureLocationClients();
+
         // Begin by checking if the device has the necessary location settings.
         mSettingsClient.checkLocationSettings(mLocationSettingsRequest)
                 .addOnSuccessListener(this, new OnSuccessListener<LocationSettingsResponse>() {
@@ -607,9 +888,151 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         Log.i(TAG, "Pin clicked!");
 
         final LatLng targetCoordinate = mMap.getCameraPosition().target;
-        destinationLatitude = targetCoordinate.latitude;
-        destinationLongitude = targetCoordinate.longitude;
+        if (mAreaCorners != null) {
+            addAreaCorner(targetCoordinate);
+            return;
+        }
+
+        showAlarmDialog(targetCoordinate, new OnNameEnteredListener() {
+            @Override
+            public void onNameEntered(String name) {
+                mMap.animateCamera(CameraUpdateFactory.newLatLng(targetCoordinate));
+                mMap.setMaxZoomPreference(mMap.getMaxZoomLevel());
+                LocationUpdatesService.getAlarmRegistry().add(name,
+                        targetCoordinate.latitude, targetCoordinate.longitude,
+                        LocationUpdatesService.MAX_DISTANCE_RANGE);
+                onAlarmArmed();
+            }
+        });
+    }
+
+    /**
+     * Lets the user place the corners of an area alarm, by tapping the map or the pin, until Done
+     * is pressed on the snackbar.
+     */
+    private void startDrawingArea() {
+        if (mMap == null || mAreaCorners != null) {
+            return;
+        }
+        Log.i(TAG, "Drawing an area");
+        mAreaCorners = new ArrayList<>();
+        showAreaSnackbar();
+    }
+
+    private void showAreaSnackbar() {
+        Snackbar.make(findViewById(android.R.id.content), getString(R.string.area_hint),
+                Snackbar.LENGTH_INDEFINITE)
+                .setAction(getString(R.string.done), new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        finishDrawingArea();
+                    }
+                }).show();
+    }
+
+    @Override
+    public void onMapClick(LatLng latLng) {
+        if (mAreaCorners != null) {
+            addAreaCorner(latLng);
+        }
+    }
+
+    private void addAreaCorner(LatLng corner) {
+        mAreaCorners.add(corner);
+        mOverlays.setDraft(mAreaCorners);
+    }
+
+    /**
+     * Asks for the name of the area drawn, or keeps drawing if it has too few corners.
+     */
+    private void finishDrawingArea() {
+        if (mAreaCorners.size() < 3) {
+            Toast.makeText(this, R.string.area_too_small, Toast.LENGTH_SHORT).show();
+            showAreaSnackbar();
+            return;
+        }
+        double[][] latitudes = new double[1][mAreaCorners.size()];
+        double[][] longitudes = new double[1][mAreaCorners.size()];
+        for (int i = 0; i < mAreaCorners.size(); i++) {
+            latitudes[0][i] = mAreaCorners.get(i).latitude;
+            longitudes[0][i] = mAreaCorners.get(i).longitude;
+        }
+        cancelDrawingArea();
+        addArea(latitudes, longitudes);
+    }
+
+    private void cancelDrawingArea() {
+        mAreaCorners = null;
+        if (mOverlays != null) {
+            mOverlays.setDraft(new ArrayList<LatLng>());
+        }
+    }
+
+    /**
+     * Picks up a WKT polygon shared with this activity as text, e.g. from a map editor.
+     */
+    private void readSharedArea(Intent intent) {
+        if (!Intent.ACTION_SEND.equals(intent.getAction())) {
+            return;
+        }
+        String text = intent.getStringExtra(Intent.EXTRA_TEXT);
+        if (text == null) {
+            return;
+        }
+        List<double[]> latitudes = new ArrayList<>();
+        List<double[]> longitudes = new ArrayList<>();
+        try {
+            PolygonFormat.parseWkt(text, latitudes, longitudes);
+        } catch (IOException e) {
+            Log.i(TAG, "Shared text is not an area. " + e.getMessage());
+            Toast.makeText(this, R.string.area_import_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mImportedLatitudes = latitudes;
+        mImportedLongitudes = longitudes;
+    }
+
+    private void showImportDialog() {
+        double[][] latitudes = mImportedLatitudes.toArray(new double[mImportedLatitudes.size()][]);
+        double[][] longitudes = mImportedLongitudes.toArray(new double[mImportedLongitudes.size()][]);
+        mImportedLatitudes = null;
+        mImportedLongitudes = null;
+        addArea(latitudes, longitudes);
+    }
+
+    /**
+     * Names and arms a polygon alarm, then moves the camera over it.
+     */
+    private void addArea(final double[][] latitudes, final double[][] longitudes) {
+        final PolygonAlarm preview;
+        try {
+            preview = new PolygonAlarm(0, "", latitudes, longitudes);
+        } catch (IllegalArgumentException e) {
+            Log.i(TAG, "Not a valid area. " + e.getMessage());
+            Toast.makeText(this, R.string.area_import_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        showAlarmDialog(new LatLng(preview.latitude, preview.longitude), new OnNameEnteredListener() {
+            @Override
+            public void onNameEntered(String name) {
+                PolygonAlarm polygon = LocationUpdatesService.getAlarmRegistry()
+                        .addPolygon(name, latitudes, longitudes);
+                if (mMap != null) {
+                    LatLngBounds.Builder bounds = LatLngBounds.builder();
+                    for (int i = 0; i < polygon.getVertexCount(0); i++) {
+                        bounds.include(new LatLng(polygon.getLatitude(0, i), polygon.getLongitude(0, i)));
+                    }
+                    mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds.build(), AREA_PADDING));
+                }
+                onAlarmArmed();
+            }
+        });
+    }
 
+    /**
+     * Asks for the name of a new alarm at the given position.
+     */
+    private void showAlarmDialog(LatLng targetCoordinate, final OnNameEnteredListener listener) {
         AlertDialog.Builder builder = new AlertDialog.Builder(MapsActivity.this);
         View dialogView = LayoutInflater.from(MapsActivity.this)
                 .inflate(R.layout.dialog_box, null, false);
@@ -628,36 +1051,8 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                 public void onClick(View v) {
                     String enteredText = nameEditText.getText().toString();
                     if (enteredText.length() >= 3) {
-
-                        float[] results = new float[3];
-                        Location.distanceBetween(currentLatitude, currentLongitude, destinationLatitude, destinationLongitude, results);
-//                        if (results[0] < LocationUpdatesService.MAX_DISTANCE_RANGE) {
-//                             Toast.makeText(getApplicationContext(), "You are already near to the destination", Toast.LENGTH_SHORT).show();
-//                        } else {
-                        MarkerOptions markerOptions = new MarkerOptions();
-                        markerOptions.position(targetCoordinate);
-                        markerOptions.draggable(false);
-                        markerOptions.icon(BitmapDescriptorFactory.fromResource(R.drawable.flag));
-                        markerOptions.title(enteredText);
-                        mMap.clear();
-                        mMap.addMarker(markerOptions);
-                        mMap.animateCamera(CameraUpdateFactory.newLatLng(targetCoordinate));
-                        mMap.setMaxZoomPreference(mMap.getMaxZoomLevel());
-                        LatLng latLng = new LatLng(destinationLatitude, destinationLongitude);
-                        mMap.addCircle(new CircleOptions().center(latLng)
-                                .strokeWidth(5)
-                                .strokeColor(getResources().getColor(R.color.cardview_dark_background))
-                                .radius(LocationUpdatesService.MAX_DISTANCE_RANGE));
-
-                        if (!checkPermissions()) {
-                            requestPermissions();
-                        } else {
-                            if (!Utils.requestingLocationUpdates(getApplicationContext())) {
-                                mService.requestLocationUpdates();
-                            }
-                        }
+                        listener.onNameEntered(enteredText);
                         alertDialog.dismiss();
-//                        }
 
                     } else {
                         nameEditText.setError("Name should have minimum of 4 characters.");
@@ -678,6 +1073,48 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         }
     }
 
+    /**
+     * Shows a newly armed alarm and makes sure location updates are running for it.
+     */
+    private void onAlarmArmed() {
+        drawAlarms();
+
+        if (!checkPermissions()) {
+            requestPermissions();
+        } else {
+            startMonitoring();
+        }
+    }
+
+    /**
+     * Makes sure the service requests location updates, once it is bound if it is not yet.
+     */
+    private void startMonitoring() {
+        if (!mBound || mService == null) {
+            // Armed during the deferred start or while disconnected, see onServiceConnected().
+            mPendingLocationRequest = true;
+            return;
+        }
+        // Asks the service, a recreated activity knows nothing of the running trip.
+        if (!mService.isRequestingLocationUpdates()) {
+            mService.requestLocationUpdates();
+        }
+    }
+
+    /**
+     * Shows the armed alarms on the map and offers them in the search, the service may have
+     * changed them while the activity was in the background.
+     */
+    private void drawAlarms() {
+        if (mDestinationSearch != null) {
+            mDestinationSearch.setAlarms(LocationUpdatesService.getAlarmRegistry().getAll());
+        }
+        if (mOverlays == null) {
+            return;
+        }
+        mOverlays.setAlarms(LocationUpdatesService.getAlarmRegistry().getAll());
+    }
+
     /**
      * Callback interface for when the map is ready to be used.
      *
@@ -688,11 +1125,17 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     @Override
     public void onMapReady(GoogleMap googleMap) {
         Log.i(TAG, "Map is ready!");
+        TraceCompat.beginSection("MapsActivity.onMapReady");
 
         mMap = googleMap;
         mMap.setOnMyLocationClickListener(this);
         mMap.setMapStyle(MapStyleOptions.loadRawResourceStyle(this, R.raw.style_json));
 
+        mOverlays = new MapOverlayManager(this, mMap, mTrack);
+        mMap.setOnCameraIdleListener(mOverlays);
+        mMap.setOnMarkerClickListener(mOverlays);
+        mMap.setOnMapClickListener(this);
+
         if (mapView != null && mapView.findViewById(Integer.parseInt("1")) != null) {
             // Get the button view
             View locationButton = ((View) mapView.findViewById(Integer.parseInt("1")).getParent()).findViewById(Integer.parseInt("2"));
@@ -708,6 +1151,13 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             mMap.setMyLocationEnabled(true);
         }
         Log.i(TAG, "Location Button Enabled! (1)");
+
+        // Alarms armed before the activity was created, e.g. restored after the process was killed.
+        drawAlarms();
+        TraceCompat.endSection();
+
+        mMapReady = true;
+        maybeReportFullyDrawn();
     }
 
     /**
@@ -747,6 +1197,10 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     public void onBackPressed() {
         Log.i(TAG, "Back button pressed!");
 
+        if (mAreaCorners != null) {
+            cancelDrawingArea();
+            return;
+        }
         if (exit) {
             finish(); // finish activity
         } else {
@@ -769,8 +1223,6 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         if (mRequestingLocationUpdates) {
             stopLocationUpdates();
         }
-
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(myReceiver);
         super.onPause();
     }
 
@@ -782,6 +1234,10 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             Log.i(TAG, "Location updates never requested!");
             return;
         }
+        if (mFusedLocationProviderClient == null) {
+            // Paused before the deferred startup work requested them.
+            return;
+        }
 
         // It is a good practice to remove location requests when the activity is in a paused or
         // stopped state. Doing so helps battery performance and is especially
@@ -866,19 +1322,4 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                 Toast.LENGTH_SHORT).show();
     }
 
-    /**
-     * Receiver for broadcasts sent by LocationUpdatesService.
-     */
-    private class MyReceiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            Location location = intent.getParcelableExtra(LocationUpdatesService.EXTRA_LOCATION);
-            if (location != null) {
-                Log.i(TAG, "Receiving broadcasts : " + location.getLatitude() + ", " + location.getLongitude());
-
-                //     Toast.makeText(MapsActivity.this, Utils.getLocationCoordinate(location), Toast.LENGTH_SHORT).show();
-            }
-        }
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package com.juggernaut.location_alarm;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.juggernaut.location_alarm.core.NotificationThrottle;
+
+/**
+ * Builds and posts the foreground service notification.
+ *
+ * The launcher bitmap, the pending intents and the builder are created once and reused. Updates
+ * are only posted when the visible text changed, and at most once per minimum interval.
+ *
+ * Updates come from several threads and are only posted between render() and reset(), so an
+ * update racing with stopForeground() can not bring the ongoing notification back.
+ */
+class NotificationRenderer {
+
+    private static final String TAG = NotificationRenderer.class.getSimpleName();
+
+    private final Context mContext;
+
+    private final NotificationManager mNotificationManager;
+
+    /**
+     * Runs the trailing post of throttled updates.
+     */
+    private final Handler mHandler;
+
+    private final String mChannelId;
+
+    private final int mNotificationId;
+
+    private final PendingIntent mActivityPendingIntent;
+
+    private final PendingIntent mServicePendingIntent;
+
+    private final NotificationThrottle mThrottle;
+
+    private final ServiceMetrics mMetrics;
+
+    /**
+     * Decoded on first use and kept for every following notification.
+     */
+    private Bitmap mLargeIcon;
+
+    private NotificationCompat.Builder mBuilder;
+
+    /**
+     * True from render() until reset(), guarded by mThrottle.
+     */
+    private boolean mShown;
+
+    private final Runnable mPostRunnable = new Runnable() {
+        @Override
+        public void run() {
+            post();
+        }
+    };
+
+    /**
+     * @param handler               runs delayed posts.
+     * @param activityPendingIntent launches the activity from the notification.
+     * @param servicePendingIntent  removes location updates from the notification.
+     * @param minInterval           minimum time between two posts in milliseconds.
+     * @param metrics               times and counts the posts.
+     */
+    NotificationRenderer(Context context, NotificationManager notificationManager, Handler handler,
+                         String channelId, int notificationId, PendingIntent activityPendingIntent,
+                         PendingIntent servicePendingIntent, long minInterval,
+                         ServiceMetrics metrics) {
+        mContext = context;
+        mNotificationManager = notificationManager;
+        mHandler = handler;
+        mChannelId = channelId;
+        mNotificationId = notificationId;
+        mActivityPendingIntent = activityPendingIntent;
+        mServicePendingIntent = servicePendingIntent;
+        mThrottle = new NotificationThrottle(minInterval);
+        mMetrics = metrics;
+    }
+
+    /**
+     * Returns the launcher icon, decoding it only once.
+     */
+    synchronized Bitmap getLargeIcon() {
+        if (mLargeIcon == null) {
+            mLargeIcon = BitmapFactory.decodeResource(mContext.getResources(), R.mipmap.ic_launcher);
+        }
+        return mLargeIcon;
+    }
+
+    /**
+     * Builds the notification for the given content and counts it as displayed. Used for
+     * startForeground().
+     */
+    Notification render(String title, String text) {
+        synchronized (mThrottle) {
+            mShown = true;
+            mThrottle.markShown(title, text, SystemClock.elapsedRealtime());
+        }
+        return build(title, text);
+    }
+
+    /**
+     * Posts the given content if it differs from what is displayed, right away or once the
+     * minimum interval since the last post has passed.
+     */
+    void update(String title, String text) {
+        synchronized (mThrottle) {
+            if (!mShown) {
+                return;
+            }
+            long delay = mThrottle.offer(title, text, SystemClock.elapsedRealtime());
+            if (delay == 0) {
+                postLocked();
+            } else if (delay > 0) {
+                mHandler.postDelayed(mPostRunnable, delay);
+            }
+        }
+    }
+
+    /**
+     * Drops pending updates and forgets the displayed content, call before stopForeground() so no
+     * update is posted after it.
+     */
+    void reset() {
+        synchronized (mThrottle) {
+            mShown = false;
+            mHandler.removeCallbacks(mPostRunnable);
+            mThrottle.reset();
+        }
+    }
+
+    private void post() {
+        synchronized (mThrottle) {
+            // A delayed post may still run after reset().
+            if (!mShown) {
+                return;
+            }
+            postLocked();
+        }
+    }
+
+    private void postLocked() {
+        if (mThrottle.take(SystemClock.elapsedRealtime())) {
+            Log.i(TAG, "Notification content updated.");
+            long start = System.nanoTime();
+            mNotificationManager.notify(mNotificationId, build(mThrottle.getTitle(), mThrottle.getText()));
+            mMetrics.recordSince(ServiceMetrics.Stage.NOTIFICATION, start);
+            mMetrics.increment(ServiceMetrics.Counter.NOTIFICATION_POSTS);
+        }
+    }
+
+    private synchronized Notification build(String title, String text) {
+        if (mBuilder == null) {
+            mBuilder = new NotificationCompat.Builder(mContext, mChannelId)
+                    .setLargeIcon(getLargeIcon())
+                    .addAction(R.drawable.ic_launch, mContext.getString(R.string.launch_activity),
+                            mActivityPendingIntent)
+                    .addAction(R.drawable.ic_cancel, mContext.getString(R.string.remove_location_updates),
+                            mServicePendingIntent)
+                    .setOngoing(true)
+                    .setOnlyAlertOnce(true)
+                    .setPriority(Notification.PRIORITY_LOW)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setDefaults(Notification.DEFAULT_LIGHTS)
+                    .setWhen(System.currentTimeMillis());
+
+            // Set the Channel ID for Android O.
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                mBuilder.setChannelId(mChannelId); // Channel ID
+            }
+        }
+        return mBuilder.setContentTitle(title)
+                .setContentText(text)
+                .setTicker(text)
+                .build();
+    }
+}
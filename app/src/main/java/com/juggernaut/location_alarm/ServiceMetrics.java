@@ -0,0 +1,149 @@
+package com.juggernaut.location_alarm;
+
+import com.juggernaut.location_alarm.core.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stage timings and event counters of LocationUpdatesService, printed by dumpsys and the debug
+ * diagnostics screen.
+ *
+ * Every stage has a LatencyHistogram, every counter a slot in one array, so recording from the
+ * worker, main and geocoder threads neither locks nor allocates.
+ */
+final class ServiceMetrics {
+
+    enum Stage {
+        /**
+         * Trip recording and alarm check of one fix on the worker looper.
+         */
+        FIX("fix processing"),
+
+        /**
+         * From the delivery of the triggering fix to the first audio of the alarm, i.e. the
+         * playback position moving.
+         */
+        FIX_TO_AUDIO("fix to first audio"),
+
+        /**
+         * Building and posting a notification update.
+         */
+        NOTIFICATION("notification"),
+
+        /**
+         * One blocking Geocoder lookup.
+         */
+        GEOCODER("geocoder"),
+
+        /**
+         * MediaPlayer.prepareAsync() of the alarm sound until the player is prepared.
+         */
+        PLAYER_PREPARE("player prepare");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    enum Counter {
+        FIXES("fixes received"),
+        FIXES_DROPPED("fixes dropped"),
+        ALARMS("alarms triggered"),
+        GEOCODER_CALLS("geocoder calls"),
+        GEOCODER_FAILURES("geocoder failures"),
+        OFFLINE_NAMES("offline place names"),
+        NOTIFICATION_POSTS("notification posts"),
+        PLAYER_PREWARMS("player prewarms"),
+        COLD_STARTS("alarms started cold"),
+        SLEEPS("location sleeps"),
+        WAKEUPS("wake ring enters");
+
+        final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Cached, values() copies the array on every call.
+     */
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTERS.length);
+
+    ServiceMetrics() {
+        for (Stage stage : STAGES) {
+            mHistograms[stage.ordinal()] = new LatencyHistogram(stage.label);
+        }
+    }
+
+    /**
+     * Records the time a stage took.
+     *
+     * @param startNanos System.nanoTime() at the start of the stage.
+     */
+    void recordSince(Stage stage, long startNanos) {
+        mHistograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    void increment(Counter counter) {
+        mCounters.incrementAndGet(counter.ordinal());
+    }
+
+    long get(Counter counter) {
+        return mCounters.get(counter.ordinal());
+    }
+
+    LatencyHistogram get(Stage stage) {
+        return mHistograms[stage.ordinal()];
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < mCounters.length(); i++) {
+            mCounters.set(i, 0);
+        }
+    }
+
+    /**
+     * Prints every counter, then every stage with its percentiles and non-empty buckets.
+     */
+    void dump(PrintWriter writer, String prefix) {
+        for (Counter counter : COUNTERS) {
+            writer.print(prefix);
+            writer.print(counter.label);
+            writer.print(": ");
+            writer.println(get(counter));
+        }
+        for (LatencyHistogram histogram : mHistograms) {
+            writer.print(prefix);
+            writer.println(histogram);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            writer.print(prefix);
+            writer.print("  buckets (<us:count):");
+            for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+                long count = histogram.getBucketCount(i);
+                if (count == 0) {
+                    continue;
+                }
+                writer.print(' ');
+                writer.print(i == LatencyHistogram.BUCKETS - 1 ? "inf"
+                        : String.valueOf(LatencyHistogram.getBucketUpperBoundMicros(i)));
+                writer.print(':');
+                writer.print(count);
+            }
+            writer.println();
+        }
+    }
+}
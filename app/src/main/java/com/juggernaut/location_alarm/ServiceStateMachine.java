@@ -0,0 +1,194 @@
+package com.juggernaut.location_alarm;
+
+/**
+ * Tracks the lifecycle of LocationUpdatesService so it can be queried with a field read.
+ *
+ * The service lifecycle callbacks drive the transitions. The reported state is the most
+ * significant one that applies: an alarm ringing outranks the service being in the foreground,
+ * which outranks it being started while a client is bound, which outranks only being bound.
+ */
+class ServiceStateMachine {
+
+    enum State {
+        /**
+         * Neither started nor bound.
+         */
+        STOPPED,
+        /**
+         * A client is bound, no location updates were requested.
+         */
+        BOUND,
+        /**
+         * Monitoring location updates while a client is bound.
+         */
+        STARTED,
+        /**
+         * Monitoring location updates as a foreground service, no client is bound.
+         */
+        FOREGROUND,
+        /**
+         * An alarm is ringing.
+         */
+        ALARMING
+    }
+
+    /**
+     * Notified after every state change.
+     */
+    interface Listener {
+        void onStateChanged(State from, State to);
+    }
+
+    private volatile State mState = State.STOPPED;
+
+    /**
+     * Written under the lock, read without it.
+     */
+    private volatile boolean mBound;
+    private volatile boolean mStarted;
+    private volatile boolean mForeground;
+    private volatile boolean mAlarming;
+
+    private Listener mListener;
+
+    synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns the current state. Never blocks.
+     */
+    State getState() {
+        return mState;
+    }
+
+    /**
+     * Returns true if the service currently runs in the foreground. Never blocks.
+     */
+    boolean isForeground() {
+        return mForeground;
+    }
+
+    /**
+     * Returns true while an alarm is ringing. Never blocks.
+     */
+    boolean isAlarming() {
+        return mState == State.ALARMING;
+    }
+
+    boolean isBound() {
+        return mBound;
+    }
+
+    boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Returns true if the service is started but has nothing to monitor, e.g. restarted by the
+     * system with no alarm left to restore, and should stop itself. Never blocks.
+     *
+     * @param monitoring whether location updates are requested.
+     */
+    boolean isIdle(boolean monitoring) {
+        return mStarted && !monitoring;
+    }
+
+    /**
+     * onBind() or onRebind(): a client came to the foreground.
+     */
+    synchronized void onBind() {
+        mBound = true;
+        update();
+    }
+
+    /**
+     * onUnbind(): the last client went away.
+     */
+    synchronized void onUnbind() {
+        mBound = false;
+        update();
+    }
+
+    /**
+     * onStartCommand(): location updates were requested.
+     */
+    synchronized void onStart() {
+        mStarted = true;
+        update();
+    }
+
+    /**
+     * startForeground() was called.
+     */
+    synchronized void onStartForeground() {
+        mForeground = true;
+        update();
+    }
+
+    /**
+     * stopForeground() is about to be called, call it first so that nothing starts a new update of
+     * the notification.
+     */
+    synchronized void onStopForeground() {
+        mForeground = false;
+        update();
+    }
+
+    /**
+     * An alarm started ringing.
+     */
+    synchronized void onAlarmStarted() {
+        mAlarming = true;
+        update();
+    }
+
+    /**
+     * The ringing alarm was stopped.
+     */
+    synchronized void onAlarmStopped() {
+        mAlarming = false;
+        update();
+    }
+
+    /**
+     * stopSelf() was called: the service stays alive only while a client is bound.
+     */
+    synchronized void onStop() {
+        mStarted = false;
+        mForeground = false;
+        update();
+    }
+
+    /**
+     * onDestroy(): the service is gone, a ringing alarm keeps ringing until stopped.
+     */
+    synchronized void onDestroy() {
+        mBound = false;
+        mStarted = false;
+        mForeground = false;
+        update();
+    }
+
+    private void update() {
+        State state;
+        if (mAlarming) {
+            state = State.ALARMING;
+        } else if (mForeground) {
+            state = State.FOREGROUND;
+        } else if (mStarted) {
+            state = State.STARTED;
+        } else if (mBound) {
+            state = State.BOUND;
+        } else {
+            state = State.STOPPED;
+        }
+        State previous = mState;
+        if (state != previous) {
+            mState = state;
+            if (mListener != null) {
+                mListener.onStateChanged(previous, state);
+            }
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.juggernaut.location_alarm;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.location.Address;
 import android.location.Geocoder;
 import android.location.Location;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
+import com.juggernaut.location_alarm.core.CoordinateFormat;
+import com.juggernaut.location_alarm.core.Fix;
+import com.juggernaut.location_alarm.core.PlaceIndex;
+
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
@@ -19,34 +25,77 @@ class Utils {
 
     private static final String KEY_REQUESTING_LOCATION_UPDATES = "requesting_location_updates";
 
+    /**
+     * Offline place index bundled in the assets, stored uncompressed (see build.gradle).
+     */
+    private static final String PLACE_INDEX_ASSET = "places.idx";
+
+    /**
+     * Look place names and destinations up in the offline place index. The app ships without one,
+     * turn this on when bundling an index built by PlaceIndexBuilder, see the README. Until then
+     * the platform Geocoder and the Places widget name the places.
+     */
+    static final boolean OFFLINE_PLACE_INDEX = false;
+
     /**
      * Returns the location object as a human readable string.
      */
     static String getLocationCoordinate(Location location) {
-        return location == null ? "Unknown location" :
-                "(" + location.getLatitude() + ", " + location.getLongitude() + ")";
+        return location == null ? CoordinateFormat.UNKNOWN_LOCATION :
+                CoordinateFormat.format(location.getLatitude(), location.getLongitude());
+    }
+
+    static String getLocationCoordinate(Fix fix) {
+        return fix == null ? CoordinateFormat.UNKNOWN_LOCATION :
+                CoordinateFormat.format(fix.latitude, fix.longitude);
     }
 
     static String getLocationTitle(Context context) {
         return context.getString(R.string.current_location);
     }
 
-    static String getLocationName(Location location, Context context) {
+    /**
+     * Looks up the address of the given coordinates with the platform Geocoder. Blocks on network
+     * I/O, never call it on the main thread.
+     *
+     * @return the first address line, or null if no address was found.
+     * @throws IOException if the network is unavailable or any other I/O problem occurs.
+     */
+    static String getLocationName(double latitude, double longitude, Context context) throws IOException {
         Geocoder geocoder = new Geocoder(context, Locale.getDefault());
-        String result = null;
-        try {
-            List<Address> addresses = geocoder.getFromLocation(location.getLatitude(), location.getLongitude(), 1);
+        List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
 
-            if (addresses != null && addresses.size() > 0) {
-                Address address = addresses.get(0);
-                // sending back first address line
-                result = address.getAddressLine(0);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (addresses != null && addresses.size() > 0) {
+            Address address = addresses.get(0);
+            // sending back first address line
+            return address.getAddressLine(0);
         }
+        return null;
+    }
 
-        return result;
+    /**
+     * Memory-maps the bundled offline place index straight from the APK. Does I/O, never call it
+     * on the main thread.
+     *
+     * @return the index, or null if OFFLINE_PLACE_INDEX is off, the app bundles none or it is
+     * unreadable.
+     */
+    static PlaceIndex openPlaceIndex(Context context) {
+        if (!OFFLINE_PLACE_INDEX) {
+            return null;
+        }
+        try {
+            AssetFileDescriptor descriptor = context.getAssets().openFd(PLACE_INDEX_ASSET);
+            try (FileInputStream input = descriptor.createInputStream()) {
+                // The mapping stays valid once the descriptor is closed.
+                return PlaceIndex.open(input.getChannel(), descriptor.getStartOffset(),
+                        descriptor.getLength());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // Not bundled, or compressed after all: the platform Geocoder names the places.
+            Log.i(LocationUpdatesService.TAG, "No offline place index. " + e);
+            return null;
+        }
     }
 
     /**
@@ -0,0 +1,95 @@
+package com.juggernaut.location_alarm;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingClient;
+import com.google.android.gms.location.GeofencingEvent;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import com.juggernaut.location_alarm.core.Alarm;
+import com.juggernaut.location_alarm.core.WakeRings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers the wake-up rings of the alarms as geofences of Google Play services, which offloads
+ * them to the location hub where the device has one. Entering a ring starts the service with
+ * ACTION_WAKE.
+ */
+class WakeRingGeofences {
+
+    private static final String TAG = WakeRingGeofences.class.getSimpleName();
+
+    static final String ACTION_WAKE = "com.juggernaut.location_alarm.action.WAKE";
+
+    private final GeofencingClient mGeofencingClient;
+
+    /**
+     * Starts the service with ACTION_WAKE, shared by every ring.
+     */
+    private final PendingIntent mWakeIntent;
+
+    WakeRingGeofences(Context context) {
+        mGeofencingClient = LocationServices.getGeofencingClient(context);
+        Intent intent = new Intent(context, LocationUpdatesService.class).setAction(ACTION_WAKE);
+        mWakeIntent = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Replaces the registered rings with those of the given alarms.
+     *
+     * @param speed speed in m/s the rings are sized for.
+     * @throws SecurityException if the location permission is missing.
+     */
+    void register(List<Alarm> alarms, float speed, OnSuccessListener<Void> onSuccess,
+                  OnFailureListener onFailure) {
+        List<Geofence> geofences = new ArrayList<>(alarms.size());
+        for (Alarm alarm : alarms) {
+            geofences.add(new Geofence.Builder()
+                    .setRequestId(Long.toString(alarm.id))
+                    .setCircularRegion(alarm.latitude, alarm.longitude,
+                            WakeRings.getRadius(alarm, speed))
+                    .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER)
+                    .setNotificationResponsiveness(WakeRings.RESPONSIVENESS)
+                    .setExpirationDuration(Geofence.NEVER_EXPIRE)
+                    .build());
+        }
+        // Already inside a ring wakes the service right away.
+        GeofencingRequest request = new GeofencingRequest.Builder()
+                .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER)
+                .addGeofences(geofences)
+                .build();
+        Log.i(TAG, "Registering " + geofences.size() + " wake rings for " + speed + " m/s");
+        mGeofencingClient.removeGeofences(mWakeIntent);
+        mGeofencingClient.addGeofences(request, mWakeIntent)
+                .addOnSuccessListener(onSuccess)
+                .addOnFailureListener(onFailure);
+    }
+
+    /**
+     * Removes every ring.
+     */
+    void unregister() {
+        mGeofencingClient.removeGeofences(mWakeIntent);
+    }
+
+    /**
+     * Returns true if the intent reports entering a ring.
+     */
+    static boolean isEnter(Intent intent) {
+        GeofencingEvent event = GeofencingEvent.fromIntent(intent);
+        if (event == null || event.hasError()) {
+            Log.e(TAG, "Geofencing error " + (event == null ? "" : event.getErrorCode()));
+            return false;
+        }
+        return event.getGeofenceTransition() == Geofence.GEOFENCE_TRANSITION_ENTER;
+    }
+}
@@ -0,0 +1,41 @@
+package com.juggernaut.location_alarm;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ServiceMetrics.
+ */
+public class ServiceMetricsTest {
+
+    @Test
+    public void dump_printsCountersAndNonEmptyBuckets() throws Exception {
+        ServiceMetrics metrics = new ServiceMetrics();
+        metrics.increment(ServiceMetrics.Counter.FIXES);
+        metrics.increment(ServiceMetrics.Counter.FIXES);
+        metrics.increment(ServiceMetrics.Counter.ALARMS);
+        metrics.get(ServiceMetrics.Stage.PLAYER_PREPARE).record(3000000);
+        metrics.recordSince(ServiceMetrics.Stage.FIX, System.nanoTime());
+
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        metrics.dump(writer, "  ");
+        writer.flush();
+        String dump = out.toString();
+
+        assertTrue(dump, dump.contains("  fixes received: 2"));
+        assertTrue(dump, dump.contains("  alarms triggered: 1"));
+        assertTrue(dump, dump.contains("  player prepare: n=1 "));
+        assertTrue(dump, dump.contains("4096:1"));
+        assertTrue(dump, dump.contains("  geocoder: n=0 "));
+        assertEquals(1, metrics.get(ServiceMetrics.Stage.FIX).getCount());
+
+        metrics.reset();
+        assertEquals(0, metrics.get(ServiceMetrics.Counter.FIXES));
+        assertEquals(0, metrics.get(ServiceMetrics.Stage.PLAYER_PREPARE).getCount());
+    }
+}
@@ -0,0 +1,119 @@
+package com.juggernaut.location_alarm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for ServiceStateMachine.
+ */
+public class ServiceStateMachineTest {
+
+    @Test
+    public void lifecycle_bindStartUnbindRebind() throws Exception {
+        ServiceStateMachine machine = new ServiceStateMachine();
+        assertEquals(ServiceStateMachine.State.STOPPED, machine.getState());
+
+        machine.onBind();
+        assertEquals(ServiceStateMachine.State.BOUND, machine.getState());
+
+        machine.onStart();
+        assertEquals(ServiceStateMachine.State.STARTED, machine.getState());
+        assertFalse(machine.isForeground());
+
+        // The activity went away while monitoring.
+        machine.onUnbind();
+        machine.onStartForeground();
+        assertEquals(ServiceStateMachine.State.FOREGROUND, machine.getState());
+        assertTrue(machine.isForeground());
+
+        // And came back.
+        machine.onStopForeground();
+        machine.onBind();
+        assertEquals(ServiceStateMachine.State.STARTED, machine.getState());
+        assertFalse(machine.isForeground());
+    }
+
+    @Test
+    public void stop_fallsBackToBoundWhileAClientIsBound() throws Exception {
+        ServiceStateMachine machine = new ServiceStateMachine();
+        machine.onBind();
+        machine.onStart();
+
+        machine.onStop();
+        assertEquals(ServiceStateMachine.State.BOUND, machine.getState());
+
+        machine.onUnbind();
+        assertEquals(ServiceStateMachine.State.STOPPED, machine.getState());
+    }
+
+    @Test
+    public void stickyRestart_withNothingToMonitorIsIdle() throws Exception {
+        ServiceStateMachine machine = new ServiceStateMachine();
+        // Restarted by the system, no client and no alarm restored.
+        machine.onStart();
+        assertTrue(machine.isIdle(false));
+        assertFalse(machine.isIdle(true));
+
+        machine.onStop();
+        assertEquals(ServiceStateMachine.State.STOPPED, machine.getState());
+        assertFalse(machine.isIdle(false));
+    }
+
+    @Test
+    public void idle_onlyOnceStarted() throws Exception {
+        ServiceStateMachine machine = new ServiceStateMachine();
+        // The activity bound without arming an alarm, nothing to stop.
+        machine.onBind();
+        assertFalse(machine.isIdle(false));
+
+        machine.onStart();
+        machine.onStop();
+        assertEquals(ServiceStateMachine.State.BOUND, machine.getState());
+    }
+
+    @Test
+    public void alarming_outranksForegroundAndOutlivesTheService() throws Exception {
+        ServiceStateMachine machine = new ServiceStateMachine();
+        machine.onStart();
+        machine.onStartForeground();
+
+        machine.onAlarmStarted();
+        assertEquals(ServiceStateMachine.State.ALARMING, machine.getState());
+        assertTrue(machine.isAlarming());
+        // The notification is still up until the service stops.
+        assertTrue(machine.isForeground());
+
+        machine.onStop();
+        machine.onDestroy();
+        assertTrue(machine.isAlarming());
+        assertFalse(machine.isForeground());
+
+        machine.onAlarmStopped();
+        assertEquals(ServiceStateMachine.State.STOPPED, machine.getState());
+    }
+
+    @Test
+    public void listener_notifiedOnlyOnChanges() throws Exception {
+        ServiceStateMachine machine = new ServiceStateMachine();
+        final List<String> transitions = new ArrayList<>();
+        machine.setListener(new ServiceStateMachine.Listener() {
+            @Override
+            public void onStateChanged(ServiceStateMachine.State from, ServiceStateMachine.State to) {
+                transitions.add(from + ">" + to);
+            }
+        });
+
+        machine.onBind();
+        machine.onBind();
+        machine.onStopForeground();
+        machine.onStart();
+
+        assertEquals(2, transitions.size());
+        assertEquals("STOPPED>BOUND", transitions.get(0));
+        assertEquals("BOUND>STARTED", transitions.get(1));
+    }
+}
@@ -0,0 +1,113 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking one fix against every armed alarm: the original scan measuring each alarm
+ * exactly, against the grid lookup and distance kernel the pipeline uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlarmLookupBenchmark {
+
+    /**
+     * Number of fixes cycled through, a power of two.
+     */
+    private static final int FIXES = 1024;
+
+    @Param({"1", "10", "100", "1000"})
+    public int alarms;
+
+    private final AlarmRegistry mRegistry = new AlarmRegistry();
+
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+
+    private final List<Alarm> mCandidates = new ArrayList<>();
+
+    private final DistanceKernel mKernel = new DistanceKernel();
+
+    private List<Alarm> mAll;
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < alarms; i++) {
+            mRegistry.add("Alarm " + i, randomLatitude(random), randomLongitude(random),
+                    100 + random.nextInt(1900));
+        }
+        mAll = mRegistry.getAll();
+        for (int i = 0; i < FIXES; i++) {
+            mLatitudes[i] = randomLatitude(random);
+            mLongitudes[i] = randomLongitude(random);
+        }
+    }
+
+    @Benchmark
+    public int scan() {
+        int index = next();
+        int reached = 0;
+        for (int i = 0; i < mAll.size(); i++) {
+            Alarm alarm = mAll.get(i);
+            if (DistanceKernel.vincenty(mLatitudes[index], mLongitudes[index], alarm.latitude,
+                    alarm.longitude) <= alarm.radius) {
+                reached++;
+            }
+        }
+        return reached;
+    }
+
+    @Benchmark
+    public int indexed() {
+        int index = next();
+        int reached = 0;
+        mRegistry.query(mLatitudes[index], mLongitudes[index], mCandidates);
+        if (mCandidates.isEmpty()) {
+            return reached;
+        }
+        mKernel.setOrigin(mLatitudes[index], mLongitudes[index]);
+        for (int i = 0; i < mCandidates.size(); i++) {
+            if (mKernel.isWithin(mCandidates.get(i))) {
+                reached++;
+            }
+        }
+        return reached;
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        return mIndex;
+    }
+
+    /**
+     * Alarms and fixes are spread over a square of about 100 km around the origin.
+     */
+    static double randomLatitude(Random random) {
+        return DistanceBenchmark.ORIGIN_LATITUDE + (random.nextDouble() - 0.5) * 0.9;
+    }
+
+    static double randomLongitude(Random random) {
+        return DistanceBenchmark.ORIGIN_LONGITUDE + (random.nextDouble() - 0.5) * 0.9;
+    }
+}
@@ -0,0 +1,72 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the coordinate text shown in the notification for every fix
+ * (Utils.getLocationCoordinate), against the usual alternatives.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoordinateFormatBenchmark {
+
+    private static final int FIXES = 1024;
+
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+
+    private final StringBuilder mBuilder = new StringBuilder(48);
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < FIXES; i++) {
+            mLatitudes[i] = AlarmLookupBenchmark.randomLatitude(random);
+            mLongitudes[i] = AlarmLookupBenchmark.randomLongitude(random);
+        }
+    }
+
+    @Benchmark
+    public String concatenation() {
+        int i = next();
+        return CoordinateFormat.format(mLatitudes[i], mLongitudes[i]);
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        int i = next();
+        return String.format(Locale.US, "(%.6f, %.6f)", mLatitudes[i], mLongitudes[i]);
+    }
+
+    @Benchmark
+    public String reusedBuilder() {
+        int i = next();
+        mBuilder.setLength(0);
+        return mBuilder.append('(').append(mLatitudes[i]).append(", ").append(mLongitudes[i])
+                .append(')').toString();
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        return mIndex;
+    }
+}
@@ -0,0 +1,108 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking one fix near a corridor alarm against a route of the given number of
+ * vertices, next to the same check against a single destination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorridorBenchmark {
+
+    /**
+     * Number of fixes cycled through, a power of two.
+     */
+    private static final int FIXES = 1024;
+
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    @Param({"50", "5000"})
+    public int vertices;
+
+    private final AlarmRegistry mCorridors = new AlarmRegistry();
+
+    private final AlarmRegistry mPoints = new AlarmRegistry();
+
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+
+    private final List<Alarm> mCandidates = new ArrayList<>();
+
+    private final DistanceKernel mKernel = new DistanceKernel();
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        // A winding route with 20 m between vertices, like a bus line drawn from GPS.
+        Random random = new Random(42);
+        double[] latitudes = new double[vertices];
+        double[] longitudes = new double[vertices];
+        double bearing = 0;
+        latitudes[0] = DistanceBenchmark.ORIGIN_LATITUDE;
+        longitudes[0] = DistanceBenchmark.ORIGIN_LONGITUDE;
+        for (int i = 1; i < vertices; i++) {
+            bearing += random.nextGaussian() * 0.1;
+            latitudes[i] = latitudes[i - 1] + Math.cos(bearing) * 20 / METERS_PER_DEGREE;
+            longitudes[i] = longitudes[i - 1] + Math.sin(bearing) * 20 / METERS_PER_DEGREE;
+        }
+        mCorridors.addCorridor("Route", latitudes, longitudes, 300);
+        mPoints.add("Stop", latitudes[vertices / 2], longitudes[vertices / 2], 300);
+
+        // Fixes up to 500 m off the route, about half of them inside the buffer.
+        for (int i = 0; i < FIXES; i++) {
+            int vertex = random.nextInt(vertices);
+            mLatitudes[i] = latitudes[vertex] + (random.nextDouble() - 0.5) * 1000 / METERS_PER_DEGREE;
+            mLongitudes[i] = longitudes[vertex] + (random.nextDouble() - 0.5) * 1000 / METERS_PER_DEGREE;
+        }
+    }
+
+    @Benchmark
+    public int point() {
+        return check(mPoints);
+    }
+
+    @Benchmark
+    public int corridor() {
+        return check(mCorridors);
+    }
+
+    /**
+     * The check AlarmPipeline.onFix() runs, without disarming.
+     */
+    private int check(AlarmRegistry registry) {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        int reached = 0;
+        registry.query(mLatitudes[mIndex], mLongitudes[mIndex], mCandidates);
+        if (mCandidates.isEmpty()) {
+            return reached;
+        }
+        mKernel.setOrigin(mLatitudes[mIndex], mLongitudes[mIndex]);
+        for (int i = 0; i < mCandidates.size(); i++) {
+            if (mCandidates.get(i).isReached(mKernel)) {
+                reached++;
+            }
+        }
+        return reached;
+    }
+}
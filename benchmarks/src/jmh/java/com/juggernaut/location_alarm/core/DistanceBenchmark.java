@@ -0,0 +1,98 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one distance measurement between a fix and an alarm.
+ *
+ * Location.distanceBetween is only a stub outside of Android, DistanceKernel.vincenty() is the
+ * same inverse formula on the WGS84 ellipsoid and stands in for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    static final double ORIGIN_LATITUDE = 12.9716;
+    static final double ORIGIN_LONGITUDE = 77.5946;
+
+    /**
+     * Number of targets cycled through, a power of two.
+     */
+    private static final int TARGETS = 1024;
+
+    private final Alarm[] mTargets = new Alarm[TARGETS];
+
+    private final DistanceKernel mKernel = new DistanceKernel();
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < TARGETS; i++) {
+            // Within about 20 km, radii from 100 m to 2 km.
+            mTargets[i] = new Alarm(i, null,
+                    ORIGIN_LATITUDE + (random.nextDouble() - 0.5) * 0.36,
+                    ORIGIN_LONGITUDE + (random.nextDouble() - 0.5) * 0.36,
+                    100 + random.nextInt(1900));
+        }
+        mKernel.setOrigin(ORIGIN_LATITUDE, ORIGIN_LONGITUDE);
+    }
+
+    @Benchmark
+    public double vincenty() {
+        Alarm target = next();
+        return DistanceKernel.vincenty(ORIGIN_LATITUDE, ORIGIN_LONGITUDE, target.latitude,
+                target.longitude);
+    }
+
+    @Benchmark
+    public double haversine() {
+        Alarm target = next();
+        return haversine(ORIGIN_LATITUDE, ORIGIN_LONGITUDE, target.latitude, target.longitude);
+    }
+
+    @Benchmark
+    public double kernelEstimate() {
+        return mKernel.estimate(next());
+    }
+
+    @Benchmark
+    public boolean kernelIsWithin() {
+        return mKernel.isWithin(next());
+    }
+
+    private Alarm next() {
+        mIndex = (mIndex + 1) & (TARGETS - 1);
+        return mTargets[mIndex];
+    }
+
+    /**
+     * Great circle distance on a sphere, the usual alternative to Vincenty.
+     */
+    static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinHalfPhi = Math.sin((phi2 - phi1) / 2);
+        double sinHalfLambda = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinHalfPhi * sinHalfPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfLambda * sinHalfLambda;
+        return 2 * DistanceKernel.EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+}
@@ -0,0 +1,60 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of conditioning one fix through the FixFilter, on a noisy drive with an occasional
+ * outlier. Run with -prof gc to check that nothing is allocated per fix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixFilterBenchmark {
+
+    /**
+     * Length of the drive cycled through, in fixes, a power of two.
+     */
+    private static final int FIXES = 4096;
+
+    private final Fix[] mFixes = new Fix[FIXES];
+
+    private final FixFilter mFilter = new FixFilter();
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        // About 15 m/s with 10 m of noise, one fix per second, one fix in a hundred 1 km off.
+        for (int i = 0; i < FIXES; i++) {
+            double noise = random.nextInt(100) == 0 ? 0.01 : random.nextGaussian() * 0.0001;
+            mFixes[i] = new Fix(i * 1000L, DistanceBenchmark.ORIGIN_LATITUDE + i * 0.00014 + noise,
+                    DistanceBenchmark.ORIGIN_LONGITUDE + i * 0.00005, 10, 15, 20);
+        }
+    }
+
+    @Benchmark
+    public boolean update() {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        if (mIndex == 0) {
+            // Back to the start of the drive.
+            mFilter.reset();
+        }
+        return mFilter.update(mFixes[mIndex]);
+    }
+}
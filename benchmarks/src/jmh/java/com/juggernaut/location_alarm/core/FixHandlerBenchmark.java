@@ -0,0 +1,91 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the service's handling of one fix end to end: the alarm check, the scheduler and the
+ * notification text with its throttle. Trip recording and the bus are left out, they only hand
+ * the fix on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixHandlerBenchmark {
+
+    /**
+     * Length of the drive cycled through, in fixes, a power of two.
+     */
+    private static final int FIXES = 4096;
+
+    private static final String TITLE = "Current location";
+
+    @Param({"1", "10", "100", "1000"})
+    public int alarms;
+
+    private final AlarmRegistry mRegistry = new AlarmRegistry();
+
+    private final NotificationThrottle mThrottle = new NotificationThrottle(5000);
+
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+
+    private AlarmPipeline mPipeline;
+
+    private int mIndex;
+
+    private long mTime = 1540000000000L;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < alarms; i++) {
+            mRegistry.add("Alarm " + i, AlarmLookupBenchmark.randomLatitude(random),
+                    AlarmLookupBenchmark.randomLongitude(random), 100 + random.nextInt(1900));
+        }
+        // A drive of about 15 m/s across the area, one fix per second.
+        for (int i = 0; i < FIXES; i++) {
+            mLatitudes[i] = DistanceBenchmark.ORIGIN_LATITUDE - 0.3 + i * 0.00014;
+            mLongitudes[i] = DistanceBenchmark.ORIGIN_LONGITUDE - 0.3 + i * 0.00005;
+        }
+        mPipeline = new AlarmPipeline(mRegistry, new LocationRequestScheduler(mRegistry),
+                new AlarmPipeline.Listener() {
+                    @Override
+                    public void onAlarmTriggered(Alarm alarm, Fix fix) {
+                        // Arm it again so every iteration sees the same alarms.
+                        mRegistry.add(alarm);
+                    }
+
+                    @Override
+                    public void onTierChanged(LocationRequestScheduler.Tier tier,
+                                              long previousMaxWaitTime) {
+                    }
+                });
+    }
+
+    @Benchmark
+    public long handleFix() {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        mTime += 1000;
+        Fix fix = new Fix(mTime, mLatitudes[mIndex], mLongitudes[mIndex], 8, 15, 20);
+        mPipeline.onFix(fix);
+        mPipeline.onFixesProcessed(fix);
+        return mThrottle.offer(TITLE, CoordinateFormat.format(fix.latitude, fix.longitude),
+                fix.time);
+    }
+}
@@ -0,0 +1,90 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work done on the main thread each time the map camera comes to rest: grouping the alarms and
+ * simplifying a recorded track for the new zoom level.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapOverlayBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private final AlarmClusterer mClusterer = new AlarmClusterer();
+
+    private final List<Alarm> mAlarms = new ArrayList<>();
+
+    /**
+     * About a third of the area the alarms are spread over, at a zoom level showing it.
+     */
+    private final Viewport mViewport = Viewport.fromBounds(
+            DistanceBenchmark.ORIGIN_LATITUDE - 0.15, DistanceBenchmark.ORIGIN_LONGITUDE - 0.15,
+            DistanceBenchmark.ORIGIN_LATITUDE + 0.15, DistanceBenchmark.ORIGIN_LONGITUDE + 0.15);
+
+    private static final float ZOOM = 11;
+
+    private double[] mXs;
+    private double[] mYs;
+    private boolean[] mKeep;
+    private int[] mStack;
+    private int[] mKept;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            mAlarms.add(new Alarm(i + 1, "Alarm " + i, AlarmLookupBenchmark.randomLatitude(random),
+                    AlarmLookupBenchmark.randomLongitude(random), 100 + random.nextInt(1900)));
+        }
+
+        // A wandering walk of 10 m steps, like a trip recorded on foot.
+        mXs = new double[size];
+        mYs = new double[size];
+        double latitude = DistanceBenchmark.ORIGIN_LATITUDE;
+        double longitude = DistanceBenchmark.ORIGIN_LONGITUDE;
+        double bearing = 0;
+        for (int i = 0; i < size; i++) {
+            bearing += random.nextGaussian() * 0.3;
+            latitude += Math.cos(bearing) * 10 / 111320.0;
+            longitude += Math.sin(bearing) * 10 / 111320.0;
+            mXs[i] = Viewport.x(longitude);
+            mYs[i] = Viewport.y(latitude);
+        }
+        mKeep = new boolean[size];
+        mStack = new int[2 * size];
+        mKept = new int[size];
+    }
+
+    @Benchmark
+    public List<AlarmClusterer.Cluster> cluster() {
+        return mClusterer.cluster(mAlarms, ZOOM, mViewport);
+    }
+
+    @Benchmark
+    public int simplifyTrack() {
+        return Track.simplify(mXs, mYs, size, Track.TOLERANCE_PIXELS / Viewport.worldPixels(ZOOM),
+                mKeep, mStack, mKept);
+    }
+}
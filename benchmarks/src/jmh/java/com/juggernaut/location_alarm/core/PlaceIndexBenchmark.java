@@ -0,0 +1,77 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of naming a position offline from a memory-mapped PlaceIndex the size of a large city:
+ * 200000 street centroids and 500 localities over half a degree square.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceIndexBenchmark {
+
+    private static final int STREETS = 200000;
+    private static final int LOCALITIES = 500;
+
+    /**
+     * Number of positions cycled through, a power of two.
+     */
+    private static final int QUERIES = 1024;
+
+    private static final double SPAN = 0.5;
+
+    private final double[] mLatitudes = new double[QUERIES];
+    private final double[] mLongitudes = new double[QUERIES];
+
+    private PlaceIndex mIndex;
+
+    private int mQuery;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        PlaceIndexBuilder builder = new PlaceIndexBuilder();
+        for (int i = 0; i < STREETS; i++) {
+            builder.add(PlaceIndex.Kind.STREET, "Street " + (i % 20000),
+                    DistanceBenchmark.ORIGIN_LATITUDE + random.nextDouble() * SPAN,
+                    DistanceBenchmark.ORIGIN_LONGITUDE + random.nextDouble() * SPAN);
+        }
+        for (int i = 0; i < LOCALITIES; i++) {
+            builder.add(PlaceIndex.Kind.LOCALITY, "Locality " + i,
+                    DistanceBenchmark.ORIGIN_LATITUDE + random.nextDouble() * SPAN,
+                    DistanceBenchmark.ORIGIN_LONGITUDE + random.nextDouble() * SPAN);
+        }
+        File file = File.createTempFile("places", ".idx");
+        file.deleteOnExit();
+        builder.write(file);
+        mIndex = PlaceIndex.open(file);
+        for (int i = 0; i < QUERIES; i++) {
+            mLatitudes[i] = DistanceBenchmark.ORIGIN_LATITUDE + random.nextDouble() * SPAN;
+            mLongitudes[i] = DistanceBenchmark.ORIGIN_LONGITUDE + random.nextDouble() * SPAN;
+        }
+    }
+
+    @Benchmark
+    public String getLocationName() {
+        mQuery = (mQuery + 1) & (QUERIES - 1);
+        return mIndex.getLocationName(mLatitudes[mQuery], mLongitudes[mQuery]);
+    }
+}
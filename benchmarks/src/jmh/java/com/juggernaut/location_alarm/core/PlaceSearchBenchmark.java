@@ -0,0 +1,71 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of answering one keystroke of the search box from a PlaceSearch over 100000 points of
+ * interest with made up names: a two letter prefix that matches thousands of them, a full word,
+ * and a long word with a typo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceSearchBenchmark {
+
+    private static final int PLACES = 100000;
+
+    private static final String[] SYLLABLES = {"ba", "ka", "ma", "na", "ra", "sa", "ta", "va",
+            "li", "ri", "ni", "gu", "pu", "du", "ko", "ro", "to", "ne", "se", "pe"};
+
+    private static final String[] KINDS = {"Road", "Nagar", "Station", "Circle", "Layout",
+            "Park", "Market", "Temple"};
+
+    private static final int LIMIT = 8;
+
+    @Param({"ma", "manali", "kalimaranagar"})
+    public String query;
+
+    private PlaceSearch mSearch;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mSearch = new PlaceSearch();
+        for (int i = 0; i < PLACES; i++) {
+            StringBuilder name = new StringBuilder();
+            int syllables = 2 + random.nextInt(4);
+            for (int s = 0; s < syllables; s++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            name.append(' ').append(KINDS[random.nextInt(KINDS.length)]);
+            mSearch.add(name.toString(),
+                    DistanceBenchmark.ORIGIN_LATITUDE + random.nextDouble() - 0.5,
+                    DistanceBenchmark.ORIGIN_LONGITUDE + random.nextDouble() - 0.5,
+                    PlaceSearch.Source.POI);
+        }
+    }
+
+    @Benchmark
+    public List<PlaceSearch.Result> search() {
+        return mSearch.search(query, DistanceBenchmark.ORIGIN_LATITUDE,
+                DistanceBenchmark.ORIGIN_LONGITUDE, LIMIT);
+    }
+}
@@ -0,0 +1,77 @@
+package com.juggernaut.location_alarm.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of testing one fix against a polygon alarm of the given number of edges, through its grid
+ * and by crossing every edge.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolygonBenchmark {
+
+    /**
+     * Number of fixes cycled through, a power of two.
+     */
+    private static final int FIXES = 1024;
+
+    @Param({"100", "10000"})
+    public int edges;
+
+    private PolygonAlarm mPolygon;
+
+    private final double[] mLatitudes = new double[FIXES];
+    private final double[] mLongitudes = new double[FIXES];
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        // A ragged outline about 2 km across, like a campus traced from a satellite image.
+        Random random = new Random(42);
+        double[][] latitudes = new double[1][edges];
+        double[][] longitudes = new double[1][edges];
+        for (int i = 0; i < edges; i++) {
+            double angle = 2 * Math.PI * i / edges;
+            double radius = 0.01 * (0.8 + 0.2 * random.nextDouble());
+            latitudes[0][i] = DistanceBenchmark.ORIGIN_LATITUDE + radius * Math.sin(angle);
+            longitudes[0][i] = DistanceBenchmark.ORIGIN_LONGITUDE + radius * Math.cos(angle);
+        }
+        mPolygon = new PolygonAlarm(1, "Campus", latitudes, longitudes);
+
+        // Fixes over the bounding box, most of them inside.
+        for (int i = 0; i < FIXES; i++) {
+            mLatitudes[i] = DistanceBenchmark.ORIGIN_LATITUDE + (random.nextDouble() - 0.5) * 0.02;
+            mLongitudes[i] = DistanceBenchmark.ORIGIN_LONGITUDE + (random.nextDouble() - 0.5) * 0.02;
+        }
+    }
+
+    @Benchmark
+    public boolean grid() {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        return mPolygon.contains(mLatitudes[mIndex], mLongitudes[mIndex]);
+    }
+
+    @Benchmark
+    public boolean scan() {
+        mIndex = (mIndex + 1) & (FIXES - 1);
+        return mPolygon.containsByScan(mLatitudes[mIndex], mLongitudes[mIndex]);
+    }
+}
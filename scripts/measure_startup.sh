@@ -0,0 +1,66 @@
+#!/bin/bash
+# Measures the cold or warm start of MapsActivity on the connected device.
+#
+#   scripts/measure_startup.sh [cold|warm] [runs]
+#
+# cold: the process is killed before every launch.
+# warm: the process stays alive, the activity is destroyed when it goes to the background
+#       (always_finish_activities is switched on for the run and restored afterwards).
+#
+# Prints, per run and as min/median/max, the time to the first frame ("TotalTime" of am start,
+# logged by the system as "Displayed") and the time to reportFullyDrawn() ("Fully drawn"), both in
+# milliseconds. Install a release build first, debug builds are noticeably slower to start.
+set -e
+
+MODE=${1:-cold}
+RUNS=${2:-10}
+PACKAGE=com.juggernaut.location_alarm
+COMPONENT=$PACKAGE/.MapsActivity
+
+case $MODE in
+    cold|warm) ;;
+    *) echo "usage: $0 [cold|warm] [runs]" >&2; exit 1 ;;
+esac
+
+if [ "$MODE" = warm ]; then
+    FINISH=$(adb shell settings get global always_finish_activities | tr -d '\r')
+    trap 'adb shell settings put global always_finish_activities "${FINISH:-0}"' EXIT
+    adb shell settings put global always_finish_activities 1
+    # Brings the process up once, the runs below find it alive.
+    adb shell am start -W -n $COMPONENT > /dev/null
+    sleep 3
+fi
+
+# Converts "+1s234ms" or "+987ms" to milliseconds.
+to_millis() {
+    echo "$1" | sed -e 's/^+//' -e 's/ms$//' | awk -F's' '{ if (NF == 2) print $1 * 1000 + $2; else print $1 }'
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { if (NR == 0) exit; print "min=" v[1] " median=" v[int((NR + 1) / 2)] " max=" v[NR] }'
+}
+
+DISPLAYED=()
+FULLY_DRAWN=()
+for i in $(seq 1 "$RUNS"); do
+    if [ "$MODE" = cold ]; then
+        adb shell am force-stop $PACKAGE
+    else
+        adb shell input keyevent KEYCODE_HOME
+    fi
+    sleep 2
+    adb logcat -c
+    TOTAL=$(adb shell am start -W -n $COMPONENT | tr -d '\r' | awk '/TotalTime/ { print $2 }')
+    # reportFullyDrawn() follows the map and the deferred startup work.
+    sleep 3
+    DRAWN=$(adb logcat -d -s ActivityManager:I ActivityTaskManager:I | tr -d '\r' \
+        | grep "Fully drawn $COMPONENT" | tail -n 1 | sed -e 's/.*: \(+[0-9sm]*\).*/\1/')
+    DRAWN=${DRAWN:+$(to_millis "$DRAWN")}
+    echo "run $i: displayed=${TOTAL:-?}ms fully_drawn=${DRAWN:-?}ms"
+    [ -n "$TOTAL" ] && DISPLAYED+=("$TOTAL")
+    [ -n "$DRAWN" ] && FULLY_DRAWN+=("$DRAWN")
+done
+
+echo "$MODE start over $RUNS runs"
+echo "  displayed:   $(printf '%s\n' "${DISPLAYED[@]}" | median)"
+echo "  fully drawn: $(printf '%s\n' "${FULLY_DRAWN[@]}" | median)"